@@ -16,7 +16,6 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEventListener;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.MutableMap;
-import brooklyn.util.flags.TypeCoercions;
 
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
@@ -25,13 +24,20 @@ import com.google.common.collect.ImmutableMap;
 /**
  * Subscribes to events from producers with a sensor of type T, aggregates them with the 
  * provided closure and emits the result on the target sensor V.
+ * <p>
+ * The aggregate is either computed from all the values on each change, by a closure or {@link Function};
+ * or, with an {@link IncrementalAggregator}, maintained by applying just the change (so an event from one member
+ * of a large cluster costs O(1) rather than O(members)). The summing and averaging enrichers are incremental.
  * @param <T>
  */
 public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<S,T> implements SensorEventListener<S> {
     
     private static final Logger LOG = LoggerFactory.getLogger(CustomAggregatingEnricher.class);
     
+    /** null if aggregating incrementally */
     protected final Function<Collection<S>, T> aggregator;
+    /** null if aggregating with a function */
+    protected final IncrementalAggregator<S, T> incrementalAggregator;
     
     /**
      * The valid keys for the flags are:
@@ -50,6 +56,26 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
             Function<Collection<S>, T> aggregator, S defaultValue) {
         super(flags, source, target, defaultValue);
         this.aggregator = aggregator;
+        this.incrementalAggregator = null;
+    }
+    
+    /**
+     * As {@link #CustomAggregatingEnricher(Map, AttributeSensor, AttributeSensor, Function, Object)}, but maintaining the
+     * aggregate incrementally, as each producer's value changes.
+     * 
+     * @param aggregator   Aggregates the values as they are added and removed, to give a value for the target sensor;
+     *                     one per enricher, as it holds the state of the aggregate
+     */
+    public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
+            IncrementalAggregator<S, T> aggregator, S defaultValue) {
+        super(flags, source, target, defaultValue);
+        this.aggregator = null;
+        this.incrementalAggregator = aggregator;
+    }
+    
+    public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
+            IncrementalAggregator<S, T> aggregator) {
+        this(flags, source, target, aggregator, null);
     }
     
     public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
@@ -116,6 +142,7 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
             Function<Collection<S>, T> aggregator, S defaultValue) {
         super(producer, source, target, defaultValue);
         this.aggregator = aggregator;
+        this.incrementalAggregator = null;
     }
 
     @Deprecated
@@ -135,10 +162,21 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
     
     public T getAggregate() {
         synchronized (values) {
+            if (incrementalAggregator != null) return incrementalAggregator.getAggregate();
             return (T) aggregator.apply(values.values());
         }
     }
 
+    @Override
+    protected void onValueAdded(Entity producer, S value) {
+        if (incrementalAggregator != null) incrementalAggregator.add(value);
+    }
+
+    @Override
+    protected void onValueRemoved(Entity producer, S value) {
+        if (incrementalAggregator != null) incrementalAggregator.remove(value);
+    }
+
     // FIXME Clean up explosion of overloading, caused by groovy-equivalent default vals...
     public static <S,T> CustomAggregatingEnricher<S,T> newEnricher(
             Map<String,?> flags, AttributeSensor<S> source, AttributeSensor<T> target, Closure<?> aggregator, S defaultVal) {
@@ -179,12 +217,7 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
     public static <N extends Number, T extends Number> CustomAggregatingEnricher<N,T> newSummingEnricher(
             Map<String,?> flags, AttributeSensor<N> source, final AttributeSensor<T> target) {
         
-        Function<Collection<N>, T> aggregator = new Function<Collection<N>, T>() {
-            @Override public T apply(Collection<N> vals) {
-                Object result = (vals == null || vals.isEmpty()) ? 0 : sum(vals);
-                return TypeCoercions.castPrimitive(result, target.getType());
-            }
-        };
+        IncrementalAggregator<N, T> aggregator = IncrementalAggregators.sum(target.getType());
         return new CustomAggregatingEnricher<N,T>(flags, source, target, aggregator);
     }
     public static <N extends Number> CustomAggregatingEnricher<N,N> newSummingEnricher(
@@ -216,12 +249,7 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
             Map<String,?> flags, AttributeSensor<? extends N> source, AttributeSensor<Double> target,
             N defaultValue) {
         
-        Function<Collection<N>, Double> aggregator = new Function<Collection<N>, Double>() {
-            @Override public Double apply(Collection<N> vals) {
-                int count = count(vals);
-                return (count==0) ? 0d : ((Double) sum(vals) / count);
-            }
-        };
+        IncrementalAggregator<N, Double> aggregator = IncrementalAggregators.mean();
         return new CustomAggregatingEnricher<N,Double>(flags, source, target, aggregator, defaultValue);
     }
     public static <N extends Number> CustomAggregatingEnricher<Number,Double> newAveragingEnricher(
@@ -237,17 +265,5 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
             List<Entity> producer, AttributeSensor<N> source, AttributeSensor<Double> target) {
         return newAveragingEnricher(MutableMap.of("producers", producer, "allMembers", true), source, target);
     }
-    
-    private static <N extends Number> double sum(Iterable<N> vals) {
-        double result = 0d;
-        if (vals!=null) for (Number val : vals) if (val!=null) result += val.doubleValue();
-        return result;
-    }
-    
-    private static int count(Iterable<? extends Object> vals) {
-        int result = 0;
-        if (vals!=null) for (Object val : vals) if (val!=null) result++;
-        return result;
-    }
 
 }
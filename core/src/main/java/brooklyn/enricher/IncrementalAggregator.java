@@ -0,0 +1,22 @@
+package brooklyn.enricher;
+
+/**
+ * Maintains an aggregate of a changing collection of values (e.g. one per member of a cluster) by applying each
+ * change as it happens, rather than recomputing it from all the values (as a {@code Function<Collection<S>,T>} does);
+ * a change of a value is applied as {@link #remove(Object)} of the old value then {@link #add(Object)} of the new.
+ * <p>
+ * Implementations need not be thread-safe: {@link CustomAggregatingEnricher} calls them while synchronized on its values.
+ * 
+ * @see IncrementalAggregators
+ */
+public interface IncrementalAggregator<S,T> {
+
+    /** adds a value (which may be null) to the aggregate */
+    public void add(S value);
+
+    /** removes a value (which may be null) which was previously added */
+    public void remove(S value);
+
+    /** the aggregate of the values currently added */
+    public T getAggregate();
+}
@@ -0,0 +1,149 @@
+package brooklyn.enricher;
+
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * {@link IncrementalAggregator}s for numbers, each applying a change in O(1) (or O(log n) for min and max).
+ * Null values are ignored.
+ */
+public class IncrementalAggregators {
+
+    private IncrementalAggregators() {}
+
+    /** the sum of the values, cast to the given type; 0 if there are none */
+    public static <N extends Number, T> IncrementalAggregator<N,T> sum(Class<T> type) {
+        return new Sum<N,T>(type);
+    }
+
+    /** the number of (non-null) values */
+    public static <S> IncrementalAggregator<S,Integer> count() {
+        return new Count<S>();
+    }
+
+    /** the mean of the values; 0 if there are none */
+    public static <N extends Number> IncrementalAggregator<N,Double> mean() {
+        return new Mean<N>();
+    }
+
+    /** the smallest value, cast to the given type; null if there are none */
+    public static <N extends Number, T> IncrementalAggregator<N,T> min(Class<T> type) {
+        return new Extreme<N,T>(type, false);
+    }
+
+    /** the largest value, cast to the given type; null if there are none */
+    public static <N extends Number, T> IncrementalAggregator<N,T> max(Class<T> type) {
+        return new Extreme<N,T>(type, true);
+    }
+
+    private static boolean isWholeNumber(Number value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Sums whole numbers exactly in a long (so adding and removing them does not accumulate rounding errors),
+     * and other numbers in a double.
+     */
+    private static class Sum<N extends Number, T> implements IncrementalAggregator<N,T> {
+        private final Class<T> type;
+        private long wholeSum = 0;
+        private double realSum = 0;
+        private int realCount = 0;
+
+        Sum(Class<T> type) {
+            this.type = type;
+        }
+
+        @Override public void add(N value) {
+            if (value == null) return;
+            if (isWholeNumber(value)) {
+                wholeSum += value.longValue();
+            } else {
+                realSum += value.doubleValue();
+                realCount++;
+            }
+        }
+
+        @Override public void remove(N value) {
+            if (value == null) return;
+            if (isWholeNumber(value)) {
+                wholeSum -= value.longValue();
+            } else {
+                realCount--;
+                realSum = (realCount == 0) ? 0 : realSum - value.doubleValue();
+            }
+        }
+
+        double doubleValue() {
+            return wholeSum + realSum;
+        }
+
+        @Override public T getAggregate() {
+            Object result = (realCount == 0) ? (Object) wholeSum : (Object) (wholeSum + realSum);
+            return TypeCoercions.castPrimitive(result, type);
+        }
+    }
+
+    private static class Count<S> implements IncrementalAggregator<S,Integer> {
+        private int count = 0;
+
+        @Override public void add(S value) {
+            if (value != null) count++;
+        }
+
+        @Override public void remove(S value) {
+            if (value != null) count--;
+        }
+
+        @Override public Integer getAggregate() {
+            return count;
+        }
+    }
+
+    private static class Mean<N extends Number> implements IncrementalAggregator<N,Double> {
+        private final Sum<N,Double> sum = new Sum<N,Double>(Double.class);
+        private final Count<N> count = new Count<N>();
+
+        @Override public void add(N value) {
+            sum.add(value);
+            count.add(value);
+        }
+
+        @Override public void remove(N value) {
+            sum.remove(value);
+            count.remove(value);
+        }
+
+        @Override public Double getAggregate() {
+            int n = count.getAggregate();
+            return (n == 0) ? 0d : sum.doubleValue() / n;
+        }
+    }
+
+    /** min or max, keeping the values in a sorted multiset so that removing the current extreme is O(log n) */
+    private static class Extreme<N extends Number, T> implements IncrementalAggregator<N,T> {
+        private final Class<T> type;
+        private final boolean max;
+        private final TreeMultiset<Double> values = TreeMultiset.create();
+
+        Extreme(Class<T> type, boolean max) {
+            this.type = type;
+            this.max = max;
+        }
+
+        @Override public void add(N value) {
+            if (value != null) values.add(value.doubleValue());
+        }
+
+        @Override public void remove(N value) {
+            if (value != null) values.remove(value.doubleValue());
+        }
+
+        @Override public T getAggregate() {
+            if (values.isEmpty()) return null;
+            Double result = max ? values.lastEntry().getElement() : values.firstEntry().getElement();
+            return TypeCoercions.castPrimitive(result, type);
+        }
+    }
+}
@@ -81,7 +81,12 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
             S vo = values.get(producer);
             if (vo==null) {
                 S initialVal = ((EntityLocal)producer).getAttribute(source);
-                values.put(producer, initialVal != null ? initialVal : defaultValue);
+                S newVal = initialVal != null ? initialVal : defaultValue;
+                // may already be present, with a null value
+                boolean present = values.containsKey(producer);
+                values.put(producer, newVal);
+                if (present) onValueRemoved(producer, null);
+                onValueAdded(producer, newVal);
                 //we might skip in onEvent in the short window while !values.containsKey(producer)
                 //but that's okay because the put which would have been done there is done here now
             } else {
@@ -97,7 +102,13 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
     public S removeProducer(Entity producer) {
         if (LOG.isDebugEnabled()) LOG.debug("{} unlinked ({}, {}) from {}", new Object[] {this, producer, source, target});
         unsubscribe(producer);
-        S removed = values.remove(producer);
+        S removed = null;
+        synchronized (values) {
+            if (values.containsKey(producer)) {
+                removed = values.remove(producer);
+                onValueRemoved(producer, removed);
+            }
+        }
         onUpdated();
         return removed;
     }
@@ -107,7 +118,9 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
         Entity e = event.getSource();
         synchronized (values) {
             if (values.containsKey(e)) {
-                values.put(e, event.getValue());
+                S oldVal = values.put(e, event.getValue());
+                onValueRemoved(e, oldVal);
+                onValueAdded(e, event.getValue());
             } else {
                 if (LOG.isDebugEnabled()) LOG.debug("{} received event for unknown producer ({}); presumably that producer has recently been removed", this, e);
             }
@@ -123,6 +136,25 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
     protected void onUpdated() {
         // no-op
     }
+
+    /**
+     * Called, while synchronized on values, when a producer's value is put in values (including when it replaces
+     * an old value, after {@link #onValueRemoved(Entity, Object)} of that); the value may be null.
+     * For incremental aggregation, applying just the change rather than recomputing from all values. Defaults to no-op.
+     */
+    protected void onValueAdded(Entity producer, S value) {
+        // no-op
+    }
+
+    /**
+     * Called, while synchronized on values, when a producer's value is removed from values (including when it is
+     * replaced by a new value); the value may be null. Defaults to no-op.
+     * 
+     * @see #onValueAdded(Entity, Object)
+     */
+    protected void onValueRemoved(Entity producer, S value) {
+        // no-op
+    }
     
     @Override
     public void setEntity(EntityLocal entity) {
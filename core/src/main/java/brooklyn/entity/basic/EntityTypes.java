@@ -1,7 +1,7 @@
 package brooklyn.entity.basic;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
@@ -41,7 +41,8 @@ public class EntityTypes {
     }
     
     @SuppressWarnings("rawtypes")
-    private static final Map<Class,ImmutableEntityType> cache = new LinkedHashMap<Class,ImmutableEntityType>();
+    // concurrent, as read without holding the lock (e.g. by entity constructors, and mementos being loaded in parallel)
+    private static final Map<Class,ImmutableEntityType> cache = new ConcurrentHashMap<Class,ImmutableEntityType>();
     
     public static EntityDynamicType getDefinedAutonomicType(Class<? extends Entity> entityClass) {
         ImmutableEntityType t = cache.get(entityClass);
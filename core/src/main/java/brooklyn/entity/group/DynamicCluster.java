@@ -8,7 +8,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +41,10 @@ import brooklyn.policy.Policy;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.MutableList;
 import brooklyn.util.MutableMap;
+import brooklyn.util.Time;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.task.BasicTask;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
@@ -67,9 +72,23 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
 
     public static final AttributeSensor<Group> QUARANTINE_GROUP = new BasicAttributeSensor<Group>(Group.class, "dynamiccluster.quarantineGroup", "Group of quarantined entities that failed to start");
     
+    @SetFromFlag("maxConcurrentStarts")
+    public static final ConfigKey<Integer> MAX_CONCURRENT_STARTS = new BasicConfigKey<Integer>(
+            Integer.class, "dynamiccluster.maxConcurrentStarts", "Maximum number of new members to be starting at once when growing the cluster (unlimited if not set)", null);
+
+    @SetFromFlag("minStartInterval")
+    public static final ConfigKey<Long> MIN_START_INTERVAL = new BasicConfigKey<Long>(
+            Long.class, "dynamiccluster.minStartInterval", "Minimum time (in milliseconds) between creating successive new members when growing the cluster, to limit the rate of provisioning", 0L);
+
+    public static final AttributeSensor<Integer> MEMBERS_PENDING_START = new BasicAttributeSensor<Integer>(Integer.class, "dynamiccluster.membersPendingStart", "Number of new members waiting to be created and started, while growing the cluster");
+
+    public static final AttributeSensor<Integer> MEMBERS_STARTING = new BasicAttributeSensor<Integer>(Integer.class, "dynamiccluster.membersStarting", "Number of new members being started, which will join the cluster once started");
+
     // Mutex for synchronizing during re-size operations
     private final Object mutex = new Object[0];
     
+    private final AtomicInteger membersStarting = new AtomicInteger();
+    
     @SetFromFlag("factory")
     public static final ConfigKey<EntityFactory> FACTORY = new BasicConfigKey<EntityFactory>(
             EntityFactory.class, "dynamiccluster.factory", "factory for creating new cluster members", null);
@@ -99,6 +118,10 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
      * of properties from this cluster as an argument. This property is mandatory.
      * <li>initialSize - an {@link Integer} that is the number of nodes to start when the cluster's {@link #start(List)} method is
      * called. This property is optional, with a default of 1.
+     * <li>maxConcurrentStarts - an {@link Integer} that is the maximum number of new nodes to be starting at once when
+     * growing the cluster. This property is optional, with no limit by default.
+     * <li>minStartInterval - a {@link Long} that is the minimum number of milliseconds between creating successive new nodes
+     * when growing the cluster, to limit the rate of provisioning. This property is optional, with a default of 0.
      * </ul>
      *
      * @param properties the properties of the cluster (these may be visible to created children by inheritance,
@@ -108,6 +131,8 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
     public DynamicCluster(Map<?,?> properties, Entity owner) {
         super(properties, owner);
         setAttribute(SERVICE_UP, false);
+        setAttribute(MEMBERS_PENDING_START, 0);
+        setAttribute(MEMBERS_STARTING, 0);
     }
     public DynamicCluster(Entity owner) {
         this(Maps.newLinkedHashMap(), owner);
@@ -236,17 +261,51 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
 
     /**
      * Increases the cluster size by the given number.
+     * <p>
+     * This is pipelined: each new member is started as soon as it is created (subject to {@link #MAX_CONCURRENT_STARTS}
+     * and {@link #MIN_START_INTERVAL}), and joins the cluster as soon as it has started, rather than when the slowest
+     * has started. Progress is published on {@link #MEMBERS_PENDING_START} and {@link #MEMBERS_STARTING}.
      */
     private Collection<Entity> grow(int delta) {
-        Collection<Entity> addedEntities = Lists.newArrayList();
-        for (int i = 0; i < delta; i++) {
-            addedEntities.add(addNode());
-        }
+        Integer maxConcurrentStarts = getConfig(MAX_CONCURRENT_STARTS);
+        Long minStartInterval = getConfig(MIN_START_INTERVAL);
+        Semaphore permits = (maxConcurrentStarts != null && maxConcurrentStarts > 0) ? new Semaphore(maxConcurrentStarts) : null;
+        Location location = getLocation();
+        
         Map<Entity, Task<?>> tasks = Maps.newLinkedHashMap();
-        for (Entity entity: addedEntities) {
-            Map<String,?> args = ImmutableMap.of("locations", ImmutableList.of(getLocation()));
-            tasks.put(entity, entity.invoke(Startable.START, args));
+        RuntimeException creationError = null;
+        long lastCreationTime = -1;
+        try {
+            for (int i = 0; i < delta; i++) {
+                setAttribute(MEMBERS_PENDING_START, delta - i);
+                if (permits != null) {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                }
+                if (minStartInterval != null && minStartInterval > 0 && lastCreationTime >= 0) {
+                    long wait = lastCreationTime + minStartInterval - System.currentTimeMillis();
+                    if (wait > 0) Time.sleep(wait);
+                }
+                lastCreationTime = System.currentTimeMillis();
+                
+                Entity entity;
+                try {
+                    entity = createNode();
+                } catch (RuntimeException e) {
+                    // start no more, but let those already created finish starting (and join) before propagating
+                    if (permits != null) permits.release();
+                    creationError = e;
+                    break;
+                }
+                tasks.put(entity, startNode(entity, location, permits));
+            }
+        } finally {
+            setAttribute(MEMBERS_PENDING_START, 0);
         }
+        
         Map<Entity, Throwable> errors = waitForTasksOnEntityStart(tasks);
         
         if (!errors.isEmpty()) {
@@ -256,8 +315,29 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
                 cleanupFailedNodes(errors.keySet());
             }
         }
+        if (creationError != null) throw creationError;
         
-        return MutableList.<Entity>builder().addAll(addedEntities).removeAll(errors.keySet()).build();
+        return MutableList.<Entity>builder().addAll(tasks.keySet()).removeAll(errors.keySet()).build();
+    }
+    
+    /**
+     * Starts the given new node in the background, adding it as a member once it has started;
+     * releases a permit (if given) once it has started or failed.
+     */
+    private Task<?> startNode(final Entity entity, Location location, final Semaphore permits) {
+        final Map<String,?> args = ImmutableMap.of("locations", ImmutableList.of(location));
+        setAttribute(MEMBERS_STARTING, membersStarting.incrementAndGet());
+        return getExecutionContext().submit(MutableMap.of("displayName", "starting "+entity, BasicTask.BLOCKING_FLAG, true), new Callable<Void>() {
+            public Void call() throws Exception {
+                try {
+                    entity.invoke(Startable.START, args).get();
+                    addMember(entity);
+                    return null;
+                } finally {
+                    if (permits != null) permits.release();
+                    setAttribute(MEMBERS_STARTING, membersStarting.decrementAndGet());
+                }
+            }});
     }
     
     private void shrink(int delta) {
@@ -342,6 +422,15 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
     protected Map getCustomChildFlags() { return Maps.newLinkedHashMap(); }
     
     protected Entity addNode() {
+        Entity entity = createNode();
+        addMember(entity);
+        return entity;
+    }
+
+    /**
+     * Creates and manages a new node, without adding it as a member.
+     */
+    protected Entity createNode() {
         Map creation = Maps.newLinkedHashMap();
         creation.putAll(getCustomChildFlags());
         if (logger.isDebugEnabled()) logger.debug("Adding a node to {}({}) with properties {}", new Object[] {getDisplayName(), getId(), creation});
@@ -355,7 +444,6 @@ public class DynamicCluster extends AbstractGroup implements Cluster {
             throw new IllegalStateException("EntityFactory factory routine did not return an entity, in "+this+" ("+entity+")");
         
         Entities.manage(entity);
-        addMember(entity);
         return entity;
     }
 
@@ -1,7 +1,15 @@
 package brooklyn.entity.rebind;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -18,50 +26,89 @@ import brooklyn.util.task.ScheduledTask;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
-import com.google.common.collect.Sets;
 
 /**
- * A "simple" implementation that periodically persists all entities/locations/policies that have changed
- * since the last periodic persistence.
- * 
- * TODO A better implementation would look at a per-entity basis. When the entity was modified, then  
- * schedule a write for that entity in X milliseconds time (if not already scheduled). That would
- * prevent hammering the persister when a bunch of entity attributes change (e.g. when the entity
- * has just polled over JMX/http/etc). Such a scheduled-write approach would be similar to the 
- * Nagle buffering algorithm in TCP (see tcp_nodelay).
- * 
- * @author aled
+ * Persists entities/locations/policies that have changed, on a per-item basis: when an item is first
+ * modified it is marked dirty and its write is scheduled for {@code persistDelayMillis} later. Further
+ * changes to that item before it is written are coalesced into the same write. This prevents hammering
+ * the persister when a bunch of entity attributes change (e.g. when the entity has just polled over
+ * JMX/http/etc), in the same way as the Nagle buffering algorithm in TCP (see tcp_nodelay).
+ * <p>
+ * A periodic task (every {@code periodMillis}) writes those items whose delay has elapsed, oldest first,
+ * as a single {@link BrooklynMementoPersister#delta(BrooklynMementoPersister.Delta)}. If
+ * {@code maxWritesPerSecond} is set then at most that many mementos (averaged over each period) are
+ * generated and written; any remainder is carried over to the next period.
+ * <p>
+ * The change notifications take no lock: marking an item dirty is a {@link ConcurrentMap#putIfAbsent(Object, Object)},
+ * so is cheap when (as is usual) the item is already dirty.
  *
+ * @author aled
  */
 public class PeriodicDeltaChangeListener implements ChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PeriodicDeltaChangeListener.class);
 
-    private static class DeltaCollector {
-        Set<Location> locations = Sets.newLinkedHashSet();
-        Set<Entity> entities = Sets.newLinkedHashSet();
-        Set<Policy> policies = Sets.newLinkedHashSet();
-        Set<String> removedLocationIds = Sets.newLinkedHashSet();
-        Set<String> removedEntityIds = Sets.newLinkedHashSet();
-        Set<String> removedPolicyIds = Sets.newLinkedHashSet();
-        
-        public boolean isEmpty() {
-            return locations.isEmpty() && entities.isEmpty() && policies.isEmpty() && 
-                    removedEntityIds.isEmpty() && removedLocationIds.isEmpty() && removedPolicyIds.isEmpty();
+    private enum ItemType { LOCATION, ENTITY, POLICY }
+
+    /** Records when an item was first modified since it was last written. */
+    private static class DirtyItem {
+        final ItemType type;
+        final String id;
+        final Object item;
+        final long dirtiedAtNanos;
+
+        DirtyItem(ItemType type, String id, Object item) {
+            this.type = type;
+            this.id = id;
+            this.item = item;
+            this.dirtiedAtNanos = System.nanoTime();
         }
     }
-    
+
     private final BrooklynMementoPersister persister;
 
+    private final long persistDelayNanos;
+
+    private final int maxWritesPerPeriod;
+
     private final AtomicLong writeCount = new AtomicLong();
-    
-    private DeltaCollector deltaCollector = new DeltaCollector();
+
+    private final AtomicLong mementosWrittenCount = new AtomicLong();
+
+    private final AtomicLong coalescedChangeCount = new AtomicLong();
+
+    private final ConcurrentMap<String, DirtyItem> dirtyLocations = new ConcurrentHashMap<String, DirtyItem>();
+    private final ConcurrentMap<String, DirtyItem> dirtyEntities = new ConcurrentHashMap<String, DirtyItem>();
+    private final ConcurrentMap<String, DirtyItem> dirtyPolicies = new ConcurrentHashMap<String, DirtyItem>();
+
+    /** dirty items, in the order they were first modified; may contain items since unmanaged, which are skipped */
+    private final Queue<DirtyItem> dirtyQueue = new ConcurrentLinkedQueue<DirtyItem>();
+
+    private final Set<String> removedLocationIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> removedEntityIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> removedPolicyIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private volatile boolean running = true;
 
+    /**
+     * Writes everything that has changed each period.
+     */
     public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis) {
+        this(executionManager, persister, periodMillis, 0, 0);
+    }
+
+    /**
+     * @param periodMillis       how often to check for dirty items to write
+     * @param persistDelayMillis how long after an item is first modified to write it (0 for the next period)
+     * @param maxWritesPerSecond maximum rate at which mementos are written (0 for no limit)
+     */
+    public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis,
+            long persistDelayMillis, int maxWritesPerSecond) {
         this.persister = persister;
-        
+        this.persistDelayNanos = TimeUnit.MILLISECONDS.toNanos(persistDelayMillis);
+        this.maxWritesPerPeriod = (maxWritesPerSecond <= 0) ? Integer.MAX_VALUE :
+                (int) Math.max(1, Math.min(Integer.MAX_VALUE, (long)maxWritesPerSecond * periodMillis / 1000));
+
         Callable<Task> taskFactory = new Callable<Task>() {
             @Override public Task<Void> call() {
                 return new BasicTask<Void>(new Callable<Void>() {
@@ -79,12 +126,15 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         ScheduledTask scheduledTask = new ScheduledTask(taskFactory).period(periodMillis);
         executionManager.submit(scheduledTask);
     }
-    
+
     void stop() {
         running = false;
     }
-    
+
     /**
+     * Waits until everything changed before this call has been passed to the persister
+     * (i.e. including items whose persist-delay has not yet elapsed).
+     *
      * This method must only be used for testing. If required in production, then revisit implementation!
      */
     @VisibleForTesting
@@ -93,75 +143,138 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         while (true) {
             if (!isActive()) {
                 return; // no pending activity;
-            } else if (writeCount.get() > mods) {
+            } else if (writeCount.get() > mods && !hasPending()) {
                 return;
             }
             Thread.sleep(1);
         }
     }
 
+    /** number of entity/location/policy mementos passed to the persister */
+    public long getMementosWrittenCount() {
+        return mementosWrittenCount.get();
+    }
+
+    /** number of changes that did not cause an additional write, because the item was already awaiting persistence */
+    public long getCoalescedChangeCount() {
+        return coalescedChangeCount.get();
+    }
+
     private boolean isActive() {
         return running && persister != null;
     }
-    
+
+    private boolean hasPending() {
+        return !dirtyQueue.isEmpty() || !removedLocationIds.isEmpty() || !removedEntityIds.isEmpty() || !removedPolicyIds.isEmpty();
+    }
+
+    private ConcurrentMap<String, DirtyItem> dirtyMap(ItemType type) {
+        switch (type) {
+        case LOCATION: return dirtyLocations;
+        case ENTITY: return dirtyEntities;
+        case POLICY: return dirtyPolicies;
+        default: throw new IllegalStateException("Unexpected type "+type);
+        }
+    }
+
+    /** returns true if newly dirty, or false if the item was already awaiting persistence */
+    private boolean markDirty(ItemType type, String id, Object item) {
+        ConcurrentMap<String, DirtyItem> map = dirtyMap(type);
+        if (map.containsKey(id)) {
+            coalescedChangeCount.incrementAndGet();
+            return false;
+        }
+        DirtyItem dirty = new DirtyItem(type, id, item);
+        if (map.putIfAbsent(id, dirty) != null) {
+            coalescedChangeCount.incrementAndGet();
+            return false;
+        }
+        dirtyQueue.add(dirty);
+        return true;
+    }
+
+    private static void drainTo(Set<String> ids, Collection<String> target) {
+        for (Iterator<String> iter = ids.iterator(); iter.hasNext();) {
+            target.add(iter.next());
+            iter.remove();
+        }
+    }
+
+    /*
+     * Only ever called from the scheduled task, so there is only a single consumer of dirtyQueue.
+     */
     private void persistNow() {
         if (isActive()) {
-            // Atomically switch the delta, so subsequent modifications will be done in the
-            // next scheduled persist
-            DeltaCollector prevDeltaCollector;
-            synchronized (this) {
-                prevDeltaCollector = deltaCollector;
-                deltaCollector = new DeltaCollector();
+            PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
+            long now = System.nanoTime();
+            int written = 0;
+
+            // Generate mementos for the oldest changes whose delay has elapsed. An item is removed from
+            // its dirty map before its memento is generated, so any subsequent change marks it dirty again.
+            while (written < maxWritesPerPeriod) {
+                DirtyItem next = dirtyQueue.peek();
+                if (next == null || now - next.dirtiedAtNanos < persistDelayNanos) break;
+                dirtyQueue.poll();
+                if (!dirtyMap(next.type).remove(next.id, next)) continue; // since unmanaged
+
+                switch (next.type) {
+                case LOCATION:
+                    persisterDelta.locations.add(((Location)next.item).getRebindSupport().getMemento());
+                    break;
+                case ENTITY:
+                    persisterDelta.entities.add(((Entity)next.item).getRebindSupport().getMemento());
+                    break;
+                case POLICY:
+                    persisterDelta.policies.add(((Policy)next.item).getRebindSupport().getMemento());
+                    break;
+                }
+                written++;
             }
-            
-            // Generate mementos for everything that has changed in this time period
-            if (prevDeltaCollector.isEmpty()) {
+            drainTo(removedLocationIds, persisterDelta.removedLocationIds);
+            drainTo(removedEntityIds, persisterDelta.removedEntityIds);
+            drainTo(removedPolicyIds, persisterDelta.removedPolicyIds);
+
+            if (written == 0 && persisterDelta.removedLocationIds.isEmpty() && persisterDelta.removedEntityIds.isEmpty()
+                    && persisterDelta.removedPolicyIds.isEmpty()) {
                 if (LOG.isTraceEnabled()) LOG.trace("No changes to persist since last delta");
             } else {
-                PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
-                for (Location location : prevDeltaCollector.locations) {
-                    persisterDelta.locations.add(location.getRebindSupport().getMemento());
+                if (written == maxWritesPerPeriod && LOG.isDebugEnabled()) {
+                    LOG.debug("Persistence write-rate limit reached ({} per period); deferring remaining changes", maxWritesPerPeriod);
                 }
-                for (Entity entity : prevDeltaCollector.entities) {
-                    persisterDelta.entities.add(entity.getRebindSupport().getMemento());
-                }
-                for (Policy policy : prevDeltaCollector.policies) {
-                    persisterDelta.policies.add(policy.getRebindSupport().getMemento());
-                }
-                persisterDelta.removedLocationIds = prevDeltaCollector.removedLocationIds;
-                persisterDelta.removedEntityIds = prevDeltaCollector.removedEntityIds;
-                persisterDelta.removedPolicyIds = prevDeltaCollector.removedPolicyIds;
-                
                 // Tell the persister to persist it
                 persister.delta(persisterDelta);
+                mementosWrittenCount.addAndGet(written);
             }
-            
+
             writeCount.incrementAndGet();
         }
     }
-    
+
     @Override
-    public synchronized void onManaged(Entity entity) {
+    public void onManaged(Entity entity) {
         if (isActive()) {
             onChanged(entity);
         }
     }
 
     @Override
-    public synchronized void onManaged(Location location) {
+    public void onManaged(Location location) {
         if (isActive()) {
             onChanged(location);
         }
     }
-    
+
     @Override
-    public synchronized void onChanged(Entity entity) {
+    public void onChanged(Entity entity) {
         if (isActive()) {
-            deltaCollector.entities.add(entity);
-
-            // FIXME How to let the policy/location tell us about changes? Don't do this every time!
-            for (Location location : entity.getLocations()) {
-                deltaCollector.locations.addAll(TreeUtils.findLocationsInHierarchy(location));
+            if (markDirty(ItemType.ENTITY, entity.getId(), entity)) {
+                // FIXME How to let the policy/location tell us about changes? Don't do this every time!
+                // (only done when the entity was not already dirty, so at most once per write)
+                for (Location location : entity.getLocations()) {
+                    for (Location locationInHierarchy : TreeUtils.findLocationsInHierarchy(location)) {
+                        markDirty(ItemType.LOCATION, locationInHierarchy.getId(), locationInHierarchy);
+                    }
+                }
             }
 
             // FIXME Not including policies, because lots of places regiser anonymous inner class policies
@@ -169,38 +282,38 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             // Also, the entity constructor often re-creates the policy.
             // Also see MementosGenerator.newEntityMementoBuilder()
 //            for (Policy policy : entity.getPolicies()) {
-//                delta.policies.add(policy);
+//                markDirty(ItemType.POLICY, policy.getId(), policy);
 //            }
         }
     }
-    
+
     @Override
-    public synchronized void onUnmanaged(Entity entity) {
+    public void onUnmanaged(Entity entity) {
         if (isActive()) {
-            deltaCollector.removedEntityIds.add(entity.getId());
-            deltaCollector.entities.remove(entity);
+            removedEntityIds.add(entity.getId());
+            dirtyEntities.remove(entity.getId());
         }
     }
 
     @Override
-    public synchronized void onUnmanaged(Location location) {
+    public void onUnmanaged(Location location) {
         if (isActive()) {
-            deltaCollector.removedLocationIds.add(location.getId());
-            deltaCollector.locations.remove(location);
+            removedLocationIds.add(location.getId());
+            dirtyLocations.remove(location.getId());
         }
     }
 
     @Override
-    public synchronized void onChanged(Location location) {
+    public void onChanged(Location location) {
         if (isActive()) {
-            deltaCollector.locations.add(location);
+            markDirty(ItemType.LOCATION, location.getId(), location);
         }
     }
-    
+
     @Override
-    public synchronized void onChanged(Policy policy) {
+    public void onChanged(Policy policy) {
         if (isActive()) {
-            deltaCollector.policies.add(policy);
+            markDirty(ItemType.POLICY, policy.getId(), policy);
         }
     }
 }
@@ -1,5 +1,6 @@
 package brooklyn.entity.rebind;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.lang.reflect.Constructor;
@@ -7,6 +8,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,11 +30,14 @@ import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.PolicyMemento;
 import brooklyn.policy.Policy;
 import brooklyn.util.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.javalang.Reflections;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class RebindManagerImpl implements RebindManager {
 
@@ -39,6 +48,12 @@ public class RebindManagerImpl implements RebindManager {
 
     private volatile long periodicPersistPeriod = 1000;
     
+    private volatile long persistDelay = 0;
+    
+    private volatile int maxPersistWritesPerSecond = 0;
+    
+    private volatile int rebindParallelism = Runtime.getRuntime().availableProcessors();
+    
     private volatile boolean running = true;
     
     private final ManagementContext managementContext;
@@ -60,6 +75,35 @@ public class RebindManagerImpl implements RebindManager {
         this.periodicPersistPeriod = periodMillis;
     }
 
+    /**
+     * How long to wait after an entity/location/policy is first changed before persisting it, so that
+     * a burst of changes results in a single write; 0 means persist at the next period.
+     * 
+     * Must be called before setPerister()
+     */
+    public void setPersistDelay(long delayMillis) {
+        this.persistDelay = delayMillis;
+    }
+
+    /**
+     * Caps the number of entity/location/policy mementos written per second; 0 means no limit.
+     * 
+     * Must be called before setPerister()
+     */
+    public void setMaxPersistWritesPerSecond(int maxWritesPerSecond) {
+        this.maxPersistWritesPerSecond = maxWritesPerSecond;
+    }
+
+    /**
+     * The number of threads used to instantiate and reconstruct entities when rebinding; defaults to the
+     * number of available processors. Entities that reference one another (as parent, child or member) are
+     * always handled by the same thread. Set to 1 to rebind everything on the calling thread.
+     */
+    public void setRebindParallelism(int val) {
+        checkArgument(val > 0, "rebindParallelism must be positive; was %s", val);
+        this.rebindParallelism = val;
+    }
+
     @Override
     public void setPersister(BrooklynMementoPersister val) {
         if (persister != null && persister != val) {
@@ -68,7 +112,8 @@ public class RebindManagerImpl implements RebindManager {
         this.persister = checkNotNull(val, "persister");
         
         if (running) {
-            this.realChangeListener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, periodicPersistPeriod);
+            this.realChangeListener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister,
+                    periodicPersistPeriod, persistDelay, maxPersistWritesPerSecond);
             this.changeListener = new SafeChangeListener(realChangeListener);
         }
     }
@@ -108,7 +153,7 @@ public class RebindManagerImpl implements RebindManager {
         checkNotNull(memento, "memento");
         checkNotNull(classLoader, "classLoader");
         
-        Reflections reflections = new Reflections(classLoader);
+        final Reflections reflections = new Reflections(classLoader);
         Map<String,Entity> entities = Maps.newLinkedHashMap();
         Map<String,Location> locations = Maps.newLinkedHashMap();
         Map<String,Policy> policies = Maps.newLinkedHashMap();
@@ -125,15 +170,29 @@ public class RebindManagerImpl implements RebindManager {
             rebindContext.registerLocation(locMemento.getId(), (Location) location);
         }
         
-        // Instantiate entities
-        LOG.info("RebindManager instantiating entities: {}", memento.getEntityIds());
-        for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
-            if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating entity {}", entityMemento);
-            
-            Entity entity = newEntity(entityMemento, reflections);
-            entities.put(entityMemento.getId(), entity);
-            rebindContext.registerEntity(entityMemento.getId(), (Entity) entity);
+        // Instantiate entities, each group of related entities (typically an application) on its own thread
+        final List<List<EntityMemento>> entityGroups = partitionEntities(memento);
+        LOG.info("RebindManager instantiating entities ({} independent groups): {}", entityGroups.size(), memento.getEntityIds());
+        Stopwatch stopwatch = new Stopwatch().start();
+        List<Callable<Map<String,Entity>>> instantiators = Lists.newArrayList();
+        for (final List<EntityMemento> entityGroup : entityGroups) {
+            instantiators.add(new Callable<Map<String,Entity>>() {
+                @Override public Map<String,Entity> call() {
+                    Map<String,Entity> result = Maps.newLinkedHashMap();
+                    for (EntityMemento entityMemento : entityGroup) {
+                        if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating entity {}", entityMemento);
+                        result.put(entityMemento.getId(), newEntity(entityMemento, reflections));
+                    }
+                    return result;
+                }});
+        }
+        for (Map<String,Entity> instantiated : runInParallel(instantiators)) {
+            for (Map.Entry<String,Entity> entry : instantiated.entrySet()) {
+                entities.put(entry.getKey(), entry.getValue());
+                rebindContext.registerEntity(entry.getKey(), entry.getValue());
+            }
         }
+        LOG.info("RebindManager instantiated {} entities in {}ms", entities.size(), stopwatch.elapsedMillis());
         
         // Instantiate policies
         LOG.info("RebindManager instantiating policies: {}", memento.getPolicyIds());
@@ -163,14 +222,24 @@ public class RebindManagerImpl implements RebindManager {
             policy.getRebindSupport().reconstruct(rebindContext, policyMemento);
         }
 
-        // Reconstruct entities
+        // Reconstruct entities; each group only wires up entities within that group, so groups are independent
         LOG.info("RebindManager reconstructing entities");
-        for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
-            Entity entity = rebindContext.getEntity(entityMemento.getId());
-            if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
-
-            entity.getRebindSupport().reconstruct(rebindContext, entityMemento);
+        stopwatch = new Stopwatch().start();
+        List<Callable<Void>> reconstructors = Lists.newArrayList();
+        for (final List<EntityMemento> entityGroup : entityGroups) {
+            reconstructors.add(new Callable<Void>() {
+                @Override public Void call() {
+                    for (EntityMemento entityMemento : entityGroup) {
+                        Entity entity = rebindContext.getEntity(entityMemento.getId());
+                        if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
+
+                        entity.getRebindSupport().reconstruct(rebindContext, entityMemento);
+                    }
+                    return null;
+                }});
         }
+        runInParallel(reconstructors);
+        LOG.info("RebindManager reconstructed {} entities in {}ms", entities.size(), stopwatch.elapsedMillis());
         
         // Manage the top-level apps (causing everything under them to become managed)
         LOG.info("RebindManager managing entities");
@@ -188,6 +257,91 @@ public class RebindManagerImpl implements RebindManager {
         return apps;
     }
     
+    /**
+     * Groups the entity mementos so that entities which refer to one another as parent, child or group member
+     * are in the same group, and so are reconstructed on the same thread. This is typically one group per
+     * application. The memento's order is preserved within each group.
+     */
+    @VisibleForTesting
+    static List<List<EntityMemento>> partitionEntities(BrooklynMemento memento) {
+        // union-find over entity ids: maps an id to another id in the same group, with roots absent
+        Map<String,String> unionFind = Maps.newHashMap();
+        for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
+            String id = entityMemento.getId();
+            if (entityMemento.getParent() != null) union(unionFind, id, entityMemento.getParent());
+            for (String childId : entityMemento.getChildren()) {
+                union(unionFind, id, childId);
+            }
+            for (String memberId : entityMemento.getMembers()) {
+                union(unionFind, id, memberId);
+            }
+        }
+        
+        Map<String, List<EntityMemento>> groups = Maps.newLinkedHashMap();
+        for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
+            String root = findRoot(unionFind, entityMemento.getId());
+            List<EntityMemento> group = groups.get(root);
+            if (group == null) {
+                group = Lists.newArrayList();
+                groups.put(root, group);
+            }
+            group.add(entityMemento);
+        }
+        return Lists.newArrayList(groups.values());
+    }
+    
+    private static void union(Map<String,String> unionFind, String id1, String id2) {
+        String root1 = findRoot(unionFind, id1);
+        String root2 = findRoot(unionFind, id2);
+        if (!root1.equals(root2)) unionFind.put(root1, root2);
+    }
+    
+    private static String findRoot(Map<String,String> unionFind, String id) {
+        String root = id;
+        String next;
+        while ((next = unionFind.get(root)) != null) {
+            root = next;
+        }
+        // path compression, so subsequent lookups are quick
+        while (!id.equals(root)) {
+            next = unionFind.get(id);
+            unionFind.put(id, root);
+            id = next;
+        }
+        return root;
+    }
+    
+    /**
+     * Runs the jobs concurrently (see {@link #setRebindParallelism(int)}), returning their results in order;
+     * rethrows the first failure.
+     */
+    private <T> List<T> runInParallel(List<Callable<T>> jobs) {
+        List<T> result = Lists.newArrayList();
+        int numThreads = Math.min(rebindParallelism, jobs.size());
+        try {
+            if (numThreads <= 1) {
+                for (Callable<T> job : jobs) {
+                    result.add(job.call());
+                }
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(numThreads, 
+                        new ThreadFactoryBuilder().setNameFormat("brooklyn-rebind-%d").setDaemon(true).build());
+                try {
+                    for (Future<T> future : executor.invokeAll(jobs)) {
+                        result.add(future.get());
+                    }
+                } finally {
+                    executor.shutdownNow();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        return result;
+    }
+    
     private Entity newEntity(EntityMemento memento, Reflections reflections) {
         String entityId = memento.getId();
         String entityType = checkNotNull(memento.getType(), "entityType of "+entityId);
@@ -1,6 +1,7 @@
 package brooklyn.entity.rebind.dto;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -65,6 +66,36 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
             members.addAll(other.getMembers());
             return this;
         }
+        public Builder isTopLevelApp(boolean val) {
+            isTopLevelApp = val; return this;
+        }
+        public Builder config(Map<? extends ConfigKey, ?> vals) {
+            config.putAll(vals); return this;
+        }
+        public Builder attributes(Map<? extends AttributeSensor, ?> vals) {
+            attributes.putAll(vals); return this;
+        }
+        public Builder entityReferenceConfigs(Collection<? extends ConfigKey> vals) {
+            entityReferenceConfigs.addAll(vals); return this;
+        }
+        public Builder entityReferenceAttributes(Collection<? extends AttributeSensor> vals) {
+            entityReferenceAttributes.addAll(vals); return this;
+        }
+        public Builder locationReferenceConfigs(Collection<? extends ConfigKey> vals) {
+            locationReferenceConfigs.addAll(vals); return this;
+        }
+        public Builder locationReferenceAttributes(Collection<? extends AttributeSensor> vals) {
+            locationReferenceAttributes.addAll(vals); return this;
+        }
+        public Builder locations(Collection<String> vals) {
+            locations.addAll(vals); return this;
+        }
+        public Builder policies(Collection<String> vals) {
+            policies.addAll(vals); return this;
+        }
+        public Builder members(Collection<String> vals) {
+            members.addAll(vals); return this;
+        }
         public EntityMemento build() {
             invalidate();
             return new BasicEntityMemento(this);
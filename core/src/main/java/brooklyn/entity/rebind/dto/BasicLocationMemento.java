@@ -1,6 +1,7 @@
 package brooklyn.entity.rebind.dto;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +38,15 @@ public class BasicLocationMemento extends AbstractTreeNodeMemento implements Loc
             fields.putAll(other.getCustomFields());
             return self();
         }
+        public Builder locationProperties(Map<String,?> vals) {
+            locationProperties.putAll(vals); return self();
+        }
+        public Builder flags(Map<String,?> vals) {
+            flags.putAll(vals); return self();
+        }
+        public Builder locationReferenceFlags(Collection<String> vals) {
+            locationReferenceFlags.addAll(vals); return self();
+        }
         public LocationMemento build() {
             return new BasicLocationMemento(this);
         }
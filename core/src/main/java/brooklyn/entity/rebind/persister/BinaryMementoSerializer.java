@@ -0,0 +1,706 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityTypes;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BasicLocationMemento;
+import brooklyn.entity.rebind.dto.BasicPolicyMemento;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.Memento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.util.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A compact binary alternative to {@link XmlMementoSerializer}, which writes straight to (and reads straight
+ * from) a stream.
+ * <p>
+ * Each memento starts with the magic bytes {@code BMEM} and a format version, so that readers can tell it
+ * apart from xml (see {@link #isBinary(InputStream)}) and reject versions they do not understand.
+ * Entity, location and policy mementos are written field by field. Strings, config keys and attribute sensors
+ * are each written in full the first time they occur in a memento and thereafter as an index into a table;
+ * a key or sensor that is statically defined on the entity's type is written as just its name.
+ * <p>
+ * Values of common types (strings, primitive wrappers, enums, and plain lists, sets and maps of those) are
+ * written in binary; any other value is embedded as xml, so anything {@link XmlMementoSerializer} can
+ * persist can also be persisted here. The {@link MementoSerializer} string methods use ISO-8859-1, which maps
+ * each byte to one char.
+ *
+ * @see MementoFormatConverter
+ */
+public class BinaryMementoSerializer<T> implements StreamingMementoSerializer<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryMementoSerializer.class);
+
+    static final byte[] MAGIC = new byte[] {'B', 'M', 'E', 'M'};
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int KIND_ENTITY = 1;
+    private static final int KIND_LOCATION = 2;
+    private static final int KIND_POLICY = 3;
+    private static final int KIND_OTHER = 4;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_INTEGER = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_ENUM = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_SET = 10;
+    private static final int TAG_MAP = 11;
+    private static final int TAG_MUTABLE_MAP = 12;
+    private static final int TAG_XML = 13;
+
+    private static final int KEY_DYNAMIC = 0;
+    private static final int KEY_STATIC = 1;
+
+    /** strings longer than this (e.g. embedded xml) are not worth adding to the string table */
+    private static final int MAX_TABLE_STRING_LENGTH = 256;
+
+    private final ClassLoader classLoader;
+    private final XmlMementoSerializer<Object> xmlSerializer;
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        this.classLoader = checkNotNull(classLoader, "classLoader");
+        this.xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+    }
+
+    /**
+     * Whether the stream starts with a binary memento, leaving the stream positioned where it was.
+     * The stream must support {@link InputStream#mark(int)}.
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        if (!in.markSupported()) throw new IllegalArgumentException("Stream does not support mark: "+in);
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != b) return false;
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    @Override
+    public String toString(T memento) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            serialize(memento, out);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        return new String(out.toByteArray(), Charsets.ISO_8859_1);
+    }
+
+    @Override
+    public T fromString(String string) {
+        try {
+            return deserialize(new ByteArrayInputStream(string.getBytes(Charsets.ISO_8859_1)));
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @Override
+    public void serialize(T memento, OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.write(MAGIC);
+        dataOut.writeByte(FORMAT_VERSION);
+        new Writer(dataOut).writeMemento(memento);
+        dataOut.flush();
+    }
+
+    /**
+     * Note that this may read beyond the end of the memento if the given stream is not buffered.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(InputStream in) throws IOException {
+        DataInputStream dataIn = new DataInputStream((in instanceof BufferedInputStream) ? in : new BufferedInputStream(in));
+        byte[] magic = new byte[MAGIC.length];
+        dataIn.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) throw new IOException("Not a binary memento (bad header)");
+        }
+        int version = dataIn.readUnsignedByte();
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported binary memento format version "+version+" (supports up to "+FORMAT_VERSION+")");
+        }
+        return (T) new Reader(dataIn).readMemento();
+    }
+
+    private static void writeVarInt(DataOutputStream out, int val) throws IOException {
+        while ((val & ~0x7F) != 0) {
+            out.writeByte((val & 0x7F) | 0x80);
+            val >>>= 7;
+        }
+        out.writeByte(val);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint in binary memento");
+    }
+
+    /** loads the entity type through our class loader (as the xml serializer does), or returns null if it cannot */
+    @SuppressWarnings("unchecked")
+    private Class<? extends Entity> loadEntityClass(String entityType) {
+        try {
+            return (Class<? extends Entity>) classLoader.loadClass(entityType);
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to load entity type "+entityType+"; writing all keys and sensors in full", e);
+            return null;
+        }
+    }
+
+    private static Map<String, ConfigKey<?>> staticConfigKeys(Class<? extends Entity> entityClass) {
+        if (entityClass == null) return Collections.emptyMap();
+        try {
+            return EntityTypes.getDefinedConfigKeys(entityClass);
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to find static config keys of "+entityClass+"; writing all keys in full", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static Map<String, Sensor<?>> staticSensors(Class<? extends Entity> entityClass) {
+        if (entityClass == null) return Collections.emptyMap();
+        try {
+            return EntityTypes.getDefinedSensors(entityClass);
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to find static sensors of "+entityClass+"; writing all sensors in full", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /** Writes one memento; holds the string, config key and sensor tables for that memento. */
+    private class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final Map<String, Integer> configKeys = new HashMap<String, Integer>();
+        private final Map<AttributeSensor<?>, Integer> sensors = new HashMap<AttributeSensor<?>, Integer>();
+        private Map<String, ConfigKey<?>> staticConfigKeys = Collections.emptyMap();
+        private Map<String, Sensor<?>> staticSensors = Collections.emptyMap();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeMemento(Object memento) throws IOException {
+            if (memento instanceof EntityMemento) {
+                out.writeByte(KIND_ENTITY);
+                writeEntity((EntityMemento) memento);
+            } else if (memento instanceof LocationMemento) {
+                out.writeByte(KIND_LOCATION);
+                writeLocation((LocationMemento) memento);
+            } else if (memento instanceof PolicyMemento) {
+                out.writeByte(KIND_POLICY);
+                writePolicy((PolicyMemento) memento);
+            } else {
+                out.writeByte(KIND_OTHER);
+                writeValue(memento);
+            }
+        }
+
+        void writeCommon(Memento memento) throws IOException {
+            writeString(memento.getBrooklynVersion());
+            writeString(memento.getId());
+            writeString(memento.getType());
+            writeString(memento.getDisplayName());
+        }
+
+        void writeEntity(EntityMemento memento) throws IOException {
+            writeCommon(memento);
+            Class<? extends Entity> entityClass = loadEntityClass(memento.getType());
+            staticConfigKeys = staticConfigKeys(entityClass);
+            staticSensors = staticSensors(entityClass);
+            writeString(memento.getParent());
+            writeStrings(memento.getChildren());
+            out.writeBoolean(memento.isTopLevelApp());
+
+            Map<ConfigKey, Object> config = memento.getConfig();
+            writeVarInt(out, config.size());
+            for (Map.Entry<ConfigKey, Object> entry : config.entrySet()) {
+                writeConfigKey(entry.getKey());
+                writeValue(entry.getValue());
+            }
+            Map<AttributeSensor, Object> attributes = memento.getAttributes();
+            writeVarInt(out, attributes.size());
+            for (Map.Entry<AttributeSensor, Object> entry : attributes.entrySet()) {
+                writeSensor(entry.getKey());
+                writeValue(entry.getValue());
+            }
+            writeConfigKeys(memento.getEntityReferenceConfigs());
+            writeSensors(memento.getEntityReferenceAttributes());
+            writeConfigKeys(memento.getLocationReferenceConfigs());
+            writeSensors(memento.getLocationReferenceAttributes());
+            writeStrings(memento.getLocations());
+            writeStrings(memento.getPolicies());
+            writeStrings(memento.getMembers());
+            writeStringKeyedMap(memento.getCustomFields());
+        }
+
+        void writeLocation(LocationMemento memento) throws IOException {
+            writeCommon(memento);
+            writeString(memento.getParent());
+            writeStrings(memento.getChildren());
+            writeStringKeyedMap(memento.getLocationProperties());
+            writeStringKeyedMap(memento.getFlags());
+            writeStrings(memento.getLocationReferenceFlags());
+            writeStringKeyedMap(memento.getCustomFields());
+        }
+
+        void writePolicy(PolicyMemento memento) throws IOException {
+            writeCommon(memento);
+            writeStringKeyedMap(memento.getFlags());
+            writeStringKeyedMap(memento.getCustomFields());
+        }
+
+        /** 0 for null; 1 followed by the string for a new string; otherwise 2+index into the table */
+        void writeString(String val) throws IOException {
+            if (val == null) {
+                writeVarInt(out, 0);
+                return;
+            }
+            Integer index = strings.get(val);
+            if (index != null) {
+                writeVarInt(out, index + 2);
+                return;
+            }
+            writeVarInt(out, 1);
+            byte[] bytes = val.getBytes(Charsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+            if (val.length() <= MAX_TABLE_STRING_LENGTH) strings.put(val, strings.size());
+        }
+
+        void writeStrings(Collection<String> vals) throws IOException {
+            writeVarInt(out, vals.size());
+            int count = 0;
+            for (String val : vals) {
+                writeString(val);
+                count++;
+            }
+            checkCount(vals.size(), count);
+        }
+
+        /** 0 followed by the key for a new key; otherwise 1+index into the table */
+        void writeConfigKey(ConfigKey<?> key) throws IOException {
+            Integer index = configKeys.get(key.getName());
+            if (index != null) {
+                writeVarInt(out, index + 1);
+                return;
+            }
+            writeVarInt(out, 0);
+            if (key.equals(staticConfigKeys.get(key.getName()))) {
+                out.writeByte(KEY_STATIC);
+                writeString(key.getName());
+            } else {
+                out.writeByte(KEY_DYNAMIC);
+                writeString(key.getName());
+                writeString(key.getTypeName());
+                writeString(key.getDescription());
+                writeValue(key.getDefaultValue());
+            }
+            configKeys.put(key.getName(), configKeys.size());
+        }
+
+        void writeConfigKeys(Collection<? extends ConfigKey> keys) throws IOException {
+            writeVarInt(out, keys.size());
+            for (ConfigKey<?> key : keys) {
+                writeConfigKey(key);
+            }
+        }
+
+        /** 0 followed by the sensor for a new sensor; otherwise 1+index into the table */
+        void writeSensor(AttributeSensor<?> sensor) throws IOException {
+            Integer index = sensors.get(sensor);
+            if (index != null) {
+                writeVarInt(out, index + 1);
+                return;
+            }
+            writeVarInt(out, 0);
+            if (sensor.equals(staticSensors.get(sensor.getName()))) {
+                out.writeByte(KEY_STATIC);
+                writeString(sensor.getName());
+            } else {
+                out.writeByte(KEY_DYNAMIC);
+                writeString(sensor.getName());
+                writeString(sensor.getTypeName());
+                writeString(sensor.getDescription());
+            }
+            sensors.put(sensor, sensors.size());
+        }
+
+        void writeSensors(Collection<? extends AttributeSensor> vals) throws IOException {
+            writeVarInt(out, vals.size());
+            for (AttributeSensor<?> sensor : vals) {
+                writeSensor(sensor);
+            }
+        }
+
+        void writeStringKeyedMap(Map<String, ?> vals) throws IOException {
+            writeVarInt(out, vals.size());
+            int count = 0;
+            for (Map.Entry<String, ?> entry : vals.entrySet()) {
+                writeString(entry.getKey());
+                writeValue(entry.getValue());
+                count++;
+            }
+            checkCount(vals.size(), count);
+        }
+
+        void writeValue(Object val) throws IOException {
+            if (val == null) {
+                out.writeByte(TAG_NULL);
+            } else if (val instanceof String) {
+                out.writeByte(TAG_STRING);
+                writeString((String) val);
+            } else if (val instanceof Boolean) {
+                out.writeByte(((Boolean) val) ? TAG_TRUE : TAG_FALSE);
+            } else if (val instanceof Integer) {
+                out.writeByte(TAG_INTEGER);
+                out.writeInt((Integer) val);
+            } else if (val instanceof Long) {
+                out.writeByte(TAG_LONG);
+                out.writeLong((Long) val);
+            } else if (val instanceof Double) {
+                out.writeByte(TAG_DOUBLE);
+                out.writeDouble((Double) val);
+            } else if (val instanceof Float) {
+                out.writeByte(TAG_FLOAT);
+                out.writeFloat((Float) val);
+            } else if (val instanceof Enum) {
+                out.writeByte(TAG_ENUM);
+                writeString(((Enum<?>) val).getDeclaringClass().getName());
+                writeString(((Enum<?>) val).name());
+            } else if (val.getClass() == ArrayList.class) {
+                out.writeByte(TAG_LIST);
+                writeValues((Collection<?>) val);
+            } else if (val.getClass() == LinkedHashSet.class || val.getClass() == HashSet.class) {
+                out.writeByte(TAG_SET);
+                writeValues((Collection<?>) val);
+            } else if (val.getClass() == MutableMap.class) {
+                out.writeByte(TAG_MUTABLE_MAP);
+                writeMap((Map<?, ?>) val);
+            } else if (val.getClass() == LinkedHashMap.class || val.getClass() == HashMap.class) {
+                out.writeByte(TAG_MAP);
+                writeMap((Map<?, ?>) val);
+            } else {
+                out.writeByte(TAG_XML);
+                writeString(xmlSerializer.toString(val));
+            }
+        }
+
+        void writeValues(Collection<?> vals) throws IOException {
+            int size = vals.size();
+            writeVarInt(out, size);
+            int count = 0;
+            for (Object val : vals) {
+                writeValue(val);
+                count++;
+            }
+            checkCount(size, count);
+        }
+
+        void writeMap(Map<?, ?> vals) throws IOException {
+            int size = vals.size();
+            writeVarInt(out, size);
+            int count = 0;
+            for (Map.Entry<?, ?> entry : vals.entrySet()) {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+                count++;
+            }
+            checkCount(size, count);
+        }
+
+        /** a collection modified while being written would otherwise give a corrupt memento */
+        void checkCount(int expected, int actual) {
+            if (expected != actual) {
+                throw new ConcurrentModificationException("Collection changed size while being serialized (expected "+expected+", was "+actual+")");
+            }
+        }
+    }
+
+    /** Reads one memento; mirrors the tables built by {@link Writer}. */
+    private class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = Lists.newArrayList();
+        private final List<ConfigKey<?>> configKeys = Lists.newArrayList();
+        private final List<AttributeSensor<?>> sensors = Lists.newArrayList();
+        private Map<String, ConfigKey<?>> staticConfigKeys = Collections.emptyMap();
+        private Map<String, Sensor<?>> staticSensors = Collections.emptyMap();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        Object readMemento() throws IOException {
+            int kind = in.readUnsignedByte();
+            switch (kind) {
+            case KIND_ENTITY: return readEntity();
+            case KIND_LOCATION: return readLocation();
+            case KIND_POLICY: return readPolicy();
+            case KIND_OTHER: return readValue();
+            default: throw new IOException("Unknown memento kind "+kind+" in binary memento");
+            }
+        }
+
+        EntityMemento readEntity() throws IOException {
+            BasicEntityMemento.Builder builder = BasicEntityMemento.builder();
+            String brooklynVersion = readString();
+            String id = readString();
+            String type = readString();
+            builder.brooklynVersion(brooklynVersion).id(id).type(type).displayName(readString());
+            Class<? extends Entity> entityClass = loadEntityClass(type);
+            staticConfigKeys = staticConfigKeys(entityClass);
+            staticSensors = staticSensors(entityClass);
+            builder.parent(readString());
+            builder.children(readStrings());
+            builder.isTopLevelApp(in.readBoolean());
+
+            int numConfig = readVarInt(in);
+            Map<ConfigKey, Object> config = Maps.newLinkedHashMap();
+            for (int i = 0; i < numConfig; i++) {
+                ConfigKey<?> key = readConfigKey();
+                config.put(key, readValue());
+            }
+            builder.config(config);
+            int numAttributes = readVarInt(in);
+            Map<AttributeSensor, Object> attributes = Maps.newLinkedHashMap();
+            for (int i = 0; i < numAttributes; i++) {
+                AttributeSensor<?> sensor = readSensor();
+                attributes.put(sensor, readValue());
+            }
+            builder.attributes(attributes);
+            builder.entityReferenceConfigs(readConfigKeys());
+            builder.entityReferenceAttributes(readSensors());
+            builder.locationReferenceConfigs(readConfigKeys());
+            builder.locationReferenceAttributes(readSensors());
+            builder.locations(readStrings());
+            builder.policies(readStrings());
+            builder.members(readStrings());
+            builder.customFields(readStringKeyedMap());
+            return builder.build();
+        }
+
+        LocationMemento readLocation() throws IOException {
+            BasicLocationMemento.Builder builder = BasicLocationMemento.builder();
+            builder.brooklynVersion(readString()).id(readString()).type(readString()).displayName(readString());
+            builder.parent(readString());
+            builder.children(readStrings());
+            builder.locationProperties(readStringKeyedMap());
+            builder.flags(readStringKeyedMap());
+            builder.locationReferenceFlags(readStrings());
+            builder.customFields(readStringKeyedMap());
+            return builder.build();
+        }
+
+        PolicyMemento readPolicy() throws IOException {
+            BasicPolicyMemento.Builder builder = BasicPolicyMemento.builder();
+            builder.brooklynVersion(readString()).id(readString()).type(readString()).displayName(readString());
+            builder.flags(readStringKeyedMap());
+            builder.customFields(readStringKeyedMap());
+            return builder.build();
+        }
+
+        String readString() throws IOException {
+            int ref = readVarInt(in);
+            if (ref == 0) return null;
+            if (ref > 1) return strings.get(ref - 2);
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            String result = new String(bytes, Charsets.UTF_8);
+            if (result.length() <= MAX_TABLE_STRING_LENGTH) strings.add(result);
+            return result;
+        }
+
+        List<String> readStrings() throws IOException {
+            int size = readVarInt(in);
+            List<String> result = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                result.add(readString());
+            }
+            return result;
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        ConfigKey<?> readConfigKey() throws IOException {
+            int ref = readVarInt(in);
+            if (ref > 0) return configKeys.get(ref - 1);
+            ConfigKey<?> result;
+            if (in.readUnsignedByte() == KEY_STATIC) {
+                String name = readString();
+                result = staticConfigKeys.get(name);
+                if (result == null) {
+                    LOG.warn("Config key {} no longer defined statically; restoring as untyped key", name);
+                    result = new BasicConfigKey(Object.class, name);
+                }
+            } else {
+                String name = readString();
+                Class<?> type = loadType(readString());
+                String description = readString();
+                Object defaultValue = readValue();
+                result = new BasicConfigKey(type, name, description, defaultValue);
+            }
+            configKeys.add(result);
+            return result;
+        }
+
+        List<ConfigKey<?>> readConfigKeys() throws IOException {
+            int size = readVarInt(in);
+            List<ConfigKey<?>> result = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                result.add(readConfigKey());
+            }
+            return result;
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        AttributeSensor<?> readSensor() throws IOException {
+            int ref = readVarInt(in);
+            if (ref > 0) return sensors.get(ref - 1);
+            AttributeSensor<?> result;
+            if (in.readUnsignedByte() == KEY_STATIC) {
+                String name = readString();
+                Sensor<?> sensor = staticSensors.get(name);
+                if (sensor instanceof AttributeSensor) {
+                    result = (AttributeSensor<?>) sensor;
+                } else {
+                    LOG.warn("Attribute sensor {} no longer defined statically; restoring as untyped sensor", name);
+                    result = new BasicAttributeSensor(Object.class, name);
+                }
+            } else {
+                String name = readString();
+                Class<?> type = loadType(readString());
+                String description = readString();
+                result = new BasicAttributeSensor(type, name, description);
+            }
+            sensors.add(result);
+            return result;
+        }
+
+        List<AttributeSensor<?>> readSensors() throws IOException {
+            int size = readVarInt(in);
+            List<AttributeSensor<?>> result = Lists.newArrayListWithCapacity(size);
+            for (int i = 0; i < size; i++) {
+                result.add(readSensor());
+            }
+            return result;
+        }
+
+        Map<String, Object> readStringKeyedMap() throws IOException {
+            int size = readVarInt(in);
+            Map<String, Object> result = Maps.newLinkedHashMap();
+            for (int i = 0; i < size; i++) {
+                String key = readString();
+                result.put(key, readValue());
+            }
+            return result;
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        Object readValue() throws IOException {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case TAG_NULL: return null;
+            case TAG_STRING: return readString();
+            case TAG_TRUE: return Boolean.TRUE;
+            case TAG_FALSE: return Boolean.FALSE;
+            case TAG_INTEGER: return in.readInt();
+            case TAG_LONG: return in.readLong();
+            case TAG_DOUBLE: return in.readDouble();
+            case TAG_FLOAT: return in.readFloat();
+            case TAG_ENUM:
+                Class enumType = loadType(readString());
+                return Enum.valueOf(enumType, readString());
+            case TAG_LIST:
+                return readValues(new ArrayList<Object>());
+            case TAG_SET:
+                return readValues(new LinkedHashSet<Object>());
+            case TAG_MUTABLE_MAP:
+                return readMap(new MutableMap<Object, Object>());
+            case TAG_MAP:
+                return readMap(new LinkedHashMap<Object, Object>());
+            case TAG_XML:
+                return xmlSerializer.fromString(readString());
+            default:
+                throw new IOException("Unknown value tag "+tag+" in binary memento");
+            }
+        }
+
+        Collection<Object> readValues(Collection<Object> result) throws IOException {
+            int size = readVarInt(in);
+            for (int i = 0; i < size; i++) {
+                result.add(readValue());
+            }
+            return result;
+        }
+
+        Map<Object, Object> readMap(Map<Object, Object> result) throws IOException {
+            int size = readVarInt(in);
+            for (int i = 0; i < size; i++) {
+                Object key = readValue();
+                result.put(key, readValue());
+            }
+            return result;
+        }
+
+        Class<?> loadType(String name) {
+            try {
+                return classLoader.loadClass(name);
+            } catch (ClassNotFoundException e) {
+                LOG.warn("Type {} not found when reading binary memento; using Object", name);
+                return Object.class;
+            }
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.Memento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Persists the memento as an append-only journal of deltas, plus a periodic snapshot.
+ * <p>
+ * Each call to {@link #delta(Delta)} appends a single checksummed record (containing all of that delta's
+ * changes) to the current journal segment, and then forces it to disk; all writes are therefore sequential,
+ * rather than one file rewrite per changed item as in {@link BrooklynMementoPersisterToMultiFile}.
+ * Segments are memory-mapped files of (at least) {@link #setSegmentSize(int) segmentSize} bytes; when one
+ * is full, a new one is started.
+ * <p>
+ * Once more than {@link #setCompactionThreshold(long) compactionThreshold} bytes have been appended since
+ * the last snapshot, the current state is written (in the background) to a new snapshot file, and the
+ * journal segments it supersedes are deleted. {@link #checkpoint(Supplier)} writes a snapshot
+ * immediately, building the memento while no delta can be appended.
+ * <p>
+ * On construction, any existing snapshot and journal in the directory are read back (as raw bytes),
+ * so that appending continues from the persisted state; {@link #loadMemento()} then deserializes that state.
+ * A record that is truncated or fails its checksum (e.g. because of a crash part way through an append)
+ * ends the replay: the memento is restored as at the last complete delta.
+ * <p>
+ * The directory layout is:
+ * <ul>
+ *   <li>{@code snapshot} - the state as at the start of segment {@code firstSegment} (written via a
+ *       {@code .tmp} file and a rename, so is always complete)
+ *   <li>{@code journal-<n>.log} - the journal segments, replayed in order of {@code n}
+ * </ul>
+ *
+ * Note that mapped segments cannot be explicitly unmapped in Java 6; the mapping of a deleted segment is
+ * released when its buffer is garbage collected.
+ */
+public class BrooklynMementoPersisterToJournal implements BrooklynMementoPersister {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(BrooklynMementoPersisterToJournal.class);
+
+    private static final int SHUTDOWN_TIMEOUT_MS = 10*1000;
+
+    private static final int MAX_SERIALIZATION_ATTEMPTS = 5;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16*1024*1024;
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64*1024*1024;
+
+    private static final byte[] SEGMENT_MAGIC = "BJNL".getBytes(Charsets.US_ASCII);
+    private static final byte[] SNAPSHOT_MAGIC = "BSNP".getBytes(Charsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+
+    /** magic, version, segment number */
+    private static final int SEGMENT_HEADER_SIZE = 4 + 4 + 8;
+
+    /** length and checksum preceding each record's payload */
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+
+    private static final String SNAPSHOT_FILENAME = "snapshot";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private enum Kind { ENTITY, LOCATION, POLICY }
+
+    private final File dir;
+    private final File snapshotFile;
+    private final File snapshotTmpFile;
+
+    private final StreamingMementoSerializer<Object> serializer;
+    private final StreamingMementoSerializer<Object> xmlReader;
+    private final StreamingMementoSerializer<Object> binaryReader;
+
+    private final ExecutorService compactor;
+
+    /** guards all the state below */
+    private final Object mutex = new Object();
+
+    /** the serialized form of the current state, in the order the items were first persisted */
+    private final Map<Kind, Map<String, byte[]>> state = ImmutableMap.<Kind, Map<String, byte[]>>of(
+            Kind.ENTITY, new LinkedHashMap<String, byte[]>(),
+            Kind.LOCATION, new LinkedHashMap<String, byte[]>(),
+            Kind.POLICY, new LinkedHashMap<String, byte[]>());
+
+    private long currentSegmentNum;
+    private MappedByteBuffer currentSegment;
+    private long bytesSinceSnapshot;
+    private Future<?> compaction;
+
+    private volatile int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private volatile boolean running = true;
+
+    public BrooklynMementoPersisterToJournal(File dir, ClassLoader classLoader) {
+        this(dir, classLoader, new BinaryMementoSerializer<Object>(classLoader));
+    }
+
+    /**
+     * @param rawSerializer used to serialize each memento within the journal and snapshot records;
+     *        existing records are read as binary or xml according to their contents
+     */
+    public BrooklynMementoPersisterToJournal(File dir, ClassLoader classLoader, MementoSerializer<Object> rawSerializer) {
+        this.dir = checkNotNull(dir, "dir");
+        checkNotNull(rawSerializer, "rawSerializer");
+        checkArgument(dir.isDirectory() && dir.canWrite(), "dir "+dir+" is not a writable directory");
+
+        this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, MAX_SERIALIZATION_ATTEMPTS);
+        this.xmlReader = (rawSerializer instanceof XmlMementoSerializer) ? serializer :
+                new RetryingMementoSerializer<Object>(new XmlMementoSerializer<Object>(classLoader), MAX_SERIALIZATION_ATTEMPTS);
+        this.binaryReader = (rawSerializer instanceof BinaryMementoSerializer) ? (BinaryMementoSerializer<Object>) rawSerializer :
+                new BinaryMementoSerializer<Object>(classLoader);
+
+        this.snapshotFile = new File(dir, SNAPSHOT_FILENAME);
+        this.snapshotTmpFile = new File(dir, SNAPSHOT_FILENAME+".tmp");
+        this.compactor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-memento-compactor-%d").setDaemon(true).build());
+
+        try {
+            recover();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+
+        LOG.info("Memento-persister will use journal in directory {}", dir);
+    }
+
+    /**
+     * The minimum size of each (pre-allocated, memory-mapped) journal segment; a delta larger than
+     * this gets a segment of its own. Defaults to {@link #DEFAULT_SEGMENT_SIZE}.
+     */
+    public void setSegmentSize(int val) {
+        checkArgument(val > SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE, "segmentSize too small; was %s", val);
+        this.segmentSize = val;
+    }
+
+    /**
+     * The number of bytes to append to the journal before writing a new snapshot and discarding the
+     * older segments. Defaults to {@link #DEFAULT_COMPACTION_THRESHOLD}.
+     */
+    public void setCompactionThreshold(long val) {
+        checkArgument(val > 0, "compactionThreshold must be positive; was %s", val);
+        this.compactionThreshold = val;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        synchronized (mutex) {
+            if (currentSegment != null) {
+                currentSegment.force();
+                currentSegment = null;
+            }
+        }
+    }
+
+    @Override
+    public BrooklynMemento loadMemento() throws IOException {
+        Stopwatch stopwatch = new Stopwatch().start();
+        Map<Kind, Map<String, byte[]>> copy = copyState();
+
+        BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        for (byte[] bytes : copy.get(Kind.ENTITY).values()) {
+            EntityMemento memento = (EntityMemento) deserialize(bytes);
+            builder.entity(memento);
+            if (memento.isTopLevelApp()) {
+                builder.applicationId(memento.getId());
+            }
+        }
+        for (byte[] bytes : copy.get(Kind.LOCATION).values()) {
+            builder.location((LocationMemento) deserialize(bytes));
+        }
+        for (byte[] bytes : copy.get(Kind.POLICY).values()) {
+            builder.policy((PolicyMemento) deserialize(bytes));
+        }
+
+        LOG.info("Loaded memento from journal in {}; {} entities, {} locations, {} policies, in {}ms",
+                new Object[] {dir, copy.get(Kind.ENTITY).size(), copy.get(Kind.LOCATION).size(),
+                copy.get(Kind.POLICY).size(), stopwatch.elapsedMillis()});
+        return builder.build();
+    }
+
+    /**
+     * Replaces the persisted state with the given memento. Any delta appended after the memento was built,
+     * but before this is called, is lost; callers that also send deltas should therefore use
+     * {@link #checkpoint(Supplier)}.
+     */
+    @Override
+    public void checkpoint(BrooklynMemento newMemento) {
+        checkpoint(Suppliers.ofInstance(checkNotNull(newMemento, "newMemento")));
+    }
+
+    /**
+     * Replaces the persisted state with the memento returned by the supplier, which is called (and the
+     * result serialized) while holding the journal's mutex: no delta can be appended between building the
+     * memento and replacing the state with it, so none can be superseded by older state. Deltas are blocked
+     * meanwhile, but checkpoints are far less frequent.
+     */
+    public void checkpoint(Supplier<? extends BrooklynMemento> mementoSupplier) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Ignoring checkpointing entire memento, because not running");
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Checkpointing entire memento to journal snapshot");
+
+        synchronized (mutex) {
+            BrooklynMemento newMemento = mementoSupplier.get();
+            Map<String, byte[]> entities = serializeAll(newMemento.getEntityMementos().values());
+            Map<String, byte[]> locations = serializeAll(newMemento.getLocationMementos().values());
+            Map<String, byte[]> policies = serializeAll(newMemento.getPolicyMementos().values());
+            replace(Kind.ENTITY, entities);
+            replace(Kind.LOCATION, locations);
+            replace(Kind.POLICY, policies);
+            try {
+                // Start a new segment, so the snapshot supersedes everything before it
+                rollSegment(0);
+            } catch (IOException e) {
+                LOG.error("Failed to start journal segment in "+dir+"; memento checkpoint will not be persisted", e);
+                return;
+            }
+            scheduleCompaction();
+        }
+    }
+
+    @Override
+    public void delta(Delta delta) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Ignoring checkpointed delta of memento, because not running");
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Checkpointed delta of memento; updating {} entities, {} locations and {} policies; " +
+                "removing {} entities, {} locations and {} policies",
+                new Object[] {delta.entities(), delta.locations(), delta.policies(),
+                delta.removedEntityIds(), delta.removedLocationIds(), delta.removedPolicyIds()});
+
+        // Serialize outside of the mutex; only the append is serialized
+        Map<String, byte[]> entities = serializeAll(delta.entities());
+        Map<String, byte[]> locations = serializeAll(delta.locations());
+        Map<String, byte[]> policies = serializeAll(delta.policies());
+
+        byte[] record;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(entities.size() + locations.size() + policies.size()
+                    + delta.removedEntityIds().size() + delta.removedLocationIds().size() + delta.removedPolicyIds().size());
+            writePuts(out, Kind.ENTITY, entities);
+            writePuts(out, Kind.LOCATION, locations);
+            writePuts(out, Kind.POLICY, policies);
+            writeRemoves(out, Kind.ENTITY, delta.removedEntityIds());
+            writeRemoves(out, Kind.LOCATION, delta.removedLocationIds());
+            writeRemoves(out, Kind.POLICY, delta.removedPolicyIds());
+            out.flush();
+            record = bytes.toByteArray();
+        } catch (IOException e) {
+            // writing to a byte array
+            throw Exceptions.propagate(e);
+        }
+
+        synchronized (mutex) {
+            try {
+                append(record);
+            } catch (IOException e) {
+                LOG.error("Failed to append memento delta to journal in "+dir, e);
+                return;
+            }
+            state.get(Kind.ENTITY).putAll(entities);
+            state.get(Kind.LOCATION).putAll(locations);
+            state.get(Kind.POLICY).putAll(policies);
+            state.get(Kind.ENTITY).keySet().removeAll(delta.removedEntityIds());
+            state.get(Kind.LOCATION).keySet().removeAll(delta.removedLocationIds());
+            state.get(Kind.POLICY).keySet().removeAll(delta.removedPolicyIds());
+
+            bytesSinceSnapshot += RECORD_HEADER_SIZE + record.length;
+            if (bytesSinceSnapshot >= compactionThreshold && (compaction == null || compaction.isDone())) {
+                try {
+                    rollSegment(0);
+                    scheduleCompaction();
+                } catch (IOException e) {
+                    LOG.warn("Failed to start journal segment in "+dir+"; not compacting", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deltas are written synchronously; this just waits for any background compaction.
+     */
+    @Override
+    @VisibleForTesting
+    public void waitForWritesCompleted() throws InterruptedException {
+        Future<?> current;
+        synchronized (mutex) {
+            current = compaction;
+        }
+        if (current != null) {
+            try {
+                current.get();
+            } catch (ExecutionException e) {
+                throw Exceptions.propagate(e.getCause());
+            }
+        }
+    }
+
+    @VisibleForTesting
+    File[] listSegments() {
+        File[] result = dir.listFiles(new FilenameFilter() {
+            @Override public boolean accept(File d, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }});
+        Arrays.sort(result, new Comparator<File>() {
+            @Override public int compare(File f1, File f2) {
+                long n1 = segmentNum(f1), n2 = segmentNum(f2);
+                return (n1 < n2) ? -1 : (n1 == n2 ? 0 : 1);
+            }});
+        return result;
+    }
+
+    private static long segmentNum(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private File segmentFile(long num) {
+        return new File(dir, String.format("%s%019d%s", SEGMENT_PREFIX, num, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Reads the snapshot and replays the journal into {@link #state}, discarding anything that is
+     * superseded or incomplete.
+     */
+    private void recover() throws IOException {
+        Stopwatch stopwatch = new Stopwatch().start();
+        if (snapshotTmpFile.exists()) {
+            // Crashed while writing a snapshot; the previous snapshot and journal are still intact
+            snapshotTmpFile.delete();
+        }
+
+        long firstSegment = snapshotFile.exists() ? readSnapshot() : 0;
+        currentSegmentNum = firstSegment;
+
+        File[] segments = listSegments();
+        int replayed = 0;
+        boolean intact = true;
+        for (File segment : segments) {
+            long num = segmentNum(segment);
+            currentSegmentNum = Math.max(currentSegmentNum, num);
+            if (num < firstSegment) {
+                // Superseded by the snapshot; the compaction must not have finished deleting it
+                segment.delete();
+            } else if (!intact) {
+                LOG.warn("Ignoring journal segment {}, because an earlier segment was incomplete", segment);
+            } else {
+                intact = replaySegment(segment);
+                replayed++;
+            }
+        }
+
+        if (!intact) {
+            // Later appends would otherwise be ignored, being after the incomplete record; so snapshot the
+            // recovered state now (which also deletes the existing segments)
+            writeSnapshot(copyState(), currentSegmentNum + 1);
+        }
+
+        if (LOG.isDebugEnabled()) LOG.debug("Recovered memento journal in {}: snapshot and {} segments, in {}ms",
+                new Object[] {dir, replayed, stopwatch.elapsedMillis()});
+    }
+
+    /** @return the number of the first segment not included in the snapshot */
+    private long readSnapshot() throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)), new CRC32());
+        DataInputStream in = new DataInputStream(checked);
+        try {
+            byte[] magic = new byte[SNAPSHOT_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, SNAPSHOT_MAGIC)) {
+                throw new IllegalStateException("Memento snapshot "+snapshotFile+" is not a snapshot file");
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Memento snapshot "+snapshotFile+" has unsupported version "+version);
+            }
+            long firstSegment = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Kind kind = Kind.values()[in.readByte()];
+                String id = in.readUTF();
+                byte[] val = new byte[in.readInt()];
+                in.readFully(val);
+                state.get(kind).put(id, val);
+            }
+            long expectedChecksum = checked.getChecksum().getValue();
+            if (in.readLong() != expectedChecksum) {
+                throw new IllegalStateException("Memento snapshot "+snapshotFile+" is corrupt (checksum mismatch)");
+            }
+            return firstSegment;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return whether the segment was complete (rather than ending in a truncated or corrupt record) */
+    private boolean replaySegment(File segment) throws IOException {
+        ByteBuffer buf = map(segment, FileChannel.MapMode.READ_ONLY, segment.length());
+        if (buf.remaining() < SEGMENT_HEADER_SIZE) {
+            LOG.warn("Journal segment {} has incomplete header; ignoring", segment);
+            return false;
+        }
+        byte[] magic = new byte[SEGMENT_MAGIC.length];
+        buf.get(magic);
+        if (!Arrays.equals(magic, SEGMENT_MAGIC)) {
+            throw new IllegalStateException("Journal segment "+segment+" is not a journal file");
+        }
+        int version = buf.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Journal segment "+segment+" has unsupported version "+version);
+        }
+        buf.getLong(); // segment number, as in the file name
+
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buf.getInt();
+            if (length == 0) {
+                // unused (pre-allocated) remainder of the segment
+                return true;
+            }
+            int checksum = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                LOG.warn("Journal segment {} ends with a truncated record; ignoring it", segment);
+                return false;
+            }
+            byte[] record = new byte[length];
+            buf.get(record);
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                LOG.warn("Journal segment {} has a record with an invalid checksum; ignoring it and all later records", segment);
+                return false;
+            }
+            applyRecord(record);
+        }
+        return true;
+    }
+
+    private void applyRecord(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            Kind kind = Kind.values()[in.readByte()];
+            String id = in.readUTF();
+            if (op == OP_PUT) {
+                byte[] val = new byte[in.readInt()];
+                in.readFully(val);
+                state.get(kind).put(id, val);
+            } else if (op == OP_REMOVE) {
+                state.get(kind).remove(id);
+            } else {
+                throw new IllegalStateException("Unknown journal operation "+op+" in "+dir);
+            }
+        }
+    }
+
+    private void writePuts(DataOutputStream out, Kind kind, Map<String, byte[]> vals) throws IOException {
+        for (Map.Entry<String, byte[]> entry : vals.entrySet()) {
+            out.writeByte(OP_PUT);
+            out.writeByte(kind.ordinal());
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+    }
+
+    private void writeRemoves(DataOutputStream out, Kind kind, Collection<String> ids) throws IOException {
+        for (String id : ids) {
+            out.writeByte(OP_REMOVE);
+            out.writeByte(kind.ordinal());
+            out.writeUTF(id);
+        }
+    }
+
+    /** Must be called holding the mutex */
+    private void append(byte[] record) throws IOException {
+        if (currentSegment == null || currentSegment.remaining() < RECORD_HEADER_SIZE + record.length) {
+            rollSegment(record.length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+
+        // Payload first, then the header: a crash part way through leaves a zero length, or a bad checksum
+        int start = currentSegment.position();
+        currentSegment.position(start + RECORD_HEADER_SIZE);
+        currentSegment.put(record);
+        currentSegment.putInt(start + 4, (int) crc.getValue());
+        currentSegment.putInt(start, record.length);
+        currentSegment.force();
+    }
+
+    /** Must be called holding the mutex */
+    private void rollSegment(int minRecordSize) throws IOException {
+        if (currentSegment != null) {
+            currentSegment.force();
+        }
+        currentSegmentNum++;
+        File file = segmentFile(currentSegmentNum);
+        long size = Math.max(segmentSize, SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + minRecordSize);
+        MappedByteBuffer buf = map(file, FileChannel.MapMode.READ_WRITE, size);
+        buf.put(SEGMENT_MAGIC);
+        buf.putInt(FORMAT_VERSION);
+        buf.putLong(currentSegmentNum);
+        buf.force();
+        currentSegment = buf;
+        if (LOG.isDebugEnabled()) LOG.debug("Started memento journal segment {}", file);
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, (mode == FileChannel.MapMode.READ_ONLY) ? "r" : "rw");
+        try {
+            // The mapping remains valid after the channel is closed
+            return raf.getChannel().map(mode, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Must be called holding the mutex, immediately after rolling to a new segment: the snapshot is
+     * of the current state, which is therefore the state as at the start of the current segment.
+     */
+    private void scheduleCompaction() {
+        final long firstSegment = currentSegmentNum;
+        final Map<Kind, Map<String, byte[]>> copy = copyState();
+        bytesSinceSnapshot = 0;
+        compaction = compactor.submit(new Runnable() {
+            @Override public void run() {
+                try {
+                    writeSnapshot(copy, firstSegment);
+                } catch (Exception e) {
+                    LOG.error("Failed to write memento snapshot in "+dir+"; journal will be retained", e);
+                }
+            }});
+    }
+
+    private void writeSnapshot(Map<Kind, Map<String, byte[]>> snapshot, long firstSegment) throws IOException {
+        Stopwatch stopwatch = new Stopwatch().start();
+        CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotTmpFile)), new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        try {
+            out.write(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(firstSegment);
+            int count = 0;
+            for (Map<String, byte[]> vals : snapshot.values()) count += vals.size();
+            out.writeInt(count);
+            for (Map.Entry<Kind, Map<String, byte[]>> entry : snapshot.entrySet()) {
+                for (Map.Entry<String, byte[]> val : entry.getValue().entrySet()) {
+                    out.writeByte(entry.getKey().ordinal());
+                    out.writeUTF(val.getKey());
+                    out.writeInt(val.getValue().length);
+                    out.write(val.getValue());
+                }
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+        } finally {
+            out.close();
+        }
+        // Atomically replace the previous snapshot (as MementoFileWriter does for individual files)
+        Files.move(snapshotTmpFile, snapshotFile);
+
+        // Only now is it safe to discard the superseded segments
+        int deleted = 0;
+        for (File segment : listSegments()) {
+            if (segmentNum(segment) < firstSegment) {
+                if (segment.delete()) {
+                    deleted++;
+                } else {
+                    LOG.warn("Failed to delete superseded journal segment {}", segment);
+                }
+            }
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Wrote memento snapshot in {} ({} items, {} bytes) and deleted {} journal segments, in {}ms",
+                new Object[] {dir, count(snapshot), snapshotFile.length(), deleted, stopwatch.elapsedMillis()});
+    }
+
+    private static int count(Map<Kind, Map<String, byte[]>> vals) {
+        int result = 0;
+        for (Map<String, byte[]> v : vals.values()) result += v.size();
+        return result;
+    }
+
+    private Map<Kind, Map<String, byte[]>> copyState() {
+        synchronized (mutex) {
+            // The byte arrays are never modified, so a shallow copy suffices
+            return ImmutableMap.<Kind, Map<String, byte[]>>of(
+                    Kind.ENTITY, ImmutableMap.copyOf(state.get(Kind.ENTITY)),
+                    Kind.LOCATION, ImmutableMap.copyOf(state.get(Kind.LOCATION)),
+                    Kind.POLICY, ImmutableMap.copyOf(state.get(Kind.POLICY)));
+        }
+    }
+
+    private void replace(Kind kind, Map<String, byte[]> vals) {
+        state.get(kind).clear();
+        state.get(kind).putAll(vals);
+    }
+
+    private Map<String, byte[]> serializeAll(Collection<? extends Memento> mementos) {
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (Memento memento : mementos) {
+            result.put(memento.getId(), serialize(memento));
+        }
+        return result;
+    }
+
+    private byte[] serialize(Object memento) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(memento, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private Object deserialize(byte[] bytes) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        if (BinaryMementoSerializer.isBinary(in)) {
+            return binaryReader.deserialize(in);
+        } else {
+            return xmlReader.deserialize(in);
+        }
+    }
+}
@@ -3,11 +3,20 @@ package brooklyn.entity.rebind.persister;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
@@ -23,11 +32,12 @@ import brooklyn.mementos.PolicyMemento;
 import brooklyn.util.exceptions.Exceptions;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.io.Files;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersister {
 
@@ -44,19 +54,39 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
     private final ConcurrentMap<String, MementoFileWriter<LocationMemento>> locationWriters = new ConcurrentHashMap<String, MementoFileWriter<LocationMemento>>();
     private final ConcurrentMap<String, MementoFileWriter<PolicyMemento>> policyWriters = new ConcurrentHashMap<String, MementoFileWriter<PolicyMemento>>();
     
-    private final MementoSerializer<Object> serializer;
+    private final StreamingMementoSerializer<Object> serializer;
+    
+    private final StreamingMementoSerializer<Object> xmlReader;
+    
+    private final StreamingMementoSerializer<Object> binaryReader;
 
     private final ListeningExecutorService executor;
 
     private static final int MAX_SERIALIZATION_ATTEMPTS = 5;
     
+    private static final long LOAD_PROGRESS_LOG_INTERVAL_MS = 5*1000;
+    
     private volatile boolean running = true;
     
+    private volatile int loadParallelism = Runtime.getRuntime().availableProcessors();
+    
     public BrooklynMementoPersisterToMultiFile(File dir, ClassLoader classLoader) {
+        this(dir, classLoader, new XmlMementoSerializer<Object>(classLoader));
+    }
+    
+    /**
+     * @param rawSerializer used to write mementos (e.g. {@link XmlMementoSerializer} or {@link BinaryMementoSerializer});
+     *        existing files are read as binary or xml according to their contents, whichever format they were written in
+     */
+    public BrooklynMementoPersisterToMultiFile(File dir, ClassLoader classLoader, MementoSerializer<Object> rawSerializer) {
         this.dir = checkNotNull(dir, "dir");
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        checkNotNull(rawSerializer, "rawSerializer");
 //        this.serializer = new JsonMementoSerializer(classLoader);
         this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, MAX_SERIALIZATION_ATTEMPTS);
+        this.xmlReader = (rawSerializer instanceof XmlMementoSerializer) ? serializer :
+                new RetryingMementoSerializer<Object>(new XmlMementoSerializer<Object>(classLoader), MAX_SERIALIZATION_ATTEMPTS);
+        this.binaryReader = (rawSerializer instanceof BinaryMementoSerializer) ? (BinaryMementoSerializer<Object>) rawSerializer :
+                new BinaryMementoSerializer<Object>(classLoader);
         
         checkArgument(dir.isDirectory() && dir.canWrite(), "dir "+dir+" is not a writable directory");
         
@@ -88,6 +118,19 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         }
     }
     
+    /**
+     * The number of threads used to read and deserialize memento files in {@link #loadMemento()};
+     * defaults to the number of available processors.
+     */
+    public void setLoadParallelism(int val) {
+        checkArgument(val > 0, "loadParallelism must be positive; was %s", val);
+        this.loadParallelism = val;
+    }
+    
+    /**
+     * Reads and deserializes the memento files in parallel (see {@link #setLoadParallelism(int)}), adding each 
+     * to the memento as soon as it has been read, and logging progress periodically.
+     */
     @Override
     public BrooklynMemento loadMemento() throws IOException {
         FileFilter fileFilter = new FileFilter() {
@@ -98,27 +141,58 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         File[] entityFiles = entitiesDir.listFiles(fileFilter);
         File[] locationFiles = locationsDir.listFiles(fileFilter);
         File[] policyFiles = policiesDir.listFiles(fileFilter);
+        int total = entityFiles.length + locationFiles.length + policyFiles.length;
 
         LOG.info("Loading memento from {}; {} entities, {} locations, {} policies", 
                 new Object[] {dir, entityFiles.length, locationFiles.length, policyFiles.length});
         
         BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        if (total == 0) return builder.build();
         
-        for (File file : entityFiles) {
-            EntityMemento memento = (EntityMemento) serializer.fromString(readFile(file));
-            builder.entity(memento);
-            if (memento.isTopLevelApp()) {
-                builder.applicationId(memento.getId());
+        Stopwatch stopwatch = new Stopwatch().start();
+        ExecutorService loader = Executors.newFixedThreadPool(Math.min(loadParallelism, total), 
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-memento-loader-%d").setDaemon(true).build());
+        try {
+            CompletionService<Object> completionService = new ExecutorCompletionService<Object>(loader);
+            for (File file : Iterables.concat(Arrays.asList(entityFiles), Arrays.asList(locationFiles), Arrays.asList(policyFiles))) {
+                final File f = file;
+                completionService.submit(new Callable<Object>() {
+                    @Override public Object call() throws IOException {
+                        return readMemento(f);
+                    }});
             }
+            
+            // Single consumer, so the builder need not be thread-safe
+            long nextLogTime = LOAD_PROGRESS_LOG_INTERVAL_MS;
+            for (int i = 0; i < total; i++) {
+                Object memento = completionService.take().get();
+                if (memento instanceof EntityMemento) {
+                    builder.entity((EntityMemento) memento);
+                    if (((EntityMemento) memento).isTopLevelApp()) {
+                        builder.applicationId(((EntityMemento) memento).getId());
+                    }
+                } else if (memento instanceof LocationMemento) {
+                    builder.location((LocationMemento) memento);
+                } else if (memento instanceof PolicyMemento) {
+                    builder.policy((PolicyMemento) memento);
+                } else {
+                    throw new IllegalStateException("Unexpected memento type "+(memento == null ? null : memento.getClass())+" in "+dir);
+                }
+                if (stopwatch.elapsedMillis() >= nextLogTime) {
+                    LOG.info("Loading memento from {}: {} of {} files loaded, after {}ms", new Object[] {dir, i+1, total, stopwatch.elapsedMillis()});
+                    nextLogTime += LOAD_PROGRESS_LOG_INTERVAL_MS;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Exceptions.propagate(e.getCause());
+        } finally {
+            loader.shutdownNow();
         }
-        for (File file : locationFiles) {
-            LocationMemento memento = (LocationMemento) serializer.fromString(readFile(file));
-            builder.location(memento);
-        }
-        for (File file : policyFiles) {
-            PolicyMemento memento = (PolicyMemento) serializer.fromString(readFile(file));
-            builder.policy(memento);
-        }
+        
+        LOG.info("Loaded memento from {}; {} files in {}ms", new Object[] {dir, total, stopwatch.elapsedMillis()});
         return builder.build();
     }
     
@@ -186,8 +260,17 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         }
     }
 
-    private String readFile(File file) throws IOException {
-        return Joiner.on("\n").join(Files.readLines(file, Charsets.UTF_8));
+    private Object readMemento(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (BinaryMementoSerializer.isBinary(in)) {
+                return binaryReader.deserialize(in);
+            } else {
+                return xmlReader.deserialize(in);
+            }
+        } finally {
+            in.close();
+        }
     }
     
     private void persist(EntityMemento entity) {
@@ -1,7 +1,9 @@
 package brooklyn.entity.rebind.persister;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -177,7 +179,16 @@ public class MementoFileWriter<T> {
         Stopwatch stopwatch = new Stopwatch();
         
         // Write to the temp file, then atomically move it to the permanent file location
-        Files.write(serializer.toString(val)+"\n", tmpFile, Charsets.UTF_8);
+        if (serializer instanceof StreamingMementoSerializer) {
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                ((StreamingMementoSerializer<? super T>) serializer).serialize(val, out);
+            } finally {
+                out.close();
+            }
+        } else {
+            Files.write(serializer.toString(val)+"\n", tmpFile, Charsets.UTF_8);
+        }
         Files.move(tmpFile, file);
 
         modCount.incrementAndGet();
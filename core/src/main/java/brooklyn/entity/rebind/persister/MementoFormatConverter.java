@@ -0,0 +1,110 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Converts mementos between the xml format of {@link XmlMementoSerializer} and the binary format of
+ * {@link BinaryMementoSerializer}, either individually or for a whole {@link BrooklynMementoPersisterToMultiFile}
+ * directory (e.g. to migrate existing persisted state, or to get a readable copy of binary state for debugging).
+ * <p>
+ * Converting a directory is not needed to switch format: the persister reads files in either format.
+ * It must not be done while a persister is writing to that directory.
+ */
+public class MementoFormatConverter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoFormatConverter.class);
+
+    private static final String[] SUBDIRS = {"entities", "locations", "policies"};
+
+    private final XmlMementoSerializer<Object> xmlSerializer;
+    private final BinaryMementoSerializer<Object> binarySerializer;
+
+    public MementoFormatConverter(ClassLoader classLoader) {
+        xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+        binarySerializer = new BinaryMementoSerializer<Object>(classLoader);
+    }
+
+    public byte[] xmlToBinary(String xml) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            binarySerializer.serialize(xmlSerializer.fromString(xml), out);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        return out.toByteArray();
+    }
+
+    public String binaryToXml(byte[] binary) {
+        try {
+            return xmlSerializer.toString(binarySerializer.deserialize(new ByteArrayInputStream(binary)));
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * Rewrites every memento file under the given persistence directory that is not already in the
+     * requested format.
+     *
+     * @return the number of files converted
+     */
+    public int convertDirectory(File mementoDir, boolean toBinary) throws IOException {
+        checkArgument(mementoDir.isDirectory(), "%s is not a directory", mementoDir);
+        int count = 0;
+        for (String subdir : SUBDIRS) {
+            File[] files = new File(mementoDir, subdir).listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) continue;
+                if (convertFile(file, toBinary)) count++;
+            }
+        }
+        LOG.info("Converted {} memento files in {} to {}", new Object[] {count, mementoDir, (toBinary ? "binary" : "xml")});
+        return count;
+    }
+
+    private boolean convertFile(File file, boolean toBinary) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        Object memento;
+        try {
+            boolean isBinary = BinaryMementoSerializer.isBinary(in);
+            if (isBinary == toBinary) return false;
+            memento = isBinary ? binarySerializer.deserialize(in) : xmlSerializer.fromString(Files.toString(file, Charsets.UTF_8));
+        } finally {
+            in.close();
+        }
+
+        // Write to a temp file, then atomically move it to the permanent file location (as MementoFileWriter does)
+        File tmpFile = new File(file.getParentFile(), file.getName()+".tmp");
+        if (toBinary) {
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                binarySerializer.serialize(memento, out);
+            } finally {
+                out.close();
+            }
+        } else {
+            Files.write(xmlSerializer.toString(memento)+"\n", tmpFile, Charsets.UTF_8);
+        }
+        Files.move(tmpFile, file);
+        return true;
+    }
+}
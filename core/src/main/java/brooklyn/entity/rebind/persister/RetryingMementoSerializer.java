@@ -2,10 +2,27 @@ package brooklyn.entity.rebind.persister;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class RetryingMementoSerializer<T> implements MementoSerializer<T> {
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+
+/**
+ * Retries serialization, which can fail if (for example) an attribute value is modified concurrently.
+ * <p>
+ * If the delegate is a {@link StreamingMementoSerializer} then each attempt to serialize to a stream is
+ * buffered, and only a successful attempt is written to the stream. Otherwise the stream methods write and
+ * read the delegate's string form in UTF-8. Deserializing from a stream is not retried (as the stream will
+ * have been consumed).
+ */
+public class RetryingMementoSerializer<T> implements StreamingMementoSerializer<T> {
     
     private static final Logger LOG = LoggerFactory.getLogger(RetryingMementoSerializer.class);
     
@@ -50,4 +67,38 @@ public class RetryingMementoSerializer<T> implements MementoSerializer<T> {
         
         throw lastException;
     }
+    
+    public void serialize(T memento, OutputStream out) throws IOException {
+        if (delegate instanceof StreamingMementoSerializer) {
+            StreamingMementoSerializer<T> streamingDelegate = (StreamingMementoSerializer<T>) delegate;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            RuntimeException lastException = null;
+            int attempt = 0;
+            do {
+                attempt++;
+                try {
+                    buffer.reset();
+                    streamingDelegate.serialize(memento, buffer);
+                    buffer.writeTo(out);
+                    return;
+                } catch (RuntimeException e) {
+                    LOG.warn("Error serializing memento (attempt "+attempt+" of "+maxAttempts+") for "+memento+
+                            "; expected sometimes if attribute value modified", e);
+                    lastException = e;
+                }
+            } while (attempt < maxAttempts);
+            
+            throw lastException;
+        } else {
+            out.write(toString(memento).getBytes(Charsets.UTF_8));
+        }
+    }
+    
+    public T deserialize(InputStream in) throws IOException {
+        if (delegate instanceof StreamingMementoSerializer) {
+            return ((StreamingMementoSerializer<T>) delegate).deserialize(in);
+        } else {
+            return fromString(CharStreams.toString(new InputStreamReader(in, Charsets.UTF_8)));
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package brooklyn.entity.rebind.persister;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A {@link MementoSerializer} which can write to and read from a stream directly,
+ * rather than going via an intermediate String (e.g. so a memento file can be written without
+ * first building its entire contents in memory).
+ */
+public interface StreamingMementoSerializer<T> extends MementoSerializer<T> {
+
+    /** Writes the memento to the given stream; does not close the stream. */
+    void serialize(T memento, OutputStream out) throws IOException;
+
+    /** Reads a memento from the given stream; does not close the stream. */
+    T deserialize(InputStream in) throws IOException;
+}
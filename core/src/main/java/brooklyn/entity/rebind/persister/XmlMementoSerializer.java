@@ -3,6 +3,10 @@ package brooklyn.entity.rebind.persister;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.LinkedHashMap;
@@ -21,6 +25,7 @@ import brooklyn.util.xstream.ImmutableListConverter;
 import brooklyn.util.xstream.Inet4AddressConverter;
 import brooklyn.util.xstream.StringKeyMapConverter;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.thoughtworks.xstream.XStream;
 
@@ -28,7 +33,7 @@ import com.thoughtworks.xstream.XStream;
  * 
  * there is an early attempt at doing this with JSON in pull request #344 but 
  * it is not nicely deserializable, see comments at http://xstream.codehaus.org/json-tutorial.html */  
-public class XmlMementoSerializer<T> implements MementoSerializer<T> {
+public class XmlMementoSerializer<T> implements StreamingMementoSerializer<T> {
     
     private final XStream xstream;
     
@@ -74,4 +79,18 @@ public class XmlMementoSerializer<T> implements MementoSerializer<T> {
     public T fromString(String xml) {
         return (T) xstream.fromXML(xml);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void serialize(T memento, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, Charsets.UTF_8);
+        xstream.toXML(memento, writer);
+        writer.append("\n");
+        writer.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T deserialize(InputStream in) throws IOException {
+        return (T) xstream.fromXML(new InputStreamReader(in, Charsets.UTF_8));
+    }
+}
@@ -1,6 +1,7 @@
 package brooklyn.event.adapter;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList
 
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -16,6 +17,9 @@ import brooklyn.util.task.ScheduledTask
 public abstract class AbstractPollHelper {
     public static final Logger log = LoggerFactory.getLogger(AbstractPollHelper.class);
 
+    /** fraction of the poll period by which each poll may randomly be early or late, so pollers do not stay in lock-step */
+    public static final double POLL_JITTER = 0.05;
+
     final Map<AttributeSensor, Closure> polledSensors = [:]
 
     final List<Closure> polledListeners = []
@@ -43,8 +47,9 @@ public abstract class AbstractPollHelper {
     protected activatePoll() {
         if (adapter.pollPeriod!=null && adapter.pollPeriod.toMilliseconds()>0) {
             if (log.isDebugEnabled()) log.debug "activating poll (period {}) for {} sensors {} (using {})", adapter.pollPeriod, adapter.entity, polledSensors.keySet(), this
-            Closure pollingTaskFactory = { new BasicTask(entity: entity, { executePoll() }); }
-            schedule = new ScheduledTask(period: adapter.pollPeriod, pollingTaskFactory);
+            Closure pollingTaskFactory = { new BasicTask(entity: entity, blocking: true, { executePoll() }); }
+            // polls of entities started together are spread across the period, rather than all hitting at once
+            schedule = new ScheduledTask(period: adapter.pollPeriod, spread: true, jitter: POLL_JITTER, pollingTaskFactory);
             entity.executionContext.submit schedule;
         } else {
             if (log.isDebugEnabled()) log.debug "activating poll (but leaving off, as period {}) for {} sensors {} (using {})", adapter.pollPeriod, adapter.entity, polledSensors.keySet(), this
@@ -143,7 +148,8 @@ public abstract class AbstractChainablePollHelper extends AbstractPollHelper {
         super.isEmpty() && subPollers.isEmpty();
     }
 
-    List<AbstractChainablePollHelper> subPollers = []
+    // copy-on-write, as sub-pollers can be added while the parent is polling
+    List<AbstractChainablePollHelper> subPollers = new CopyOnWriteArrayList<AbstractChainablePollHelper>()
     void addSubPoller(AbstractChainablePollHelper poller) { subPollers << poller }
 
 }
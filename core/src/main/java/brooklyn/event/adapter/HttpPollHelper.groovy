@@ -3,7 +3,7 @@ package brooklyn.event.adapter;
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
-import brooklyn.util.crypto.SslTrustUtils
+import brooklyn.util.http.HttpClientPool
 import brooklyn.util.text.StringEscapes
 
 protected class HttpPollHelper extends AbstractPollHelper {
@@ -11,12 +11,16 @@ protected class HttpPollHelper extends AbstractPollHelper {
 
     final HttpSensorAdapter adapter;
 
+    /** validators from the last full response, for a conditional GET; only accessed by the (single) poll task */
+    private String lastETag;
+    private String lastModified;
+
     public HttpPollHelper(HttpSensorAdapter adapter) {
         super(adapter);
         this.adapter = adapter;
     }
 
-    private HttpURLConnection getConnection() {
+    private URL getUrl() {
         if (adapter.isPost) throw new UnsupportedOperationException("when you need POST please implement it here!")
         String url = adapter.baseUrl;
         if (adapter.urlVars) {
@@ -26,7 +30,11 @@ protected class HttpPollHelper extends AbstractPollHelper {
             }
             url += "?" + args.join("&")
         }
-        return new URL(url).openConnection();
+        return new URL(url);
+    }
+
+    private HttpURLConnection getConnection() {
+        return getUrl().openConnection();
     }
 
     @Override
@@ -34,19 +42,37 @@ protected class HttpPollHelper extends AbstractPollHelper {
         response?.content
     }
 
+    /**
+     * Polls using the shared {@link HttpClientPool}, so connections are reused. If the adapter is conditional
+     * (the default), sends the ETag and Last-Modified of the previous response; if the server replies that it is
+     * not modified (http 304) then returns null, so the sensors are not re-evaluated.
+     */
     @Override
     AbstractSensorEvaluationContext executePollOnSuccess() {
         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", adapter.entity, adapter.baseUrl+" "+adapter.urlVars);
-        HttpURLConnection connection = getConnection();
-        SslTrustUtils.trustAll(connection);
-        connection.connect();
-        def result = new HttpResponseContext(connection);
-        if (log.isTraceEnabled()) log.trace("http poll for {} returned status {}", adapter.entity, result.responseCode);
-        return result;
+        Map<String,String> requestHeaders = [:]
+        if (adapter.isConditional()) {
+            if (lastETag) requestHeaders.put("If-None-Match", lastETag)
+            if (lastModified) requestHeaders.put("If-Modified-Since", lastModified)
+        }
+        HttpClientPool.Response response = HttpClientPool.getInstance().get(getUrl(), requestHeaders);
+        if (log.isTraceEnabled()) log.trace("http poll for {} returned status {}", adapter.entity, response.responseCode);
+        if (response.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && requestHeaders) {
+            return null;
+        }
+        if (adapter.isConditional()) {
+            boolean ok = (response.responseCode >= 200 && response.responseCode < 300)
+            lastETag = ok ? response.getHeader("ETag") : null
+            lastModified = ok ? response.getHeader("Last-Modified") : null
+        }
+        return new HttpResponseContext(response);
     }
 
     @Override
     AbstractSensorEvaluationContext executePollOnError(Exception e) {
+        // the next successful poll must be a full one, so the sensors are re-evaluated after the error
+        lastETag = null
+        lastModified = null
         try {
             HttpURLConnection connection = getConnection();
             //don't attempt to connect
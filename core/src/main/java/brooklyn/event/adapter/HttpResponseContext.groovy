@@ -9,6 +9,8 @@ import javax.annotation.Nullable
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import brooklyn.util.http.HttpClientPool
+
 
 /** context object for evaluating sensor closures with http data handy */
 public class HttpResponseContext extends AbstractSensorEvaluationContext {
@@ -32,6 +34,10 @@ public class HttpResponseContext extends AbstractSensorEvaluationContext {
 	public HttpResponseContext(HttpURLConnection conn) {
 		this(conn, conn.getResponseCode(), conn.getHeaderFields(), getContentOrNull(conn), null)
 	}
+	/** constructor for a response read in full by the {@link HttpClientPool} */
+	public HttpResponseContext(HttpClientPool.Response response) {
+		this(response.connection, response.responseCode, response.headers, getContentOrNull(response), null)
+	}
 	/** constructor for when there is an error; note that many of the methods on connection will throw errors */
 	public HttpResponseContext(HttpURLConnection conn, Exception error) {
 		this(conn, -1, [:], null, error)
@@ -58,6 +64,23 @@ public class HttpResponseContext extends AbstractSensorEvaluationContext {
         }
     } 
     
+    private static String getContentOrNull(HttpClientPool.Response response) {
+        if (response.content == null) return null;
+        String charset = null
+        String contentType = response.getHeader("Content-Type")
+        if (contentType) {
+            def param = contentType.split(";")*.trim().find { it.toLowerCase().startsWith("charset=") }
+            if (param) charset = param.substring("charset=".length()).replace("\"", "")
+        }
+        try {
+            String text = charset ? new String(response.content, charset) : new String(response.content)
+            return text.readLines().join("\n")
+        } catch (UnsupportedEncodingException e) {
+            log.debug("Unknown charset "+charset+" for HTTP response; using default", e);
+            return new String(response.content).readLines().join("\n")
+        }
+    }
+    
 	protected Object getDefaultValue() { return content }
 	
 	private transient Map<String,Object> headers = null
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory
 
 import brooklyn.event.Sensor
 import brooklyn.util.flags.FlagUtils
+import brooklyn.util.flags.SetFromFlag
 
 
 public class HttpSensorAdapter extends AbstractSensorAdapter {
@@ -21,6 +22,15 @@ public class HttpSensorAdapter extends AbstractSensorAdapter {
     }
 
 	protected boolean isPost = false;
+	
+	/**
+	 * whether to poll with a conditional GET (using the ETag and Last-Modified of the previous response),
+	 * skipping evaluation of the sensors when the content is unchanged; defaults to true
+	 */
+	@SetFromFlag("conditional")
+	Boolean conditional
+	
+	public boolean isConditional() { conditional != Boolean.FALSE }
 		
 	protected boolean isConnected() { isActivated() && poller!=null && poller.getLastWasSuccessful() }
 	
@@ -3,10 +3,6 @@ package brooklyn.event.adapter
 import groovy.lang.Closure
 
 import java.util.List
-import java.util.concurrent.Executors
-import java.util.concurrent.ScheduledExecutorService
-import java.util.concurrent.ScheduledFuture
-import java.util.concurrent.TimeUnit
 
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -15,6 +11,8 @@ import brooklyn.entity.basic.EntityLocal
 import brooklyn.event.AttributeSensor
 import brooklyn.event.Sensor
 import brooklyn.event.adapter.legacy.ValueProvider
+import brooklyn.util.task.BasicTask
+import brooklyn.util.task.ScheduledTask
 
 
 /**
@@ -36,17 +34,12 @@ public class SensorRegistry {
             connectDelay : 1000
         ]
 
-    /**
-     * @deprecated in 0.4. use new SensorAdapter model.
-     */
-	@Deprecated
-    private ScheduledExecutorService _exec = null;
-    synchronized ScheduledExecutorService getExec() {
-        if (_exec==null) {
+    private boolean _warnedLegacy = false;
+    private synchronized void warnLegacy() {
+        if (!_warnedLegacy) {
             log.warn("using legacy executor service sensor model in $entity -- class should be updated to use adapters.");
-            _exec = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+            _warnedLegacy = true;
         }
-        return _exec;
     }
     
     /**
@@ -59,7 +52,7 @@ public class SensorRegistry {
      * @deprecated in 0.4. use new SensorAdapter model.
      */
     @Deprecated
-    private final Map<AttributeSensor, ScheduledFuture> scheduled = [:]
+    private final Map<AttributeSensor, ScheduledTask> scheduled = [:]
 
 	private final Set<AbstractSensorAdapter> adapters = []
 	
@@ -100,8 +93,7 @@ public class SensorRegistry {
 	public void close() {
 		activated = false;
 		deactivateAdapters();
-		if (_exec) exec.shutdownNow()
-		scheduled.each { key, ScheduledFuture future -> future.cancel(true) }
+		scheduled.each { key, ScheduledTask task -> task.cancel(true) }
 	}
 
     /**
@@ -132,7 +124,11 @@ public class SensorRegistry {
             }
         }
         
-        scheduled[sensor] = exec.scheduleWithFixedDelay(safeCalculate, 0L, period, TimeUnit.MILLISECONDS)
+        // Scheduled by the management context (rather than a thread pool per registry), so no threads are held between polls
+        warnLegacy()
+        ScheduledTask task = new ScheduledTask(period: period, { new BasicTask(entity: entity, blocking: true, safeCalculate) })
+        scheduled[sensor] = task
+        entity.executionContext.submit(task)
     }
 
     /**
@@ -0,0 +1,163 @@
+package brooklyn.event.adapter;
+
+import groovy.time.TimeDuration
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import brooklyn.location.basic.SshMachineLocation
+import brooklyn.util.task.BasicTask
+import brooklyn.util.task.ScheduledTask
+import brooklyn.util.text.Identifiers
+import brooklyn.util.text.StringEscapes.BashStringEscapes
+
+import com.google.common.base.Charsets
+
+/**
+ * Polls the commands of several {@link SshSensorAdapter}s on one machine (those derived from one adapter,
+ * with {@link SshSensorAdapter#command(String, Map)} or {@link SshSensorAdapter#env(Map)}) in a single ssh execution.
+ * <p>
+ * The commands are run concurrently by one script, each in its own subshell with its own environment, and their
+ * stdout, stderr and exit status are written back between marker lines (unique to each poll); these are split out
+ * into an {@link SshResultContext} for each adapter's {@link SshPollHelper}, as if it had run its command itself.
+ * If only one adapter is due, it runs its command directly.
+ *
+ * @see SshPollHelper
+ */
+protected class SshPollBatch {
+
+    public static final Logger log = LoggerFactory.getLogger(SshPollBatch.class);
+
+    final SshMachineLocation location
+    final TimeDuration pollPeriod
+
+    // copy-on-write, as pollers can join or leave while the batch is polling
+    final List<SshPollHelper> members = new CopyOnWriteArrayList<SshPollHelper>()
+
+    private ScheduledTask schedule
+
+    public SshPollBatch(SshMachineLocation location, TimeDuration pollPeriod) {
+        this.location = location
+        this.pollPeriod = pollPeriod
+    }
+
+    /** whether the adapter's command can be polled in this batch, i.e. it is on the same machine and polled as often */
+    public boolean accepts(SshSensorAdapter adapter) {
+        return adapter.location == location && adapter.pollPeriod == pollPeriod && pollPeriod != null && pollPeriod.toMilliseconds() > 0
+    }
+
+    public synchronized void join(SshPollHelper member) {
+        members.add(member)
+        if (schedule == null) {
+            if (log.isDebugEnabled()) log.debug "activating batched ssh poll (period {}) for {} on {}", pollPeriod, member.entity, location
+            Closure pollingTaskFactory = { new BasicTask(entity: member.entity, blocking: true, { executePoll() }); }
+            schedule = new ScheduledTask(period: pollPeriod, spread: true, jitter: AbstractPollHelper.POLL_JITTER, pollingTaskFactory);
+            member.entity.executionContext.submit schedule;
+        }
+    }
+
+    public synchronized void leave(SshPollHelper member) {
+        members.remove(member)
+        if (members.isEmpty() && schedule != null) {
+            if (log.isDebugEnabled()) log.debug "deactivating batched ssh poll for {} on {}", member.entity, location
+            schedule.cancel()
+            schedule = null
+        }
+    }
+
+    protected void executePoll() {
+        List<SshPollHelper> due = members.findAll { SshPollHelper it -> !it.isEmpty() && it.adapter.isActivated() }
+        if (due.isEmpty()) return;
+        if (due.size() == 1) {
+            due[0].executePoll()
+            return
+        }
+
+        String marker = "BROOKLYN-POLL-"+Identifiers.makeRandomId(8)
+        List<String> script = toScript(marker, due.collect { it.adapter.command }, due.collect { it.adapter.env })
+        List<SshResultContext> results = null
+        Exception error = null
+        try {
+            if (log.isDebugEnabled()) log.debug "ssh polling for {} sensors using {} commands in one batch: {}", due[0].entity, due.size(), due.collect { it.adapter.command }
+            ByteArrayOutputStream stdout = []
+            ByteArrayOutputStream stderr = []
+            location.run(out:stdout, err:stderr, script, [:])
+            results = parseOutput(location, marker, due.size(), stdout.toString(Charsets.UTF_8.name()))
+        } catch (Exception e) {
+            error = e
+        }
+        due.eachWithIndex { SshPollHelper member, int i ->
+            Exception memberError = error
+            if (memberError == null && results[i] == null) {
+                memberError = new IllegalStateException("No result for \"${member.adapter.command}\" in batched ssh poll output")
+            }
+            member.executeBatchedPoll(memberError == null ? results[i] : null, memberError)
+        }
+    }
+
+    /**
+     * Returns the lines of a script which runs the given commands concurrently, each with its environment,
+     * then prints their stdout, stderr and exit status between lines of the form {@code <marker> <index> out|err|exit [status]},
+     * each preceded by a newline (so a section's content is exactly the output of its command).
+     */
+    static List<String> toScript(String marker, List<String> commands, List<Map> envs) {
+        List<String> result = []
+        result << 'BROOKLYN_POLL_DIR=$(mktemp -d 2>/dev/null || mktemp -d -t brooklyn-poll)'
+        commands.eachWithIndex { String command, int i ->
+            String exports = envs[i].collect { k, v -> "export ${k}=${BashStringEscapes.wrapBash(v as String)}; " }.join("")
+            // ':' so the subshell is not empty if the command is (e.g. only a comment)
+            result << "{ ( ${exports}:"
+            // the command on its own line, so that a trailing comment does not swallow what follows
+            result << command
+            result << ") >\"\$BROOKLYN_POLL_DIR/${i}.out\" 2>\"\$BROOKLYN_POLL_DIR/${i}.err\" </dev/null; echo \$? >\"\$BROOKLYN_POLL_DIR/${i}.exit\"; } &"
+        }
+        result << "wait"
+        commands.eachWithIndex { String command, int i ->
+            result << "printf '\\n%s\\n' \"${marker} ${i} out\"; cat \"\$BROOKLYN_POLL_DIR/${i}.out\""
+            result << "printf '\\n%s\\n' \"${marker} ${i} err\"; cat \"\$BROOKLYN_POLL_DIR/${i}.err\""
+            result << "printf '\\n%s\\n' \"${marker} ${i} exit \$(cat \"\$BROOKLYN_POLL_DIR/${i}.exit\")\""
+        }
+        result << 'rm -rf "$BROOKLYN_POLL_DIR"'
+        return result
+    }
+
+    /**
+     * Splits the output of a script from {@link #toScript(String, List, List)} into a result for each command,
+     * or null for a command whose output is incomplete.
+     */
+    static List<SshResultContext> parseOutput(SshMachineLocation location, String marker, int count, String output) {
+        String[] stdouts = new String[count]
+        String[] stderrs = new String[count]
+        Integer[] exits = new Integer[count]
+
+        Pattern markerLine = Pattern.compile("\n"+Pattern.quote(marker)+" (\\d+) (out|err|exit) ?(-?\\d+)?\n")
+        Matcher m = markerLine.matcher(output)
+        int index = -1
+        String section = null
+        int sectionStart = -1
+        while (m.find()) {
+            if (index >= 0) store(stdouts, stderrs, index, section, output.substring(sectionStart, m.start()))
+            index = Integer.parseInt(m.group(1))
+            section = m.group(2)
+            sectionStart = m.end()
+            if (index >= count) throw new IllegalStateException("Unexpected command index ${index} in batched ssh poll output (of ${count} commands)")
+            if (section == "exit" && m.group(3) != null) exits[index] = Integer.parseInt(m.group(3))
+        }
+        if (index >= 0) store(stdouts, stderrs, index, section, output.substring(sectionStart))
+
+        List<SshResultContext> result = []
+        for (int i = 0; i < count; i++) {
+            result << ((exits[i] != null && stdouts[i] != null) ? new SshResultContext(location, exits[i], stdouts[i], stderrs[i] ?: "") : null)
+        }
+        return result
+    }
+
+    private static void store(String[] stdouts, String[] stderrs, int index, String section, String content) {
+        if (section == "out") stdouts[index] = content
+        else if (section == "err") stderrs[index] = content
+    }
+}
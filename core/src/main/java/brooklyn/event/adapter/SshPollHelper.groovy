@@ -7,8 +7,12 @@ import com.google.common.base.Charsets;
 
 /**
  * Captures output and exit code for {@link SshSensorAdapter}.
+ * <p>
+ * Unless the adapter is not {@link SshSensorAdapter#isBatched() batched}, this is polled by the adapter's
+ * {@link SshPollBatch} (together with the other commands on the machine) rather than by a schedule of its own.
  *
  * @see SshSensorAdapter
+ * @see SshPollBatch
  */
 protected class SshPollHelper extends AbstractPollHelper {
 
@@ -16,6 +20,10 @@ protected class SshPollHelper extends AbstractPollHelper {
 
     final SshSensorAdapter adapter
 
+    private SshPollBatch batch
+    private SshResultContext batchedResult
+    private Exception batchedError
+
     public SshPollHelper(SshSensorAdapter adapter) {
         super(adapter);
         this.adapter = adapter;
@@ -26,8 +34,49 @@ protected class SshPollHelper extends AbstractPollHelper {
         response?.stdout
     }
 
+    @Override
+    protected activatePoll() {
+        SshPollBatch candidate = adapter.batch
+        if (adapter.isBatched() && candidate != null && candidate.accepts(adapter)) {
+            if (log.isDebugEnabled()) log.debug "activating batched poll for {} sensors {} (using {})", adapter.entity, polledSensors.keySet(), this
+            batch = candidate
+            batch.join(this)
+        } else {
+            super.activatePoll()
+        }
+    }
+
+    @Override
+    protected deactivatePoll() {
+        if (batch != null) {
+            if (log.isDebugEnabled()) log.debug "deactivating batched poll for {} sensors {} (using {})", adapter.entity, polledSensors.keySet(), this
+            batch.leave(this)
+            batch = null
+        } else {
+            super.deactivatePoll()
+        }
+    }
+
+    /** evaluates the sensors on this command's part of a batched poll (either its result or the error running the batch) */
+    protected void executeBatchedPoll(SshResultContext result, Exception error) {
+        batchedResult = result
+        batchedError = error
+        try {
+            executePoll()
+        } finally {
+            batchedResult = null
+            batchedError = null
+        }
+    }
+
     @Override
     AbstractSensorEvaluationContext executePollOnSuccess() {
+        if (batchedError != null) throw batchedError
+        if (batchedResult != null) {
+            if (log.isDebugEnabled()) log.debug "ssh poll (batched) for {} got: {}", adapter.entity, batchedResult.stdout
+            return batchedResult
+        }
+
         if (log.isDebugEnabled()) log.debug "ssh polling for {} sensors using {}", adapter.entity, adapter.command
         ByteArrayOutputStream stdout = []
         ByteArrayOutputStream stderr = []
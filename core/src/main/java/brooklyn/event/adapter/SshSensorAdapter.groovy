@@ -14,7 +14,11 @@ import brooklyn.util.flags.SetFromFlag
 
 
 /**
- * TODO javadoc
+ * Polls sensors from the output of shell commands run over ssh on a machine.
+ * <p>
+ * Adapters derived from one another (with {@link #command(String, Map)} or {@link #env(Map)}) share an {@link SshPollBatch},
+ * so all of their commands on the machine are run in one ssh execution each period; set the {@code batched} flag
+ * to false to run this adapter's command on its own.
  */
 public class SshSensorAdapter extends AbstractSensorAdapter {
 
@@ -24,16 +28,23 @@ public class SshSensorAdapter extends AbstractSensorAdapter {
 	Map env
 	@SetFromFlag
 	String command
+	/** whether to poll in one ssh execution with other commands on the machine; default true */
+	@SetFromFlag
+	Boolean batched
 
 	protected final SshPollHelper poller = new SshPollHelper(this)
 	protected final SshMachineLocation location;
+	protected SshPollBatch batch
 
 	public SshSensorAdapter(Map flags=[:], SshMachineLocation location) {
 		super(flags)
 		this.location = Preconditions.checkNotNull(location, "location")
         if (!env) env = [:]
+        batch = new SshPollBatch(location, pollPeriod)
     }
 
+    public boolean isBatched() { batched != null ? batched : true }
+
 	protected boolean isConnected() { isActivated() && poller != null && poller.getLastWasSuccessful() }
 
     /** returns a new adapter, registered, with the given command and optional additional environment */
@@ -42,6 +53,7 @@ public class SshSensorAdapter extends AbstractSensorAdapter {
         def newAdapter = new SshSensorAdapter(newFlags, location)
         newAdapter.command = Preconditions.checkNotNull(command, "command")
         newAdapter.env << cmdEnv
+        newAdapter.batch = batch
         if (registry) return registry.register(newAdapter);
         return newAdapter;
     }
@@ -51,6 +63,7 @@ public class SshSensorAdapter extends AbstractSensorAdapter {
         def newFlags = FlagUtils.getFieldsWithValues(this)
         def newAdapter = new SshSensorAdapter(newFlags, location)
         newAdapter.env << cmdEnv
+        newAdapter.batch = batch
         if (registry) return registry.register(newAdapter)
         return newAdapter;
     }
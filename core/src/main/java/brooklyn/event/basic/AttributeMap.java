@@ -14,10 +14,10 @@ import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.AttributeSensor;
 
-import com.google.common.collect.Maps;
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
@@ -30,11 +30,16 @@ public final class AttributeMap implements Serializable {
 
     final EntityLocal entity;
 
+    private static final Joiner dots = Joiner.on('.');
+
     /**
-     * The values are stored as nested maps, with the key being the constituent parts of the sensor.
+     * The values are keyed by the sensor name (i.e. the constituent parts of the sensor joined with '.').
+     * <p>
+     * Sensor names are interned by {@link BasicSensor}, and strings cache their hash code, so the common
+     * lookups by {@link AttributeSensor} neither re-hash nor compare a list of strings.
      */
-    // Note that we synchronize on the top-level map, to handle concurrent updates and and gets (ENGR-2111)
-    private final ConcurrentMap<Collection<String>, Object> values = new ConcurrentHashMap<Collection<String>, Object>();
+    // Note that we use a concurrent map, to handle concurrent updates and and gets (ENGR-2111)
+    private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<String, Object>();
 
     /**
      * Creates a new AttributeMap.
@@ -48,8 +53,8 @@ public final class AttributeMap implements Serializable {
 
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
-        for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
-            String sensorName = Joiner.on('.').join(entry.getKey());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String sensorName = entry.getKey();
             Object val = (isNull(entry.getValue())) ? null : entry.getValue();
             result.put(sensorName, val);
         }
@@ -66,17 +71,19 @@ public final class AttributeMap implements Serializable {
      */
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
     public <T> T update(Collection<String> path, T newValue) {
-        checkPath(path);
+        return update(toKey(path), newValue);
+    }
 
+    private <T> T update(String key, T newValue) {
         if (newValue == null) {
             newValue = typedNull();
         }
 
         if (log.isTraceEnabled()) {
-            log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
+            log.trace("setting sensor {}={} for {}", new Object[] {key, newValue, entity});
         }
 
-        T oldValue = (T) values.put(path, newValue);
+        T oldValue = (T) values.put(key, newValue);
         return (isNull(oldValue)) ? null : oldValue;
     }
 
@@ -85,6 +92,11 @@ public final class AttributeMap implements Serializable {
         Preconditions.checkArgument(!path.isEmpty(), "path can't be empty");
     }
 
+    private String toKey(Collection<String> path) {
+        checkPath(path);
+        return dots.join(path);
+    }
+
     public <T> T update(AttributeSensor<T> attribute, T newValue) {
         T oldValue = updateWithoutPublishing(attribute, newValue);
         ((AbstractEntity)entity).emitInternal(attribute, newValue);
@@ -101,7 +113,7 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
+        T oldValue = (T) update(attribute.getName(), newValue);
         
         return (isNull(oldValue)) ? null : oldValue;
     }
@@ -111,18 +123,18 @@ public final class AttributeMap implements Serializable {
             log.debug("removing attribute {} on {}", attribute.getName(), entity);
         }
 
-        remove(attribute.getNameParts());
+        values.remove(attribute.getName());
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
     public void remove(Collection<String> path) {
-        checkPath(path);
+        String key = toKey(path);
 
         if (log.isTraceEnabled()) {
-            log.trace("removing sensor {} for {}", new Object[] {path, entity});
+            log.trace("removing sensor {} for {}", new Object[] {key, entity});
         }
 
-        values.remove(path);
+        values.remove(key);
     }
 
     /**
@@ -136,13 +148,13 @@ public final class AttributeMap implements Serializable {
         // TODO previously this would return a map of the sub-tree if the path matched a prefix of a group of sensors, 
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
-        checkPath(path);
-        Object result = values.get(path);
+        Object result = values.get(toKey(path));
         return (isNull(result)) ? null : result;
     }
 
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) getValue(sensor.getNameParts());
+        Object result = values.get(sensor.getName());
+        return (isNull(result)) ? null : (T) result;
     }
 
     @SuppressWarnings("unchecked")
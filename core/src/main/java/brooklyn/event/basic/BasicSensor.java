@@ -39,7 +39,8 @@ public class BasicSensor<T> implements Sensor<T> {
     
     public BasicSensor(Class<T> type, String name, String description) {
         this.type = checkNotNull(type, "type");
-        this.name = checkNotNull(name, "name");
+        // interned so that lookups by name (e.g. in AttributeMap) usually succeed on the identity check
+        this.name = checkNotNull(name, "name").intern();
         this.description = description;
     }
 
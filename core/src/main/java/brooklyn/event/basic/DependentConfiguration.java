@@ -67,7 +67,7 @@ public class DependentConfiguration {
      */
     public static <T> Task<T> attributeWhenReady(final Entity source, final AttributeSensor<T> sensor, final Predicate<? super T> ready) {
         return new BasicTask<T>(
-                MutableMap.of("tag", "attributeWhenReady", "displayName", "retrieving "+source+" "+sensor), 
+                MutableMap.of("tag", "attributeWhenReady", BasicTask.BLOCKING_FLAG, true, "displayName", "retrieving "+source+" "+sensor), 
                 new Callable<T>() {
                     public T call() {
                         return waitInTaskForAttributeReady(source, sensor, ready);
@@ -103,7 +103,7 @@ public class DependentConfiguration {
 
     public static <T,V> Task<V> attributePostProcessedWhenReady(final Entity source, final AttributeSensor<T> sensor, final Predicate<? super T> ready, final Function<? super T,V> postProcess) {
         return new BasicTask<V>(
-                MutableMap.of("tag", "attributePostProcessedWhenReady", "displayName", "retrieving "+source+" "+sensor), 
+                MutableMap.of("tag", "attributePostProcessedWhenReady", BasicTask.BLOCKING_FLAG, true, "displayName", "retrieving "+source+" "+sensor), 
                 new Callable<V>() {
                     public V call() {
                         T result = waitInTaskForAttributeReady(source, sensor, ready);
@@ -153,7 +153,7 @@ public class DependentConfiguration {
      * Returns a {@link Task} which blocks until the given job returns, then returns the value of that job.
      */
     public static <T> Task<T> whenDone(Callable<T> job) {
-        return new BasicTask<T>(MutableMap.of("tag", "whenDone", "displayName", "waiting for job"), job);
+        return new BasicTask<T>(MutableMap.of("tag", "whenDone", BasicTask.BLOCKING_FLAG, true, "displayName", "waiting for job"), job);
     }
 
     /**
@@ -166,7 +166,7 @@ public class DependentConfiguration {
      * the value that is used for the configuration
      */
     public static <U,T> Task<T> transform(final Task<U> task, final Function<U,T> transformer) {
-        return new BasicTask<T>(new Callable<T>() {
+        return new BasicTask<T>(MutableMap.of(BasicTask.BLOCKING_FLAG, true, "displayName", "transforming "+task), new Callable<T>() {
             public T call() throws Exception {
                 if (!task.isSubmitted()) {
                     BasicExecutionContext.getCurrentExecutionContext().submit(task);
@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.jclouds.util.Throwables2;
 import org.slf4j.Logger;
@@ -97,6 +98,20 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     @SetFromFlag
     transient WithMutexes mutexSupport;
     
+    /** 
+     * how many commands and file transfers may run concurrently on one ssh connection, each on its own channel
+     * (default {@value #DEFAULT_MAX_CHANNELS_PER_CONNECTION}; keep below the server's limit, e.g. sshd's MaxSessions)
+     */
+    @SetFromFlag("sshMaxChannelsPerConnection")
+    Integer maxChannelsPerConnection;
+    
+    /** how long (in milliseconds) an unused ssh connection is kept open (default {@value #DEFAULT_MAX_IDLE_CONNECTION_TIME_MILLIS}) */
+    @SetFromFlag("sshMaxIdleConnectionTime")
+    Long maxIdleConnectionTimeMillis;
+    
+    public static final int DEFAULT_MAX_CHANNELS_PER_CONNECTION = 8;
+    public static final long DEFAULT_MAX_IDLE_CONNECTION_TIME_MILLIS = 5*60*1000;
+    
     /** any property that should be passed as ssh config (connection-time) 
      *  can be prefixed with this and . and will be passed through (with the prefix removed),
      *  e.g. (SSHCONFIG_PREFIX+"."+"StrictHostKeyChecking"):"yes" */
@@ -112,6 +127,10 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
             "keyFiles", "publicKey", "privateKey");
     //TODO remove once everything is prefixed SSHCONFIG_PREFIX or included above
     public static final Collection<String> NON_SSH_PROPS = ImmutableSet.of("latitude", "longitude", "backup", "sshPublicKeyData", "sshPrivateKeyData");
+    /** properties which only affect a single command or transfer, so can be used on a pooled connection */
+    private static final Collection<String> NON_CONNECTION_PROPS = ImmutableSet.of(
+            "noStdoutLogging", "noStderrLogging", "logPrefix", "out", "err", "env", "permissions", 
+            "lastModificationDate", "lastAccessDate");
     
     private final Set<Integer> ports = Sets.newLinkedHashSet();
 
@@ -143,6 +162,9 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
                             }
                             return null;
                         }})
+                .maxLeasesPerObject(maxChannelsPerConnection != null ? maxChannelsPerConnection : DEFAULT_MAX_CHANNELS_PER_CONNECTION)
+                .maxIdleTime(maxIdleConnectionTimeMillis != null ? maxIdleConnectionTimeMillis : DEFAULT_MAX_IDLE_CONNECTION_TIME_MILLIS, 
+                        TimeUnit.MILLISECONDS)
                 .build();
     }
 
@@ -239,8 +261,12 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     }
 
     
+    /**
+     * Runs the task with an ssh connection: shared (on its own channel) with other tasks and reused, 
+     * unless the props need a connection of their own (e.g. a different password).
+     */
     protected <T> T execSsh(Map props, Function<SshTool,T> task) {
-        if (props.isEmpty()) {
+        if (NON_CONNECTION_PROPS.containsAll(props.keySet())) {
             return vanillaSshToolPool.exec(task);
         } else {
             SshTool ssh = connectSsh(props);
@@ -71,9 +71,11 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      * interface:
      * <ul>
      * <li>subscriberExecutionManagerTag - a tag to pass to execution manager (without setting any execution semantics / TaskPreprocessor);
-     *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
+     *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with MailboxScheduler
      *      (supply this flag with value null to prevent any task preprocessor from being set)
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
+     * <li>latestValueOnly - where the manager batches delivery, a boolean indicating whether an attribute event which has not yet
+     *      been delivered may be replaced by a newer value from the same entity for the same sensor
      * </ul>
      * 
      * @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener)
@@ -0,0 +1,162 @@
+package brooklyn.management.internal;
+
+import static brooklyn.util.JavaGroovyEquivalents.mapOf;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.management.ExecutionManager;
+
+import com.google.common.base.Objects;
+
+/**
+ * Queue of events waiting to be delivered to the subscriptions of one subscriber, used by
+ * {@link LocalSubscriptionManager} in batch-delivery mode.
+ * <p>
+ * Rather than one task per event, a single task (with the subscriber's execution manager tag, so still subject
+ * to its {@link brooklyn.util.task.TaskScheduler}) drains the queue, delivering events in the order they were
+ * published. For subscriptions with {@link Subscription#latestValueOnly} set, an attribute event which has not
+ * yet been delivered is dropped when a newer event from the same producer for the same sensor is published, so a slow
+ * subscriber sees the latest value rather than a growing backlog. The newer event goes to the back of the queue,
+ * so is still delivered after events published before it.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+class BatchingDeliveryQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingDeliveryQueue.class);
+
+    /** maximum number of events delivered by one task before it yields its thread (and resubmits itself) */
+    static final int MAX_BATCH_SIZE = 100;
+
+    /** marks a pending delivery which has been taken off the queue, or dropped in favour of a newer one */
+    private static final Object TAKEN = new Object();
+
+    private final ExecutionManager em;
+    private final Object subscriberTag;
+    private final AtomicLong deliveredCount;
+    private final AtomicLong conflatedCount;
+
+    private final Queue<PendingDelivery> queue = new ConcurrentLinkedQueue<PendingDelivery>();
+    private final ConcurrentMap<ConflationKey, PendingDelivery> conflatable = new ConcurrentHashMap<ConflationKey, PendingDelivery>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drain();
+        }
+    };
+
+    BatchingDeliveryQueue(ExecutionManager em, Object subscriberTag, AtomicLong deliveredCount, AtomicLong conflatedCount) {
+        this.em = em;
+        this.subscriberTag = subscriberTag;
+        this.deliveredCount = deliveredCount;
+        this.conflatedCount = conflatedCount;
+    }
+
+    public void add(Subscription s, SensorEvent event, boolean latestValueOnly) {
+        if (latestValueOnly) {
+            ConflationKey key = new ConflationKey(s, event.getSource(), event.getSensor());
+            PendingDelivery pending = new PendingDelivery(s, event, key);
+            while (true) {
+                PendingDelivery existing = conflatable.get(key);
+                if (existing == null) {
+                    if (conflatable.putIfAbsent(key, pending) == null) break;
+                } else if (conflatable.replace(key, existing, pending)) {
+                    // drop the older event, unless it is already being delivered
+                    if (existing.event.getAndSet(TAKEN) != TAKEN) conflatedCount.incrementAndGet();
+                    break;
+                }
+            }
+            queue.add(pending);
+        } else {
+            queue.add(new PendingDelivery(s, event, null));
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (scheduled.compareAndSet(false, true)) {
+            em.submit(mapOf("tag", subscriberTag), drainer);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                PendingDelivery next = queue.poll();
+                if (next == null) break;
+                if (next.key != null) conflatable.remove(next.key, next);
+                Object taken = next.event.getAndSet(TAKEN);
+                // dropped in favour of a newer event, further back in the queue
+                if (taken == TAKEN) continue;
+                SensorEvent event = (SensorEvent) taken;
+                try {
+                    next.subscription.listener.onEvent(event);
+                    deliveredCount.incrementAndGet();
+                } catch (Exception e) {
+                    LOG.warn("Error delivering "+event+" to "+next.subscription+" (continuing): "+e, e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // a publisher may have seen us as scheduled just before we stopped; if so it is up to us to reschedule
+        if (!queue.isEmpty()) scheduleDrain();
+    }
+
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingDeliveryQueue["+subscriberTag+"]";
+    }
+
+    private static class PendingDelivery {
+        final Subscription subscription;
+        /** the event to deliver, or {@link #TAKEN} once delivery has started */
+        final AtomicReference<Object> event;
+        final ConflationKey key;
+
+        PendingDelivery(Subscription subscription, SensorEvent event, ConflationKey key) {
+            this.subscription = subscription;
+            this.event = new AtomicReference<Object>(event);
+            this.key = key;
+        }
+    }
+
+    private static class ConflationKey {
+        final Subscription subscription;
+        final Entity producer;
+        final Sensor sensor;
+
+        ConflationKey(Subscription subscription, Entity producer, Sensor sensor) {
+            this.subscription = subscription;
+            this.producer = producer;
+            this.sensor = sensor;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(subscription, producer, sensor);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof ConflationKey)) return false;
+            ConflationKey o = (ConflationKey) obj;
+            return Objects.equal(subscription, o.subscription) && Objects.equal(producer, o.producer) && Objects.equal(sensor, o.sensor);
+        }
+    }
+}
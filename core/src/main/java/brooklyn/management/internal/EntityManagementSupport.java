@@ -12,6 +12,8 @@ import brooklyn.management.ExecutionContext;
 import brooklyn.management.ManagementContext;
 import brooklyn.management.SubscriptionContext;
 import brooklyn.management.internal.NonDeploymentManagementContext.NonDeploymentManagementContextMode;
+import brooklyn.policy.Policy;
+import brooklyn.policy.basic.AbstractPolicy;
 
 import com.google.common.base.Throwables;
 
@@ -150,6 +152,10 @@ public class EntityManagementSupport {
         synchronized (this) {
             nonDeploymentManagementContext = null;
         }
+        
+        for (Policy policy : entity.getPolicies()) {
+            if (policy instanceof AbstractPolicy) ((AbstractPolicy) policy).onManagementStarted();
+        }
     }
     
     public void onManagementStopping(ManagementTransitionInfo info) {
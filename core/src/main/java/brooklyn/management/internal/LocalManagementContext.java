@@ -22,6 +22,7 @@ import brooklyn.management.ManagementContext;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.management.Task;
 import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.ExecutorStrategy;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.collect.Maps;
@@ -108,14 +109,14 @@ public class LocalManagementContext extends AbstractManagementContext {
     
     public synchronized  SubscriptionManager getSubscriptionManager() {
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = new LocalSubscriptionManager(getExecutionManager(), getConfig());
         }
         return subscriptions;
     }
 
     public synchronized ExecutionManager getExecutionManager() {
         if (execution == null) {
-            execution = new BasicExecutionManager();
+            execution = new BasicExecutionManager(ExecutorStrategy.Factory.newInstance(getConfig()));
         }
         return execution;
     }
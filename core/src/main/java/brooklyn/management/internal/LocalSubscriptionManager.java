@@ -6,7 +6,6 @@ import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -16,7 +15,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.StringConfigMap;
 import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
@@ -25,7 +26,7 @@ import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.util.internal.LanguageUtils;
 import brooklyn.util.task.BasicExecutionManager;
-import brooklyn.util.task.SingleThreadedScheduler;
+import brooklyn.util.task.MailboxScheduler;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.Predicate;
@@ -48,11 +49,43 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
-    @SuppressWarnings("rawtypes")
-    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** read without locking when publishing; updated only while synchronized on this */
+    private final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+    
+    /** property for {@link #LocalSubscriptionManager(ExecutionManager, StringConfigMap)} to enable batched delivery */
+    public static final String BATCH_DELIVERY_PROPERTY = "brooklyn.subscriptions.batchDelivery";
+    
+    /** property for {@link #LocalSubscriptionManager(ExecutionManager, StringConfigMap)} which makes "latestValueOnly"
+     * the default for all subscriptions to attribute sensors (when batching) */
+    public static final String LATEST_VALUE_ONLY_PROPERTY = "brooklyn.subscriptions.latestValueOnly";
+    
+    private final boolean batchDelivery;
+    private final boolean latestValueOnlyByDefault;
+    private final AtomicLong totalEventsConflatedCount = new AtomicLong();
+    /** in batch-delivery mode, the events waiting for each subscriber tag */
+    private final ConcurrentMap<Object, BatchingDeliveryQueue> deliveryQueues = new ConcurrentHashMap<Object, BatchingDeliveryQueue>();
+    /** the number of subscriptions with each subscriber tag (supplied or not), so its delivery queue can be removed with the last;
+     * updated only while synchronized on this */
+    private final ConcurrentMap<Object, Integer> subscriptionCountsByTag = new ConcurrentHashMap<Object, Integer>();
     
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, false, false);
+    }
+    
+    public LocalSubscriptionManager(ExecutionManager m, StringConfigMap config) {
+        this(m, Boolean.parseBoolean(config.getFirst(BATCH_DELIVERY_PROPERTY)), Boolean.parseBoolean(config.getFirst(LATEST_VALUE_ONLY_PROPERTY)));
+    }
+    
+    /**
+     * @param batchDelivery whether events for a subscriber should be queued and delivered by a single task which drains the queue,
+     *        rather than by one task per event
+     * @param latestValueOnlyByDefault whether, when batching, an undelivered attribute event should by default be replaced
+     *        by a newer one from the same entity for the same sensor (can be overridden per subscription with the "latestValueOnly" flag)
+     */
+    public LocalSubscriptionManager(ExecutionManager m, boolean batchDelivery, boolean latestValueOnlyByDefault) {
         this.em = m;
+        this.batchDelivery = batchDelivery;
+        this.latestValueOnlyByDefault = latestValueOnlyByDefault;
     }
         
     public long getNumSubscriptions() {
@@ -67,6 +100,20 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return totalEventsDeliveredCount.get();
     }
     
+    /** number of events not delivered because a newer value replaced them, for "latestValueOnly" subscriptions */
+    public long getTotalEventsConflated() {
+        return totalEventsConflatedCount.get();
+    }
+    
+    public boolean isBatchDelivery() {
+        return batchDelivery;
+    }
+    
+    /** the number of subscriber tags with a delivery queue, in batch-delivery mode */
+    int getNumDeliveryQueues() {
+        return deliveryQueues.size();
+    }
+    
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
         Entity producer = s.producer;
@@ -83,16 +130,21 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        s.latestValueOnly = flags.containsKey("latestValueOnly") ? groovyTruth(flags.remove("latestValueOnly")) : latestValueOnlyByDefault;
         s.flags = flags;
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
         allSubscriptions.put(s.id, s);
-        LanguageUtils.addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        subscriptionIndex.add(s);
         if (s.subscriber!=null) {
             LanguageUtils.addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
+        if (s.subscriberExecutionManagerTag!=null) {
+            Integer count = subscriptionCountsByTag.get(s.subscriberExecutionManagerTag);
+            subscriptionCountsByTag.put(s.subscriberExecutionManagerTag, (count == null) ? 1 : count+1);
+        }
         if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, MailboxScheduler.class);
         }
         return s;
     }
@@ -102,13 +154,9 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
-        Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
-        return subscriptions;
+    @SuppressWarnings("unchecked")
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        return (Set<SubscriptionHandle>) ((Set<?>) subscriptionIndex.getMatching(source, sensor));
     }
 
     /**
@@ -121,7 +169,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = LanguageUtils.removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = subscriptionIndex.remove(s);
         assert result==b2;
         if (s.subscriber!=null) {
             boolean b3 = LanguageUtils.removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
@@ -131,12 +179,23 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         // TODO Requires code review: why did we previously do exactly same check twice in a row (with no synchronization in between)? 
         if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber))) && !s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
             //if subscriber has gone away forget about his task; but check in synch block to ensure setTaskPreprocessor call above will win in any race
-            if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber))))
+            if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber)))) {
                 ((BasicExecutionManager)em).clearTaskPreprocessorForTag(s.subscriberExecutionManagerTag);
+            }
+        }
+        if (result && s.subscriberExecutionManagerTag!=null) {
+            Integer count = subscriptionCountsByTag.get(s.subscriberExecutionManagerTag);
+            if (count == null || count <= 1) {
+                subscriptionCountsByTag.remove(s.subscriberExecutionManagerTag);
+                // last subscription with this tag; any events still queued are delivered by the queue's own task
+                deliveryQueues.remove(s.subscriberExecutionManagerTag);
+            } else {
+                subscriptionCountsByTag.put(s.subscriberExecutionManagerTag, count-1);
+            }
         }
 
 		//FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, MailboxScheduler.class);
         return result;
     }
 
@@ -146,23 +205,38 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         
         // delivery in parallel/background, using execution manager
         
-        // subscriptions, should define SingleThreadedScheduler for any subscriber ID tag
+        // subscriptions, should define MailboxScheduler (or SingleThreadedScheduler) for any subscriber ID tag
         // in order to ensure callbacks are invoked in the order they are submitted
         // (recommend exactly one per subscription to prevent deadlock)
         // this is done with:
-        // em.setTaskSchedulerForTag(subscriberId, SingleThreadedScheduler.class);
+        // em.setTaskSchedulerForTag(subscriberId, MailboxScheduler.class);
         
         //note, generating the notifications must be done in the calling thread to preserve order
         //e.g. emit(A); emit(B); should cause onEvent(A); onEvent(B) in that order
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
-            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
-            for (Subscription s : subs) {
-                if (s.eventFilter!=null && !s.eventFilter.apply(event))
-                    continue;
+        //look in each bucket of the index directly, rather than building a combined set, to avoid locking or copying;
+        //a subscription is only ever in one bucket so there is no risk of duplicate delivery
+        Entity source = event.getSource();
+        Sensor<T> sensor = event.getSensor();
+        deliver(subscriptionIndex.getBucket(source, sensor), event);
+        if (source != null) deliver(subscriptionIndex.getBucket(null, sensor), event);
+        if (sensor != null) deliver(subscriptionIndex.getBucket(source, null), event);
+        if (source != null && sensor != null) deliver(subscriptionIndex.getBucket(null, null), event);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <T> void deliver(Set<Subscription> subs, final SensorEvent<T> event) {
+        if (subs.isEmpty()) return;
+        if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
+        for (Subscription s : subs) {
+            if (s.eventFilter!=null && !s.eventFilter.apply(event))
+                continue;
+            if (batchDelivery && s.subscriberExecutionManagerTag!=null) {
+                // counted as delivered when the queue delivers it
+                getDeliveryQueue(s.subscriberExecutionManagerTag).add(s, event, s.latestValueOnly && event.getSensor() instanceof AttributeSensor);
+            } else {
                 final Subscription sAtClosureCreation = s;
                 em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
                     public void run() {
@@ -173,6 +247,20 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         }
     }
     
+    private BatchingDeliveryQueue getDeliveryQueue(Object subscriberTag) {
+        BatchingDeliveryQueue result = deliveryQueues.get(subscriberTag);
+        if (result == null) {
+            BatchingDeliveryQueue newQueue = new BatchingDeliveryQueue(em, subscriberTag, totalEventsDeliveredCount, totalEventsConflatedCount);
+            result = deliveryQueues.putIfAbsent(subscriberTag, newQueue);
+            if (result == null) {
+                result = newQueue;
+                // publishing raced with the last unsubscribe for this tag; still deliver, but don't keep the queue
+                if (!subscriptionCountsByTag.containsKey(subscriberTag)) deliveryQueues.remove(subscriberTag, newQueue);
+            }
+        }
+        return result;
+    }
+    
     @Override
     public String toString() {
         return tostring;
@@ -23,6 +23,8 @@ class Subscription<T> implements SubscriptionHandle {
     public SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** whether, when batching delivery, an undelivered attribute event may be replaced by a newer one */
+    public boolean latestValueOnly;
 
     public Subscription() {
     }
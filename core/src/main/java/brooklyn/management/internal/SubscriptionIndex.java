@@ -0,0 +1,98 @@
+package brooklyn.management.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.Sensor;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Index of {@link Subscription}s by producer and then by sensor, where a null producer or sensor
+ * (i.e. a wildcard subscription) is held under its own bucket.
+ * <p>
+ * Buckets are immutable sets, replaced wholesale on change (copy-on-write), so readers need no lock
+ * and do not allocate: {@link #getBucket(Entity, Sensor)} is two map lookups. Writers must be
+ * serialised by the caller (e.g. by synchronizing on the subscription manager); each change is visible
+ * to all readers as soon as the mutating method returns.
+ */
+@SuppressWarnings("rawtypes")
+class SubscriptionIndex {
+
+    /** map key standing in for a null producer or sensor, which ConcurrentHashMap does not allow */
+    private static final Object WILDCARD = new Object() {
+        @Override public String toString() { return "*"; }
+    };
+
+    private final ConcurrentMap<Object, ConcurrentMap<Object, Set<Subscription>>> byProducer =
+            new ConcurrentHashMap<Object, ConcurrentMap<Object, Set<Subscription>>>();
+
+    private static Object key(Object producerOrSensor) {
+        return (producerOrSensor != null) ? producerOrSensor : WILDCARD;
+    }
+
+    /** adds the subscription; caller must hold the write lock */
+    public void add(Subscription s) {
+        Object producerKey = key(s.producer);
+        ConcurrentMap<Object, Set<Subscription>> bySensor = byProducer.get(producerKey);
+        if (bySensor == null) {
+            bySensor = new ConcurrentHashMap<Object, Set<Subscription>>();
+            byProducer.put(producerKey, bySensor);
+        }
+        Object sensorKey = key(s.sensor);
+        Set<Subscription> old = bySensor.get(sensorKey);
+        if (old == null) {
+            bySensor.put(sensorKey, ImmutableSet.<Subscription>of(s));
+        } else {
+            bySensor.put(sensorKey, ImmutableSet.<Subscription>builder().addAll(old).add(s).build());
+        }
+    }
+
+    /** removes the subscription, returning whether it was present; caller must hold the write lock */
+    public boolean remove(Subscription s) {
+        Object producerKey = key(s.producer);
+        ConcurrentMap<Object, Set<Subscription>> bySensor = byProducer.get(producerKey);
+        if (bySensor == null) return false;
+        Object sensorKey = key(s.sensor);
+        Set<Subscription> old = bySensor.get(sensorKey);
+        if (old == null || !old.contains(s)) return false;
+
+        if (old.size() == 1) {
+            bySensor.remove(sensorKey);
+            if (bySensor.isEmpty()) byProducer.remove(producerKey);
+        } else {
+            Set<Subscription> replacement = new LinkedHashSet<Subscription>(old);
+            replacement.remove(s);
+            bySensor.put(sensorKey, ImmutableSet.copyOf(replacement));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the subscriptions registered for exactly the given producer and sensor, where null means
+     * the wildcard bucket for that dimension; never null. Does not take any lock or allocate.
+     * <p>
+     * An event from producer P for sensor S matches the four buckets (P,S), (null,S), (P,null) and (null,null);
+     * each subscription is in exactly one bucket.
+     */
+    public Set<Subscription> getBucket(Entity producer, Sensor<?> sensor) {
+        ConcurrentMap<Object, Set<Subscription>> bySensor = byProducer.get(key(producer));
+        if (bySensor == null) return Collections.emptySet();
+        Set<Subscription> result = bySensor.get(key(sensor));
+        return (result != null) ? result : Collections.<Subscription>emptySet();
+    }
+
+    /** all subscriptions matching an event from the given producer and sensor, in a new set */
+    public Set<Subscription> getMatching(Entity producer, Sensor<?> sensor) {
+        Set<Subscription> result = new LinkedHashSet<Subscription>();
+        result.addAll(getBucket(producer, sensor));
+        if (producer != null) result.addAll(getBucket(null, sensor));
+        if (sensor != null) result.addAll(getBucket(producer, null));
+        if (producer != null && sensor != null) result.addAll(getBucket(null, null));
+        return result;
+    }
+}
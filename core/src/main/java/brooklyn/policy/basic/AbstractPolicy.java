@@ -3,7 +3,9 @@ package brooklyn.policy.basic;
 import static brooklyn.util.GroovyJavaMethods.truth;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -33,6 +35,9 @@ public abstract class AbstractPolicy extends AbstractEntityAdjunct implements Po
 
     protected transient ExecutionContext execution;
 
+    /** schedulers of this policy's evaluations, which may have requests to submit once the entity is managed */
+    private final List<PolicyEvaluationScheduler> evaluationSchedulers = new CopyOnWriteArrayList<PolicyEvaluationScheduler>();
+
     public AbstractPolicy() {
         this(Collections.emptyMap());
     }
@@ -66,6 +71,20 @@ public abstract class AbstractPolicy extends AbstractEntityAdjunct implements Po
         }
     }
     
+    void addEvaluationScheduler(PolicyEvaluationScheduler scheduler) {
+        evaluationSchedulers.add(scheduler);
+    }
+
+    /**
+     * Invoked when the entity has become managed (so tasks can now be submitted on its behalf), for anything requested
+     * before then, e.g. an evaluation by a {@link PolicyEvaluationScheduler}.
+     */
+    public void onManagementStarted() {
+        for (PolicyEvaluationScheduler scheduler : evaluationSchedulers) {
+            scheduler.onManagementStarted();
+        }
+    }
+
     public void suspend() {
         suspended.set(true);
     }
@@ -0,0 +1,240 @@
+package brooklyn.policy.basic;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.BasicTask;
+import brooklyn.util.task.MailboxScheduler;
+import brooklyn.util.task.ScheduledTask;
+
+import com.google.common.base.Objects;
+
+/**
+ * Runs a policy's evaluation (e.g. an auto-scaler's resize check, or a rebalance) when requested, debounced:
+ * a request while an evaluation is already queued is coalesced into it, and evaluations are at least
+ * minPeriodBetweenExecs apart.
+ * <p>
+ * Rather than each policy having its own scheduled executor (and so its own thread, idle nearly all the time),
+ * evaluations are submitted as tasks to the management context's {@link ExecutionManager}, whose timer delays them.
+ * They run in its default pool, which may be bounded (see {@link brooklyn.util.task.ExecutorStrategy}), so an
+ * evaluation should only decide what to do; a step which may block, such as a resize, is given to
+ * {@link #submitBlocking(String, Runnable)}. Evaluations and those steps are tagged with this scheduler, which is
+ * given a {@link MailboxScheduler}, so one policy's evaluations and steps still run serially and in order.
+ * <p>
+ * The time each evaluation took, and how long it waited beyond its due time (i.e. for a thread of the pool),
+ * are recorded; see e.g. {@link #getLastEvaluationDuration()} and {@link #getLastQueueTime()}.
+ */
+public class PolicyEvaluationScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PolicyEvaluationScheduler.class);
+
+    private final AbstractPolicy policy;
+    private final Runnable evaluation;
+
+    private final AtomicBoolean queued = new AtomicBoolean(false);
+    /** incremented on {@link #cancel()}, so that evaluations queued before it are discarded */
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile long lastEvaluationTime = 0;
+    private volatile Task<?> pending;
+    private volatile ExecutionManager taggedExecutionManager;
+    /** the minPeriodBetweenExecs of a request made before the entity was managed, to be scheduled once it is; or -1 */
+    private volatile long deferredMinPeriod = -1;
+
+    private final AtomicLong evaluationCount = new AtomicLong();
+    private final AtomicLong totalEvaluationDuration = new AtomicLong();
+    private final AtomicLong totalQueueTime = new AtomicLong();
+    private volatile long lastEvaluationDuration = -1;
+    private volatile long lastQueueTime = -1;
+    private volatile long maxQueueTime = -1;
+
+    public PolicyEvaluationScheduler(AbstractPolicy policy, Runnable evaluation) {
+        this.policy = checkNotNull(policy, "policy");
+        this.evaluation = checkNotNull(evaluation, "evaluation");
+        policy.addEvaluationScheduler(this);
+    }
+
+    /**
+     * Requests an evaluation, at least minPeriodBetweenExecs after the start of the previous one; does nothing if
+     * one is already queued, or if the policy is not running. If the entity is not yet managed, the evaluation is
+     * queued once it is.
+     *
+     * @return whether a new evaluation was queued
+     */
+    public boolean schedule(long minPeriodBetweenExecs) {
+        if (!policy.isRunning()) return false;
+        if (policy.entity == null || !policy.entity.getManagementSupport().isManagementContextReal()) {
+            deferredMinPeriod = minPeriodBetweenExecs;
+            return false;
+        }
+        if (!queued.compareAndSet(false, true)) return false;
+
+        long now = System.currentTimeMillis();
+        long delay = Math.max(0, (lastEvaluationTime + minPeriodBetweenExecs) - now);
+        final long dueTime = now + delay;
+        final int scheduledGeneration = generation.get();
+        try {
+            ExecutionManager executionManager = getExecutionManager();
+            ScheduledTask task = new ScheduledTask(MutableMap.of("delay", delay), new Callable<Task>() {
+                public Task call() {
+                    return new BasicTask<Void>(MutableMap.of("tag", PolicyEvaluationScheduler.this,
+                            "displayName", "evaluating "+policy), new Callable<Void>() {
+                        public Void call() {
+                            evaluate(scheduledGeneration, dueTime);
+                            return null;
+                        }});
+                }});
+            pending = executionManager.submit(task);
+            return true;
+        } catch (RuntimeException e) {
+            queued.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs a step of the current evaluation which may block (e.g. a resize, or moving an item) as a separate
+     * {@link BasicTask#BLOCKING_FLAG blocking} task, so that it does not hold a thread of a bounded pool.
+     * It runs after the current evaluation and before the next; it is skipped if this scheduler is cancelled
+     * or the policy stopped in the meantime. Errors are logged, as well as being recorded in the task.
+     */
+    public Task<?> submitBlocking(final String displayName, final Runnable step) {
+        final int scheduledGeneration = generation.get();
+        return getExecutionManager().submit(MutableMap.of("tag", this, BasicTask.BLOCKING_FLAG, true, "displayName", displayName),
+                new Callable<Void>() {
+                    public Void call() {
+                        if (scheduledGeneration != generation.get() || !policy.isRunning()) return null;
+                        try {
+                            step.run();
+                        } catch (RuntimeException e) {
+                            if (policy.isRunning()) {
+                                LOG.warn("Error "+displayName+" for "+policy+": "+e, e);
+                            } else {
+                                if (LOG.isDebugEnabled()) LOG.debug("Error "+displayName+" for "+policy+", but no longer running: "+e, e);
+                            }
+                            throw e;
+                        }
+                        return null;
+                    }});
+    }
+
+    void onManagementStarted() {
+        long minPeriod = deferredMinPeriod;
+        if (minPeriod >= 0) {
+            deferredMinPeriod = -1;
+            schedule(minPeriod);
+        }
+    }
+
+    /** discards any queued evaluation (e.g. when the policy is suspended) */
+    public void cancel() {
+        deferredMinPeriod = -1;
+        generation.incrementAndGet();
+        Task<?> p = pending;
+        if (p != null) p.cancel(false);
+        pending = null;
+        queued.set(false);
+        synchronized (this) {
+            if (taggedExecutionManager instanceof BasicExecutionManager) {
+                ((BasicExecutionManager) taggedExecutionManager).clearTaskSchedulerForTag(this);
+            }
+            taggedExecutionManager = null;
+        }
+    }
+
+    /** discards any queued evaluation, and allows the next to run immediately (e.g. when the policy is resumed) */
+    public void reset() {
+        cancel();
+        lastEvaluationTime = 0;
+    }
+
+    private void evaluate(int scheduledGeneration, long dueTime) {
+        if (scheduledGeneration != generation.get() || !policy.isRunning()) return;
+
+        long startTime = System.currentTimeMillis();
+        long queueTime = Math.max(0, startTime - dueTime);
+        lastEvaluationTime = startTime;
+        queued.set(false);
+        try {
+            evaluation.run();
+        } finally {
+            long duration = System.currentTimeMillis() - startTime;
+            lastEvaluationDuration = duration;
+            lastQueueTime = queueTime;
+            if (queueTime > maxQueueTime) maxQueueTime = queueTime;
+            totalEvaluationDuration.addAndGet(duration);
+            totalQueueTime.addAndGet(queueTime);
+            evaluationCount.incrementAndGet();
+            if (LOG.isTraceEnabled()) LOG.trace("{} evaluated {} in {}ms, after queueing for {}ms", new Object[] {this, policy, duration, queueTime});
+        }
+    }
+
+    /** the management context's execution manager, with a serial scheduler for this scheduler's tasks */
+    private ExecutionManager getExecutionManager() {
+        ExecutionManager result = policy.getManagementContext().getExecutionManager();
+        if (taggedExecutionManager != result) {
+            synchronized (this) {
+                if (taggedExecutionManager != result) {
+                    if (result instanceof BasicExecutionManager) {
+                        ((BasicExecutionManager) result).setTaskSchedulerForTag(this, MailboxScheduler.class);
+                    } else {
+                        LOG.warn("{} cannot ensure serial evaluation of {}, with execution manager {}", new Object[] {this, policy, result});
+                    }
+                    taggedExecutionManager = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public long getEvaluationCount() {
+        return evaluationCount.get();
+    }
+
+    /** the time (in millis) the last evaluation took, or -1 if none */
+    public long getLastEvaluationDuration() {
+        return lastEvaluationDuration;
+    }
+
+    /** the mean time (in millis) evaluations took, or -1 if none */
+    public double getMeanEvaluationDuration() {
+        long count = evaluationCount.get();
+        return (count == 0) ? -1 : (double) totalEvaluationDuration.get() / count;
+    }
+
+    /** the time (in millis) the last evaluation waited to run after it was due, or -1 if none */
+    public long getLastQueueTime() {
+        return lastQueueTime;
+    }
+
+    /** the mean time (in millis) evaluations waited to run after they were due, or -1 if none */
+    public double getMeanQueueTime() {
+        long count = evaluationCount.get();
+        return (count == 0) ? -1 : (double) totalQueueTime.get() / count;
+    }
+
+    /** the longest time (in millis) an evaluation waited to run after it was due, or -1 if none */
+    public long getMaxQueueTime() {
+        return maxQueueTime;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("policy", policy.getId())
+                .add("evaluations", evaluationCount.get())
+                .add("lastEvaluationDuration", lastEvaluationDuration)
+                .add("lastQueueTime", lastQueueTime)
+                .toString();
+    }
+}
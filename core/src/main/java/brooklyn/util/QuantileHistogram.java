@@ -0,0 +1,206 @@
+package brooklyn.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A histogram of non-negative values from which quantiles (e.g. the 95th percentile) can be estimated, without keeping
+ * the values themselves; in the style of HdrHistogram (and DDSketch), values are counted in logarithmically sized
+ * buckets, so each quantile is accurate to within the given relative accuracy (default 1%) whatever the range of values.
+ * <p>
+ * Histograms with the same accuracy can be {@link #merge(QuantileHistogram) merged} (e.g. across the members of a cluster)
+ * and {@link #subtract(QuantileHistogram) subtracted} (e.g. to drop the oldest part of a time window) exactly.
+ * Negative values are counted as zero.
+ * <p>
+ * Not thread-safe; a histogram published as a sensor value should be a {@link #copy()} which is not then modified.
+ */
+public class QuantileHistogram {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    /** values smaller than this are counted as zero */
+    private static final double MIN_POSITIVE_VALUE = 1e-9;
+
+    private static final int INITIAL_BUCKETS = 32;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    /** counts[i] is the count of bucket (offset+i), of values in (gamma^(offset+i-1), gamma^(offset+i)] */
+    private long[] counts = new long[0];
+    private int offset = 0;
+    private long zeroCount = 0;
+    private long count = 0;
+    private double sum = 0;
+
+    public QuantileHistogram() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public QuantileHistogram(double relativeAccuracy) {
+        checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "relativeAccuracy must be between 0 and 1, exclusive");
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** the exact mean of the values, or NaN if empty */
+    public double getMean() {
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, long valueCount) {
+        if (valueCount <= 0) return;
+        if (value < MIN_POSITIVE_VALUE) {
+            zeroCount += valueCount;
+        } else {
+            int index = indexOf(value);
+            ensureCapacity(index);
+            counts[index - offset] += valueCount;
+        }
+        count += valueCount;
+        sum += value * valueCount;
+    }
+
+    /** adds all the values counted by the other histogram, which must have the same accuracy */
+    public void merge(QuantileHistogram other) {
+        checkCompatible(other);
+        if (other.count == 0) return;
+        int otherMin = other.minIndex();
+        int otherMax = other.maxIndex();
+        if (otherMin <= otherMax) {
+            ensureCapacity(otherMin);
+            ensureCapacity(otherMax);
+            for (int index = otherMin; index <= otherMax; index++) {
+                counts[index - offset] += other.counts[index - other.offset];
+            }
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+    }
+
+    /** removes the values counted by the other histogram, which must have the same accuracy and have been merged into this one */
+    public void subtract(QuantileHistogram other) {
+        checkCompatible(other);
+        if (other.count == 0) return;
+        int otherMin = other.minIndex();
+        int otherMax = other.maxIndex();
+        for (int index = otherMin; index <= otherMax; index++) {
+            long otherCount = other.counts[index - other.offset];
+            if (otherCount == 0) continue;
+            checkArgument(index >= offset && index < offset + counts.length && counts[index - offset] >= otherCount,
+                    "Cannot subtract %s from %s, which does not include it", other, this);
+            counts[index - offset] -= otherCount;
+        }
+        zeroCount -= other.zeroCount;
+        count -= other.count;
+        sum = (count == 0) ? 0 : sum - other.sum;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        zeroCount = 0;
+        count = 0;
+        sum = 0;
+    }
+
+    public QuantileHistogram copy() {
+        QuantileHistogram result = new QuantileHistogram(relativeAccuracy);
+        result.merge(this);
+        return result;
+    }
+
+    /**
+     * An estimate of the given quantile (e.g. 0.95 for the 95th percentile) of the values, within the relative accuracy;
+     * or NaN if empty.
+     */
+    public double getQuantile(double quantile) {
+        checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between 0 and 1");
+        if (count == 0) return Double.NaN;
+        // the (0-based) rank of the value nearest the quantile
+        long rank = Math.round(quantile * (count - 1));
+        long cumulative = zeroCount;
+        if (rank < cumulative) return 0;
+        int max = maxIndex();
+        for (int index = minIndex(); index <= max; index++) {
+            cumulative += counts[index - offset];
+            if (rank < cumulative) return valueOf(index);
+        }
+        return valueOf(max);
+    }
+
+    private int indexOf(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    /** the value representing a bucket, within the relative accuracy of every value in the bucket */
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /** the lowest index of a non-empty bucket, or Integer.MAX_VALUE if none */
+    private int minIndex() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) return offset + i;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /** the highest index of a non-empty bucket, or Integer.MIN_VALUE if none */
+    private int maxIndex() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) return offset + i;
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    private void ensureCapacity(int index) {
+        if (counts.length == 0) {
+            counts = new long[INITIAL_BUCKETS];
+            offset = index - INITIAL_BUCKETS/2;
+        } else if (index < offset) {
+            int newLength = Math.max(counts.length * 2, counts.length + (offset - index));
+            long[] newCounts = new long[newLength];
+            int shift = newLength - counts.length;
+            System.arraycopy(counts, 0, newCounts, shift, counts.length);
+            counts = newCounts;
+            offset -= shift;
+        } else if (index >= offset + counts.length) {
+            int newLength = Math.max(counts.length * 2, index - offset + 1);
+            long[] newCounts = new long[newLength];
+            System.arraycopy(counts, 0, newCounts, 0, counts.length);
+            counts = newCounts;
+        }
+    }
+
+    private void checkCompatible(QuantileHistogram other) {
+        checkArgument(other.relativeAccuracy == relativeAccuracy, "Incompatible histograms: relative accuracy %s and %s",
+                relativeAccuracy, other.relativeAccuracy);
+    }
+
+    @Override
+    public String toString() {
+        if (count == 0) return "QuantileHistogram[count=0]";
+        return "QuantileHistogram[count="+count+", mean="+getMean()+", p50="+getQuantile(0.5)+", p95="+getQuantile(0.95)+
+                ", p99="+getQuantile(0.99)+"]";
+    }
+}
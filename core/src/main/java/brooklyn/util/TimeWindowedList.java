@@ -1,5 +1,7 @@
 package brooklyn.util;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -12,11 +14,14 @@ import com.google.common.collect.ImmutableList;
  * and to keep the given number of out-of-date values.
  * 
  * For example, if we want to 
+ * <p>
+ * Values are held in an {@link ArrayDeque}, so adding and pruning are O(1). For numeric values where allocation
+ * per value matters, see {@link TimeWindowedSamples}.
  * 
  * @author aled
  */
 public class TimeWindowedList<T> {
-    private final LinkedList<TimestampedValue<T>> values = new LinkedList<TimestampedValue<T>>();
+    private final ArrayDeque<TimestampedValue<T>> values = new ArrayDeque<TimestampedValue<T>>();
     private long timePeriod;
     private int minVals = 0;
     private int minExpiredVals = 0;
@@ -38,7 +43,7 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized T getLatestValue() {
-        return (values.isEmpty()) ? null : values.get(values.size()-1).getValue();
+        return (values.isEmpty()) ? null : values.peekLast().getValue();
     }
     
     public List<TimestampedValue<T>> getValues() {
@@ -66,8 +71,11 @@ public class TimeWindowedList<T> {
         }
         
         if (result.size() < minVals) {
-            int minIndex = Math.max(0, values.size()-minVals);
-            return ImmutableList.copyOf(values.subList(minIndex, values.size()));
+            LinkedList<TimestampedValue<T>> mostRecent = new LinkedList<TimestampedValue<T>>();
+            for (Iterator<TimestampedValue<T>> iter = values.descendingIterator(); iter.hasNext() && mostRecent.size() < minVals;) {
+                mostRecent.addFirst(iter.next());
+            }
+            return ImmutableList.copyOf(mostRecent);
         } else {
             return result;
         }
@@ -78,7 +86,7 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized void add(T val, long timestamp) {
-        values.add(values.size(), new TimestampedValue<T>(val, timestamp));
+        values.addLast(new TimestampedValue<T>(val, timestamp));
         pruneValues(timestamp);
     }
     
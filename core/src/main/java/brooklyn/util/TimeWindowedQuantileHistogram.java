@@ -0,0 +1,78 @@
+package brooklyn.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link QuantileHistogram} of the values in a sliding time window (millis), without keeping the values.
+ * <p>
+ * The window is divided into slices, each with a histogram of its values; when a slice moves out of the window its
+ * histogram is subtracted from the running total for the window, and the slice is reused. The window therefore moves
+ * in steps of one slice (i.e. it covers between timePeriod*(slices-1)/slices and timePeriod), and adding a value is O(1).
+ * <p>
+ * Not thread-safe.
+ */
+public class TimeWindowedQuantileHistogram {
+
+    public static final int DEFAULT_SLICES = 6;
+
+    private final long sliceDuration;
+    private final QuantileHistogram[] slices;
+    private final QuantileHistogram total;
+    /** the slice to which values are currently added */
+    private int current = 0;
+    /** the start time of the current slice, or -1 before any values */
+    private long currentSliceStart = -1;
+
+    public TimeWindowedQuantileHistogram(long timePeriod) {
+        this(timePeriod, DEFAULT_SLICES, QuantileHistogram.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public TimeWindowedQuantileHistogram(long timePeriod, int numSlices, double relativeAccuracy) {
+        checkArgument(numSlices > 0, "numSlices must be positive");
+        checkArgument(timePeriod >= numSlices, "timePeriod must be at least one milli per slice");
+        this.sliceDuration = timePeriod / numSlices;
+        this.slices = new QuantileHistogram[numSlices];
+        for (int i = 0; i < numSlices; i++) {
+            slices[i] = new QuantileHistogram(relativeAccuracy);
+        }
+        this.total = new QuantileHistogram(relativeAccuracy);
+    }
+
+    public void add(double value, long timestamp) {
+        advance(timestamp);
+        slices[current].add(value);
+        total.add(value);
+    }
+
+    /**
+     * The histogram of values in the window ending now; this is live (so should be copied if published or kept),
+     * and must not be modified.
+     */
+    public QuantileHistogram getHistogram(long now) {
+        advance(now);
+        return total;
+    }
+
+    /** moves the window on to now, dropping slices which have moved out of it; a time before the current slice is ignored */
+    private void advance(long now) {
+        if (currentSliceStart < 0) {
+            currentSliceStart = now - (now % sliceDuration);
+            return;
+        }
+        long slicesToAdvance = (now - currentSliceStart) / sliceDuration;
+        if (slicesToAdvance <= 0) return;
+        if (slicesToAdvance >= slices.length) {
+            for (QuantileHistogram slice : slices) {
+                slice.clear();
+            }
+            total.clear();
+        } else {
+            for (int i = 0; i < slicesToAdvance; i++) {
+                current = (current + 1) % slices.length;
+                total.subtract(slices[current]);
+                slices[current].clear();
+            }
+        }
+        currentSliceStart += slicesToAdvance * sliceDuration;
+    }
+}
@@ -0,0 +1,218 @@
+package brooklyn.util;
+
+import java.util.Map;
+
+/**
+ * A window of timestamped numeric samples, kept in primitive arrays used as a ring buffer, so that adding a sample
+ * and pruning old ones does not allocate (except to grow the arrays when full, which is amortised O(1)).
+ * <p>
+ * Like {@link TimeWindowedList}, it keeps samples in the given time-period (millis) when {@link #pruneValues(long)} is called,
+ * while keeping at least the given minimum number of values (even if old), and the given number of out-of-date values.
+ * It also keeps running totals over the samples: the {@link #getSum() sum} of the values, and the {@link #getTimeWeightedSum()
+ * time-weighted sum} (each value weighted by the time since its predecessor), so a mean does not walk the window.
+ * <p>
+ * Samples are expected to be added in time order. Not thread-safe: callers must synchronize if it is shared.
+ */
+public class TimeWindowedSamples {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    private final long timePeriod;
+    private final int minVals;
+    private final int minExpiredVals;
+
+    private long[] timestamps;
+    private double[] values;
+    /** index of the oldest sample */
+    private int head = 0;
+    private int size = 0;
+
+    private double sum = 0;
+    private double timeWeightedSum = 0;
+    /** running totals drift as samples are subtracted, so are periodically recomputed from the samples */
+    private int removalsSinceRecompute = 0;
+
+    public TimeWindowedSamples(long timePeriod) {
+        this(timePeriod, 0, 0);
+    }
+
+    public TimeWindowedSamples(long timePeriod, int minVals, int minExpiredVals) {
+        this.timePeriod = timePeriod;
+        this.minVals = minVals;
+        this.minExpiredVals = minExpiredVals;
+        this.timestamps = new long[DEFAULT_INITIAL_CAPACITY];
+        this.values = new double[DEFAULT_INITIAL_CAPACITY];
+    }
+
+    /** takes the same flags as {@link TimeWindowedList#TimeWindowedList(Map)} */
+    public TimeWindowedSamples(Map<String,?> flags) {
+        this(timePeriodFlag(flags),
+                flags.containsKey("minVals") ? ((Number)flags.get("minVals")).intValue() : 0,
+                flags.containsKey("minExpiredVals") ? ((Number)flags.get("minExpiredVals")).intValue() : 0);
+    }
+
+    private static long timePeriodFlag(Map<String,?> flags) {
+        if (!flags.containsKey("timePeriod")) throw new IllegalArgumentException("Must define timePeriod");
+        return ((Number)flags.get("timePeriod")).longValue();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** the timestamp of the i'th sample, oldest first */
+    public long getTimestamp(int i) {
+        return timestamps[index(i)];
+    }
+
+    /** the value of the i'th sample, oldest first */
+    public double getValue(int i) {
+        return values[index(i)];
+    }
+
+    /** the most recent value, or NaN if empty */
+    public double getLatestValue() {
+        return (size == 0) ? Double.NaN : getValue(size-1);
+    }
+
+    /** the most recent timestamp, or -1 if empty */
+    public long getLatestTimestamp() {
+        return (size == 0) ? -1 : getTimestamp(size-1);
+    }
+
+    /** the sum of the values of all samples */
+    public double getSum() {
+        return sum;
+    }
+
+    /** the mean of the values of all samples, or NaN if empty */
+    public double getMean() {
+        return (size == 0) ? Double.NaN : sum / size;
+    }
+
+    /**
+     * The sum of each value (other than the oldest) multiplied by the time since the previous sample,
+     * i.e. the integral over time from the oldest sample, of a value which is taken as valid from its predecessor until its timestamp.
+     */
+    public double getTimeWeightedSum() {
+        return timeWeightedSum;
+    }
+
+    public void add(double value) {
+        add(value, System.currentTimeMillis());
+    }
+
+    public void add(double value, long timestamp) {
+        if (size == timestamps.length) grow();
+        if (size > 0) {
+            timeWeightedSum += (timestamp - getLatestTimestamp()) * value;
+        }
+        int tail = index(size);
+        timestamps[tail] = timestamp;
+        values[tail] = value;
+        size++;
+        sum += value;
+    }
+
+    /** removes the oldest sample, if any */
+    public void removeOldest() {
+        if (size == 0) return;
+        double value = values[head];
+        if (size > 1) {
+            int next = index(1);
+            timeWeightedSum -= (timestamps[next] - timestamps[head]) * values[next];
+        }
+        head = index(1);
+        size--;
+        sum -= value;
+
+        if (size == 0) {
+            head = 0;
+            sum = 0;
+            timeWeightedSum = 0;
+            removalsSinceRecompute = 0;
+        } else if (++removalsSinceRecompute >= timestamps.length) {
+            recomputeTotals();
+        }
+    }
+
+    /** removes the oldest samples, so there are at most the given number */
+    public void pruneToSize(int maxSize) {
+        while (size > Math.max(0, maxSize)) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * Removes samples older than the time-period, subject to the min values and min expired values;
+     * with the same semantics as {@link TimeWindowedList#pruneValues(long)}.
+     */
+    public void pruneValues(long now) {
+        int expiredValsCount = 0;
+        while (expiredValsCount < size && (timePeriod == 0 || getTimestamp(expiredValsCount) < (now-timePeriod))) {
+            expiredValsCount++;
+        }
+        int numToPrune = Math.min(expiredValsCount - minExpiredVals, size - minVals);
+        for (int i = 0; i < numToPrune; i++) {
+            removeOldest();
+        }
+    }
+
+    /**
+     * The index of the first sample in the window of the given sub-period ending now, with the same semantics as
+     * {@link TimeWindowedList#getValuesInWindow(long, long)}: this includes the most recent expired sample if min expired
+     * values is set, and at least min values samples; returns {@link #size()} if there are none.
+     */
+    public int getFirstIndexInWindow(long now, long subTimePeriod) {
+        int firstInWindow = 0;
+        while (firstInWindow < size && getTimestamp(firstInWindow) < (now-subTimePeriod)) {
+            firstInWindow++;
+        }
+        int result = (minExpiredVals > 0 && firstInWindow > 0) ? firstInWindow-1 : firstInWindow;
+        return Math.min(result, Math.max(0, size-minVals));
+    }
+
+    private int index(int i) {
+        int result = head + i;
+        return (result >= timestamps.length) ? result - timestamps.length : result;
+    }
+
+    private void grow() {
+        int newCapacity = timestamps.length * 2;
+        long[] newTimestamps = new long[newCapacity];
+        double[] newValues = new double[newCapacity];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = getTimestamp(i);
+            newValues[i] = getValue(i);
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+
+    private void recomputeTotals() {
+        double newSum = 0;
+        double newTimeWeightedSum = 0;
+        for (int i = 0; i < size; i++) {
+            newSum += getValue(i);
+            if (i > 0) newTimeWeightedSum += (getTimestamp(i) - getTimestamp(i-1)) * getValue(i);
+        }
+        sum = newSum;
+        timeWeightedSum = newTimeWeightedSum;
+        removalsSinceRecompute = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("timePeriod="+timePeriod+", vals=[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) result.append(", ");
+            result.append(getValue(i)).append("@").append(getTimestamp(i));
+        }
+        return result.append("]").toString();
+    }
+}
@@ -0,0 +1,205 @@
+package brooklyn.util.http;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.crypto.SslTrustUtils;
+import brooklyn.util.exceptions.RuntimeInterruptedException;
+
+/**
+ * A shared client for making many small, repeated http(s) requests (e.g. the polls of {@code HttpSensorAdapter}s),
+ * reusing connections rather than paying for TCP and TLS setup on every request.
+ * <p>
+ * This builds on the keep-alive cache of {@link HttpURLConnection}: a connection goes back into that cache only if its
+ * response (or error) stream is read to the end and closed, which this does for every response, including errors.
+ * All https connections share the {@link brooklyn.util.crypto.TrustingSslSocketFactory}, so connections and TLS sessions
+ * are reused across entities (the keep-alive cache is keyed on the socket factory as well as the host).
+ * <p>
+ * The number of concurrent requests to each host:port is capped (by default at the size of the keep-alive cache
+ * for a destination, the {@code http.maxConnections} system property), so polls of many entities on one host
+ * do not open a burst of sockets which then cannot be reused; and every request has connect and read timeouts.
+ */
+public class HttpClientPool {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientPool.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = Integer.getInteger("http.maxConnections", 5);
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10*1000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30*1000;
+
+    private static final HttpClientPool INSTANCE = new HttpClientPool();
+
+    /** the pool shared by all http sensor adapters */
+    public static HttpClientPool getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentMap<String, Semaphore> permitsByHost = new ConcurrentHashMap<String, Semaphore>();
+    private volatile int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong notModifiedCount = new AtomicLong();
+
+    public HttpClientPool() {
+    }
+
+    /** must be set before the first request to a host, to apply to that host */
+    public void setMaxConnectionsPerHost(int val) {
+        checkArgument(val > 0, "maxConnectionsPerHost must be positive");
+        this.maxConnectionsPerHost = val;
+    }
+
+    public void setConnectTimeout(long val, TimeUnit unit) {
+        this.connectTimeoutMillis = (int) unit.toMillis(val);
+    }
+
+    public void setReadTimeout(long val, TimeUnit unit) {
+        this.readTimeoutMillis = (int) unit.toMillis(val);
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** number of requests for which the server said the resource was not modified (http 304) */
+    public long getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * Makes a GET request, reading the response in full (so the connection can be reused).
+     *
+     * @param requestHeaders extra headers to send, e.g. {@code If-None-Match} for a conditional GET
+     * @throws IOException if the request could not be made, or timed out (including waiting for a connection to the host)
+     */
+    public Response get(URL url, Map<String, String> requestHeaders) throws IOException {
+        Semaphore permits = getPermits(url);
+        try {
+            if (!permits.tryAcquire(connectTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("Timeout waiting for one of "+maxConnectionsPerHost+" connections to "+url.getHost()+":"+url.getPort());
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            SslTrustUtils.trustAll(connection);
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setUseCaches(false);
+            for (Map.Entry<String, String> entry : requestHeaders.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+            connection.connect();
+            requestCount.incrementAndGet();
+
+            int responseCode = connection.getResponseCode();
+            Map<String, List<String>> headers = connection.getHeaderFields();
+            byte[] content;
+            if (responseCode >= 400) {
+                // must still be read for the connection to be reused
+                readFully(connection.getErrorStream());
+                content = null;
+            } else {
+                content = readFully(connection.getInputStream());
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) notModifiedCount.incrementAndGet();
+            if (log.isTraceEnabled()) log.trace("http get of {} returned status {}", url, responseCode);
+            return new Response(connection, responseCode, headers, content);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Semaphore getPermits(URL url) {
+        String key = url.getProtocol()+"://"+url.getHost()+":"+(url.getPort() >= 0 ? url.getPort() : url.getDefaultPort());
+        Semaphore result = permitsByHost.get(key);
+        if (result == null) {
+            Semaphore newPermits = new Semaphore(maxConnectionsPerHost);
+            result = permitsByHost.putIfAbsent(key, newPermits);
+            if (result == null) result = newPermits;
+        }
+        return result;
+    }
+
+    private static byte[] readFully(@Nullable InputStream in) throws IOException {
+        if (in == null) return null;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) >= 0) {
+                out.write(buf, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /** a response which has been read in full */
+    public static class Response {
+        private final HttpURLConnection connection;
+        private final int responseCode;
+        private final Map<String, List<String>> headers;
+        private final byte[] content;
+
+        public Response(HttpURLConnection connection, int responseCode, Map<String, List<String>> headers, @Nullable byte[] content) {
+            this.connection = connection;
+            this.responseCode = responseCode;
+            this.headers = (headers != null) ? headers : Collections.<String, List<String>>emptyMap();
+            this.content = content;
+        }
+
+        /** the connection used; already read, so only suitable for inspecting the request and response */
+        public HttpURLConnection getConnection() {
+            return connection;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        /** the first value of the given header (matched case-insensitively), or null */
+        @Nullable
+        public String getHeader(String name) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty()) {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        /** the body, or null for an error response (status 400 or more) or one with no body */
+        @Nullable
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
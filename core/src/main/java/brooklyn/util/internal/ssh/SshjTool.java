@@ -89,8 +89,9 @@ import com.google.common.net.HostAndPort;
  * The implementation is based on a combination of the existing brooklyn SshJschTool,
  * and the jclouds SshjSshClient.
  * <p>
- * Not thread-safe. Use a different SshjTool for each concurrent thread. 
- * If passing from one thread to another, ensure code goes through a synchronized block.
+ * Once connected, commands and file transfers can be run concurrently from several threads: each runs on its
+ * own channel of the one connection (subject to the server's limit on sessions per connection, e.g. sshd's
+ * {@code MaxSessions}, default 10). Connecting and disconnecting are synchronized.
  */
 public class SshjTool implements SshTool {
 
@@ -315,7 +316,7 @@ public class SshjTool implements SshTool {
     }
 
     @Override
-    public void connect() {
+    public synchronized void connect() {
         try {
             if (LOG.isTraceEnabled()) LOG.trace("Connecting SshjTool {} ({})", this, System.identityHashCode(this));
             acquire(sshClientConnection);
@@ -325,13 +326,18 @@ public class SshjTool implements SshTool {
         }
     }
 
+    /** reconnects after a lost connection; a no-op if another thread has already done so */
+    private synchronized void connectIfNecessary() {
+        if (!isConnected()) connect();
+    }
+
     @Override
     public void connect(int maxAttempts) {
         connect(); // FIXME Should callers instead configure sshTries? But that would apply to all ssh attempts
     }
 
     @Override
-    public void disconnect() {
+    public synchronized void disconnect() {
         if (LOG.isTraceEnabled()) LOG.trace("Disconnecting SshjTool {} ({})", this, System.identityHashCode(this));
         try {
             sshClientConnection.clear();
@@ -563,10 +569,14 @@ public class SshjTool implements SshTool {
                 String fullMessage = String.format("%s (attempt %s/%s, in time %s/%s)", 
                         errorMessage, (i+1), sshTries, Time.makeTimeString(stopwatch.elapsedMillis()), 
                         (sshTriesTimeout > 0 ? Time.makeTimeString(sshTriesTimeout) : "unlimited"));
-                try {
-                    disconnect();
-                } catch (Exception e2) {
-                    LOG.warn("<< ("+toString()+") error closing connection: "+e+" / "+e2, e);
+                // Channels (sessions, sftp) on this connection may be in use concurrently by other threads,
+                // so only drop the connection if it is the connection that failed, or it has been lost
+                if (connection == sshClientConnection || !isConnected()) {
+                    try {
+                        disconnect();
+                    } catch (Exception e2) {
+                        LOG.warn("<< ("+toString()+") error closing connection: "+e+" / "+e2, e);
+                    }
                 }
                 if (i + 1 == sshTries) {
                     LOG.warn("<< {}: {}", fullMessage, e.getMessage());
@@ -578,7 +588,7 @@ public class SshjTool implements SshTool {
                     if (LOG.isDebugEnabled()) LOG.debug("<< {}: {}", fullMessage, e.getMessage());
                     backoffForAttempt(i + 1, errorMessage + ": " + e.getMessage());
                     if (connection != sshClientConnection)
-                        connect();
+                        connectIfNecessary();
                     continue;
                 }
             }
@@ -587,28 +597,31 @@ public class SshjTool implements SshTool {
         return null;
     }
 
-    private final SshAction<SFTPClient> sftpConnection = new SshAction<SFTPClient>() {
+    /** a new sftp channel, so that concurrent file transfers on the one connection do not share a channel */
+    private SshAction<SFTPClient> newSftpAction() {
+        return new SshAction<SFTPClient>() {
 
-        private SFTPClient sftp;
+            private SFTPClient sftp;
 
-        @Override
-        public void clear() {
-            closeWhispering(sftp, this);
-            sftp = null;
-        }
+            @Override
+            public void clear() {
+                closeWhispering(sftp, this);
+                sftp = null;
+            }
 
-        @Override
-        public SFTPClient create() throws IOException {
-            checkConnected();
-            sftp = sshClientConnection.ssh.newSFTPClient();
-            return sftp;
-        }
+            @Override
+            public SFTPClient create() throws IOException {
+                checkConnected();
+                sftp = sshClientConnection.ssh.newSFTPClient();
+                return sftp;
+            }
 
-        @Override
-        public String toString() {
-            return "SFTPClient()";
-        }
-    };
+            @Override
+            public String toString() {
+                return "SFTPClient()";
+            }
+        };
+    }
 
     private class GetFileAction implements SshAction<Payload> {
         private final String path;
@@ -626,7 +639,7 @@ public class SshjTool implements SshTool {
 
         @Override
         public Payload create() throws Exception {
-            sftp = acquire(sftpConnection);
+            sftp = acquire(newSftpAction());
             return Payloads.newInputStreamPayload(new CloseFtpChannelOnCloseInputStream(
                     sftp.getSFTPEngine().open(path).getInputStream(), sftp));
         }
@@ -669,7 +682,7 @@ public class SshjTool implements SshTool {
 
         @Override
         public Void create() throws Exception {
-            sftp = acquire(sftpConnection);
+            sftp = acquire(newSftpAction());
             try {
                 sftp.put(new InMemorySourceFile() {
                     @Override public String getName() {
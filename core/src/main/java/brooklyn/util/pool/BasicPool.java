@@ -1,8 +1,16 @@
 package brooklyn.util.pool;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,13 +26,31 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
+/**
+ * A pool of resources, created on demand by the supplier and returned to the pool when a lease is closed.
+ * <p>
+ * By default each resource is leased to one caller at a time. With {@link Builder#maxLeasesPerObject(int)},
+ * a resource which can be used concurrently (e.g. an ssh connection, which can run several channels at once)
+ * is shared by up to that many leases before another is created.
+ * <p>
+ * With {@link Builder#maxIdleTime(long, TimeUnit)}, resources which have been idle in the pool for longer are closed.
+ */
 public class BasicPool<T> implements Pool<T> {
 
-    // TODO Implement expiry of pooled resources
-
     protected static final Logger LOG = LoggerFactory.getLogger(BasicPool.class);
 
+    /** closes expired resources of all pools; a daemon thread, only started when a pool has a max idle time */
+    private static class ExpiryTimer {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "brooklyn-pool-expiry");
+                    t.setDaemon(true);
+                    return t;
+                }});
+    }
+
     public static <T> Builder<T> builder() {
         return new Builder<T>();
     }
@@ -34,6 +60,8 @@ public class BasicPool<T> implements Pool<T> {
         private Supplier<? extends T> supplier;
         private Predicate<? super T> viabilityChecker = Predicates.alwaysTrue();
         private Function<? super T, ?> closer = Functions.identity();
+        private int maxLeasesPerObject = 1;
+        private long maxIdleTimeMillis = -1;
         
         public Builder<T> name(String val) {
             this.name = val;
@@ -55,6 +83,19 @@ public class BasicPool<T> implements Pool<T> {
             return this;
         }
         
+        /** the number of leases which may share a resource at once; default 1 (i.e. not shared) */
+        public Builder<T> maxLeasesPerObject(int val) {
+            checkArgument(val > 0, "maxLeasesPerObject must be positive");
+            this.maxLeasesPerObject = val;
+            return this;
+        }
+
+        /** how long a resource may be idle in the pool before it is closed; default (or zero or negative) is forever */
+        public Builder<T> maxIdleTime(long val, TimeUnit unit) {
+            this.maxIdleTimeMillis = unit.toMillis(val);
+            return this;
+        }
+
         public BasicPool<T> build() {
             return new BasicPool<T>(this);
         }
@@ -64,19 +105,29 @@ public class BasicPool<T> implements Pool<T> {
     private final Supplier<? extends T> supplier;
     private final Predicate<? super T> viabilityChecker;
     private Function<? super T, ?> closer;
-    private final Deque<T> pool = Lists.newLinkedList();
+    private final int maxLeasesPerObject;
+    private final long maxIdleTimeMillis;
+    /** idle resources, most recently returned last */
+    private final Deque<Entry> pool = Lists.newLinkedList();
+    /** resources currently leased, to which more leases can be added if shared */
+    private final Set<Entry> leased = Sets.newLinkedHashSet();
     private AtomicBoolean closed = new AtomicBoolean(false);
+    private ScheduledFuture<?> expiryCheck;
     
     private AtomicInteger currentLeasedCount = new AtomicInteger(0);
     private AtomicInteger totalLeasedCount = new AtomicInteger(0);
+    private AtomicInteger totalSharedCount = new AtomicInteger(0);
     private AtomicInteger totalCreatedCount = new AtomicInteger(0);
     private AtomicInteger totalClosedCount = new AtomicInteger(0);
+    private AtomicInteger totalExpiredCount = new AtomicInteger(0);
     
     private BasicPool(Builder<T> builder) {
         this.name = (builder.name != null) ? "Pool("+builder.name+")" : "Pool-"+Identifiers.makeRandomId(8);
         this.supplier = checkNotNull(builder.supplier, "supplier");
         this.viabilityChecker = checkNotNull(builder.viabilityChecker, "viabilityChecker");
         this.closer = checkNotNull(builder.closer, closer);
+        this.maxLeasesPerObject = builder.maxLeasesPerObject;
+        this.maxIdleTimeMillis = builder.maxIdleTimeMillis;
     }
     
     @Override
@@ -84,38 +135,75 @@ public class BasicPool<T> implements Pool<T> {
         return Objects.toStringHelper(this).add("name", name).toString();
     }
     
+    /** the number of resources created, and not yet closed */
+    public int getOpenCount() {
+        return totalCreatedCount.get() - totalClosedCount.get();
+    }
+
+    /** the number of leases which shared a resource already leased to another caller */
+    public int getTotalSharedCount() {
+        return totalSharedCount.get();
+    }
+
     @Override
     public Lease<T> leaseObject() {
         totalLeasedCount.incrementAndGet();
-        T existing;
-        do {
-            existing = null;
+        while (true) {
+            Entry existing = null;
+            List<Entry> expired;
             synchronized (pool) {
                 if (closed.get()) {
                     throw new IllegalStateException("Pool closed for "+this);
                 }
-                if (pool.size() > 0) {
+                expired = removeExpired();
+                if (maxLeasesPerObject > 1) {
+                    for (Entry entry : leased) {
+                        if (entry.viable && entry.leaseCount < maxLeasesPerObject) {
+                            existing = entry;
+                            break;
+                        }
+                    }
+                }
+                if (existing == null && pool.size() > 0) {
                     existing = pool.removeLast();
+                    leased.add(existing);
                 }
+                if (existing != null) existing.leaseCount++;
+            }
+            closeAll(expired, "expired");
+
+            if (existing == null) break;
+
+            if (viabilityChecker.apply(existing.val)) {
+                currentLeasedCount.incrementAndGet();
+                if (existing.leaseCount > 1) totalSharedCount.incrementAndGet();
+                if (LOG.isTraceEnabled()) LOG.trace("{} reusing existing pool entry {}, with {} leases ({})", new Object[] {this, existing.val, existing.leaseCount, getMetrics()});
+                return new BasicLease(existing);
             }
             
-            if (existing != null) {
-                if (viabilityChecker.apply(existing)) {
-                    currentLeasedCount.incrementAndGet();
-                    if (LOG.isTraceEnabled()) LOG.trace("{} reusing existing pool entry {} ({})", new Object[] {this, existing, getMetrics()});
-                    return new BasicLease(existing);
-                } else {
-                    totalClosedCount.incrementAndGet();
-                    if (LOG.isDebugEnabled()) LOG.debug("{} not reusing entry {} as no longer viable; discarding and trying again", this, existing);
-                    closer.apply(existing);
-                }
+            // not viable: stop sharing it, and close it once no-one else is using it
+            boolean closeNow;
+            synchronized (pool) {
+                existing.viable = false;
+                existing.leaseCount--;
+                closeNow = (existing.leaseCount == 0);
+                if (closeNow) leased.remove(existing);
+            }
+            if (closeNow) {
+                totalClosedCount.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("{} not reusing entry {} as no longer viable; discarding and trying again", this, existing.val);
+                closer.apply(existing.val);
             }
-        } while (existing != null);
+        }
         
-        T result = supplier.get();
+        Entry result = new Entry(supplier.get());
+        result.leaseCount = 1;
+        synchronized (pool) {
+            leased.add(result);
+        }
         totalCreatedCount.incrementAndGet();
         currentLeasedCount.incrementAndGet();
-        if (LOG.isDebugEnabled()) LOG.debug("{} acquired and returning new entry {} ({})", new Object[] {this, result, getMetrics()});
+        if (LOG.isDebugEnabled()) LOG.debug("{} acquired and returning new entry {} ({})", new Object[] {this, result.val, getMetrics()});
         return new BasicLease(result);
     }
 
@@ -135,49 +223,131 @@ public class BasicPool<T> implements Pool<T> {
         synchronized (pool) {
             if (LOG.isDebugEnabled()) LOG.debug("{} closing, with {} resources ({})", new Object[] {this, pool.size(), getMetrics()});
             closed.set(true);
-            for (T resource : pool) {
+            if (expiryCheck != null) expiryCheck.cancel(false);
+            for (Entry entry : pool) {
                 totalClosedCount.incrementAndGet();
-                closer.apply(resource);
+                closer.apply(entry.val);
             }
             pool.clear();
         }
 
     }
     
-    private void returnLeasee(T val) {
+    /**
+     * Closes any resources which have been idle for longer than the max idle time.
+     * Called automatically (on leasing, and periodically while there are idle resources).
+     */
+    public void closeExpired() {
+        List<Entry> expired;
+        synchronized (pool) {
+            expired = removeExpired();
+        }
+        closeAll(expired, "expired");
+    }
+
+    /** must be called while synchronized on pool */
+    private List<Entry> removeExpired() {
+        List<Entry> result = null;
+        if (maxIdleTimeMillis > 0) {
+            long now = System.currentTimeMillis();
+            while (pool.size() > 0 && now - pool.getFirst().lastReturned > maxIdleTimeMillis) {
+                if (result == null) result = Lists.newArrayList();
+                result.add(pool.removeFirst());
+            }
+        }
+        return result;
+    }
+
+    private void closeAll(List<Entry> entries, String reason) {
+        if (entries == null) return;
+        for (Entry entry : entries) {
+            totalClosedCount.incrementAndGet();
+            totalExpiredCount.incrementAndGet();
+            if (LOG.isDebugEnabled()) LOG.debug("{} closing {} entry {} ({})", new Object[] {this, reason, entry.val, getMetrics()});
+            closer.apply(entry.val);
+        }
+    }
+
+    /** must be called while synchronized on pool */
+    private void scheduleExpiryCheck() {
+        if (maxIdleTimeMillis <= 0 || closed.get()) return;
+        if (expiryCheck != null && !expiryCheck.isDone()) return;
+        expiryCheck = ExpiryTimer.INSTANCE.schedule(new Runnable() {
+                @Override public void run() {
+                    try {
+                        closeExpired();
+                    } catch (Exception e) {
+                        LOG.warn("Error closing expired entries of "+BasicPool.this+"; continuing", e);
+                    }
+                    synchronized (pool) {
+                        expiryCheck = null;
+                        if (pool.size() > 0) scheduleExpiryCheck();
+                    }
+                }}, maxIdleTimeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void returnLeasee(Entry entry) {
         currentLeasedCount.decrementAndGet();
         synchronized (pool) {
+            entry.leaseCount--;
+            if (entry.leaseCount > 0) {
+                // still in use by other leases
+                return;
+            }
+            leased.remove(entry);
             if (closed.get()) {
                 totalClosedCount.incrementAndGet();
-                if (LOG.isDebugEnabled()) LOG.debug("{} closing returned leasee {}, because pool closed ({})", new Object[] {this, val, getMetrics()});
-                closer.apply(val);
+                if (LOG.isDebugEnabled()) LOG.debug("{} closing returned leasee {}, because pool closed ({})", new Object[] {this, entry.val, getMetrics()});
+                closer.apply(entry.val);
+            } else if (!entry.viable) {
+                totalClosedCount.incrementAndGet();
+                if (LOG.isDebugEnabled()) LOG.debug("{} closing returned leasee {}, because no longer viable ({})", new Object[] {this, entry.val, getMetrics()});
+                closer.apply(entry.val);
             } else {
-                if (LOG.isTraceEnabled()) LOG.trace("{} adding {} back into pool ({})", new Object[] {this, val, getMetrics()});
-                pool.addLast(val);
+                if (LOG.isTraceEnabled()) LOG.trace("{} adding {} back into pool ({})", new Object[] {this, entry.val, getMetrics()});
+                entry.lastReturned = System.currentTimeMillis();
+                pool.addLast(entry);
+                scheduleExpiryCheck();
             }
         }
     }
     
     private String getMetrics() {
-        return String.format("currentLeased=%s; totalLeased=%s; totalCreated=%s; totalClosed=%s", 
-                currentLeasedCount, totalLeasedCount, totalCreatedCount, totalClosedCount);
+        return String.format("currentLeased=%s; totalLeased=%s; totalShared=%s; totalCreated=%s; totalClosed=%s; totalExpired=%s",
+                currentLeasedCount, totalLeasedCount, totalSharedCount, totalCreatedCount, totalClosedCount, totalExpiredCount);
 
     }
-    private class BasicLease implements Lease<T> {
-        private final T val;
 
-        BasicLease(T val) {
+    /** a pooled resource; leaseCount and lastReturned are guarded by the pool */
+    private class Entry {
+        final T val;
+        int leaseCount;
+        long lastReturned;
+        volatile boolean viable = true;
+
+        Entry(T val) {
             this.val = val;
         }
+    }
+
+    private class BasicLease implements Lease<T> {
+        private final Entry entry;
+        private final AtomicBoolean returned = new AtomicBoolean(false);
+
+        BasicLease(Entry entry) {
+            this.entry = entry;
+        }
         
         @Override
         public T leasedObject() {
-            return val;
+            return entry.val;
         }
 
         @Override
         public void close() {
-            BasicPool.this.returnLeasee(val);
+            if (returned.compareAndSet(false, true)) {
+                BasicPool.this.returnLeasee(entry);
+            }
         }
     }
 }
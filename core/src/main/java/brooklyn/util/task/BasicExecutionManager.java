@@ -13,14 +13,9 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -90,11 +85,10 @@ public class BasicExecutionManager implements ExecutionManager {
         }
     };
     
-    private ExecutorService runner = 
-		new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), daemonThreadFactory);
-//      above is Executors.newCachedThreadPool(daemonThreadFactory)  but timeout of 1s rather than 60s for better shutdown!
-        
-	private ScheduledExecutorService delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
+    private final ExecutorStrategy executorStrategy;
+    
+    /** drives all scheduled tasks (e.g. sensor polls) from a single thread, handing each run to the executor */
+    private final TimerWheel timerWheel = new TimerWheel(daemonThreadFactory);
 	
     // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
     // so the same task could be listed multiple times if it has multiple tags...
@@ -116,13 +110,52 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private final AtomicInteger activeTaskCount = new AtomicInteger();
     
+    public BasicExecutionManager() {
+        this(ExecutorStrategy.Factory.newDefault());
+    }
+    
+    public BasicExecutionManager(ExecutorStrategy executorStrategy) {
+        this.executorStrategy = executorStrategy;
+        executorStrategy.injectThreadFactory(daemonThreadFactory);
+    }
+    
 	/** for use by overriders to use custom thread factory */
 	protected ThreadFactory newThreadFactory() {
 		return Executors.defaultThreadFactory();
 	}
 	
     public void shutdownNow() {
-        runner.shutdownNow();
+        timerWheel.shutdownNow();
+        executorStrategy.shutdownNow();
+    }
+    
+    public ExecutorStrategy getExecutorStrategy() {
+        return executorStrategy;
+    }
+    
+    /** number of threads currently in the pool(s) running tasks */
+    public int getExecutorPoolSize() {
+        return executorStrategy.getPoolSize();
+    }
+    
+    /** number of tasks submitted to the pool(s) but not yet started */
+    public long getExecutorQueuedTaskCount() {
+        return executorStrategy.getQueuedTaskCount();
+    }
+    
+    /** number of tasks stolen between worker threads, where the pool does work-stealing */
+    public long getExecutorStealCount() {
+        return executorStrategy.getStealCount();
+    }
+    
+    /** number of scheduled task runs waiting for their time to come */
+    public int getNumScheduledTimers() {
+        return timerWheel.getPendingCount();
+    }
+    
+    /** number of threads used to schedule tasks (independent of how many scheduled tasks there are) */
+    public int getSchedulerThreadCount() {
+        return timerWheel.getThreadCount();
     }
     
     public long getTotalTasksSubmitted() {
@@ -219,7 +252,7 @@ public class BasicExecutionManager implements ExecutionManager {
 	protected Task submitNewScheduledTask(final Map flags, final ScheduledTask task) {
 		task.submitTimeUtc = System.currentTimeMillis();
 		if (!task.isDone()) {
-			task.result = delayedRunner.schedule(new Callable() { public Object call() {
+			task.result = timerWheel.schedule(new Callable() { public Object call() {
 				if (task.startTimeUtc==-1) task.startTimeUtc = System.currentTimeMillis();
 				final BasicTask taskScheduled = (BasicTask) task.newTask();
 				taskScheduled.submittedByTask = task;
@@ -238,7 +271,7 @@ public class BasicExecutionManager implements ExecutionManager {
 				    }
 					task.runCount++;
 					if (task.period!=null) {
-						task.delay = task.period;
+						task.delay(task.nextPeriodicDelayMillis());
 						submitNewScheduledTask(flags, task);
 					}
 					return result;
@@ -306,9 +339,10 @@ public class BasicExecutionManager implements ExecutionManager {
         Future future;
         if (schedulers!=null && !schedulers.isEmpty()) {
 			if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
-            future = schedulers.iterator().next().submit(job);
+            // the scheduler keeps the order, but the strategy still chooses the pool for each task
+            future = schedulers.iterator().next().submit(job, executorStrategy.getExecutor(task));
         } else {
-            future = runner.submit(job);
+            future = executorStrategy.getExecutor(task).submit(job);
         }
 
         ((BasicTask)task).initResult(future);
@@ -497,7 +531,7 @@ public class BasicExecutionManager implements ExecutionManager {
      */
     public void setTaskSchedulerForTag(Object tag, TaskScheduler scheduler) {
         synchronized (schedulerByTag) {
-            scheduler.injectExecutor(runner);
+            scheduler.injectExecutor(executorStrategy.getDefaultExecutor());
 
             Object old = schedulerByTag.put(tag, scheduler);
             if (old!=null && old!=scheduler) {
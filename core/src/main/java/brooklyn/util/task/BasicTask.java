@@ -53,11 +53,20 @@ import com.google.common.base.Throwables;
 public class BasicTask<T> extends BasicTaskStub implements Task<T> {
     protected static final Logger log = LoggerFactory.getLogger(BasicTask.class);
 
+    /**
+     * Flag (set to true) for tasks which may block for a long time, e.g. on ssh, jmx or http calls,
+     * or waiting for other tasks. An {@link ExecutorStrategy} with a bounded pool runs such tasks elsewhere,
+     * so that they cannot starve it. Set this where the task is created; unlike a tag it is not indexed
+     * by the {@link BasicExecutionManager}, so costs nothing on submission or completion.
+     */
+    public static final String BLOCKING_FLAG = "blocking";
+
     protected Callable<T> job;
     public final String displayName;
     public final String description;
 
     protected final Set tags = new LinkedHashSet();
+    protected final boolean blocking;
 
     protected String blockingDetails = null;
     Object extraStatusText = null;
@@ -85,6 +94,9 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
             }
         }
 
+        Object fblocking = flags.remove(BLOCKING_FLAG);
+        blocking = fblocking!=null && Boolean.parseBoolean(fblocking.toString());
+
         description = elvisString(flags.remove("description"), "");
         String d = asString(flags.remove("displayName"));
         if (d==null) d = join(tags, "-");
@@ -160,6 +172,8 @@ public class BasicTask<T> extends BasicTaskStub implements Task<T> {
     // metadata accessors ------------
 
     public Set<Object> getTags() { return Collections.unmodifiableSet(new LinkedHashSet(tags)); }
+    /** whether the task was created with the {@link #BLOCKING_FLAG} */
+    public boolean isBlocking() { return blocking; }
     public long getSubmitTimeUtc() { return submitTimeUtc; }
     public long getStartTimeUtc() { return startTimeUtc; }
     public long getEndTimeUtc() { return endTimeUtc; }
@@ -0,0 +1,62 @@
+package brooklyn.util.task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import brooklyn.management.Task;
+
+/**
+ * Runs every task in a single unbounded pool, creating a new thread whenever none is idle.
+ * <p>
+ * This is the historical behaviour of {@link BasicExecutionManager}: it never queues, so tasks which
+ * block waiting on other tasks cannot starve the pool, but thousands of concurrent tasks mean thousands
+ * of threads.
+ */
+public class CachedThreadPoolExecutorStrategy implements ExecutorStrategy {
+
+    private ThreadPoolExecutor runner;
+
+    @Override
+    public void injectThreadFactory(ThreadFactory threadFactory) {
+        // equivalent to Executors.newCachedThreadPool(threadFactory) but timeout of 1s rather than 60s for better shutdown!
+        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+    }
+
+    @Override
+    public ExecutorService getExecutor(Task<?> task) {
+        return runner;
+    }
+
+    @Override
+    public ExecutorService getDefaultExecutor() {
+        return runner;
+    }
+
+    @Override
+    public void shutdownNow() {
+        runner.shutdownNow();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return runner.getPoolSize();
+    }
+
+    @Override
+    public long getQueuedTaskCount() {
+        return runner.getQueue().size();
+    }
+
+    @Override
+    public long getStealCount() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedThreadPoolExecutorStrategy";
+    }
+}
@@ -47,7 +47,7 @@ public abstract class CompoundTask<T> extends BasicTask<List<T>> {
      * @throws IllegalArgumentException if any of the passed child jobs is not one of the above types 
      */
     public CompoundTask(Collection<?> jobs) {
-        super( MutableMap.of("tag", "compound"));
+        super( MutableMap.of("tag", "compound", BasicTask.BLOCKING_FLAG, true));
         super.job = new Callable<List<T>>() {
             @Override public List<T> call() throws Exception {
                 return runJobs();
@@ -0,0 +1,84 @@
+package brooklyn.util.task;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import brooklyn.config.StringConfigMap;
+import brooklyn.management.Task;
+import brooklyn.management.internal.AbstractManagementContext;
+import brooklyn.util.MutableMap;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Decides which {@link ExecutorService} the {@link BasicExecutionManager} uses to run each {@link Task}.
+ * <p>
+ * The strategy only chooses the pool; the {@link Task} lifecycle, tags and any {@link TaskScheduler}
+ * associated with a tag behave the same regardless of strategy.
+ */
+public interface ExecutorStrategy {
+
+    /** property used to select the strategy; one of "cached" (the default), "workStealing" or "virtual" */
+    public static final String STRATEGY_PROPERTY = "brooklyn.executionManager.executorStrategy";
+
+    /** number of threads in a bounded pool; defaults to the number of available processors */
+    public static final String PARALLELISM_PROPERTY = "brooklyn.executionManager.parallelism";
+
+    /** comma-separated list of tags identifying tasks which block (e.g. on ssh, jmx or http),
+     * and so should run in an elastic pool rather than a bounded one, in addition to those created with
+     * {@link BasicTask#BLOCKING_FLAG}; defaults to effectors */
+    public static final String BLOCKING_TAGS_PROPERTY = "brooklyn.executionManager.blockingTags";
+
+    /**
+     * Called by {@link BasicExecutionManager} before any task is submitted,
+     * supplying the factory to use for creating threads.
+     */
+    public void injectThreadFactory(ThreadFactory threadFactory);
+
+    /** the executor which should run the given task */
+    public ExecutorService getExecutor(Task<?> task);
+
+    /** the executor given to {@link TaskScheduler}s, for tasks whose scheduling they control */
+    public ExecutorService getDefaultExecutor();
+
+    public void shutdownNow();
+
+    /** number of threads currently in the pool(s) */
+    public int getPoolSize();
+
+    /** number of tasks queued but not yet started by the pool(s) */
+    public long getQueuedTaskCount();
+
+    /** number of tasks stolen by one worker thread from another; 0 if the pool(s) do not steal work */
+    public long getStealCount();
+
+    public static class Factory {
+        public static ExecutorStrategy newDefault() {
+            return new CachedThreadPoolExecutorStrategy();
+        }
+
+        /** creates the strategy as configured by {@link ExecutorStrategy#STRATEGY_PROPERTY} etc in the given properties */
+        public static ExecutorStrategy newInstance(StringConfigMap properties) {
+            String type = properties.getFirst(MutableMap.of("defaultIfNone", "cached"), STRATEGY_PROPERTY);
+            if ("cached".equalsIgnoreCase(type)) {
+                return newDefault();
+            } else if ("workStealing".equalsIgnoreCase(type)) {
+                String parallelism = properties.getFirst(MutableMap.of("defaultIfNone", ""+Runtime.getRuntime().availableProcessors()),
+                        PARALLELISM_PROPERTY);
+                String blockingTags = properties.getFirst(MutableMap.of("defaultIfNone", AbstractManagementContext.EFFECTOR_TAG),
+                        BLOCKING_TAGS_PROPERTY);
+                Set<Object> tags = new LinkedHashSet<Object>();
+                for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(blockingTags)) {
+                    tags.add(tag);
+                }
+                return new WorkStealingExecutorStrategy(Integer.parseInt(parallelism.trim()), tags);
+            } else if ("virtual".equalsIgnoreCase(type)) {
+                return new VirtualThreadExecutorStrategy();
+            } else {
+                throw new IllegalArgumentException("Unknown executor strategy '"+type+"' for "+STRATEGY_PROPERTY);
+            }
+        }
+    }
+}
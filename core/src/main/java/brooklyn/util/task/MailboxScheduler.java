@@ -0,0 +1,164 @@
+package brooklyn.util.task;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+/**
+ * Ensures that the {@link Task}s it is given execute with in-order single-threaded semantics,
+ * in the same way as {@link SingleThreadedScheduler}, but without taking any locks.
+ * <p>
+ * Submissions are appended to a lock-free queue (the "mailbox"); whichever submitter finds the scheduler idle
+ * (by compare-and-set of the running flag) submits a single drain job to the executor. That job runs queued
+ * submissions one after another on the same thread, up to {@link #MAX_BATCH_SIZE} of them, and then
+ * resubmits itself if more have arrived so that one busy scheduler cannot hog an executor thread.
+ * A submission given its own executor (see {@link #submit(Callable, ExecutorService)}) is handed over to a drain
+ * job in that executor when it reaches the head of the queue, so it still runs in order.
+ * <p>
+ * Each submission is therefore one queue insert rather than a monitor acquisition plus a second executor
+ * submission, which matters when (as for subscription delivery) there is one scheduler per subscriber and
+ * many thousands of events per second.
+ */
+public class MailboxScheduler implements TaskScheduler, CanSetName {
+    private static final Logger LOG = LoggerFactory.getLogger(MailboxScheduler.class);
+
+    /** maximum number of queued submissions run by one drain job before it yields its thread */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private final Queue<Submission<?>> mailbox = new ConcurrentLinkedQueue<Submission<?>>();
+    // ConcurrentLinkedQueue.size() is O(n), so count separately
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile ExecutorService executor;
+
+    // the drain job for the executor most recently used, kept to avoid creating one per drain
+    private volatile Drainer lastDrainer;
+
+    private String name;
+
+    private volatile int lastSizeWarn = 0;
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name!=null ? "MailboxScheduler["+name+"]" : super.toString();
+    }
+
+    public void injectExecutor(ExecutorService executor) { this.executor = executor; }
+
+    public <T> Future<T> submit(Callable<T> c) {
+        return submit(c, executor);
+    }
+
+    public <T> Future<T> submit(Callable<T> c, ExecutorService executor) {
+        Submission<T> f = new Submission<T>(c, executor);
+        mailbox.add(f);
+        int size = queueSize.incrementAndGet();
+        if (size>0 && (size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
+            LOG.warn("{} is backing up, {} tasks queued", this, size);
+            lastSizeWarn = size;
+        }
+        scheduleDrain();
+        return f;
+    }
+
+    /** number of submissions queued but not yet started */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    private void scheduleDrain() {
+        if (running.compareAndSet(false, true)) {
+            // only a drain job takes from the mailbox, and none is running, so the head can't go away
+            Submission<?> head = mailbox.peek();
+            if (head == null) {
+                running.set(false);
+                if (!mailbox.isEmpty()) scheduleDrain();
+                return;
+            }
+            executeDrain(head.executor);
+        }
+    }
+
+    /** submits a drain job to the given executor; the caller must have set the running flag */
+    private void executeDrain(ExecutorService executor) {
+        Drainer drainer = lastDrainer;
+        if (drainer == null || drainer.executor != executor) {
+            drainer = new Drainer(executor);
+            lastDrainer = drainer;
+        }
+        try {
+            executor.execute(drainer);
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void drain(ExecutorService current) {
+        ExecutorService handOver = null;
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Submission<?> next = mailbox.peek();
+                if (next == null) break;
+                if (next.executor != current) {
+                    handOver = next.executor;
+                    break;
+                }
+                mailbox.poll();
+                queueSize.decrementAndGet();
+                // a cancelled submission does nothing when run; errors are recorded in the future
+                next.run();
+                // don't let cancel(true) of one submission interrupt those which follow it on this thread
+                Thread.interrupted();
+            }
+        } finally {
+            if (handOver == null) running.set(false);
+        }
+        if (handOver != null) {
+            // still running, so no submitter can start a drain job in the meantime
+            try {
+                executeDrain(handOver);
+            } catch (RejectedExecutionException e) {
+                LOG.warn("{} unable to run queued tasks in {}: {}", new Object[] {this, handOver, e});
+            }
+        } else if (!mailbox.isEmpty()) {
+            // a submitter may have seen us as running just before we stopped; if so it is up to us to reschedule
+            scheduleDrain();
+        }
+    }
+
+    private class Drainer implements Runnable {
+        final ExecutorService executor;
+        Drainer(ExecutorService executor) {
+            this.executor = executor;
+        }
+        public void run() {
+            drain(executor);
+        }
+    }
+
+    private static class Submission<T> extends FutureTask<T> {
+        final ExecutorService executor;
+        Submission(Callable<T> c, ExecutorService executor) {
+            super(c);
+            this.executor = executor;
+        }
+    }
+}
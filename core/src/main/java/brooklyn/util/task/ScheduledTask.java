@@ -37,6 +37,13 @@ public class ScheduledTask extends BasicTask {
 	protected TimeDuration period = null;
 	/** optional, set as flag in constructor; defaults to null meaning no limit */
 	protected Integer maxIterations = null;
+	/** optional, set as flag in constructor; the fraction of the period by which each repeat may randomly be
+	 * earlier or later (e.g. 0.1 for up to 10%), so repeating tasks do not stay in lock-step; defaults to 0 */
+	protected double jitter = 0;
+	/** optional, set as flag in constructor; whether to delay the first repeat by an offset within the period
+	 * (derived from the task id), so that many tasks started together with the same period are spread across it,
+	 * rather than all running at the same instant; defaults to false */
+	protected boolean spread = false;
 	
 	protected int runCount=0;
 	protected Task recentRun, nextRun;
@@ -54,6 +61,8 @@ public class ScheduledTask extends BasicTask {
 		delay = JavaGroovyEquivalents.toTimeDuration(elvis(flags.remove("delay"), 0));
 		period = JavaGroovyEquivalents.toTimeDuration(elvis(flags.remove("period"), null));
 		maxIterations = elvis(flags.remove("maxIterations"), null);
+		jitter = ((Number) elvis(flags.remove("jitter"), 0)).doubleValue();
+		spread = truth(flags.remove("spread"));
 	}
 	
 	public ScheduledTask delay(long val) {
@@ -71,6 +80,29 @@ public class ScheduledTask extends BasicTask {
         return this;
     }
 
+    public ScheduledTask jitter(double val) {
+        this.jitter = val;
+        return this;
+    }
+
+    public ScheduledTask spread(boolean val) {
+        this.spread = val;
+        return this;
+    }
+
+    /** the delay before the next run, after a run has completed: the period, adjusted for spread and jitter */
+    protected long nextPeriodicDelayMillis() {
+        long periodMillis = period.toMilliseconds();
+        long result = periodMillis;
+        if (spread && runCount == 1 && periodMillis > 0) {
+            result += (getId().hashCode() & Integer.MAX_VALUE) % periodMillis;
+        }
+        if (jitter > 0) {
+            result += (long) ((Math.random()*2 - 1) * jitter * periodMillis);
+        }
+        return Math.max(0, result);
+    }
+
     public Callable<Task> getTaskFactory() {
         return taskFactory;
     }
@@ -51,12 +51,16 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     
     public void injectExecutor(ExecutorService executor) { this.executor = executor; }
 
-    public synchronized <T> Future<T> submit(Callable<T> c) {
+    public <T> Future<T> submit(Callable<T> c) {
+        return submit(c, executor);
+    }
+
+    public synchronized <T> Future<T> submit(Callable<T> c, ExecutorService executor) {
         if (running.compareAndSet(false, true)) {
-            return executeNow(c);
+            return executeNow(c, executor);
         } else {
             WrappingFuture<T> f = new WrappingFuture<T>();
-            order.add(new QueuedSubmission<T>(c, f));
+            order.add(new QueuedSubmission<T>(c, executor, f));
             int size = order.size();
             if (size>0 && (size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
                 LOG.warn("{} is backing up, {} tasks queued", this, size);
@@ -77,7 +81,7 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
             } else {
                 QueuedSubmission<?> qs = order.remove();
                 if (!qs.f.isCancelled()) {
-                    Future future = executeNow(qs.c);
+                    Future future = executeNow(qs.c, qs.executor);
                     qs.f.setDelegate(future);
                     done = true;
                 }
@@ -85,7 +89,7 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
         }
     }
 
-    private synchronized <T> Future<T> executeNow(final Callable<T> c) {
+    private synchronized <T> Future<T> executeNow(final Callable<T> c, ExecutorService executor) {
         return executor.submit(new Callable<T>() {
             public T call() throws Exception {
                 try {
@@ -99,10 +103,12 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     
     private static class QueuedSubmission<T> {
         final Callable<T> c;
+        final ExecutorService executor;
         final WrappingFuture<T> f;
         
-        QueuedSubmission(Callable<T> c, WrappingFuture<T> f) {
+        QueuedSubmission(Callable<T> c, ExecutorService executor, WrappingFuture<T> f) {
             this.c = c;
+            this.executor = executor;
             this.f = f;
         }
     }
@@ -21,4 +21,11 @@ public interface TaskScheduler {
      * execution manager.
      */
     public <T> Future<T> submit(Callable<T> c);
+
+    /**
+     * As {@link #submit(Callable)}, but running the given job in the given executor rather than the injected one
+     * (e.g. an elastic pool for a job which blocks). The order of submissions is kept across executors,
+     * and the executor of later submissions is unaffected.
+     */
+    public <T> Future<T> submit(Callable<T> c, ExecutorService executor);
 }
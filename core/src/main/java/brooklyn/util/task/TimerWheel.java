@@ -0,0 +1,304 @@
+package brooklyn.util.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hierarchical hashed timer wheel, driven by a single thread, for scheduling very many timeouts
+ * (e.g. the polls of every sensor of every entity) cheaply.
+ * <p>
+ * Time is divided into ticks of {@link #getTickMillis()}; a timeout fires on the first tick at or after
+ * its deadline. Scheduling and cancelling are lock-free and constant time (new timeouts are queued, and
+ * put into the wheel by the timer thread at its next tick), which is what matters for thousands of
+ * short-lived, periodically re-scheduled timeouts; the cost is that timeouts are only accurate to a tick.
+ * <p>
+ * The callable of each timeout is run on the timer thread, so it must be quick: it should hand off any
+ * real work to an executor (as {@link BasicExecutionManager} does when it submits the next run of a
+ * {@link ScheduledTask}).
+ */
+public class TimerWheel {
+
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int NUM_LEVELS = 4;
+    /** timeouts further away than this are held in the top level, and re-inserted when it is cascaded */
+    private static final long MAX_TICKS = 1L << (WHEEL_BITS*NUM_LEVELS);
+
+    private final long tickNanos;
+    private final ThreadFactory threadFactory;
+
+    /** wheels[level][slot]; only accessed by the timer thread */
+    @SuppressWarnings("unchecked")
+    private final Queue<Timeout<?>>[][] wheels = new Queue[NUM_LEVELS][WHEEL_SIZE];
+
+    private final Queue<Timeout<?>> newTimeouts = new ConcurrentLinkedQueue<Timeout<?>>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong firedCount = new AtomicLong();
+
+    private final Object startMutex = new Object();
+    private volatile Thread thread;
+    private volatile boolean shutdown;
+    private volatile long startNanos;
+
+    /** the tick the timer thread has processed up to; only written by the timer thread */
+    private volatile long currentTick;
+
+    public TimerWheel(ThreadFactory threadFactory) {
+        this(threadFactory, DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public TimerWheel(ThreadFactory threadFactory, long tickDuration, TimeUnit unit) {
+        this.threadFactory = checkNotNull(threadFactory, "threadFactory");
+        this.tickNanos = unit.toNanos(tickDuration);
+        checkArgument(tickNanos > 0, "tick duration must be positive");
+        for (int level = 0; level < NUM_LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new ArrayDeque<Timeout<?>>();
+            }
+        }
+    }
+
+    public long getTickMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    /** number of timeouts scheduled but not yet fired or cancelled */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /** total number of timeouts which have fired */
+    public long getFiredCount() {
+        return firedCount.get();
+    }
+
+    /** the number of threads used to drive the wheel: one once started, regardless of how many timeouts there are */
+    public int getThreadCount() {
+        return (thread != null && thread.isAlive()) ? 1 : 0;
+    }
+
+    /**
+     * Schedules the callable to be run (on the timer thread) after the given delay.
+     */
+    public <T> ScheduledFuture<T> schedule(Callable<T> callable, long delay, TimeUnit unit) {
+        if (shutdown) throw new IllegalStateException("Timer wheel has been shut down");
+        ensureStarted();
+        long deadlineNanos = System.nanoTime() + Math.max(0, unit.toNanos(delay));
+        Timeout<T> timeout = new Timeout<T>(checkNotNull(callable, "callable"), deadlineNanos);
+        pendingCount.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public void shutdownNow() {
+        shutdown = true;
+        Thread t = thread;
+        if (t != null) t.interrupt();
+    }
+
+    private void ensureStarted() {
+        if (thread != null) return;
+        synchronized (startMutex) {
+            if (thread != null) return;
+            startNanos = System.nanoTime();
+            Thread t = threadFactory.newThread(new Runnable() {
+                public void run() {
+                    runTimer();
+                }});
+            t.setName("brooklyn-timer-wheel");
+            t.setDaemon(true);
+            t.start();
+            thread = t;
+        }
+    }
+
+    private long toTick(long nanos) {
+        // round up, so a timeout never fires early
+        long elapsed = nanos - startNanos;
+        return (elapsed <= 0) ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+    }
+
+    private void runTimer() {
+        while (!shutdown) {
+            long nextTick = currentTick + 1;
+            long sleepNanos = startNanos + nextTick*tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (shutdown) break;
+                    continue;
+                }
+            }
+            try {
+                tick(nextTick);
+            } catch (Throwable t) {
+                log.error("Error in timer wheel tick "+nextTick+"; continuing", t);
+            }
+        }
+        if (log.isDebugEnabled()) log.debug("Timer wheel shut down, with {} timeouts pending", pendingCount.get());
+    }
+
+    private void tick(long tick) {
+        currentTick = tick;
+
+        // Cascade any higher level slot whose time has come down into the lower levels
+        for (int level = 1; level < NUM_LEVELS; level++) {
+            if ((tick & ((1L << (WHEEL_BITS*level)) - 1)) != 0) break;
+            Queue<Timeout<?>> slot = wheels[level][(int) ((tick >> (WHEEL_BITS*level)) & WHEEL_MASK)];
+            Timeout<?> timeout;
+            while ((timeout = slot.poll()) != null) {
+                insert(timeout);
+            }
+        }
+
+        Timeout<?> newTimeout;
+        while ((newTimeout = newTimeouts.poll()) != null) {
+            insert(newTimeout);
+        }
+
+        Queue<Timeout<?>> slot = wheels[0][(int) (tick & WHEEL_MASK)];
+        int count = slot.size();
+        for (int i = 0; i < count; i++) {
+            Timeout<?> timeout = slot.poll();
+            if (timeout.isCancelled()) continue;
+            if (timeout.deadlineTick > tick) {
+                // not yet due (only possible if the wheel is wrapping); put it back
+                insert(timeout);
+                continue;
+            }
+            pendingCount.decrementAndGet();
+            firedCount.incrementAndGet();
+            timeout.fire();
+        }
+    }
+
+    /** must only be called by the timer thread */
+    private void insert(Timeout<?> timeout) {
+        if (timeout.isCancelled()) return;
+        if (timeout.deadlineTick < 0) {
+            timeout.deadlineTick = toTick(timeout.deadlineNanos);
+        }
+        long tick = currentTick;
+        long deadline = Math.max(timeout.deadlineTick, tick);
+        long remaining = deadline - tick;
+        if (remaining >= MAX_TICKS) {
+            deadline = tick + MAX_TICKS - 1;
+            remaining = MAX_TICKS - 1;
+        }
+        int level = 0;
+        while (level < NUM_LEVELS-1 && remaining >= (1L << (WHEEL_BITS*(level+1)))) {
+            level++;
+        }
+        wheels[level][(int) ((deadline >> (WHEEL_BITS*level)) & WHEEL_MASK)].add(timeout);
+    }
+
+    private class Timeout<T> implements ScheduledFuture<T> {
+        private static final int PENDING = 0, CANCELLED = 1, RUNNING = 2, DONE = 3;
+
+        private final Callable<T> callable;
+        private final long deadlineNanos;
+        /** computed by the timer thread when first inserted */
+        private long deadlineTick = -1;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile T result;
+        private volatile Throwable error;
+
+        Timeout(Callable<T> callable, long deadlineNanos) {
+            this.callable = callable;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void fire() {
+            if (!state.compareAndSet(PENDING, RUNNING)) return;
+            try {
+                result = callable.call();
+            } catch (Throwable t) {
+                log.warn("Error running timeout "+callable+" in timer wheel", t);
+                error = t;
+            } finally {
+                state.set(DONE);
+                completed.countDown();
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return (diff < 0) ? -1 : (diff > 0 ? 1 : 0);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // Removed from its slot lazily, by the timer thread
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+            pendingCount.decrementAndGet();
+            completed.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            int s = state.get();
+            return s == CANCELLED || s == DONE;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            completed.await();
+            return getResult();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!completed.await(timeout, unit)) throw new TimeoutException();
+            return getResult();
+        }
+
+        private T getResult() throws ExecutionException {
+            if (isCancelled()) throw new CancellationException();
+            if (error != null) throw new ExecutionException(error);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout["+callable+", delay="+getDelay(TimeUnit.MILLISECONDS)+"ms]";
+        }
+    }
+}
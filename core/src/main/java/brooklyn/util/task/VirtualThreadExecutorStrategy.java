@@ -0,0 +1,117 @@
+package brooklyn.util.task;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+/**
+ * Runs each task on its own virtual thread, where the JVM supports them (java 21+),
+ * so that tasks which block on I/O (ssh, jmx, http, waiting for attributes) do not each hold a platform thread.
+ * <p>
+ * Where virtual threads are not available this behaves exactly as {@link CachedThreadPoolExecutorStrategy}.
+ * Virtual threads are looked up reflectively so that brooklyn continues to compile and run on older JVMs.
+ * <p>
+ * Thread-locals (and hence {@link Tasks#current()}), {@link BasicTask#getThread()} and blocking details
+ * behave as with platform threads.
+ */
+public class VirtualThreadExecutorStrategy implements ExecutorStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadExecutorStrategy.class);
+
+    private final AtomicInteger liveVirtualThreads = new AtomicInteger();
+
+    private ExecutorService virtualRunner;
+    private CachedThreadPoolExecutorStrategy fallback;
+
+    @Override
+    public void injectThreadFactory(ThreadFactory threadFactory) {
+        virtualRunner = newVirtualThreadPerTaskExecutor();
+        if (virtualRunner == null) {
+            fallback = new CachedThreadPoolExecutorStrategy();
+            fallback.injectThreadFactory(threadFactory);
+        }
+    }
+
+    private ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "brooklyn-virtual-", 0L);
+            final ThreadFactory virtualThreadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            ThreadFactory countingThreadFactory = new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    return virtualThreadFactory.newThread(new Runnable() {
+                        public void run() {
+                            liveVirtualThreads.incrementAndGet();
+                            try {
+                                r.run();
+                            } finally {
+                                liveVirtualThreads.decrementAndGet();
+                            }
+                        }
+                    });
+                }
+            };
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, countingThreadFactory);
+        } catch (NoSuchMethodException e) {
+            LOG.info("Virtual threads not supported by this JVM ("+System.getProperty("java.version")+"); using cached thread pool for tasks");
+            return null;
+        } catch (ClassNotFoundException e) {
+            LOG.info("Virtual threads not supported by this JVM ("+System.getProperty("java.version")+"); using cached thread pool for tasks");
+            return null;
+        } catch (Exception e) {
+            // e.g. preview feature not enabled on java 19/20
+            LOG.warn("Unable to create virtual thread executor; using cached thread pool for tasks", e);
+            return null;
+        }
+    }
+
+    /** whether tasks are running on virtual threads, or have fallen back to a platform thread pool */
+    public boolean isUsingVirtualThreads() {
+        return virtualRunner != null;
+    }
+
+    @Override
+    public ExecutorService getExecutor(Task<?> task) {
+        return getDefaultExecutor();
+    }
+
+    @Override
+    public ExecutorService getDefaultExecutor() {
+        return (virtualRunner != null) ? virtualRunner : fallback.getDefaultExecutor();
+    }
+
+    @Override
+    public void shutdownNow() {
+        if (virtualRunner != null) virtualRunner.shutdownNow();
+        else fallback.shutdownNow();
+    }
+
+    /** number of live virtual threads, or of platform threads if virtual threads are not supported */
+    @Override
+    public int getPoolSize() {
+        return (virtualRunner != null) ? liveVirtualThreads.get() : fallback.getPoolSize();
+    }
+
+    @Override
+    public long getQueuedTaskCount() {
+        return (virtualRunner != null) ? 0 : fallback.getQueuedTaskCount();
+    }
+
+    @Override
+    public long getStealCount() {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutorStrategy["+(isUsingVirtualThreads() ? "virtual" : "fallback=cached")+"]";
+    }
+}
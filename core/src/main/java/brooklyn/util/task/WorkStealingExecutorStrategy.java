@@ -0,0 +1,193 @@
+package brooklyn.util.task;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs tasks in a pool bounded to a fixed parallelism (by default one thread per core), except for
+ * {@link BasicTask#isBlocking() blocking} tasks and those carrying one of the configured "blocking" tags,
+ * which run in a separate elastic pool.
+ * <p>
+ * Where the JVM provides {@code java.util.concurrent.ForkJoinPool} (java 7+) the bounded pool is a work-stealing
+ * pool in async (FIFO) mode; otherwise it falls back to a fixed-size {@link ThreadPoolExecutor}.
+ * ForkJoinPool is looked up reflectively so that brooklyn continues to run on java 6. Its workers must be
+ * ForkJoinWorkerThreads, so cannot be created by the injected {@link ThreadFactory}; instead each worker is given the
+ * name, daemon flag, priority, context class loader and uncaught-exception handler of a thread created (but never
+ * started) by that factory.
+ * <p>
+ * Note that a task in the bounded pool which waits on another task in the bounded pool ties up one of its threads;
+ * tasks which may wait for long (ssh commands, polls, etc) should therefore be created with
+ * {@link BasicTask#BLOCKING_FLAG}. Effectors are recognised by their tag.
+ */
+public class WorkStealingExecutorStrategy implements ExecutorStrategy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkStealingExecutorStrategy.class);
+
+    private final int parallelism;
+    private final Set<Object> blockingTags;
+
+    private ExecutorService boundedRunner;
+    private ThreadPoolExecutor blockingRunner;
+
+    // set only when boundedRunner is a ForkJoinPool
+    private Method poolSizeMethod;
+    private Method queuedTaskCountMethod;
+    private Method queuedSubmissionCountMethod;
+    private Method stealCountMethod;
+
+    public WorkStealingExecutorStrategy(int parallelism, Collection<?> blockingTags) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism must be positive, but was "+parallelism);
+        this.parallelism = parallelism;
+        this.blockingTags = ImmutableSet.<Object>copyOf(blockingTags);
+    }
+
+    @Override
+    public void injectThreadFactory(ThreadFactory threadFactory) {
+        boundedRunner = newForkJoinPool(parallelism, threadFactory);
+        if (boundedRunner == null) {
+            ThreadPoolExecutor fixed = new ThreadPoolExecutor(parallelism, parallelism, 1L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory);
+            fixed.allowCoreThreadTimeOut(true);
+            boundedRunner = fixed;
+        }
+        blockingRunner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+    }
+
+    private ExecutorService newForkJoinPool(int parallelism, ThreadFactory threadFactory) {
+        try {
+            Class<?> poolType = Class.forName("java.util.concurrent.ForkJoinPool");
+            Class<?> factoryType = Class.forName("java.util.concurrent.ForkJoinPool$ForkJoinWorkerThreadFactory");
+            Object factory = newWorkerThreadFactory(poolType, factoryType, threadFactory);
+            ExecutorService result = (ExecutorService) poolType
+                    .getConstructor(int.class, factoryType, Thread.UncaughtExceptionHandler.class, boolean.class)
+                    .newInstance(parallelism, factory, null, true);
+            poolSizeMethod = poolType.getMethod("getPoolSize");
+            queuedTaskCountMethod = poolType.getMethod("getQueuedTaskCount");
+            queuedSubmissionCountMethod = poolType.getMethod("getQueuedSubmissionCount");
+            stealCountMethod = poolType.getMethod("getStealCount");
+            return result;
+        } catch (ClassNotFoundException e) {
+            LOG.debug("ForkJoinPool not available; using fixed thread pool of size {} for non-blocking tasks", parallelism);
+            return null;
+        } catch (Exception e) {
+            LOG.warn("Unable to create ForkJoinPool; using fixed thread pool of size "+parallelism+" for non-blocking tasks", e);
+            return null;
+        }
+    }
+
+    /** a ForkJoinWorkerThreadFactory whose workers take their settings from threads of the given factory */
+    private Object newWorkerThreadFactory(Class<?> poolType, Class<?> factoryType, final ThreadFactory threadFactory) throws Exception {
+        final Object defaultFactory = poolType.getField("defaultForkJoinWorkerThreadFactory").get(null);
+        final Method newThreadMethod = factoryType.getMethod("newThread", poolType);
+        return Proxy.newProxyInstance(WorkStealingExecutorStrategy.class.getClassLoader(), new Class<?>[] {factoryType}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.equals(newThreadMethod)) {
+                    Thread worker;
+                    try {
+                        worker = (Thread) newThreadMethod.invoke(defaultFactory, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    Thread template = threadFactory.newThread(new Runnable() { public void run() {} });
+                    worker.setName(template.getName());
+                    worker.setDaemon(template.isDaemon());
+                    worker.setPriority(template.getPriority());
+                    worker.setContextClassLoader(template.getContextClassLoader());
+                    if (template.getUncaughtExceptionHandler() != template.getThreadGroup()) {
+                        // i.e. the factory set one explicitly, rather than leaving it to the thread group
+                        worker.setUncaughtExceptionHandler(template.getUncaughtExceptionHandler());
+                    }
+                    return worker;
+                } else if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else {
+                    return "ForkJoinWorkerThreadFactory["+threadFactory+"]";
+                }
+            }});
+    }
+
+    public boolean isBlocking(Task<?> task) {
+        if (task instanceof BasicTask && ((BasicTask<?>)task).isBlocking()) return true;
+        if (blockingTags.isEmpty()) return false;
+        for (Object tag : task.getTags()) {
+            if (blockingTags.contains(tag)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public ExecutorService getExecutor(Task<?> task) {
+        return isBlocking(task) ? blockingRunner : boundedRunner;
+    }
+
+    @Override
+    public ExecutorService getDefaultExecutor() {
+        return boundedRunner;
+    }
+
+    @Override
+    public void shutdownNow() {
+        boundedRunner.shutdownNow();
+        blockingRunner.shutdownNow();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public Set<Object> getBlockingTags() {
+        return blockingTags;
+    }
+
+    @Override
+    public int getPoolSize() {
+        int bounded = (boundedRunner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)boundedRunner).getPoolSize() :
+                invokeStat(poolSizeMethod).intValue();
+        return bounded + blockingRunner.getPoolSize();
+    }
+
+    @Override
+    public long getQueuedTaskCount() {
+        long bounded = (boundedRunner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)boundedRunner).getQueue().size() :
+                invokeStat(queuedTaskCountMethod).longValue() + invokeStat(queuedSubmissionCountMethod).longValue();
+        return bounded + blockingRunner.getQueue().size();
+    }
+
+    @Override
+    public long getStealCount() {
+        return (boundedRunner instanceof ThreadPoolExecutor) ? 0 : invokeStat(stealCountMethod).longValue();
+    }
+
+    private Number invokeStat(Method method) {
+        try {
+            return (Number) method.invoke(boundedRunner);
+        } catch (Exception e) {
+            LOG.debug("Unable to read "+method.getName()+" from "+boundedRunner+" (returning 0)", e);
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WorkStealingExecutorStrategy[parallelism="+parallelism+"; blockingTags="+blockingTags+"]";
+    }
+}
@@ -277,4 +277,45 @@ class CustomAggregatingEnricherTest {
         cae.onEvent(intSensor.newEvent(p1, 2))
         assertEquals cae.getAggregate(), 4
     }
+    
+    @Test
+    public void testIncrementalMaxWhenMaximumProducerRemoved() {
+        SimpleEntity p1 = app.newSimpleChild(); 
+        SimpleEntity p2 = app.newSimpleChild(); 
+        SimpleEntity p3 = app.newSimpleChild(); 
+        
+        CustomAggregatingEnricher<Integer,Long> cae = new CustomAggregatingEnricher<Integer,Long>(
+                [producers:[p1, p2, p3]], intSensor, target, IncrementalAggregators.<Integer,Long>max(Long.class))
+        producer.addEnricher(cae)
+        assertEquals cae.getAggregate(), null
+        
+        cae.onEvent(intSensor.newEvent(p1, 3))
+        cae.onEvent(intSensor.newEvent(p2, 9))
+        cae.onEvent(intSensor.newEvent(p3, 9))
+        assertEquals cae.getAggregate(), 9L
+        
+        // one of the equal maximums changes, then the other is removed
+        cae.onEvent(intSensor.newEvent(p2, 1))
+        assertEquals cae.getAggregate(), 9L
+        cae.removeProducer(p3)
+        assertEquals cae.getAggregate(), 3L
+    }
+    
+    @Test
+    public void testIncrementalSumMatchesRecomputedSum() {
+        List<SimpleEntity> producers = (1..20).collect { app.newSimpleChild() }
+        CustomAggregatingEnricher<Integer> cae = CustomAggregatingEnricher.<Integer>newSummingEnricher(
+                intSensor, target, producers:producers)
+        producer.addEnricher(cae)
+        
+        Random random = new Random(0)
+        Map<SimpleEntity,Integer> latest = [:]
+        200.times {
+            SimpleEntity p = producers[random.nextInt(producers.size())]
+            int val = random.nextInt(1000)
+            latest[p] = val
+            cae.onEvent(intSensor.newEvent(p, val))
+        }
+        assertEquals((long) cae.getAggregate(), (long) latest.values().sum())
+    }
 }
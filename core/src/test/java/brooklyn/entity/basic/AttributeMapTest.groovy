@@ -125,4 +125,27 @@ public class AttributeMapTest {
         assertEquals(map.getValue(childSensor), "childValue")
         assertEquals(map.getValue(sensor), "parentValue")
     }
+    
+    @Test
+    public void testAsMapKeyedBySensorName() {
+        BasicAttributeSensor<String> sensor1 = [ Integer, "a", "" ]
+        BasicAttributeSensor<String> sensor2 = [ Integer, "b.c", "" ]
+        
+        map.update(sensor1, "1val")
+        map.update(["b", "c"], "2val")
+        
+        assertEquals(map.asMap(), [a:"1val", "b.c":"2val"])
+    }
+    
+    @Test
+    public void testEqualSensorInstancesShareValue() {
+        BasicAttributeSensor<String> sensor = [ String, "a.b", "" ]
+        BasicAttributeSensor<String> sameSensor = [ String, new String("a.b"), "" ]
+        
+        map.update(sensor, "val")
+        
+        assertEquals(map.getValue(sameSensor), "val")
+        map.remove(sameSensor)
+        assertEquals(map.getValue(sensor), null)
+    }
 }
@@ -537,6 +537,51 @@ class DynamicClusterTest {
         assertEquals(cluster.members as Set, ImmutableSet.of(member));
     }
     
+    @Test
+    public void testGrowStartsAtMostMaxConcurrentStartsAndMembersJoinWhenStarted() {
+        CountDownLatch firstStartLatch = new CountDownLatch(1)
+        AtomicInteger counter = new AtomicInteger(0)
+        AtomicInteger concurrentStarts = new AtomicInteger(0)
+        AtomicInteger maxConcurrentStarts = new AtomicInteger(0)
+        DynamicCluster cluster = new DynamicCluster([
+                factory: { properties ->
+                        boolean first = (counter.incrementAndGet() == 1)
+                        return new BlockingStartEntity(properties, {
+                                maxConcurrentStarts.set(Math.max(maxConcurrentStarts.get(), concurrentStarts.incrementAndGet()))
+                                if (first) firstStartLatch.await()
+                                concurrentStarts.decrementAndGet()
+                            })
+                    },
+                initialSize:0,
+                maxConcurrentStarts:2
+            ], app)
+        app.manage(cluster);
+        cluster.start([loc])
+
+        Thread thread = new Thread( { cluster.resize(4) })
+        try {
+            thread.start()
+            
+            // the others start, and join, while the first is still starting
+            TestUtils.executeUntilSucceeds(timeout:TIMEOUT_MS) {
+                assertEquals(cluster.getCurrentSize(), 3)
+                assertEquals(cluster.getAttribute(DynamicCluster.MEMBERS_STARTING), 1)
+                assertEquals(cluster.getAttribute(DynamicCluster.MEMBERS_PENDING_START), 0)
+            }
+            assertTrue(thread.isAlive())
+            
+            firstStartLatch.countDown()
+            thread.join(TIMEOUT_MS)
+            assertFalse(thread.isAlive())
+            assertEquals(cluster.getCurrentSize(), 4)
+            assertEquals(cluster.getAttribute(DynamicCluster.MEMBERS_STARTING), 0)
+            assertEquals(maxConcurrentStarts.get(), 2)
+        } finally {
+            firstStartLatch.countDown()
+            thread.interrupt()
+        }
+    }
+    
     private Throwable unwrapException(Throwable e) {
         if (e instanceof ExecutionException) {
             return unwrapException(e.cause)
@@ -570,3 +615,18 @@ class FailingEntity extends TestEntity {
         }
     }
 }
+
+class BlockingStartEntity extends TestEntity {
+    Closure onStart
+    
+    BlockingStartEntity(Map flags, Closure onStart) {
+        super(flags)
+        this.onStart = onStart
+    }
+    
+    @Override
+    public void start(Collection<? extends Location> locs) {
+        onStart.call()
+        super.start(locs)
+    }
+}
@@ -0,0 +1,133 @@
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.TestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.task.BasicExecutionManager;
+
+import com.google.common.collect.Lists;
+
+public class PeriodicDeltaChangeListenerTest {
+
+    private LocalManagementContext managementContext;
+    private BasicExecutionManager executionManager;
+    private RecordingPersister persister;
+    private TestApplication app;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        managementContext = new LocalManagementContext();
+        executionManager = new BasicExecutionManager();
+        persister = new RecordingPersister();
+        app = new TestApplication();
+        managementContext.manage(app);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (executionManager != null) executionManager.shutdownNow();
+        if (managementContext != null) managementContext.terminate();
+    }
+
+    @Test
+    public void testRepeatedChangesWithinDelayAreCoalesced() throws Exception {
+        PeriodicDeltaChangeListener listener = new PeriodicDeltaChangeListener(executionManager, persister, 10, 500, 0);
+        TestEntity entity = new TestEntity(app);
+
+        for (int i = 0; i < 100; i++) {
+            listener.onChanged(entity);
+        }
+        listener.waitForPendingComplete();
+
+        assertEquals(persister.entityIds(), Lists.newArrayList(entity.getId()));
+        assertEquals(listener.getMementosWrittenCount(), 1);
+        assertEquals(listener.getCoalescedChangeCount(), 99);
+    }
+
+    @Test
+    public void testChangeAfterWriteIsWrittenAgain() throws Exception {
+        PeriodicDeltaChangeListener listener = new PeriodicDeltaChangeListener(executionManager, persister, 10);
+        TestEntity entity = new TestEntity(app);
+
+        listener.onChanged(entity);
+        listener.waitForPendingComplete();
+        listener.onChanged(entity);
+        listener.waitForPendingComplete();
+
+        assertEquals(persister.entityIds(), Lists.newArrayList(entity.getId(), entity.getId()));
+    }
+
+    @Test
+    public void testUnmanagedBeforeWriteIsOnlyRemoved() throws Exception {
+        PeriodicDeltaChangeListener listener = new PeriodicDeltaChangeListener(executionManager, persister, 10, 200, 0);
+        TestEntity entity = new TestEntity(app);
+
+        listener.onChanged(entity);
+        listener.onUnmanaged(entity);
+        listener.waitForPendingComplete();
+
+        assertEquals(persister.entityIds(), Lists.newArrayList());
+        assertEquals(persister.removedEntityIds(), Lists.newArrayList(entity.getId()));
+    }
+
+    @Test
+    public void testWriteRateIsCapped() throws Exception {
+        // 100 writes per second with a 20ms period is 2 mementos per delta
+        final PeriodicDeltaChangeListener listener = new PeriodicDeltaChangeListener(executionManager, persister, 20, 0, 100);
+        final int numEntities = 10;
+        for (int i = 0; i < numEntities; i++) {
+            listener.onChanged(new TestEntity(app));
+        }
+
+        TestUtils.executeUntilSucceeds(new Runnable() {
+            public void run() {
+                assertEquals(persister.entityIds().size(), numEntities);
+            }});
+        for (BrooklynMementoPersister.Delta delta : persister.deltas) {
+            assertTrue(delta.entities().size() <= 2, "delta had "+delta.entities().size()+" entities");
+        }
+    }
+
+    private static class RecordingPersister implements BrooklynMementoPersister {
+        final List<Delta> deltas = new CopyOnWriteArrayList<Delta>();
+
+        List<String> entityIds() {
+            List<String> result = Lists.newArrayList();
+            for (Delta delta : deltas) {
+                for (EntityMemento memento : delta.entities()) {
+                    result.add(memento.getId());
+                }
+            }
+            return result;
+        }
+
+        List<String> removedEntityIds() {
+            List<String> result = Lists.newArrayList();
+            for (Delta delta : deltas) {
+                result.addAll(delta.removedEntityIds());
+            }
+            return result;
+        }
+
+        @Override public BrooklynMemento loadMemento() throws IOException { return null; }
+        @Override public void checkpoint(BrooklynMemento memento) {}
+        @Override public void delta(Delta delta) { deltas.add(delta); }
+        @Override public void stop() {}
+        @Override public void waitForWritesCompleted() {}
+    }
+}
@@ -0,0 +1,73 @@
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class RebindManagerImplTest {
+
+    private EntityMemento newEntityMemento(String id, String parent, List<String> children, List<String> members) {
+        return BasicEntityMemento.builder()
+                .id(id)
+                .type((parent == null ? TestApplication.class : TestEntity.class).getName())
+                .parent(parent)
+                .children(Lists.newArrayList(children))
+                .members(members)
+                .isTopLevelApp(parent == null)
+                .build();
+    }
+
+    private List<String> ids(List<EntityMemento> mementos) {
+        List<String> result = Lists.newArrayList();
+        for (EntityMemento memento : mementos) {
+            result.add(memento.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void testPartitionsIndependentApplications() throws Exception {
+        BrooklynMemento memento = BrooklynMementoImpl.builder()
+                .entity(newEntityMemento("app1", null, ImmutableList.of("e1", "e2"), ImmutableList.<String>of()))
+                .entity(newEntityMemento("e1", "app1", ImmutableList.<String>of(), ImmutableList.<String>of()))
+                .entity(newEntityMemento("app2", null, ImmutableList.of("e3"), ImmutableList.<String>of()))
+                .entity(newEntityMemento("e2", "app1", ImmutableList.<String>of(), ImmutableList.<String>of()))
+                .entity(newEntityMemento("e3", "app2", ImmutableList.<String>of(), ImmutableList.<String>of()))
+                .build();
+
+        List<List<EntityMemento>> groups = RebindManagerImpl.partitionEntities(memento);
+
+        assertEquals(groups.size(), 2);
+        assertEquals(ids(groups.get(0)), ImmutableList.of("app1", "e1", "e2"));
+        assertEquals(ids(groups.get(1)), ImmutableList.of("app2", "e3"));
+    }
+
+    @Test
+    public void testGroupMembershipAcrossApplicationsJoinsPartitions() throws Exception {
+        BrooklynMemento memento = BrooklynMementoImpl.builder()
+                .entity(newEntityMemento("app1", null, ImmutableList.of("group1"), ImmutableList.<String>of()))
+                .entity(newEntityMemento("group1", "app1", ImmutableList.<String>of(), ImmutableList.of("e2")))
+                .entity(newEntityMemento("app2", null, ImmutableList.of("e2"), ImmutableList.<String>of()))
+                .entity(newEntityMemento("e2", "app2", ImmutableList.<String>of(), ImmutableList.<String>of()))
+                .entity(newEntityMemento("app3", null, ImmutableList.<String>of(), ImmutableList.<String>of()))
+                .build();
+
+        List<List<EntityMemento>> groups = RebindManagerImpl.partitionEntities(memento);
+
+        assertEquals(groups.size(), 2);
+        assertEquals(ids(groups.get(0)), ImmutableList.of("app1", "group1", "app2", "e2"));
+        assertEquals(ids(groups.get(1)), ImmutableList.of("app3"));
+    }
+}
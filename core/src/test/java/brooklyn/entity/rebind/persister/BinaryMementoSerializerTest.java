@@ -0,0 +1,198 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BasicLocationMemento;
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class BinaryMementoSerializerTest {
+
+    private static final ConfigKey<String> DYNAMIC_CONFIG = new BasicConfigKey<String>(String.class, "test.dynamic.config", "my desc", "mydefault");
+    private static final AttributeSensor<Long> DYNAMIC_SENSOR = new BasicAttributeSensor<Long>(Long.class, "test.dynamic.sensor", "my desc");
+
+    private enum MyEnum { FOO, BAR }
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+    private BinaryMementoSerializer<Object> serializer;
+    private XmlMementoSerializer<Object> xmlSerializer;
+    private File mementoDir;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        serializer = new BinaryMementoSerializer<Object>(classLoader);
+        xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+        mementoDir = Files.createTempDir();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (mementoDir != null) RebindTestUtils.deleteMementoDir(mementoDir);
+    }
+
+    private EntityMemento newEntityMemento(String id) {
+        return BasicEntityMemento.builder()
+                .id(id)
+                .type(TestEntity.class.getName())
+                .displayName("my name")
+                .parent("myparent")
+                .addChild("mychild")
+                .isTopLevelApp(false)
+                .config(MutableMap.of(
+                        TestEntity.CONF_NAME, "myconfval",
+                        DYNAMIC_CONFIG, Lists.newArrayList("a", "b")))
+                .attributes(MutableMap.of(
+                        TestEntity.SEQUENCE, 123,
+                        DYNAMIC_SENSOR, 456L,
+                        TestEntity.NAME, MyEnum.BAR))
+                .entityReferenceAttributes(ImmutableList.of(DYNAMIC_SENSOR))
+                .locationReferenceConfigs(ImmutableList.of(TestEntity.CONF_NAME))
+                .locations(ImmutableList.of("myloc"))
+                .members(ImmutableList.of("mymember"))
+                .customFields(MutableMap.of("myfield", ImmutableList.of(1, 2), "myotherfield", MutableMap.of("k", true)))
+                .build();
+    }
+
+    @Test
+    public void testEntityMementoRoundTrip() throws Exception {
+        EntityMemento orig = newEntityMemento("myid");
+        EntityMemento result = (EntityMemento) serializer.fromString(serializer.toString(orig));
+
+        assertEquals(result.getId(), "myid");
+        assertEquals(result.getType(), TestEntity.class.getName());
+        assertEquals(result.getDisplayName(), "my name");
+        assertEquals(result.getBrooklynVersion(), orig.getBrooklynVersion());
+        assertEquals(result.getParent(), "myparent");
+        assertEquals(result.getChildren(), ImmutableList.of("mychild"));
+        assertFalse(result.isTopLevelApp());
+        assertEquals(result.getConfig(), orig.getConfig());
+        assertEquals(result.getConfig().get(TestEntity.CONF_NAME), "myconfval");
+        assertEquals(result.getAttributes(), orig.getAttributes());
+        assertEquals(result.getAttributes().get(DYNAMIC_SENSOR), 456L);
+        assertEquals(result.getEntityReferenceAttributes(), ImmutableSet.of(DYNAMIC_SENSOR));
+        assertEquals(ImmutableSet.copyOf(result.getLocationReferenceConfigs()), ImmutableSet.of(TestEntity.CONF_NAME));
+        assertEquals(result.getLocations(), ImmutableList.of("myloc"));
+        assertEquals(result.getMembers(), ImmutableList.of("mymember"));
+        assertEquals(result.getCustomFields(), orig.getCustomFields());
+    }
+
+    @Test
+    public void testRestoresDynamicKeysInFull() throws Exception {
+        EntityMemento result = (EntityMemento) serializer.fromString(serializer.toString(newEntityMemento("myid")));
+
+        ConfigKey<?> key = null;
+        for (ConfigKey<?> k : result.getConfig().keySet()) {
+            if (k.getName().equals(DYNAMIC_CONFIG.getName())) key = k;
+        }
+        assertEquals(key.getType(), String.class);
+        assertEquals(key.getDescription(), "my desc");
+        assertEquals(key.getDefaultValue(), "mydefault");
+        assertTrue(result.getAttributes().containsKey(DYNAMIC_SENSOR));
+    }
+
+    @Test
+    public void testLocationMementoRoundTrip() throws Exception {
+        LocationMemento orig = BasicLocationMemento.builder()
+                .id("myid")
+                .type("my.Location")
+                .parent("myparent")
+                .locationProperties(MutableMap.of("prop", "val"))
+                .flags(MutableMap.of("flag", 1.5d, "otherLoc", "otherid"))
+                .locationReferenceFlags(ImmutableList.of("otherLoc"))
+                .build();
+        LocationMemento result = (LocationMemento) serializer.fromString(serializer.toString(orig));
+
+        assertEquals(result.getId(), "myid");
+        assertEquals(result.getType(), "my.Location");
+        assertEquals(result.getParent(), "myparent");
+        assertEquals(result.getLocationProperties(), orig.getLocationProperties());
+        assertEquals(result.getFlags(), orig.getFlags());
+        assertEquals(result.getLocationReferenceFlags(), ImmutableSet.of("otherLoc"));
+    }
+
+    @Test
+    public void testOtherValuesRoundTripViaXml() throws Exception {
+        Map<String, Object> orig = ImmutableMap.<String, Object>of("a", 1, "b", ImmutableList.of("c"));
+        assertEquals(serializer.fromString(serializer.toString(orig)), orig);
+    }
+
+    @Test
+    public void testIsSmallerThanXmlAndDetectable() throws Exception {
+        EntityMemento memento = newEntityMemento("myid");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(memento, out);
+        byte[] binary = out.toByteArray();
+        byte[] xml = xmlSerializer.toString(memento).getBytes(Charsets.UTF_8);
+
+        assertTrue(binary.length < xml.length, "binary="+binary.length+"; xml="+xml.length);
+        assertTrue(BinaryMementoSerializer.isBinary(new BufferedInputStream(new ByteArrayInputStream(binary))));
+        assertFalse(BinaryMementoSerializer.isBinary(new BufferedInputStream(new ByteArrayInputStream(xml))));
+    }
+
+    @Test
+    public void testConvertsToAndFromXml() throws Exception {
+        MementoFormatConverter converter = new MementoFormatConverter(classLoader);
+        String xml = xmlSerializer.toString(newEntityMemento("myid"));
+
+        String xml2 = converter.binaryToXml(converter.xmlToBinary(xml));
+        EntityMemento result = (EntityMemento) xmlSerializer.fromString(xml2);
+        assertEquals(result.getId(), "myid");
+        assertEquals(result.getAttributes(), newEntityMemento("myid").getAttributes());
+    }
+
+    @Test
+    public void testPersisterReadsEitherFormat() throws Exception {
+        BrooklynMemento memento = BrooklynMementoImpl.builder()
+                .entity(newEntityMemento("entity1"))
+                .build();
+        BrooklynMementoPersisterToMultiFile xmlPersister = new BrooklynMementoPersisterToMultiFile(mementoDir, classLoader);
+        xmlPersister.checkpoint(memento);
+        xmlPersister.waitForWritesCompleted();
+        xmlPersister.stop();
+
+        BrooklynMementoPersisterToMultiFile binaryPersister = new BrooklynMementoPersisterToMultiFile(mementoDir, classLoader,
+                new BinaryMementoSerializer<Object>(classLoader));
+        binaryPersister.checkpoint(BrooklynMementoImpl.builder().entity(newEntityMemento("entity2")).build());
+        binaryPersister.waitForWritesCompleted();
+        assertTrue(BinaryMementoSerializer.isBinary(new BufferedInputStream(new ByteArrayInputStream(
+                Files.toByteArray(new File(mementoDir, "entities/entity2"))))));
+
+        BrooklynMemento loaded = binaryPersister.loadMemento();
+        binaryPersister.stop();
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("entity1", "entity2"));
+        assertEquals(loaded.getEntityMemento("entity1").getAttributes(), newEntityMemento("x").getAttributes());
+        assertEquals(loaded.getEntityMemento("entity2").getAttributes(), newEntityMemento("x").getAttributes());
+
+        assertEquals(new MementoFormatConverter(classLoader).convertDirectory(mementoDir, true), 1);
+        assertEquals(new MementoFormatConverter(classLoader).convertDirectory(mementoDir, false), 2);
+    }
+}
@@ -0,0 +1,207 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BasicLocationMemento;
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister.Delta;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+public class BrooklynMementoPersisterToJournalTest {
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+    private File mementoDir;
+    private BrooklynMementoPersisterToJournal persister;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mementoDir = Files.createTempDir();
+        persister = new BrooklynMementoPersisterToJournal(mementoDir, classLoader);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (persister != null) persister.stop();
+        if (mementoDir != null) RebindTestUtils.deleteMementoDir(mementoDir);
+    }
+
+    private EntityMemento newEntityMemento(String id, int sequence) {
+        return BasicEntityMemento.builder()
+                .id(id)
+                .type(TestEntity.class.getName())
+                .parent("app")
+                .attributes(MutableMap.of(TestEntity.SEQUENCE, sequence))
+                .build();
+    }
+
+    private EntityMemento newAppMemento() {
+        return BasicEntityMemento.builder()
+                .id("app")
+                .type(TestApplication.class.getName())
+                .isTopLevelApp(true)
+                .build();
+    }
+
+    private LocationMemento newLocationMemento(String id) {
+        return BasicLocationMemento.builder()
+                .id(id)
+                .type("my.Location")
+                .build();
+    }
+
+    private BrooklynMementoPersisterToJournal reopen() throws Exception {
+        persister.stop();
+        persister = new BrooklynMementoPersisterToJournal(mementoDir, classLoader);
+        return persister;
+    }
+
+    @Test
+    public void testReplaysDeltas() throws Exception {
+        persister.delta(new SimpleDelta(ImmutableList.of(newAppMemento(), newEntityMemento("e1", 1), newEntityMemento("e2", 1)),
+                ImmutableList.of(newLocationMemento("loc1")), Collections.<String>emptyList()));
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e1", 2)),
+                Collections.<LocationMemento>emptyList(), ImmutableList.of("e2")));
+
+        BrooklynMemento loaded = reopen().loadMemento();
+
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("app", "e1"));
+        assertEquals(ImmutableList.copyOf(loaded.getApplicationIds()), ImmutableList.of("app"));
+        assertEquals(loaded.getEntityMemento("e1").getAttributes().get(TestEntity.SEQUENCE), 2);
+        assertEquals(ImmutableSet.copyOf(loaded.getLocationIds()), ImmutableSet.of("loc1"));
+    }
+
+    @Test
+    public void testCheckpointWritesSnapshotAndDiscardsJournal() throws Exception {
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("old", 1)),
+                Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+        persister.checkpoint(BrooklynMementoImpl.builder().entity(newEntityMemento("e1", 1)).build());
+        persister.waitForWritesCompleted();
+
+        assertTrue(new File(mementoDir, "snapshot").exists());
+        assertEquals(persister.listSegments().length, 1);
+
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e2", 1)),
+                Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+
+        BrooklynMemento loaded = reopen().loadMemento();
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("e1", "e2"));
+    }
+
+    @Test
+    public void testDeltaDuringCheckpointIsAppliedAfterIt() throws Exception {
+        final Thread deltaThread = new Thread(new Runnable() {
+            @Override public void run() {
+                persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e1", 2), newEntityMemento("e2", 1)),
+                        Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+            }});
+        persister.checkpoint(new Supplier<BrooklynMemento>() {
+            @Override public BrooklynMemento get() {
+                // The delta is built after this memento, so must not be superseded by it
+                deltaThread.start();
+                try {
+                    deltaThread.join(100);
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+                assertTrue(deltaThread.isAlive(), "delta appended while checkpoint in progress");
+                return BrooklynMementoImpl.builder().entity(newEntityMemento("e1", 1)).build();
+            }});
+        deltaThread.join(10*1000);
+        persister.waitForWritesCompleted();
+
+        BrooklynMemento loaded = reopen().loadMemento();
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("e1", "e2"));
+        assertEquals(loaded.getEntityMemento("e1").getAttributes().get(TestEntity.SEQUENCE), 2);
+    }
+
+    @Test
+    public void testCompactsAfterThreshold() throws Exception {
+        persister.setSegmentSize(4*1024);
+        persister.setCompactionThreshold(16*1024);
+        for (int i = 0; i < 200; i++) {
+            persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e"+(i % 5), i)),
+                    Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+            persister.waitForWritesCompleted();
+        }
+
+        assertTrue(new File(mementoDir, "snapshot").exists());
+        assertTrue(persister.listSegments().length <= 6, "segments="+persister.listSegments().length);
+
+        BrooklynMemento loaded = reopen().loadMemento();
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("e0", "e1", "e2", "e3", "e4"));
+        assertEquals(loaded.getEntityMemento("e4").getAttributes().get(TestEntity.SEQUENCE), 199);
+    }
+
+    @Test
+    public void testIgnoresCorruptTailRecord() throws Exception {
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e1", 1)),
+                Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e1", 2), newEntityMemento("e2", 1)),
+                Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+        persister.stop();
+
+        // Simulate a torn write, by corrupting the last byte of the second record
+        File segment = persister.listSegments()[0];
+        byte[] contents = Files.toByteArray(segment);
+        int end = contents.length;
+        while (contents[end-1] == 0) end--;
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        try {
+            raf.seek(end-1);
+            raf.write(contents[end-1] ^ 0xff);
+        } finally {
+            raf.close();
+        }
+
+        BrooklynMemento loaded = reopen().loadMemento();
+        assertEquals(ImmutableSet.copyOf(loaded.getEntityIds()), ImmutableSet.of("e1"));
+        assertEquals(loaded.getEntityMemento("e1").getAttributes().get(TestEntity.SEQUENCE), 1);
+
+        // and later appends are replayed after the intact prefix
+        persister.delta(new SimpleDelta(ImmutableList.of(newEntityMemento("e3", 1)),
+                Collections.<LocationMemento>emptyList(), Collections.<String>emptyList()));
+        assertEquals(ImmutableSet.copyOf(reopen().loadMemento().getEntityIds()), ImmutableSet.of("e1", "e3"));
+    }
+
+    private static class SimpleDelta implements Delta {
+        private final Collection<EntityMemento> entities;
+        private final Collection<LocationMemento> locations;
+        private final Collection<String> removedEntityIds;
+
+        SimpleDelta(Collection<EntityMemento> entities, Collection<LocationMemento> locations, Collection<String> removedEntityIds) {
+            this.entities = entities;
+            this.locations = locations;
+            this.removedEntityIds = removedEntityIds;
+        }
+        @Override public Collection<LocationMemento> locations() { return locations; }
+        @Override public Collection<EntityMemento> entities() { return entities; }
+        @Override public Collection<PolicyMemento> policies() { return Collections.emptyList(); }
+        @Override public Collection<String> removedLocationIds() { return Collections.emptyList(); }
+        @Override public Collection<String> removedEntityIds() { return removedEntityIds; }
+        @Override public Collection<String> removedPolicyIds() { return Collections.emptyList(); }
+    }
+}
@@ -0,0 +1,70 @@
+package brooklyn.event.adapter;
+
+import static org.testng.Assert.assertEquals
+import static org.testng.Assert.assertTrue
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import org.testng.annotations.AfterMethod
+import org.testng.annotations.BeforeMethod
+import org.testng.annotations.Test
+
+import brooklyn.config.BrooklynProperties
+import brooklyn.management.Task
+import brooklyn.management.internal.LocalManagementContext
+import brooklyn.test.entity.TestApplication
+import brooklyn.test.entity.TestEntity
+import brooklyn.util.task.ExecutorStrategy
+
+/**
+ * Tests that sensor polls which block (e.g. on an unresponsive ssh, jmx or http server) do not take the threads of
+ * a bounded pool, so cannot starve other tasks.
+ */
+public class BlockingPollTest {
+
+    LocalManagementContext managementContext
+    TestApplication app
+    TestEntity entity
+    CountDownLatch releasePolls = new CountDownLatch(1)
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty()
+        props.put(ExecutorStrategy.STRATEGY_PROPERTY, "workStealing")
+        props.put(ExecutorStrategy.PARALLELISM_PROPERTY, "1")
+        managementContext = new LocalManagementContext(props)
+        app = new TestApplication()
+        entity = new TestEntity(app)
+        managementContext.manage(app)
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        releasePolls.countDown()
+        managementContext?.terminate()
+    }
+
+    @Test
+    public void testBlockedPollsDoNotStarveBoundedPool() {
+        CountDownLatch pollsStarted = new CountDownLatch(2)
+        SensorRegistry registry = new SensorRegistry(entity)
+        [TestEntity.SEQUENCE, TestEntity.NAME].each { sensor ->
+            FunctionSensorAdapter adapter = registry.register(new FunctionSensorAdapter(period: 50*TimeUnit.MILLISECONDS, {
+                pollsStarted.countDown()
+                releasePolls.await()
+                return null
+            }))
+            adapter.poll(sensor)
+        }
+        registry.activateAdapters()
+
+        // both polls are blocked at once, though the bounded pool has only one thread
+        assertTrue(pollsStarted.await(5, TimeUnit.SECONDS))
+
+        // and that thread is still free for other tasks
+        Task<String> task = managementContext.getExecutionManager().submit({ "done" } as Callable)
+        assertEquals(task.get(5, TimeUnit.SECONDS), "done")
+    }
+}
@@ -4,12 +4,16 @@ import static brooklyn.event.adapter.HttpResponseContextTest.*
 import static org.codehaus.groovy.runtime.DefaultGroovyMethods.with
 import static org.testng.Assert.*
 
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
 import org.testng.annotations.AfterMethod
 import org.testng.annotations.BeforeMethod
 import org.testng.annotations.Test
 
 import brooklyn.entity.basic.EntityLocal
 import brooklyn.event.basic.BasicAttributeSensor
+import brooklyn.test.HttpService
 import brooklyn.test.TestUtils
 import brooklyn.test.entity.TestApplication
 import brooklyn.test.entity.TestEntity
@@ -68,6 +72,34 @@ public class HttpSensorAdapterTest {
 		assertEquals entity.getAttribute(SENSOR_LONG), 8
 	}
     
+	@Test
+	public void testConditionalPollSkipsEvaluationWhenNotModified() {
+		HttpService server = new HttpService()
+		try {
+			server.setContent("v1")
+			AtomicInteger evaluations = new AtomicInteger()
+			HttpSensorAdapter localAdapter = registry.register(new HttpSensorAdapter(server.url, period: 20*TimeUnit.MILLISECONDS))
+			localAdapter.poll(SENSOR_STRING, { evaluations.incrementAndGet(); content })
+			registry.activateAdapters()
+			
+			TestUtils.executeUntilSucceeds {
+				assertEquals entity.getAttribute(SENSOR_STRING), "v1"
+				assertTrue(server.notModifiedCount >= 5, "notModified="+server.notModifiedCount)
+			}
+			assertEquals evaluations.get(), 1
+			// each poll reuses the one kept-alive connection
+			assertEquals server.clientSocketCount, 1
+			
+			server.setContent("v2")
+			TestUtils.executeUntilSucceeds {
+				assertEquals entity.getAttribute(SENSOR_STRING), "v2"
+			}
+		} finally {
+			registry.close()
+			server.shutdown()
+		}
+	}
+	
 	// Relies on URL above being bogus
     @Test(groups="Integration")
     public void testReportsErrorOnFailedConnection() {
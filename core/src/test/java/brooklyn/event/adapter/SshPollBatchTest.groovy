@@ -0,0 +1,60 @@
+package brooklyn.event.adapter
+
+import static org.testng.Assert.*
+
+import org.testng.annotations.Test
+
+import brooklyn.location.basic.LocalhostMachineProvisioningLocation
+import brooklyn.location.basic.SshMachineLocation
+
+import com.google.common.base.Charsets
+import com.google.common.io.ByteStreams
+
+public class SshPollBatchTest {
+
+    final static LocalhostMachineProvisioningLocation location = [ count:1 ]
+    final static SshMachineLocation machine = location.obtain()
+    final static String MARKER = "BROOKLYN-POLL-abcd1234"
+
+    @Test
+    public void testParseOutputSplitsEachCommand() {
+        String output = "\n${MARKER} 0 out\nfirst\n\n${MARKER} 0 err\n\n${MARKER} 0 exit 0\n"+
+                "\n${MARKER} 1 out\nsecond\nline\n${MARKER} 1 err\noops\n\n${MARKER} 1 exit 3\n"
+        List<SshResultContext> results = SshPollBatch.parseOutput(machine, MARKER, 2, output)
+
+        assertEquals(results[0].stdout, "first\n")
+        assertEquals(results[0].stderr, "")
+        assertEquals(results[0].exitStatus, 0)
+        assertEquals(results[1].stdout, "second\nline")
+        assertEquals(results[1].stderr, "oops\n")
+        assertEquals(results[1].exitStatus, 3)
+    }
+
+    @Test
+    public void testParseOutputGivesNullForIncompleteCommand() {
+        String output = "banner\n${MARKER} 0 out\nfirst\n${MARKER} 0 err\n\n${MARKER} 0 exit 0\n\n${MARKER} 1 out\npartial"
+        List<SshResultContext> results = SshPollBatch.parseOutput(machine, MARKER, 2, output)
+
+        assertEquals(results[0].stdout, "first")
+        assertNull(results[1])
+    }
+
+    @Test(groups="Integration")
+    public void testScriptRoundTripsOutputOfEachCommand() {
+        List<String> script = SshPollBatch.toScript(MARKER,
+                [ "echo \$GREETING; echo to-err 1>&2", "printf 'no newline'; exit 7", "# only a comment" ],
+                [ [GREETING:'hello "$world"'], [:], [:] ])
+        Process process = new ProcessBuilder("bash", "-c", script.join("\n")).start()
+        String output = new String(ByteStreams.toByteArray(process.inputStream), Charsets.UTF_8)
+        assertEquals(process.waitFor(), 0)
+
+        List<SshResultContext> results = SshPollBatch.parseOutput(machine, MARKER, 3, output)
+        assertEquals(results[0].stdout, 'hello "$world"\n')
+        assertEquals(results[0].stderr, "to-err\n")
+        assertEquals(results[0].exitStatus, 0)
+        assertEquals(results[1].stdout, "no newline")
+        assertEquals(results[1].exitStatus, 7)
+        assertEquals(results[2].stdout, "")
+        assertEquals(results[2].exitStatus, 0)
+    }
+}
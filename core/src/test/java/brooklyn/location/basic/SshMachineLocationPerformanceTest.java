@@ -62,6 +62,19 @@ public class SshMachineLocationPerformanceTest {
         runExecManyCommands(ImmutableList.of("true"), "small-cmd", 10, 10);
     }
 
+    @Test(groups = {"Integration"})
+    public void testManyConcurrentSmallCommandsMultiplexed() throws Exception {
+        runExecManyCommands(ImmutableList.of("true"), "small-cmd-multiplexed", 20, 10);
+    }
+
+    @Test(groups = {"Integration"})
+    public void testManyConcurrentSmallCommandsConnectionPerCommand() throws Exception {
+        // for comparison: one channel per connection, as before connections were multiplexed
+        Closeables.closeQuietly(machine);
+        machine = new SshMachineLocation(MutableMap.<String,Object>of("address", "localhost", "sshMaxChannelsPerConnection", 1));
+        runExecManyCommands(ImmutableList.of("true"), "small-cmd-connection-per-command", 20, 10);
+    }
+
     @Test(groups = {"Integration"})
     public void testConsecutiveBigStdoutCommands() throws Exception {
         runExecManyCommands(ImmutableList.of("head -c 100000 /dev/urandom"), "big-stdout", 10);
@@ -109,7 +122,8 @@ public class SshMachineLocationPerformanceTest {
             long postCpuTime = (Long) mbeanServer.getAttribute(osMBeanName, "ProcessCpuTime");
             long elapsedTime = stopwatch.elapsedMillis();
             double fractionCpu = (elapsedTime > 0) ? ((double)postCpuTime-preCpuTime) / TimeUnit.MILLISECONDS.toNanos(elapsedTime) : -1;
-            LOG.info("Executing {}; completed {}; took {}; fraction cpu {}", new Object[] {context, (i+1), Time.makeTimeString(elapsedTime), fractionCpu});
+            double commandsPerSec = (elapsedTime > 0) ? ((double)(i+1)*concurrentRuns) / elapsedTime * 1000 : -1;
+            LOG.info("Executing {}; completed {}; took {}; fraction cpu {}; commands/sec {}", new Object[] {context, (i+1), Time.makeTimeString(elapsedTime), fractionCpu, commandsPerSec});
         }
     }
 
@@ -0,0 +1,170 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.SubscriptionHandle;
+import brooklyn.test.TestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link LocalSubscriptionManager} in batch-delivery mode.
+ */
+public class BatchedSubscriptionDeliveryTest {
+
+    private static final int TIMEOUT_MS = 5000;
+
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private TestEntity entity;
+
+    private void setup(boolean latestValueOnly) {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY_PROPERTY, "true");
+        props.put(LocalSubscriptionManager.LATEST_VALUE_ONLY_PROPERTY, ""+latestValueOnly);
+        managementContext = new LocalManagementContext(props);
+        app = new TestApplication();
+        entity = new TestEntity(app);
+        managementContext.manage(app);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (managementContext != null) managementContext.terminate();
+    }
+
+    @Test
+    public void testBatchedDeliveryPreservesOrder() throws Exception {
+        setup(false);
+        assertTrue(((LocalSubscriptionManager)managementContext.getSubscriptionManager()).isBatchDelivery());
+
+        final int numEvents = 1000;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(numEvents);
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                latch.countDown();
+            }});
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for events; received "+values.size());
+        }
+        for (int i = 0; i < numEvents; i++) {
+            assertEquals(values.get(i), (Integer)i);
+        }
+    }
+
+    @Test
+    public void testLatestValueOnlyDeliversNewestValueToSlowSubscriber() throws Exception {
+        setup(true);
+
+        final int numEvents = 100;
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseSubscriber = new CountDownLatch(1);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseSubscriber.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+
+        entity.setAttribute(TestEntity.SEQUENCE, -1);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        releaseSubscriber.countDown();
+
+        TestUtils.executeUntilSucceeds(new Runnable() {
+            public void run() {
+                assertEquals(values.get(values.size()-1), (Integer)(numEvents-1));
+            }});
+        assertEquals(values.size(), 2, "values="+values);
+        assertEquals(((LocalSubscriptionManager)managementContext.getSubscriptionManager()).getTotalEventsConflated(), numEvents-1);
+    }
+
+    @Test
+    public void testLatestValueOnlyKeepsPublishOrderAcrossSensors() throws Exception {
+        setup(true);
+
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseSubscriber = new CountDownLatch(1);
+        final List<Object> values = new CopyOnWriteArrayList<Object>();
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseSubscriber.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }};
+        app.subscribe(entity, TestEntity.SEQUENCE, listener);
+        app.subscribe(entity, TestEntity.NAME, listener);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 0);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.NAME, "a");
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        releaseSubscriber.countDown();
+
+        // the newest sequence value replaces the first, but is still delivered after the name published before it
+        TestUtils.executeUntilSucceeds(new Runnable() {
+            public void run() {
+                assertEquals(values, ImmutableList.<Object>of(0, "a", 2));
+            }});
+        assertEquals(((LocalSubscriptionManager)managementContext.getSubscriptionManager()).getTotalEventsConflated(), 1);
+    }
+
+    @Test
+    public void testDeliveryQueueRemovedWithLastSubscriptionForSuppliedTag() throws Exception {
+        setup(false);
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) managementContext.getSubscriptionManager();
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        SensorEventListener<Object> listener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+                latch.countDown();
+            }};
+        SubscriptionHandle sequenceHandle = subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriberExecutionManagerTag", "myTag"), 
+                entity, TestEntity.SEQUENCE, listener);
+        SubscriptionHandle nameHandle = subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriberExecutionManagerTag", "myTag"), 
+                entity, TestEntity.NAME, listener);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.NAME, "a");
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        int numQueues = subscriptionManager.getNumDeliveryQueues();
+        assertTrue(numQueues >= 1, "numQueues="+numQueues);
+
+        subscriptionManager.unsubscribe(sequenceHandle);
+        assertEquals(subscriptionManager.getNumDeliveryQueues(), numQueues);
+        subscriptionManager.unsubscribe(nameHandle);
+        assertEquals(subscriptionManager.getNumDeliveryQueues(), numQueues-1);
+    }
+}
@@ -0,0 +1,139 @@
+package brooklyn.policy.basic;
+
+import static brooklyn.test.TestUtils.*
+import static org.testng.Assert.*
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.testng.annotations.AfterMethod
+import org.testng.annotations.BeforeMethod
+import org.testng.annotations.Test
+
+import brooklyn.location.basic.SimulatedLocation
+import brooklyn.test.entity.TestApplication
+import brooklyn.test.entity.TestEntity
+
+public class PolicyEvaluationSchedulerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+    private static final long SHORT_WAIT_MS = 100;
+
+    private TestApplication app;
+    private TestEntity entity;
+    private AbstractPolicy policy;
+    private AtomicInteger evaluations;
+    private AtomicInteger concurrentEvaluations;
+    private AtomicInteger maxConcurrentEvaluations;
+    private PolicyEvaluationScheduler scheduler;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        app = new TestApplication();
+        entity = new TestEntity(owner:app);
+        policy = new AbstractPolicy() {};
+        evaluations = new AtomicInteger();
+        concurrentEvaluations = new AtomicInteger();
+        maxConcurrentEvaluations = new AtomicInteger();
+        scheduler = new PolicyEvaluationScheduler(policy, {
+                int concurrent = concurrentEvaluations.incrementAndGet();
+                if (concurrent > maxConcurrentEvaluations.get()) maxConcurrentEvaluations.set(concurrent);
+                Thread.sleep(10);
+                evaluations.incrementAndGet();
+                concurrentEvaluations.decrementAndGet();
+            } as Runnable);
+        entity.addPolicy(policy);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (app != null) app.stop();
+    }
+
+    @Test
+    public void testEvaluationRequestedBeforeManagementRunsOnceManaged() {
+        assertFalse(scheduler.schedule(0));
+        assertEquals(evaluations.get(), 0);
+
+        app.start([new SimulatedLocation()]);
+        executeUntilSucceeds(timeout:TIMEOUT_MS) {
+            assertEquals(evaluations.get(), 1);
+        }
+    }
+
+    @Test
+    public void testRequestsWhileQueuedAreCoalesced() {
+        app.start([new SimulatedLocation()]);
+
+        assertTrue(scheduler.schedule(0));
+        scheduler.schedule(0);
+        scheduler.schedule(0);
+        executeUntilSucceeds(timeout:TIMEOUT_MS) {
+            assertTrue(evaluations.get() >= 1);
+        }
+        Thread.sleep(SHORT_WAIT_MS);
+        assertTrue(evaluations.get() <= 2, "evaluations="+evaluations.get());
+        assertEquals(scheduler.getEvaluationCount(), evaluations.get());
+        assertTrue(scheduler.getLastEvaluationDuration() >= 0);
+        assertTrue(scheduler.getLastQueueTime() >= 0);
+    }
+
+    @Test
+    public void testEvaluationsRunSeriallyAndAtLeastMinPeriodApart() {
+        app.start([new SimulatedLocation()]);
+        long minPeriod = 50;
+        long startTime = System.currentTimeMillis();
+
+        for (int i = 0; i < 50; i++) {
+            scheduler.schedule(minPeriod);
+            Thread.sleep(5);
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        // let the last request be evaluated
+        Thread.sleep(minPeriod + SHORT_WAIT_MS);
+
+        assertEquals(maxConcurrentEvaluations.get(), 1);
+        assertTrue(evaluations.get() >= 2, "evaluations="+evaluations.get());
+        assertTrue(evaluations.get() <= (duration / minPeriod) + 2, "evaluations="+evaluations.get()+"; duration="+duration);
+    }
+
+    @Test
+    public void testSuspendedPolicyIsNotEvaluated() {
+        app.start([new SimulatedLocation()]);
+
+        policy.suspend();
+        scheduler.cancel();
+        assertFalse(scheduler.schedule(0));
+        Thread.sleep(SHORT_WAIT_MS);
+        assertEquals(evaluations.get(), 0);
+
+        policy.resume();
+        scheduler.reset();
+        assertTrue(scheduler.schedule(0));
+        executeUntilSucceeds(timeout:TIMEOUT_MS) {
+            assertEquals(evaluations.get(), 1);
+        }
+    }
+
+    @Test
+    public void testBlockingStepRunsBeforeNextEvaluation() {
+        app.start([new SimulatedLocation()]);
+        CountDownLatch stepStarted = new CountDownLatch(1);
+        CountDownLatch releaseStep = new CountDownLatch(1);
+
+        scheduler.submitBlocking("blocking step", {
+                stepStarted.countDown();
+                releaseStep.await();
+            } as Runnable);
+        assertTrue(stepStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(scheduler.schedule(0));
+        Thread.sleep(SHORT_WAIT_MS);
+        assertEquals(evaluations.get(), 0);
+
+        releaseStep.countDown();
+        executeUntilSucceeds(timeout:TIMEOUT_MS) {
+            assertEquals(evaluations.get(), 1);
+        }
+    }
+}
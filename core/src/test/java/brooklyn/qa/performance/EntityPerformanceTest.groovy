@@ -11,6 +11,8 @@ import org.testng.annotations.Test
 import brooklyn.entity.basic.Entities
 import brooklyn.event.SensorEvent
 import brooklyn.event.SensorEventListener
+import brooklyn.event.basic.AttributeMap
+import brooklyn.event.basic.BasicAttributeSensor
 import brooklyn.location.basic.SimulatedLocation
 import brooklyn.management.Task
 import brooklyn.test.entity.TestApplication
@@ -116,4 +118,52 @@ public class EntityPerformanceTest extends AbstractPerformanceTest {
             task.get()
         }
     }
+    
+    @Test(groups=["Integration", "Acceptance"])
+    public void testGetAttribute() {
+        int numIterations = numIterations()*100
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        entity.setAttribute(TestEntity.SEQUENCE, 1)
+        
+        measureAndAssert("getAttribute", numIterations, minRatePerSec) {
+            entity.getAttribute(TestEntity.SEQUENCE)
+        }
+    }
+    
+    /**
+     * Reports the heap used by attribute maps for many entities each with several attributes;
+     * only a sanity check on the upper bound is asserted.
+     */
+    @Test(groups=["Integration", "Acceptance"])
+    public void testAttributeMapMemory() {
+        int numMaps = 10000
+        int numAttributes = 30
+        List<BasicAttributeSensor<Integer>> sensors = []
+        for (int i = 0; i < numAttributes; i++) {
+            sensors += new BasicAttributeSensor<Integer>(Integer, "test.performance.attribute"+i, "")
+        }
+        
+        for (int i = 0; i < 5; i++) System.gc()
+        Runtime runtime = Runtime.getRuntime()
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory()
+        
+        List<AttributeMap> maps = []
+        for (int i = 0; i < numMaps; i++) {
+            AttributeMap map = new AttributeMap(entity)
+            for (BasicAttributeSensor<Integer> sensor : sensors) {
+                map.updateWithoutPublishing(sensor, i)
+            }
+            maps += map
+        }
+        
+        for (int i = 0; i < 5; i++) System.gc()
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory()
+        double bytesPerAttribute = (heapAfter - heapBefore) / (double)(numMaps*numAttributes)
+        
+        String msg = "attributeMapMemory: ${heapAfter-heapBefore} bytes for $numMaps maps with $numAttributes attributes: bytesPerAttribute=$bytesPerAttribute"
+        LOG.info(msg)
+        System.out.println("\n"+msg+"\n")
+        assertEquals(maps.size(), numMaps)
+        assertTrue(bytesPerAttribute < 1024, msg)
+    }
 }
@@ -0,0 +1,100 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.HttpService;
+import brooklyn.util.crypto.SslTrustUtils;
+import brooklyn.util.http.HttpClientPool;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compares the latency of, and number of sockets used by, http polls against a local server:
+ * opening a new connection for each poll (without ever reading error responses, as the poll helper used to),
+ * against polls through the shared {@link HttpClientPool} with conditional GETs.
+ */
+public class HttpPollPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_ITERATIONS = 2000;
+
+    private HttpService server;
+    private URL url;
+    private HttpClientPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        super.setUp();
+        try {
+            server = new HttpService();
+            server.setContent("{\"requestCount\":123,\"errorCount\":0}");
+            url = new URL(server.getUrl());
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        pool = new HttpClientPool();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        super.tearDown();
+        if (server != null) server.shutdown();
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testPollWithNewConnections() {
+        double minRatePerSec = 500 * PERFORMANCE_EXPECTATION;
+        measureAndAssert("pollWithNewConnections", NUM_ITERATIONS, minRatePerSec, new Runnable() {
+            public void run() {
+                try {
+                    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                    SslTrustUtils.trustAll(connection);
+                    // as a server would close the connection, if the client does not read its response to the end
+                    connection.setRequestProperty("Connection", "close");
+                    connection.connect();
+                    connection.getResponseCode();
+                    InputStream in = connection.getInputStream();
+                    ByteStreams.toByteArray(in);
+                    in.close();
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }});
+        reportSockets("pollWithNewConnections");
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testPollWithPooledConditionalGet() {
+        double minRatePerSec = 500 * PERFORMANCE_EXPECTATION;
+        final Map<String, String> conditional = ImmutableMap.of("If-None-Match", "\"v1\"");
+        measureAndAssert("pollWithPooledConditionalGet", NUM_ITERATIONS, minRatePerSec, new Runnable() {
+            public void run() {
+                try {
+                    pool.get(url, conditional);
+                } catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }});
+        int sockets = reportSockets("pollWithPooledConditionalGet");
+        assertTrue(sockets <= HttpClientPool.DEFAULT_MAX_CONNECTIONS_PER_HOST, "sockets="+sockets);
+        assertTrue(pool.getNotModifiedCount() >= NUM_ITERATIONS, "notModified="+pool.getNotModifiedCount());
+    }
+
+    private int reportSockets(String prefix) {
+        String msg = prefix+": "+server.getRequestCount()+" requests used "+server.getClientSocketCount()+" sockets";
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        return server.getClientSocketCount();
+    }
+}
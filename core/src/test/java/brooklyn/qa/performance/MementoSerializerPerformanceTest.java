@@ -0,0 +1,149 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.persister.BinaryMementoSerializer;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the size and speed of {@link XmlMementoSerializer} and {@link BinaryMementoSerializer},
+ * for an entity memento with a typical mix of config and attributes.
+ */
+public class MementoSerializerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_CONFIG = 20;
+    private static final int NUM_ATTRIBUTES = 50;
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+    private XmlMementoSerializer<Object> xmlSerializer;
+    private BinaryMementoSerializer<Object> binarySerializer;
+    private EntityMemento memento;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        super.setUp();
+        xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+        binarySerializer = new BinaryMementoSerializer<Object>(classLoader);
+        memento = newEntityMemento();
+    }
+
+    private EntityMemento newEntityMemento() {
+        Map<ConfigKey, Object> config = MutableMap.of();
+        config.put(TestEntity.CONF_NAME, "myname");
+        for (int i = 0; i < NUM_CONFIG; i++) {
+            config.put(new BasicConfigKey<String>(String.class, "test.perf.config"+i, "config "+i), "value"+i);
+        }
+        Map<AttributeSensor, Object> attributes = MutableMap.of();
+        attributes.put(TestEntity.SEQUENCE, 1);
+        for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+            Object val;
+            switch (i % 4) {
+            case 0: val = "http://10.0.0."+i+":8080/"; break;
+            case 1: val = (long) i * 1000; break;
+            case 2: val = i * 1.5d; break;
+            default: val = Lists.newArrayList("a"+i, "b"+i); break;
+            }
+            attributes.put(new BasicAttributeSensor<Object>(Object.class, "test.perf.attribute"+i, "attribute "+i), val);
+        }
+        return BasicEntityMemento.builder()
+                .id("myid")
+                .type(TestEntity.class.getName())
+                .displayName("my entity")
+                .parent("myparent")
+                .config(config)
+                .attributes(attributes)
+                .locations(Lists.newArrayList("myloc"))
+                .build();
+    }
+
+    private byte[] toBinary(Object val) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            binarySerializer.serialize(val, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private Object fromBinary(byte[] bytes) {
+        try {
+            return binarySerializer.deserialize(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSize() {
+        int xmlSize = xmlSerializer.toString(memento).getBytes(Charsets.UTF_8).length;
+        int binarySize = toBinary(memento).length;
+
+        String msg = "memento size: xml="+xmlSize+" bytes; binary="+binarySize+" bytes";
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        assertTrue(binarySize < xmlSize, msg);
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSerializeXml() {
+        int numIterations = 10000;
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        measureAndAssert("serializeXml", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                xmlSerializer.toString(memento);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testSerializeBinary() {
+        int numIterations = 10000;
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        measureAndAssert("serializeBinary", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                toBinary(memento);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testDeserializeXml() {
+        int numIterations = 10000;
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        final String xml = xmlSerializer.toString(memento);
+        measureAndAssert("deserializeXml", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                ((EntityMemento) xmlSerializer.fromString(xml)).getAttributes();
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testDeserializeBinary() {
+        int numIterations = 10000;
+        double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
+        final byte[] binary = toBinary(memento);
+        measureAndAssert("deserializeBinary", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                ((EntityMemento) fromBinary(binary)).getAttributes();
+            }});
+    }
+}
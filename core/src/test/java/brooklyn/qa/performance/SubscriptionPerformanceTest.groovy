@@ -5,6 +5,9 @@ import static org.testng.Assert.*
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
@@ -123,5 +126,43 @@ public class SubscriptionPerformanceTest extends AbstractPerformanceTest {
             throw exception
         }
     }
-
+    
+    /**
+     * Publishes from one thread per core, each to a different entity with its own subscriber;
+     * the subscription lookup takes no lock so throughput should increase with the number of cores.
+     */
+    @Test(groups=["Integration", "Acceptance"])
+    public void testConcurrentPublishersScaleWithCores() {
+        int numThreads = Math.min(entities.size(), Runtime.getRuntime().availableProcessors())
+        int numIterations = NUM_ITERATIONS
+        double minRatePerSec = 100 * PERFORMANCE_EXPECTATION;
+        int expectedCount = numIterations*numThreads
+        
+        AtomicInteger listenerCount = new AtomicInteger()
+        CountDownLatch completionLatch = new CountDownLatch(1)
+        
+        for (int i = 0; i < numThreads; i++) {
+            subscriptionManager.subscribe([subscriber:i], entities[i], TestEntity.SEQUENCE,
+                {
+                    int count = listenerCount.incrementAndGet()
+                    if (count >= expectedCount) completionLatch.countDown()
+                } as SensorEventListener)
+        }
+        
+        ExecutorService publishers = Executors.newFixedThreadPool(numThreads)
+        try {
+            measureAndAssert("concurrentPublishers($numThreads)", numIterations, minRatePerSec,
+                    {
+                        List<Future> futures = []
+                        for (int i = 0; i < numThreads; i++) {
+                            TestEntity e = entities[i]
+                            futures += publishers.submit({ e.setAttribute(TestEntity.SEQUENCE, i) } as Runnable)
+                        }
+                        futures.each { it.get() }
+                    },
+                    { completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS); assertTrue(completionLatch.getCount() <= 0) })
+        } finally {
+            publishers.shutdownNow()
+        }
+    }
 }
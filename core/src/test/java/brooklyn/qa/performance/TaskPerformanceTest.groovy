@@ -10,11 +10,19 @@ import java.util.concurrent.atomic.AtomicInteger
 
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import org.testng.SkipException
 import org.testng.annotations.BeforeMethod
+import org.testng.annotations.DataProvider
 import org.testng.annotations.Test
 
 import brooklyn.util.task.BasicExecutionManager
+import brooklyn.util.task.CachedThreadPoolExecutorStrategy
+import brooklyn.util.task.MailboxScheduler
 import brooklyn.util.task.SingleThreadedScheduler
+import brooklyn.util.task.TaskScheduler
+import brooklyn.util.task.VirtualThreadExecutorStrategy
+
+import com.google.common.base.Stopwatch
 
 public class TaskPerformanceTest extends AbstractPerformanceTest {
 
@@ -22,6 +30,9 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
     
     private static final long LONG_TIMEOUT_MS = 30*1000
     
+    /** most blocked tasks run at once with platform threads, one thread each; beyond this the OS limit on native threads is likely */
+    private static final int MAX_CONCURRENT_PLATFORM_THREADS = 20000
+    
     BasicExecutionManager executionManager
     
     @BeforeMethod(alwaysRun=true)
@@ -72,9 +83,19 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
     
     @Test(groups=["Integration", "Acceptance"])
     public void testExecuteWithSingleThreadedScheduler() {
+        executeWithScheduler("testExecuteWithSingleThreadedScheduler", SingleThreadedScheduler.class)
+    }
+    
+    /** as {@link #testExecuteWithSingleThreadedScheduler()}, for comparison */
+    @Test(groups=["Integration", "Acceptance"])
+    public void testExecuteWithMailboxScheduler() {
+        executeWithScheduler("testExecuteWithMailboxScheduler", MailboxScheduler.class)
+    }
+    
+    private void executeWithScheduler(String prefix, Class<? extends TaskScheduler> schedulerType) {
         double minRatePerSec = 1000 * PERFORMANCE_EXPECTATION;
 
-        executionManager.setTaskSchedulerForTag("singlethreaded", SingleThreadedScheduler.class);
+        executionManager.setTaskSchedulerForTag("singlethreaded", schedulerType);
         
         final AtomicInteger concurrentCallCount = new AtomicInteger();
         final AtomicInteger submitCount = new AtomicInteger();
@@ -90,14 +111,14 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
                     if (val >= numIterations) completionLatch.countDown()
                 } catch (Exception e) {
                     exceptions.add(e)
-                    LOG.warn("Exception in runnable of testExecuteWithSingleThreadedScheduler", e)
+                    LOG.warn("Exception in runnable of $prefix", e)
                     throw e
                 } finally {
                     concurrentCallCount.decrementAndGet()
                 }
             }}
 
-        measureAndAssert("testExecuteWithSingleThreadedScheduler", numIterations, minRatePerSec,
+        measureAndAssert(prefix, numIterations, minRatePerSec,
                 { 
                     while (submitCount.get() > counter.get() + 5000) {
                         LOG.info("delaying because ${submitCount.get()} submitted and only ${counter.get()} run")
@@ -109,6 +130,74 @@ public class TaskPerformanceTest extends AbstractPerformanceTest {
         if (exceptions.size() > 0) throw exceptions.get(0)
     }
     
+    @DataProvider(name="concurrentSleepingTasks")
+    public Object[][] concurrentSleepingTasks() {
+        return [ [10000], [50000], [100000] ] as Object[][]
+    }
+    
+    /**
+     * Compares the cached thread pool (the default) with virtual threads, for many tasks which block; all of the tasks
+     * are blocked at once, and it reports tasks/sec and the heap and threads used while they are.
+     * The cached pool is only measured up to {@link #MAX_CONCURRENT_PLATFORM_THREADS} tasks, as it needs a thread for each;
+     * larger sizes are skipped if the JVM does not support virtual threads.
+     */
+    @Test(groups=["Integration", "Acceptance"], dataProvider="concurrentSleepingTasks")
+    public void testConcurrentSleepingTasksWithVirtualThreads(int numTasks) {
+        VirtualThreadExecutorStrategy virtualStrategy = new VirtualThreadExecutorStrategy()
+        BasicExecutionManager virtualEm = new BasicExecutionManager(virtualStrategy)
+        if (numTasks > MAX_CONCURRENT_PLATFORM_THREADS && !virtualStrategy.isUsingVirtualThreads()) {
+            virtualEm.shutdownNow()
+            throw new SkipException("virtual threads not supported; $numTasks concurrent tasks would need as many platform threads")
+        }
+        Map virtual = measureConcurrentSleepingTasks(virtualEm, numTasks)
+        Object cached = (numTasks <= MAX_CONCURRENT_PLATFORM_THREADS) ?
+                measureConcurrentSleepingTasks(new BasicExecutionManager(new CachedThreadPoolExecutorStrategy()), numTasks) :
+                "not run, over $MAX_CONCURRENT_PLATFORM_THREADS threads"
+        
+        String msg = "concurrentSleepingTasks($numTasks): cached=$cached; virtual=$virtual (usingVirtualThreads=${virtualStrategy.isUsingVirtualThreads()})"
+        LOG.info(msg)
+        System.out.println("\n"+msg+"\n")
+    }
+    
+    private Map measureConcurrentSleepingTasks(BasicExecutionManager em, int numTasks) {
+        final CountDownLatch allStarted = new CountDownLatch(numTasks)
+        final CountDownLatch release = new CountDownLatch(1)
+        final CountDownLatch completionLatch = new CountDownLatch(numTasks)
+        // each task blocks until all have started, so all are in flight at once however long submitting them takes
+        Runnable work = new Runnable() { public void run() {
+                allStarted.countDown()
+                try {
+                    release.await()
+                } finally {
+                    completionLatch.countDown()
+                }
+            }}
+        
+        try {
+            for (int i = 0; i < 5; i++) System.gc()
+            Runtime runtime = Runtime.getRuntime()
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory()
+            
+            Stopwatch stopwatch = new Stopwatch().start()
+            for (int i = 0; i < numTasks; i++) {
+                em.submit(work)
+            }
+            assertTrue(allStarted.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS), "timeout starting $numTasks tasks")
+            long heapWhileSleeping = runtime.totalMemory() - runtime.freeMemory()
+            int threadsWhileSleeping = em.getExecutorPoolSize()
+            release.countDown()
+            
+            assertTrue(completionLatch.await(LONG_TIMEOUT_MS, TimeUnit.MILLISECONDS), "timeout completing $numTasks tasks")
+            long durationMillis = stopwatch.elapsedMillis()
+            
+            return [tasksPerSec:((double)numTasks/durationMillis * 1000), durationMillis:durationMillis, 
+                    heapDeltaMb:((heapWhileSleeping - heapBefore) / (1024*1024)), threads:threadsWhileSleeping]
+        } finally {
+            release.countDown()
+            em.shutdownNow()
+        }
+    }
+    
     public static void main(String[] args) {
         def t = new TaskPerformanceTest();
         t.setUp();
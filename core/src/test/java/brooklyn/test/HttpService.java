@@ -0,0 +1,93 @@
+package brooklyn.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Charsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local http server (a stand-in for a web-app's status page), serving the same content at every path
+ * with an ETag, and answering conditional GETs; it records the number of requests and the number of
+ * distinct client sockets used.
+ */
+public class HttpService {
+
+    private final HttpServer server;
+    private volatile String content = "";
+    private volatile int version = 0;
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private final Set<InetSocketAddress> clientSockets = Collections.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+    public HttpService() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange) throws IOException {
+                handleRequest(exchange);
+            }});
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:"+server.getAddress().getPort()+"/";
+    }
+
+    public synchronized void setContent(String content) {
+        this.content = content;
+        this.version++;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /** the number of distinct connections which clients have made */
+    public int getClientSocketCount() {
+        return clientSockets.size();
+    }
+
+    public void shutdown() {
+        server.stop(0);
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        clientSockets.add(exchange.getRemoteAddress());
+        try {
+            String body;
+            String etag;
+            synchronized (this) {
+                body = content;
+                etag = "\"v"+version+"\"";
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body.getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package brooklyn.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+class QuantileHistogramTest {
+
+    @Test
+    public void testQuantilesWithinRelativeAccuracy() {
+        QuantileHistogram histogram = new QuantileHistogram();
+        (1..1000).each { histogram.add(it) }
+
+        assertEquals(histogram.getCount(), 1000L);
+        assertEquals(histogram.getMean(), 500.5d);
+        assertWithinAccuracy(histogram.getQuantile(0.5), 500.5d, histogram.getRelativeAccuracy());
+        assertWithinAccuracy(histogram.getQuantile(0.95), 950d, histogram.getRelativeAccuracy());
+        assertWithinAccuracy(histogram.getQuantile(0.99), 990d, histogram.getRelativeAccuracy());
+        assertWithinAccuracy(histogram.getQuantile(1), 1000d, histogram.getRelativeAccuracy());
+    }
+
+    @Test
+    public void testEmptyAndZeroValues() {
+        QuantileHistogram histogram = new QuantileHistogram();
+        assertTrue(Double.isNaN(histogram.getQuantile(0.5)));
+
+        histogram.add(0d);
+        histogram.add(-1d);
+        histogram.add(10d);
+        assertEquals(histogram.getQuantile(0.5), 0d);
+        assertWithinAccuracy(histogram.getQuantile(1), 10d, histogram.getRelativeAccuracy());
+    }
+
+    @Test
+    public void testMergeAndSubtract() {
+        QuantileHistogram low = new QuantileHistogram();
+        QuantileHistogram high = new QuantileHistogram();
+        (1..100).each { low.add(it) }
+        (10001..10100).each { high.add(it) }
+
+        QuantileHistogram merged = low.copy();
+        merged.merge(high);
+        assertEquals(merged.getCount(), 200L);
+        assertWithinAccuracy(merged.getQuantile(0.25), 51d, merged.getRelativeAccuracy());
+        assertWithinAccuracy(merged.getQuantile(0.75), 10050d, merged.getRelativeAccuracy());
+
+        merged.subtract(high);
+        assertEquals(merged.getCount(), 100L);
+        assertEquals(merged.getQuantile(0.99), low.getQuantile(0.99));
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testMergeRejectsDifferentAccuracy() {
+        new QuantileHistogram(0.01).merge(new QuantileHistogram(0.05));
+    }
+
+    @Test
+    public void testTimeWindowDropsOldSlices() {
+        TimeWindowedQuantileHistogram windowed = new TimeWindowedQuantileHistogram(1000L, 10, QuantileHistogram.DEFAULT_RELATIVE_ACCURACY);
+        windowed.add(1000d, 0L);
+        windowed.add(1d, 500L);
+        assertEquals(windowed.getHistogram(999L).getCount(), 2L);
+        assertEquals(windowed.getHistogram(1000L).getCount(), 1L);
+        assertEquals(windowed.getHistogram(1500L).getCount(), 0L);
+
+        windowed.add(5d, 100000L);
+        assertEquals(windowed.getHistogram(100000L).getCount(), 1L);
+    }
+
+    private static void assertWithinAccuracy(double actual, double expected, double relativeAccuracy) {
+        assertTrue(Math.abs(actual - expected) <= expected * relativeAccuracy + 1e-9, "actual="+actual+"; expected="+expected);
+    }
+}
@@ -0,0 +1,83 @@
+package brooklyn.util;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+class TimeWindowedSamplesTest {
+
+    @Test
+    public void testKeepsOnlyRecentValsWithRunningSum() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+
+        samples.add(1d, 0L);
+        samples.add(2d, 100L);
+        samples.pruneValues(1000L);
+        assertEquals(samples.size(), 2);
+        assertEquals(samples.getSum(), 3d);
+
+        samples.pruneValues(1100L);
+        assertEquals(samples.size(), 1);
+        assertEquals(samples.getSum(), 2d);
+        assertEquals(samples.getLatestValue(), 2d);
+
+        samples.pruneValues(1101L);
+        assertEquals(samples.size(), 0);
+        assertEquals(samples.getSum(), 0d);
+    }
+
+    @Test
+    public void testKeepsMinValsAndMinExpiredVals() {
+        TimeWindowedSamples samples = new TimeWindowedSamples([timePeriod:1L, minVals:2]);
+        samples.add(1d, 0L);
+        samples.add(2d, 100L);
+        samples.add(3d, 200L);
+        samples.pruneValues(202L);
+        assertEquals(samples.size(), 2);
+        assertEquals(samples.getValue(0), 2d);
+
+        samples = new TimeWindowedSamples([timePeriod:1000L, minExpiredVals:1]);
+        samples.add(1d, 0L);
+        samples.add(2d, 100L);
+        samples.pruneValues(1101L);
+        assertEquals(samples.size(), 1);
+        assertEquals(samples.getValue(0), 2d);
+    }
+
+    @Test
+    public void testTimeWeightedSum() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        samples.add(10d, 1000L);
+        samples.add(20d, 1100L);
+        samples.add(30d, 1300L);
+        assertEquals(samples.getTimeWeightedSum(), 100*20d + 200*30d);
+
+        samples.removeOldest();
+        assertEquals(samples.getTimeWeightedSum(), 200*30d);
+    }
+
+    @Test
+    public void testGrowsAndWrapsAround() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(10L);
+        for (int i = 0; i < 1000; i++) {
+            samples.add(i, i);
+            samples.pruneValues(i);
+            assertEquals(samples.getValue(0), Math.max(0, i-10) as double);
+            assertEquals(samples.getLatestValue(), i as double);
+        }
+        assertEquals(samples.size(), 11);
+        assertEquals(samples.getSum(), (989..999).sum() as double);
+    }
+
+    @Test
+    public void testGetsFirstIndexInWindowIncludingOneMinExpiredVal() {
+        TimeWindowedSamples samples = new TimeWindowedSamples([timePeriod:1000L, minExpiredVals:1]);
+
+        samples.add(1d, 0L);
+        samples.add(2d, 100L);
+        assertEquals(samples.getFirstIndexInWindow(100L, 100L), 0);
+        assertEquals(samples.getFirstIndexInWindow(101L, 2L), 0);
+        assertEquals(samples.getFirstIndexInWindow(102L, 1L), 1);
+        assertEquals(samples.getFirstIndexInWindow(1001L, 1L), 1);
+    }
+}
@@ -3,6 +3,10 @@ package brooklyn.util.internal.ssh;
 import java.io.ByteArrayOutputStream;
 import java.lang.management.ManagementFactory;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
@@ -19,7 +23,9 @@ import brooklyn.util.Time;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 /**
  * Test the performance of different variants of invoking the sshj tool.
@@ -50,7 +56,7 @@ public class SshjToolPerformanceTest {
                 tool.disconnect();
             }
         };
-        runMany(task, "connect-disconnect", 10);
+        runMany(task, "connect-disconnect", 1, 10);
     }
 
     @Test(groups = {"Integration"})
@@ -74,15 +80,46 @@ public class SshjToolPerformanceTest {
         runExecManyCommands(ImmutableList.of("echo "+bigstr+" | wc -c"), true, "big-stdin", 10);
     }
 
+    @Test(groups = {"Integration"})
+    public void testConcurrentSmallCommandsOnOneConnection() throws Exception {
+        final int concurrentRuns = 8;
+        final List<String> cmds = ImmutableList.of("true");
+        tool = new SshjTool(MutableMap.of("host", "localhost"));
+        tool.connect();
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrentRuns);
+        try {
+            Runnable task = new Runnable() {
+                    @Override public void run() {
+                        List<Future<Integer>> futures = Lists.newArrayList();
+                        for (int j = 0; j < concurrentRuns; j++) {
+                            futures.add(executor.submit(new Callable<Integer>() {
+                                    public Integer call() {
+                                        return tool.execScript(MutableMap.<String,Object>of(), cmds);
+                                    }}));
+                        }
+                        try {
+                            for (Future<Integer> future : futures) {
+                                future.get();
+                            }
+                        } catch (Exception e) {
+                            throw Throwables.propagate(e);
+                        }
+                    }};
+            runMany(task, "concurrent-small-cmd-one-connection", concurrentRuns, 10);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void runExecManyCommands(final List<String> cmds, final boolean captureOutAndErr, String context, int iterations) throws Exception {
         Runnable task = new Runnable() {
                 @Override public void run() {
                     execScript(cmds, captureOutAndErr);
                 }};
-        runMany(task, context, iterations);
+        runMany(task, context, 1, iterations);
     }
 
-    private void runMany(Runnable task, String context, int iterations) throws Exception {
+    private void runMany(Runnable task, String context, int commandsPerIteration, int iterations) throws Exception {
         MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
         ObjectName osMBeanName = ObjectName.getInstance(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
         long preCpuTime = (Long) mbeanServer.getAttribute(osMBeanName, "ProcessCpuTime");
@@ -94,7 +131,8 @@ public class SshjToolPerformanceTest {
             long postCpuTime = (Long) mbeanServer.getAttribute(osMBeanName, "ProcessCpuTime");
             long elapsedTime = stopwatch.elapsedMillis();
             double fractionCpu = (elapsedTime > 0) ? ((double)postCpuTime-preCpuTime) / TimeUnit.MILLISECONDS.toNanos(elapsedTime) : -1;
-            LOG.info("Executing {}; completed {}; took {}; fraction cpu {}", new Object[] {context, (i+1), Time.makeTimeString(elapsedTime), fractionCpu});
+            double commandsPerSec = (elapsedTime > 0) ? ((double)(i+1)*commandsPerIteration) / elapsedTime * 1000 : -1;
+            LOG.info("Executing {}; completed {}; took {}; fraction cpu {}; commands/sec {}", new Object[] {context, (i+1), Time.makeTimeString(elapsedTime), fractionCpu, commandsPerSec});
         }
     }
 
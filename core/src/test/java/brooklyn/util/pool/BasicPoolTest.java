@@ -9,6 +9,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -167,4 +168,58 @@ public class BasicPoolTest {
             if (!val) fail("duplicate="+lease.leasedObject()+"; vals="+leases);
         }
     }
+
+    @Test
+    public void testSharesLeasedValsUpToMaxLeasesPerObject() throws Exception {
+        BasicPool<Integer> pool = BasicPool.<Integer>builder().supplier(supplier).maxLeasesPerObject(2).build();
+        
+        Lease<Integer> lease1 = pool.leaseObject();
+        Lease<Integer> lease2 = pool.leaseObject();
+        Lease<Integer> lease3 = pool.leaseObject();
+        assertEquals(lease1.leasedObject(), (Integer)0);
+        assertEquals(lease2.leasedObject(), (Integer)0);
+        assertEquals(lease3.leasedObject(), (Integer)1);
+        assertEquals(pool.getTotalSharedCount(), 1);
+        
+        // once one of its leases is returned, the first val can be shared again
+        lease1.close();
+        Lease<Integer> lease4 = pool.leaseObject();
+        assertEquals(lease4.leasedObject(), (Integer)0);
+        assertEquals(pool.getOpenCount(), 2);
+    }
+    
+    @Test
+    public void testDoesNotCloseSharedValUntilAllLeasesReturned() throws Exception {
+        BasicPool<Integer> pool = BasicPool.<Integer>builder().supplier(supplier).closer(closer).maxLeasesPerObject(2).build();
+        
+        Lease<Integer> lease1 = pool.leaseObject();
+        Lease<Integer> lease2 = pool.leaseObject();
+        pool.closePool();
+        
+        lease1.close();
+        assertEquals(closedVals, ImmutableList.of());
+        lease2.close();
+        assertEquals(closedVals, ImmutableList.of(0));
+    }
+    
+    @Test
+    public void testClosesValsIdleForLongerThanMaxIdleTime() throws Exception {
+        BasicPool<Integer> pool = BasicPool.<Integer>builder().supplier(supplier).closer(closer).maxIdleTime(50, TimeUnit.MILLISECONDS).build();
+        
+        Lease<Integer> lease1 = pool.leaseObject();
+        lease1.close();
+        assertEquals(closedVals, ImmutableList.of());
+        
+        // closed in the background, without needing another lease
+        long start = System.currentTimeMillis();
+        while (closedVals.isEmpty() && System.currentTimeMillis() - start < 10*1000) {
+            Thread.sleep(10);
+        }
+        assertEquals(closedVals, ImmutableList.of(0));
+        assertEquals(pool.getOpenCount(), 0);
+        
+        Lease<Integer> lease2 = pool.leaseObject();
+        assertEquals(lease2.leasedObject(), (Integer)1);
+        assertEquals(pool.getOpenCount(), 1);
+    }
 }
@@ -0,0 +1,141 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+
+public class ExecutorStrategyTest {
+
+    private BasicExecutionManager em;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testDefaultIsCachedThreadPool() {
+        ExecutorStrategy strategy = ExecutorStrategy.Factory.newInstance(BrooklynProperties.Factory.newEmpty());
+        assertTrue(strategy instanceof CachedThreadPoolExecutorStrategy, "strategy="+strategy);
+    }
+
+    @Test
+    public void testWorkStealingFromProperties() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(ExecutorStrategy.STRATEGY_PROPERTY, "workStealing");
+        props.put(ExecutorStrategy.PARALLELISM_PROPERTY, "3");
+        props.put(ExecutorStrategy.BLOCKING_TAGS_PROPERTY, "a, b");
+
+        WorkStealingExecutorStrategy strategy = (WorkStealingExecutorStrategy) ExecutorStrategy.Factory.newInstance(props);
+        assertEquals(strategy.getParallelism(), 3);
+        assertEquals(ImmutableList.copyOf(strategy.getBlockingTags()), ImmutableList.of("a", "b"));
+    }
+
+    @Test
+    public void testBlockingTaggedTasksUseSeparatePool() throws Exception {
+        WorkStealingExecutorStrategy strategy = new WorkStealingExecutorStrategy(2, ImmutableList.of("a"));
+        em = new BasicExecutionManager(strategy);
+
+        Task<String> blocking = new BasicTask<String>(MutableMap.of("tag", "a"), new ReturnTrue());
+        Task<String> other = new BasicTask<String>(MutableMap.of("tag", "other"), new ReturnTrue());
+
+        assertNotSame(strategy.getExecutor(blocking), strategy.getExecutor(other));
+        assertSame(strategy.getExecutor(other), strategy.getDefaultExecutor());
+
+        assertEquals(em.submit(blocking).get(), "true");
+        assertEquals(em.submit(other).get(), "true");
+        assertTrue(em.getExecutorStealCount() >= 0);
+    }
+
+    @Test
+    public void testBlockingFlaggedTasksUseSeparatePool() throws Exception {
+        WorkStealingExecutorStrategy strategy = new WorkStealingExecutorStrategy(2, ImmutableList.of());
+        em = new BasicExecutionManager(strategy);
+
+        Task<String> blocking = new BasicTask<String>(MutableMap.of(BasicTask.BLOCKING_FLAG, true), new ReturnTrue());
+        Task<String> other = new BasicTask<String>(new ReturnTrue());
+
+        assertTrue(((BasicTask<?>)blocking).isBlocking());
+        assertTrue(blocking.getTags().isEmpty(), "tags="+blocking.getTags());
+        assertNotSame(strategy.getExecutor(blocking), strategy.getDefaultExecutor());
+        assertSame(strategy.getExecutor(other), strategy.getDefaultExecutor());
+
+        assertEquals(em.submit(blocking).get(), "true");
+        assertEquals(em.submit(other).get(), "true");
+    }
+
+    @Test
+    public void testSchedulerRunsEachTaskInItsOwnPool() throws Exception {
+        WorkStealingExecutorStrategy strategy = new WorkStealingExecutorStrategy(1, ImmutableList.of());
+        em = new BasicExecutionManager(strategy);
+        em.setTaskSchedulerForTag("ordered", MailboxScheduler.class);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        Task<String> blocking = em.submit(MutableMap.of("tag", "ordered", BasicTask.BLOCKING_FLAG, true), new Callable<String>() {
+            public String call() throws Exception {
+                release.await();
+                return "blocked";
+            }});
+        Task<String> other = em.submit(MutableMap.of("tag", "ordered"), new ReturnTrue());
+        // the scheduler keeps the order, so the second waits for the first without holding the one bounded thread
+        Task<String> unrelated = em.submit(new ReturnTrue());
+        assertEquals(unrelated.get(5, TimeUnit.SECONDS), "true");
+        assertFalse(other.isDone());
+
+        release.countDown();
+        assertEquals(blocking.get(5, TimeUnit.SECONDS), "blocked");
+        assertEquals(other.get(5, TimeUnit.SECONDS), "true");
+    }
+
+    @Test
+    public void testManyTasksRunInBoundedPool() throws Exception {
+        em = new BasicExecutionManager(new WorkStealingExecutorStrategy(2, ImmutableList.of()));
+
+        Task<?>[] tasks = new Task<?>[1000];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = em.submit(new ReturnTrue());
+        }
+        for (Task<?> task : tasks) {
+            assertEquals(task.get(), "true");
+        }
+        assertTrue(em.getExecutorPoolSize() <= 2, "poolSize="+em.getExecutorPoolSize());
+    }
+
+    @Test
+    public void testVirtualThreadStrategyKeepsTaskContext() throws Exception {
+        VirtualThreadExecutorStrategy strategy = (VirtualThreadExecutorStrategy) ExecutorStrategy.Factory.newInstance(
+                BrooklynProperties.Factory.newEmpty().addFromMap(MutableMap.of(ExecutorStrategy.STRATEGY_PROPERTY, "virtual")));
+        em = new BasicExecutionManager(strategy);
+
+        final BasicTask<Boolean> task = new BasicTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() {
+                Tasks.setBlockingDetails("checking context");
+                return Tasks.current() != null && ((BasicTask<?>)Tasks.current()).getThread() == Thread.currentThread();
+            }});
+        em.submit(task);
+        
+        assertEquals(task.get(), Boolean.TRUE);
+        assertEquals(task.getBlockingDetails(), "checking context");
+    }
+
+    private static class ReturnTrue implements Callable<String> {
+        public String call() {
+            return "true";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package brooklyn.util.task
+
+import org.testng.annotations.BeforeMethod
+
+/**
+ * Runs the {@link SingleThreadedSchedulerTest} tests against {@link MailboxScheduler},
+ * which must give the same in-order guarantees.
+ */
+public class MailboxSchedulerTest extends SingleThreadedSchedulerTest {
+
+    @BeforeMethod
+    @Override
+    public void setUp() {
+        em = new BasicExecutionManager()
+        em.setTaskSchedulerForTag("category1", MailboxScheduler.class);
+    }
+}
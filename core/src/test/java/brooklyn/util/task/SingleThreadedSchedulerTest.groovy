@@ -3,10 +3,14 @@ package brooklyn.util.task
 import static brooklyn.test.TestUtils.*
 import static org.testng.Assert.*
 
+import java.util.concurrent.Callable
 import java.util.concurrent.CancellationException
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
 import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
 import java.util.concurrent.atomic.AtomicInteger
@@ -21,7 +25,7 @@ public class SingleThreadedSchedulerTest {
 
     private static final Logger log = LoggerFactory.getLogger(SingleThreadedSchedulerTest)
     
-    private BasicExecutionManager em
+    protected BasicExecutionManager em
     
     @BeforeMethod
     public void setUp() {
@@ -133,4 +137,29 @@ public class SingleThreadedSchedulerTest {
         latch.countDown()
         assertEquals(future.get(), 123)
     }
+
+    @Test
+    public void testSubmissionsGivenOwnExecutorRunThereInOrder() {
+        ThreadFactory otherThreads = { Runnable r -> new Thread(r, "other-executor") } as ThreadFactory
+        ExecutorService other = Executors.newCachedThreadPool(otherThreads)
+        try {
+            TaskScheduler scheduler = em.getTaskSchedulerForTag("category1")
+            final List<String> result = new CopyOnWriteArrayList()
+            List<Future> futures = []
+            for (i in 0..9) {
+                final counter = i
+                Callable job = { result.add(counter+":"+Thread.currentThread().getName()) } as Callable
+                futures.add((i % 3 == 0) ? scheduler.submit(job, other) : scheduler.submit(job))
+            }
+            futures.each { it.get(5, TimeUnit.SECONDS) }
+
+            assertEquals(result.size(), 10)
+            result.eachWithIndex { String it, int i ->
+                assertTrue(it.startsWith(""+i+":"), "result="+result)
+                assertEquals(it.endsWith(":other-executor"), i % 3 == 0, "result="+result)
+            }
+        } finally {
+            other.shutdownNow()
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.util.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+
+public class TimerWheelTest {
+
+    private TimerWheel wheel;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        wheel = new TimerWheel(Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (wheel != null) wheel.shutdownNow();
+    }
+
+    private Callable<Long> recordingCallable(final List<Integer> order, final int id) {
+        return new Callable<Long>() {
+            public Long call() {
+                order.add(id);
+                return System.nanoTime();
+            }};
+    }
+
+    @Test
+    public void testFiresInDeadlineOrderAndNotEarly() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        long start = System.nanoTime();
+        ScheduledFuture<Long> f3 = wheel.schedule(recordingCallable(order, 3), 150, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Long> f1 = wheel.schedule(recordingCallable(order, 1), 10, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Long> f2 = wheel.schedule(recordingCallable(order, 2), 80, TimeUnit.MILLISECONDS);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(f1.get() - start) >= 10);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(f2.get() - start) >= 80);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(f3.get() - start) >= 150);
+        assertEquals(order, ImmutableList.of(1, 2, 3));
+        assertEquals(wheel.getPendingCount(), 0);
+        assertEquals(wheel.getFiredCount(), 3);
+    }
+
+    @Test
+    public void testCascadesTimeoutsFromHigherLevels() throws Exception {
+        // 1ms ticks, so this is several thousand ticks away: beyond the first two levels of the wheel
+        long start = System.nanoTime();
+        ScheduledFuture<Long> f = wheel.schedule(recordingCallable(new CopyOnWriteArrayList<Integer>(), 1), 5000, TimeUnit.MILLISECONDS);
+        long firedAt = f.get(30, TimeUnit.SECONDS);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(firedAt - start);
+        assertTrue(elapsedMillis >= 5000 && elapsedMillis < 10000, "elapsed="+elapsedMillis);
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotFire() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        ScheduledFuture<Long> cancelled = wheel.schedule(recordingCallable(order, 1), 50, TimeUnit.MILLISECONDS);
+        ScheduledFuture<Long> other = wheel.schedule(recordingCallable(order, 2), 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel(true));
+        assertTrue(cancelled.isCancelled());
+        assertTrue(cancelled.isDone());
+        assertEquals(wheel.getPendingCount(), 1);
+
+        other.get();
+        assertEquals(order, ImmutableList.of(2));
+        assertFalse(cancelled.cancel(true));
+    }
+
+    @Test
+    public void testManyTimeoutsUseOneThread() throws Exception {
+        final int NUM_TIMEOUTS = 10000;
+        final CountDownLatch latch = new CountDownLatch(NUM_TIMEOUTS);
+        final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        for (int i = 0; i < NUM_TIMEOUTS; i++) {
+            wheel.schedule(new Callable<Void>() {
+                public Void call() {
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                    return null;
+                }}, i % 200, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(threads.size(), 1);
+        assertEquals(wheel.getThreadCount(), 1);
+    }
+
+    @Test
+    public void testScheduledTasksDrivenByTimerWheel() throws Exception {
+        BasicExecutionManager em = new BasicExecutionManager();
+        try {
+            final AtomicInteger count = new AtomicInteger();
+            ScheduledTask task = new ScheduledTask(MutableMap.of("period", 10, "maxIterations", 5), new Callable<Task>() {
+                public Task call() {
+                    return new BasicTask<Integer>(new Callable<Integer>() {
+                        public Integer call() {
+                            return count.incrementAndGet();
+                        }});
+                }});
+            em.submit(task);
+            task.blockUntilEnded();
+            assertEquals(count.get(), 5);
+            assertEquals(em.getSchedulerThreadCount(), 1);
+        } finally {
+            em.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSpreadOffsetsFirstRepeatWithinPeriod() throws Exception {
+        ScheduledTask task = new ScheduledTask(MutableMap.<String, Object>of("period", 1000, "spread", true), new Callable<Task>() {
+            public Task call() { return null; }
+        });
+        task.runCount = 1;
+        long firstRepeat = task.nextPeriodicDelayMillis();
+        assertTrue(firstRepeat >= 1000 && firstRepeat < 2000, "delay="+firstRepeat);
+        assertEquals(task.nextPeriodicDelayMillis(), firstRepeat);
+
+        task.runCount = 2;
+        assertEquals(task.nextPeriodicDelayMillis(), 1000);
+    }
+
+    @Test
+    public void testJitterStaysWithinFraction() throws Exception {
+        ScheduledTask task = new ScheduledTask(MutableMap.<String, Object>of("period", 1000, "jitter", 0.1), new Callable<Task>() {
+            public Task call() { return null; }
+        });
+        for (int i = 0; i < 100; i++) {
+            long delay = task.nextPeriodicDelayMillis();
+            assertTrue(delay >= 900 && delay <= 1100, "delay="+delay);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package brooklyn.enricher;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.enricher.basic.AbstractAggregatingEnricher;
+import brooklyn.event.AttributeSensor;
+import brooklyn.util.QuantileHistogram;
+
+/**
+ * Merges the {@link QuantileHistogram}s published by producers (e.g. each member of a cluster, from a
+ * {@link RollingTimeWindowPercentilesEnricher}) into one histogram, and publishes it and its percentiles;
+ * e.g. the p95 latency across the cluster, which cannot be derived from the members' own percentiles.
+ * <p>
+ * Only the members' histograms are merged, never their raw values. The valid flags are as for
+ * {@link brooklyn.enricher.CustomAggregatingEnricher}, i.e. producers, allMembers and filter.
+ * <p>
+ * Example usage, on a cluster whose members publish LATENCY_HISTOGRAM:
+ * <pre>
+ * {@code
+ * addEnricher(new PercentilesAggregatingEnricher(MutableMap.of("allMembers", true), LATENCY_HISTOGRAM, LATENCY_HISTOGRAM,
+ *         RollingTimeWindowPercentilesEnricher.newPercentileSensors("webapp.latency")));
+ * }
+ * </pre>
+ */
+public class PercentilesAggregatingEnricher extends AbstractAggregatingEnricher<QuantileHistogram,QuantileHistogram> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PercentilesAggregatingEnricher.class);
+
+    private final Map<Double, AttributeSensor<Double>> percentileTargets;
+    private final double relativeAccuracy;
+
+    public PercentilesAggregatingEnricher(Map<String,?> flags, AttributeSensor<QuantileHistogram> source,
+            AttributeSensor<QuantileHistogram> target, Map<Double, AttributeSensor<Double>> percentileTargets) {
+        this(flags, source, target, percentileTargets, QuantileHistogram.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    /**
+     * @param relativeAccuracy the accuracy of the producers' histograms; those with another accuracy cannot be merged, so are ignored
+     */
+    public PercentilesAggregatingEnricher(Map<String,?> flags, AttributeSensor<QuantileHistogram> source,
+            AttributeSensor<QuantileHistogram> target, Map<Double, AttributeSensor<Double>> percentileTargets, double relativeAccuracy) {
+        super(flags, source, target);
+        this.percentileTargets = percentileTargets;
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    public PercentilesAggregatingEnricher(AttributeSensor<QuantileHistogram> source, AttributeSensor<QuantileHistogram> target,
+            Map<Double, AttributeSensor<Double>> percentileTargets) {
+        this(Collections.<String,Object>emptyMap(), source, target, percentileTargets);
+    }
+
+    @Override
+    protected void onUpdated() {
+        RollingTimeWindowPercentilesEnricher.publish(entity, target, percentileTargets, getAggregate());
+    }
+
+    /** the merge of the producers' current histograms */
+    public QuantileHistogram getAggregate() {
+        QuantileHistogram result = new QuantileHistogram(relativeAccuracy);
+        synchronized (values) {
+            for (QuantileHistogram value : values.values()) {
+                if (value == null) continue;
+                if (value.getRelativeAccuracy() != relativeAccuracy) {
+                    if (LOG.isDebugEnabled()) LOG.debug("{} ignoring histogram {} with relative accuracy {} (not {})",
+                            new Object[] {this, value, value.getRelativeAccuracy(), relativeAccuracy});
+                    continue;
+                }
+                result.merge(value);
+            }
+        }
+        return result;
+    }
+}
@@ -1,21 +1,21 @@
 package brooklyn.enricher;
 
-import java.util.LinkedList;
-
-import brooklyn.enricher.basic.AbstractTransformingEnricher;
 import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
 import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.TimeWindowedSamples;
 import brooklyn.util.flags.TypeCoercions;
 
 
 /**
 * Transforms a sensor into a rolling average based on a fixed window size. This is useful for smoothing sample type metrics, 
 * such as latency or CPU time
+* <p>
+* The values are kept in a {@link TimeWindowedSamples} ring buffer with a running sum, so an event does not walk the window.
 */
 class RollingMeanEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
-    private LinkedList<T> values = new LinkedList<T>();
+    private final TimeWindowedSamples values = new TimeWindowedSamples(0);
     
     int windowSize;
     
@@ -27,28 +27,23 @@ class RollingMeanEnricher<T extends Number> extends AbstractTypeTransformingEnri
     
     /** @returns null when no data has been received or windowSize is 0 */
     public Double getAverage() {
-        pruneValues();
-        return values.size() == 0 ? null : sum(values) / values.size();
+        synchronized (values) {
+            pruneValues();
+            return values.size() == 0 ? null : values.getMean();
+        }
     }
     
     @Override
     public void onEvent(SensorEvent<T> event) {
-        values.addLast(event.getValue());
-        pruneValues();
-        entity.setAttribute((AttributeSensor<Double>)target, getAverage());
-    }
-    
-    private void pruneValues() {
-        while(windowSize > -1 && values.size() > windowSize) {
-            values.removeFirst();
+        Double average;
+        synchronized (values) {
+            values.add(event.getValue().doubleValue(), event.getTimestamp());
+            average = getAverage();
         }
+        entity.setAttribute((AttributeSensor<Double>)target, average);
     }
     
-    private double sum(Iterable<? extends Number> vals) {
-        double result = 0;
-        for (Number val : vals) {
-            result += val.doubleValue();
-        }
-        return result;
+    private void pruneValues() {
+        if (windowSize > -1) values.pruneToSize(windowSize);
     }
 }
@@ -1,13 +1,11 @@
 package brooklyn.enricher;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-
 import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
 import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.TimeWindowedSamples;
 
 /**
  * Transforms {@link Sensor} data into a rolling average based on a time window.
@@ -31,6 +29,9 @@ import brooklyn.event.SensorEvent;
  * the average is no longer meaningful.
  * <p>
  * The default average when no data has been received is 0, with a confidence of 0
+ * <p>
+ * The values are kept in a {@link TimeWindowedSamples} ring buffer, which maintains the time-weighted sum of the
+ * window as values are added and discarded, so neither an event nor an average walks the window.
  */
 public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
     public static class ConfidenceQualifiedNumber {
@@ -43,8 +44,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         }
     }
     
-    private final LinkedList<T> values = new LinkedList<T>();
-    private final LinkedList<Long> timestamps = new LinkedList<Long>();
+    private final TimeWindowedSamples values;
     volatile ConfidenceQualifiedNumber lastAverage = new ConfidenceQualifiedNumber(0d,0d);
     
     long timePeriod;
@@ -53,6 +53,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         AttributeSensor<Double> target, long timePeriod) {
         super(producer, source, target);
         this.timePeriod = timePeriod;
+        this.values = new TimeWindowedSamples(timePeriod);
     }
 
     @Override
@@ -61,10 +62,13 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public void onEvent(SensorEvent<T> event, long eventTime) {
-        values.addLast(event.getValue());
-        timestamps.addLast(eventTime);
-        pruneValues(eventTime);
-        entity.setAttribute((AttributeSensor<Double>)target, getAverage(eventTime).value); //TODO this can potentially go stale... maybe we need to timestamp as well?
+        ConfidenceQualifiedNumber average;
+        synchronized (values) {
+            values.add(event.getValue().doubleValue(), eventTime);
+            pruneValues(eventTime);
+            average = getAverage(eventTime);
+        }
+        entity.setAttribute((AttributeSensor<Double>)target, average.value); //TODO this can potentially go stale... maybe we need to timestamp as well?
     }
     
     public ConfidenceQualifiedNumber getAverage() {
@@ -72,48 +76,38 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public ConfidenceQualifiedNumber getAverage(long now) {
-        pruneValues(now);
-        if (timestamps.isEmpty()) {
-            return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
-        }
+        synchronized (values) {
+            pruneValues(now);
+            if (values.isEmpty()) {
+                return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
+            }
 
-        // XXX grkvlt - see email to development list
+            // XXX grkvlt - see email to development list
 
-        
-        long lastTimestamp = timestamps.get(timestamps.size()-1);
-        Double confidence = ((double)(timePeriod - (now - lastTimestamp))) / timePeriod;
-        if (confidence <= 0.0d) {
-            double lastValue = values.get(values.size()-1).doubleValue();
-            return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
-        }
-        
-        long start = (now - timePeriod);
-        long end;
-        double weightedAverage = 0.0d;
-        
-        Iterator<T> valuesIter = values.iterator();
-        Iterator<Long> timestampsIter = timestamps.iterator();
-        while (valuesIter.hasNext()) {
-            // Ignores out-of-date values (and also values that are received out-of-order, but that shouldn't happen!)
-            double val = valuesIter.next().doubleValue();
-            long timestamp = timestampsIter.next();
-            if (timestamp >= start) {
-                end = timestamp;
-                weightedAverage += ((end - start) / (confidence * timePeriod)) * val;
-                start = timestamp;
+            
+            long lastTimestamp = values.getLatestTimestamp();
+            Double confidence = ((double)(timePeriod - (now - lastTimestamp))) / timePeriod;
+            if (confidence <= 0.0d) {
+                double lastValue = values.getLatestValue();
+                return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
             }
+            
+            // After pruning, all values are in the window (the oldest is weighted from the start of the window,
+            // the others from their predecessor); values received out-of-order shouldn't happen, and are not ignored
+            long start = (now - timePeriod);
+            double weightedSum = (values.getTimestamp(0) - start) * values.getValue(0) + values.getTimeWeightedSum();
+            double weightedAverage = weightedSum / (confidence * timePeriod);
+            
+            return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
         }
-        
-        return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
     }
     
     /**
      * Discards out-of-date values, but keeps at least one value.
      */
     private void pruneValues(long now) {
-        while(timestamps.size() > 1 && timestamps.get(0) < (now - timePeriod)) {
-            timestamps.removeFirst();
-            values.removeFirst();
+        while(values.size() > 1 && values.getTimestamp(0) < (now - timePeriod)) {
+            values.removeOldest();
         }
     }
 }
@@ -0,0 +1,102 @@
+package brooklyn.enricher;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.util.QuantileHistogram;
+import brooklyn.util.TimeWindowedQuantileHistogram;
+
+/**
+ * Transforms {@link Sensor} data into percentiles (e.g. p50, p95 and p99) over a rolling time window,
+ * exposing the tail which a mean (e.g. from {@link RollingTimeWindowMeanEnricher}) hides.
+ * <p>
+ * Values are counted in a {@link TimeWindowedQuantileHistogram} rather than kept, so a high-rate metric costs
+ * constant memory. On each value, the histogram of the window is published on the target sensor, and each
+ * percentile on its sensor; the histograms of several entities (e.g. the members of a cluster) can be merged
+ * with a {@link PercentilesAggregatingEnricher}. Percentiles are accurate to within the histogram's relative accuracy.
+ * <p>
+ * Example usage, with sensors for p50, p95 and p99 of latency over the last minute:
+ * <pre>
+ * {@code
+ * Map<Double, AttributeSensor<Double>> latencyPercentiles = RollingTimeWindowPercentilesEnricher.newPercentileSensors("webapp.latency");
+ * addEnricher(new RollingTimeWindowPercentilesEnricher<Double>(this, LATENCY, LATENCY_HISTOGRAM, latencyPercentiles, 60*1000));
+ * }
+ * </pre>
+ */
+public class RollingTimeWindowPercentilesEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,QuantileHistogram> {
+
+    public static final double[] DEFAULT_QUANTILES = new double[] { 0.5, 0.95, 0.99 };
+
+    /**
+     * Returns sensors for the given quantiles (default p50, p95 and p99), named e.g. {@code <prefix>.p95},
+     * keyed by quantile.
+     */
+    public static Map<Double, AttributeSensor<Double>> newPercentileSensors(String namePrefix, double... quantiles) {
+        if (quantiles.length == 0) quantiles = DEFAULT_QUANTILES;
+        Map<Double, AttributeSensor<Double>> result = new LinkedHashMap<Double, AttributeSensor<Double>>();
+        for (double quantile : quantiles) {
+            String percentile = "p" + (quantile*100 == Math.rint(quantile*100) ? ""+(int)(quantile*100) : ""+(quantile*100));
+            result.put(quantile, new BasicAttributeSensor<Double>(Double.class, namePrefix+"."+percentile,
+                    percentile+" of "+namePrefix));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private final TimeWindowedQuantileHistogram histogram;
+    private final Map<Double, AttributeSensor<Double>> percentileTargets;
+
+    long timePeriod;
+
+    public RollingTimeWindowPercentilesEnricher(Entity producer, AttributeSensor<T> source,
+            AttributeSensor<QuantileHistogram> target, Map<Double, AttributeSensor<Double>> percentileTargets, long timePeriod) {
+        this(producer, source, target, percentileTargets, timePeriod, TimeWindowedQuantileHistogram.DEFAULT_SLICES,
+                QuantileHistogram.DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public RollingTimeWindowPercentilesEnricher(Entity producer, AttributeSensor<T> source,
+            AttributeSensor<QuantileHistogram> target, Map<Double, AttributeSensor<Double>> percentileTargets, long timePeriod,
+            int numSlices, double relativeAccuracy) {
+        super(producer, source, target);
+        this.percentileTargets = percentileTargets;
+        this.timePeriod = timePeriod;
+        this.histogram = new TimeWindowedQuantileHistogram(timePeriod, numSlices, relativeAccuracy);
+    }
+
+    @Override
+    public void onEvent(SensorEvent<T> event) {
+        onEvent(event, event.getTimestamp());
+    }
+
+    public void onEvent(SensorEvent<T> event, long eventTime) {
+        QuantileHistogram snapshot;
+        synchronized (histogram) {
+            if (event.getValue() != null) histogram.add(event.getValue().doubleValue(), eventTime);
+            snapshot = histogram.getHistogram(eventTime).copy();
+        }
+        publish(entity, (AttributeSensor<QuantileHistogram>)target, percentileTargets, snapshot);
+    }
+
+    /** the histogram of values in the window ending now */
+    public QuantileHistogram getHistogram(long now) {
+        synchronized (histogram) {
+            return histogram.getHistogram(now).copy();
+        }
+    }
+
+    /** sets the histogram, and each of its percentiles (or null if it is empty), on the entity */
+    static void publish(EntityLocal entity, AttributeSensor<QuantileHistogram> target,
+            Map<Double, AttributeSensor<Double>> percentileTargets, QuantileHistogram snapshot) {
+        if (target != null) entity.setAttribute(target, snapshot);
+        for (Map.Entry<Double, AttributeSensor<Double>> entry : percentileTargets.entrySet()) {
+            entity.setAttribute(entry.getValue(), snapshot.isEmpty() ? null : snapshot.getQuantile(entry.getKey()));
+        }
+    }
+}
@@ -26,10 +26,22 @@ public class BrooklynMetrics extends AbstractEntity {
     
     public static final BasicAttributeSensor<Integer> NUM_ACTIVE_TASKS = [ Integer, "brooklyn.metrics.numActiveTasks", "Number of currently active tasks being executed" ]
 
+    public static final BasicAttributeSensor<Integer> NUM_EXECUTOR_THREADS = [ Integer, "brooklyn.metrics.numExecutorThreads", "Number of threads in the pool(s) executing tasks" ]
+
+    public static final BasicAttributeSensor<Long> NUM_EXECUTOR_QUEUED_TASKS = [ Long, "brooklyn.metrics.numExecutorQueuedTasks", "Number of tasks queued in the executor pool(s) but not yet started" ]
+
+    public static final BasicAttributeSensor<Long> TOTAL_EXECUTOR_STEALS = [ Long, "brooklyn.metrics.totalExecutorSteals", "Total number of tasks stolen between executor threads (if using a work-stealing pool)" ]
+
+    public static final BasicAttributeSensor<Integer> NUM_SCHEDULED_TIMERS = [ Integer, "brooklyn.metrics.numScheduledTimers", "Number of scheduled task runs (e.g. sensor polls) waiting for their time to come" ]
+
+    public static final BasicAttributeSensor<Integer> NUM_SCHEDULER_THREADS = [ Integer, "brooklyn.metrics.numSchedulerThreads", "Number of threads used to schedule tasks" ]
+
     public static final BasicAttributeSensor<Long> TOTAL_EVENTS_PUBLISHED = [ Long, "brooklyn.metrics.totalEventsPublished", "Total number of events published" ]
     
     public static final BasicAttributeSensor<Long> TOTAL_EVENTS_DELIVERED = [ Long, "brooklyn.metrics.totalEventsDelivered", "Total number of events delivered (counting an event multiple times if more than one subscriber)" ]
     
+    public static final BasicAttributeSensor<Long> TOTAL_EVENTS_CONFLATED = [ Long, "brooklyn.metrics.totalEventsConflated", "Total number of events replaced by a newer value before delivery (for latest-value-only subscriptions)" ]
+    
     public static final BasicAttributeSensor<Long> NUM_SUBSCRIPTIONS = [ Long, "brooklyn.metrics.numSubscriptions", "Current number of event subscriptions" ]
     
     private ScheduledExecutorService executor;
@@ -67,10 +79,16 @@ public class BrooklynMetrics extends AbstractEntity {
             setAttribute(TOTAL_TASKS_SUBMITTED, execManager.getTotalTasksSubmitted())
             setAttribute(NUM_INCOMPLETE_TASKS, execManager.getNumIncompleteTasks())
             setAttribute(NUM_ACTIVE_TASKS, execManager.getNumActiveTasks())
+            setAttribute(NUM_EXECUTOR_THREADS, execManager.getExecutorPoolSize())
+            setAttribute(NUM_EXECUTOR_QUEUED_TASKS, execManager.getExecutorQueuedTaskCount())
+            setAttribute(TOTAL_EXECUTOR_STEALS, execManager.getExecutorStealCount())
+            setAttribute(NUM_SCHEDULED_TIMERS, execManager.getNumScheduledTimers())
+            setAttribute(NUM_SCHEDULER_THREADS, execManager.getSchedulerThreadCount())
         }
         if (subsManager != null) {
             setAttribute(TOTAL_EVENTS_PUBLISHED, subsManager.getTotalEventsPublished())
             setAttribute(TOTAL_EVENTS_DELIVERED, subsManager.getTotalEventsDelivered())
+            setAttribute(TOTAL_EVENTS_CONFLATED, subsManager.getTotalEventsConflated())
             setAttribute(NUM_SUBSCRIPTIONS, subsManager.getNumSubscriptions())
         }
     }
@@ -5,12 +5,7 @@ import static brooklyn.util.GroovyJavaMethods.truth;
 import static com.google.common.base.Preconditions.checkNotNull;
 import groovy.lang.Closure;
 
-import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,12 +18,13 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicAttributeSensor;
 import brooklyn.event.basic.BasicNotificationSensor;
 import brooklyn.policy.basic.AbstractPolicy;
+import brooklyn.policy.basic.PolicyEvaluationScheduler;
 import brooklyn.policy.loadbalancing.LoadBalancingPolicy;
 import brooklyn.util.MutableMap;
-import brooklyn.util.TimeWindowedList;
-import brooklyn.util.TimestampedValue;
+import brooklyn.util.TimeWindowedSamples;
 import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.flags.TypeCoercions;
 
@@ -42,6 +38,13 @@ import com.google.common.base.Throwables;
  * emitted <code>POOL_COLD</code> and <code>POOL_HOT</code> events. (This policy does not itself determine whether
  * the pool is hot or cold, but instead relies on these events being emitted by the monitored entity itself, or
  * by another policy that is attached to it; see, for example, {@link LoadBalancingPolicy}.)
+ * <p>
+ * If a metric is given, the pool is instead resized to keep the metric between its lower and upper bounds.
+ * If a forecastHorizon is also given (e.g. the time taken to provision a new member), the policy forecasts the
+ * pool's total activity that far ahead, using a {@link HoltWintersForecaster}, and uses the forecast metric in place
+ * of the current one when it is higher; so that new members are ready before the upper bound is breached, and the pool
+ * is not scaled back just before a rise. The forecast is published as {@link #FORECAST_METRIC} and
+ * {@link #FORECAST_POOL_SIZE}.
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class AutoScalerPolicy extends AbstractPolicy {
@@ -68,6 +71,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
         private BasicNotificationSensor<?> poolHotSensor;
         private BasicNotificationSensor<?> poolColdSensor;
         private BasicNotificationSensor<?> poolOkSensor;
+        private Long forecastHorizon;
+        private Long forecastPeriod;
+        private Integer forecastSeasonLength;
+        private Double forecastAlpha;
+        private Double forecastBeta;
+        private Double forecastGamma;
 
         public Builder id(String val) {
             this.id = val; return this;
@@ -124,6 +133,21 @@ public class AutoScalerPolicy extends AbstractPolicy {
         public Builder poolOkSensor(BasicNotificationSensor<?> val) {
             this.poolOkSensor = val; return this;
         }
+        public Builder forecastHorizon(long val) {
+            this.forecastHorizon = val; return this;
+        }
+        public Builder forecastPeriod(long val) {
+            this.forecastPeriod = val; return this;
+        }
+        public Builder forecastSeasonLength(int val) {
+            this.forecastSeasonLength = val; return this;
+        }
+        public Builder forecastSmoothing(double alpha, double beta, double gamma) {
+            this.forecastAlpha = alpha;
+            this.forecastBeta = beta;
+            this.forecastGamma = gamma;
+            return this;
+        }
         public AutoScalerPolicy build() {
             return new AutoScalerPolicy(toFlags());
         }
@@ -144,6 +168,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
                     .put("poolHotSensor", poolHotSensor)
                     .put("poolColdSensor", poolColdSensor)
                     .put("poolOkSensor", poolOkSensor)
+                    .putIfNotNull("forecastHorizon", forecastHorizon)
+                    .putIfNotNull("forecastPeriod", forecastPeriod)
+                    .putIfNotNull("forecastSeasonLength", forecastSeasonLength)
+                    .putIfNotNull("forecastAlpha", forecastAlpha)
+                    .putIfNotNull("forecastBeta", forecastBeta)
+                    .putIfNotNull("forecastGamma", forecastGamma)
                     .build();
         }
     }
@@ -171,6 +201,11 @@ public class AutoScalerPolicy extends AbstractPolicy {
     public static BasicNotificationSensor<Map> POOL_OK = new BasicNotificationSensor<Map>(
         Map.class, "resizablepool.cold", "Pool utilization is ok; the available resources are fine for the current workload");
 
+    public static final BasicAttributeSensor<Double> FORECAST_METRIC = new BasicAttributeSensor<Double>(
+        Double.class, "autoscaler.forecast.metric", "Forecast value of the metric, forecastHorizon ahead, at the current pool size");
+    public static final BasicAttributeSensor<Integer> FORECAST_POOL_SIZE = new BasicAttributeSensor<Integer>(
+        Integer.class, "autoscaler.forecast.poolSize", "Pool size needed to keep the forecast metric within its bounds");
+
     public static final String POOL_CURRENT_SIZE_KEY = "pool.current.size";
     public static final String POOL_HIGH_THRESHOLD_KEY = "pool.high.threshold";
     public static final String POOL_LOW_THRESHOLD_KEY = "pool.low.threshold";
@@ -215,13 +250,38 @@ public class AutoScalerPolicy extends AbstractPolicy {
     @SetFromFlag
     private BasicNotificationSensor<? extends Map> poolOkSensor;
     
+    /** how far ahead (in millis) to forecast the metric; 0 (the default) for no forecasting */
+    @SetFromFlag
+    private long forecastHorizon;
+    
+    /** the length (in millis) of each step of the forecasting model, over which the metric is averaged */
+    @SetFromFlag(defaultVal="10000")
+    private long forecastPeriod;
+    
+    /** the number of steps in a season (e.g. a day's worth), or 0 for no seasonal component */
+    @SetFromFlag
+    private int forecastSeasonLength;
+    
+    @SetFromFlag(defaultVal="0.5")
+    private double forecastAlpha;
+    
+    @SetFromFlag(defaultVal="0.3")
+    private double forecastBeta;
+    
+    @SetFromFlag(defaultVal="0.1")
+    private double forecastGamma;
+    
     private Entity poolEntity;
     
-    private volatile ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean executorQueued = new AtomicBoolean(false);
-    private volatile long executorTime = 0;
+    /** the model of the pool's total activity (i.e. metric times pool size), if forecasting; else null */
+    private final HoltWintersForecaster forecaster;
+    
+    private final PolicyEvaluationScheduler evaluationScheduler = new PolicyEvaluationScheduler(this, new Runnable() {
+            public void run() { resizeIfRequired(); }
+        });
     
-    private final TimeWindowedList<Number> recentDesiredResizes;
+    /** guarded by itself */
+    private final TimeWindowedSamples recentDesiredResizes;
     
     private final ResizeOperator defaultResizeOperator = new ResizeOperator() {
         public Integer resize(Entity entity, Integer desiredSize) {
@@ -272,7 +332,10 @@ public class AutoScalerPolicy extends AbstractPolicy {
         poolOkSensor = elvis(poolOkSensor, POOL_OK);
         
         long maxResizeStabilizationDelay = Math.max(resizeUpStabilizationDelay, resizeDownStabilizationDelay);
-        recentDesiredResizes = new TimeWindowedList<Number>(MutableMap.of("timePeriod", maxResizeStabilizationDelay, "minExpiredVals", 1));
+        recentDesiredResizes = new TimeWindowedSamples(MutableMap.of("timePeriod", maxResizeStabilizationDelay, "minExpiredVals", 1));
+        
+        forecaster = (forecastHorizon > 0) ? 
+                new HoltWintersForecaster(forecastPeriod, forecastSeasonLength, forecastAlpha, forecastBeta, forecastGamma) : null;
     }
 
     public void setMetricLowerBound(Number val) {
@@ -314,13 +377,23 @@ public class AutoScalerPolicy extends AbstractPolicy {
     public void suspend() {
         super.suspend();
         // TODO unsubscribe from everything? And resubscribe on resume?
-        if (executor != null) executor.shutdownNow();
+        evaluationScheduler.cancel();
     }
     
     @Override
     public void resume() {
         super.resume();
-        executor = Executors.newSingleThreadScheduledExecutor();
+        evaluationScheduler.reset();
+    }
+    
+    /** the model used to forecast the pool's total activity (i.e. metric times pool size); or null if not forecasting */
+    public HoltWintersForecaster getForecaster() {
+        return forecaster;
+    }
+    
+    /** the scheduler of this policy's resize checks, with its evaluation latency and queue time */
+    public PolicyEvaluationScheduler getEvaluationScheduler() {
+        return evaluationScheduler;
     }
     
     @Override
@@ -349,6 +422,25 @@ public class AutoScalerPolicy extends AbstractPolicy {
         double currentTotalActivity = currentSize * currentMetricD;
         int desiredSize;
         
+        if (forecaster != null) {
+            // the total activity is forecast, rather than the metric, as it does not change when the pool is resized
+            forecaster.add(currentTotalActivity, System.currentTimeMillis());
+            double forecastTotalActivity = forecaster.forecast(forecastHorizon);
+            if (!Double.isNaN(forecastTotalActivity) && currentSize > 0) {
+                double forecastMetricD = forecastTotalActivity / currentSize;
+                int forecastSize = toBoundedDesiredPoolSize((int) Math.ceil(forecastTotalActivity / metricUpperBoundD));
+                entity.setAttribute(FORECAST_METRIC, forecastMetricD);
+                entity.setAttribute(FORECAST_POOL_SIZE, forecastSize);
+                if (forecastMetricD > currentMetricD) {
+                    // scale out ahead of a forecast breach (and don't scale back just before one); the bounds are then applied as normal
+                    if (LOG.isTraceEnabled()) LOG.trace("{} using forecast metric {} for pool {}, rather than current {} ({} ahead)", 
+                            new Object[] {this, forecastMetricD, poolEntity, currentMetricD, forecastHorizon});
+                    currentMetricD = forecastMetricD;
+                    currentTotalActivity = forecastTotalActivity;
+                }
+            }
+        }
+        
         /* We always scale out (modulo stabilization delay) if:
          *   currentTotalActivity > currentSize*metricUpperBound
          * With newDesiredSize the smallest n such that   n*metricUpperBound >= currentTotalActivity
@@ -457,13 +549,21 @@ public class AutoScalerPolicy extends AbstractPolicy {
      * to do at the point the job was queued).
      */
     private void scheduleResize(final int newSize) {
-        recentDesiredResizes.add(newSize);
+        recordDesiredResize(newSize);
         
         scheduleResize();
     }
 
     private void abortResize(final int currentSize) {
-        recentDesiredResizes.add(currentSize);
+        recordDesiredResize(currentSize);
+    }
+
+    private void recordDesiredResize(int size) {
+        synchronized (recentDesiredResizes) {
+            long now = System.currentTimeMillis();
+            recentDesiredResizes.add(size, now);
+            recentDesiredResizes.pruneValues(now);
+        }
     }
 
     private boolean isEntityUp() {
@@ -483,57 +583,52 @@ public class AutoScalerPolicy extends AbstractPolicy {
         
         // Alex comments: yes, for scale out
         
-        if (isRunning() && executorQueued.compareAndSet(false, true) && isEntityUp()) {
-            long now = System.currentTimeMillis();
-            long delay = Math.max(0, (executorTime + minPeriodBetweenExecs) - now);
-            if (LOG.isTraceEnabled()) LOG.trace("{} scheduling resize in {}ms", this, delay);
+        if (isEntityUp() && evaluationScheduler.schedule(minPeriodBetweenExecs)) {
+            if (LOG.isTraceEnabled()) LOG.trace("{} scheduled resize", this);
+        }
+    }
+    
+    private void resizeIfRequired() {
+        try {
+            long currentPoolSize = currentSizeOperator.apply(poolEntity);
+            CalculatedDesiredPoolSize calculatedDesiredPoolSize = calculateDesiredPoolSize(currentPoolSize);
+            long desiredPoolSize = calculatedDesiredPoolSize.size;
+            boolean stable = calculatedDesiredPoolSize.stable;
             
-            executor.schedule(new Runnable() {
-                @Override public void run() {
-                    try {
-                        executorTime = System.currentTimeMillis();
-                        executorQueued.set(false);
-
-                        long currentPoolSize = currentSizeOperator.apply(poolEntity);
-                        CalculatedDesiredPoolSize calculatedDesiredPoolSize = calculateDesiredPoolSize(currentPoolSize);
-                        long desiredPoolSize = calculatedDesiredPoolSize.size;
-                        boolean stable = calculatedDesiredPoolSize.stable;
-                        
-                        // TODO Alex says: I think we should change even if not stable ... worst case we'll shrink later
-                        // otherwise if we're at 100 nodes and the num required keeps shifting from 10 to 11 to 8 to 13
-                        // we'll always have 100 ... or worse if we have 10 and num required keeps shifting 100 to 101 to 98...
-                        if (!stable) {
-                            // the desired size fluctuations are not stable; ensure we check again later (due to time-window)
-                            // even if no additional events have been received
-                            if (LOG.isTraceEnabled()) LOG.trace("{} re-scheduling resize check, as desired size not stable; continuing with resize...", 
-                                    new Object[] {this, poolEntity, currentPoolSize, desiredPoolSize});
-                            scheduleResize();
-                        }
-                        if (currentPoolSize == desiredPoolSize) {
-                            if (LOG.isTraceEnabled()) LOG.trace("{} not resizing pool {} from {} to {}", 
-                                    new Object[] {this, poolEntity, currentPoolSize, desiredPoolSize});
-                            return;
-                        }
-                        
-                        if (LOG.isDebugEnabled()) LOG.debug("{} requesting resize to {}; current {}, min {}, max {}", 
-                                new Object[] {this, desiredPoolSize, currentPoolSize, minPoolSize, maxPoolSize});
-                        
-                        // TODO Should we use int throughout, rather than casting here?
-                        resizeOperator.resize(poolEntity, (int) desiredPoolSize);
-                        
-                    } catch (Exception e) {
-                        if (isRunning()) {
-                            LOG.error("Error resizing: "+e, e);
-                        } else {
-                            if (LOG.isDebugEnabled()) LOG.debug("Error resizing, but no longer running: "+e, e);
-                        }
-                    } catch (Throwable t) {
-                        LOG.error("Error resizing: "+t, t);
-                        throw Throwables.propagate(t);
-                    }
-                }},
-                delay,
-                TimeUnit.MILLISECONDS);
+            // TODO Alex says: I think we should change even if not stable ... worst case we'll shrink later
+            // otherwise if we're at 100 nodes and the num required keeps shifting from 10 to 11 to 8 to 13
+            // we'll always have 100 ... or worse if we have 10 and num required keeps shifting 100 to 101 to 98...
+            if (!stable) {
+                // the desired size fluctuations are not stable; ensure we check again later (due to time-window)
+                // even if no additional events have been received
+                if (LOG.isTraceEnabled()) LOG.trace("{} re-scheduling resize check, as desired size not stable; continuing with resize...", 
+                        new Object[] {this, poolEntity, currentPoolSize, desiredPoolSize});
+                scheduleResize();
+            }
+            if (currentPoolSize == desiredPoolSize) {
+                if (LOG.isTraceEnabled()) LOG.trace("{} not resizing pool {} from {} to {}", 
+                        new Object[] {this, poolEntity, currentPoolSize, desiredPoolSize});
+                return;
+            }
+            
+            if (LOG.isDebugEnabled()) LOG.debug("{} requesting resize to {}; current {}, min {}, max {}", 
+                    new Object[] {this, desiredPoolSize, currentPoolSize, minPoolSize, maxPoolSize});
+            
+            // TODO Should we use int throughout, rather than casting here?
+            final int size = (int) desiredPoolSize;
+            evaluationScheduler.submitBlocking("resizing "+poolEntity+" to "+size, new Runnable() {
+                public void run() { resizeOperator.resize(poolEntity, size); }
+            });
+            
+        } catch (Exception e) {
+            if (isRunning()) {
+                LOG.error("Error resizing: "+e, e);
+            } else {
+                if (LOG.isDebugEnabled()) LOG.debug("Error resizing, but no longer running: "+e, e);
+            }
+        } catch (Throwable t) {
+            LOG.error("Error resizing: "+t, t);
+            throw Throwables.propagate(t);
         }
     }
     
@@ -547,20 +642,27 @@ public class AutoScalerPolicy extends AbstractPolicy {
      */
     private CalculatedDesiredPoolSize calculateDesiredPoolSize(long currentPoolSize) {
         long now = System.currentTimeMillis();
-        List<TimestampedValue<Number>> downsizeWindowVals = recentDesiredResizes.getValuesInWindow(now, resizeDownStabilizationDelay);
-        List<TimestampedValue<Number>> upsizeWindowVals = recentDesiredResizes.getValuesInWindow(now, resizeUpStabilizationDelay);
-        // this is the largest size that has been requested in the "stable-for-shrinking" period:
-        long minDesiredPoolSize = maxInWindow(downsizeWindowVals, resizeDownStabilizationDelay).longValue();
-        // this is the smallest size that has been requested in the "stable-for-growing" period:
-        long maxDesiredPoolSize = minInWindow(upsizeWindowVals, resizeUpStabilizationDelay).longValue();
-        // (it is a logical consequence of the above that minDesired >= maxDesired -- this is correct, if confusing:
-        // think of minDesired as the minimum size we are allowed to resize to, and similarly for maxDesired; 
-        // if min > max we can scale to max if current < max, or scale to min if current > min)
+        long minDesiredPoolSize, maxDesiredPoolSize;
+        boolean stableForShrinking, stableForGrowing;
+        String history;
+        synchronized (recentDesiredResizes) {
+            // this is the largest size that has been requested in the "stable-for-shrinking" period:
+            double maxInDownsizeWindow = maxInWindow(now, resizeDownStabilizationDelay);
+            // this is the smallest size that has been requested in the "stable-for-growing" period:
+            double minInUpsizeWindow = minInWindow(now, resizeUpStabilizationDelay);
+            minDesiredPoolSize = (long) maxInDownsizeWindow;
+            maxDesiredPoolSize = (long) minInUpsizeWindow;
+            // (it is a logical consequence of the above that minDesired >= maxDesired -- this is correct, if confusing:
+            // think of minDesired as the minimum size we are allowed to resize to, and similarly for maxDesired; 
+            // if min > max we can scale to max if current < max, or scale to min if current > min)
+            
+            stableForShrinking = (minInWindow(now, resizeDownStabilizationDelay) == maxInDownsizeWindow);
+            stableForGrowing = (minInUpsizeWindow == maxInWindow(now, resizeUpStabilizationDelay));
+            history = LOG.isTraceEnabled() ? recentDesiredResizes.toString() : null;
+        }
 
         long desiredPoolSize;
         
-        boolean stableForShrinking = (minInWindow(downsizeWindowVals, resizeDownStabilizationDelay).equals(maxInWindow(downsizeWindowVals, resizeDownStabilizationDelay)));
-        boolean stableForGrowing = (minInWindow(upsizeWindowVals, resizeUpStabilizationDelay).equals(maxInWindow(upsizeWindowVals, resizeUpStabilizationDelay)));
         boolean stable;
         
         if (currentPoolSize < maxDesiredPoolSize) {
@@ -578,8 +680,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
         }
 
         if (LOG.isTraceEnabled()) LOG.trace("{} calculated desired pool size: from {} to {}; minDesired {}, maxDesired {}; " +
-                "stable {}; now {}; downsizeHistory {}; upsizeHistory {}", 
-                new Object[] {this, currentPoolSize, desiredPoolSize, minDesiredPoolSize, maxDesiredPoolSize, stable, now, downsizeWindowVals, upsizeWindowVals});
+                "stable {}; now {}; history {}", 
+                new Object[] {this, currentPoolSize, desiredPoolSize, minDesiredPoolSize, maxDesiredPoolSize, stable, now, history});
         
         return new CalculatedDesiredPoolSize(desiredPoolSize, stable);
     }
@@ -595,50 +697,49 @@ public class AutoScalerPolicy extends AbstractPolicy {
     }
     
     /**
-     * If the entire time-window is not covered by the given values, then returns Integer.MAX_VALUE.
+     * The largest desired size in the given time-window (including the last one requested before it),
+     * or Integer.MAX_VALUE if the entire time-window is not covered by the recent desired sizes.
+     * Must be called while synchronized on recentDesiredResizes.
      */
-    private <T extends Number> T maxInWindow(List<TimestampedValue<T>> vals, long timewindow) {
-        // TODO bad casting from Integer default result to T
-        long now = System.currentTimeMillis();
+    private double maxInWindow(long now, long timewindow) {
         long epoch = now-timewindow;
-        T result = null;
-        double resultAsDouble = Integer.MAX_VALUE;
-        for (TimestampedValue<T> val : vals) {
-            T valAsNum = val.getValue();
-            double valAsDouble = (valAsNum != null) ? valAsNum.doubleValue() : 0;
-            if (result == null && val.getTimestamp() > epoch) {
-                result = (T) Integer.valueOf(Integer.MAX_VALUE);
-                resultAsDouble = result.doubleValue();
+        boolean found = false;
+        double result = Integer.MAX_VALUE;
+        for (int i = recentDesiredResizes.getFirstIndexInWindow(now, timewindow); i < recentDesiredResizes.size(); i++) {
+            double val = recentDesiredResizes.getValue(i);
+            if (!found && recentDesiredResizes.getTimestamp(i) > epoch) {
+                result = Integer.MAX_VALUE;
+                found = true;
             }
-            if (result == null || (valAsNum != null && valAsDouble > resultAsDouble)) {
-                result = valAsNum;
-                resultAsDouble = valAsDouble;
+            if (!found || val > result) {
+                result = val;
+                found = true;
             }
         }
-        return (T) (result != null ? result : Integer.MAX_VALUE);
+        return result;
     }
     
     /**
-     * If the entire time-window is not covered by the given values, then returns Integer.MIN_VALUE
+     * The smallest desired size in the given time-window (including the last one requested before it),
+     * or Integer.MIN_VALUE if the entire time-window is not covered by the recent desired sizes.
+     * Must be called while synchronized on recentDesiredResizes.
      */
-    private <T extends Number> T minInWindow(List<TimestampedValue<T>> vals, long timewindow) {
-        long now = System.currentTimeMillis();
+    private double minInWindow(long now, long timewindow) {
         long epoch = now-timewindow;
-        T result = null;
-        double resultAsDouble = Integer.MIN_VALUE;
-        for (TimestampedValue<T> val : vals) {
-            T valAsNum = val.getValue();
-            double valAsDouble = (valAsNum != null) ? valAsNum.doubleValue() : 0;
-            if (result == null && val.getTimestamp() > epoch) {
-                result = (T) Integer.valueOf(Integer.MIN_VALUE);
-                resultAsDouble = result.doubleValue();
+        boolean found = false;
+        double result = Integer.MIN_VALUE;
+        for (int i = recentDesiredResizes.getFirstIndexInWindow(now, timewindow); i < recentDesiredResizes.size(); i++) {
+            double val = recentDesiredResizes.getValue(i);
+            if (!found && recentDesiredResizes.getTimestamp(i) > epoch) {
+                result = Integer.MIN_VALUE;
+                found = true;
             }
-            if (result == null || (val.getValue() != null && valAsDouble < resultAsDouble)) {
-                result = valAsNum;
-                resultAsDouble = valAsDouble;
+            if (!found || val < result) {
+                result = val;
+                found = true;
             }
         }
-        return (T) (result != null ? result : Integer.MIN_VALUE);
+        return result;
     }
     
     @Override
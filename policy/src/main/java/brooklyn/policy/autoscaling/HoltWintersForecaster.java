@@ -0,0 +1,135 @@
+package brooklyn.policy.autoscaling;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An online additive Holt-Winters model (i.e. triple exponential smoothing) of a metric, which forecasts its value
+ * some time ahead from its level, trend and (optionally) seasonal variation.
+ * <p>
+ * Samples may arrive at any time; they are averaged over consecutive periods of the given length, each of which is one
+ * step of the model. A period with no samples is taken to have the value of the last sample. With a seasonLength of 0,
+ * there is no seasonal component (i.e. Holt's linear trend method).
+ * <p>
+ * The smoothing factors, each between 0 and 1, are how much weight a new step is given in updating the level (alpha),
+ * the trend (beta) and the seasonal component (gamma).
+ */
+public class HoltWintersForecaster {
+
+    private final long period;
+    private final int seasonLength;
+    private final double alpha;
+    private final double beta;
+    private final double gamma;
+
+    private double level;
+    private double trend;
+    private final double[] seasonal;
+    private long stepCount = 0;
+
+    private long periodStart = -1;
+    private double periodSum = 0;
+    private int periodSampleCount = 0;
+    private double lastValue = Double.NaN;
+
+    /**
+     * @param period       the length (in millis) of each step
+     * @param seasonLength the number of steps in a season (e.g. a day), or 0 for no seasonal component
+     */
+    public HoltWintersForecaster(long period, int seasonLength, double alpha, double beta, double gamma) {
+        checkArgument(period > 0, "period must be positive");
+        checkArgument(seasonLength >= 0, "seasonLength must not be negative");
+        checkArgument(alpha > 0 && alpha <= 1, "alpha must be in (0,1]");
+        checkArgument(beta >= 0 && beta <= 1, "beta must be in [0,1]");
+        checkArgument(gamma >= 0 && gamma <= 1, "gamma must be in [0,1]");
+        this.period = period;
+        this.seasonLength = seasonLength;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.seasonal = new double[seasonLength];
+    }
+
+    public long getPeriod() {
+        return period;
+    }
+
+    public int getSeasonLength() {
+        return seasonLength;
+    }
+
+    public synchronized void add(double value, long timestamp) {
+        if (periodStart < 0) {
+            periodStart = timestamp;
+        }
+        while (timestamp >= periodStart + period) {
+            completeStep();
+            periodStart += period;
+        }
+        periodSum += value;
+        periodSampleCount++;
+        lastValue = value;
+    }
+
+    /** whether enough steps have been seen to estimate the trend */
+    public synchronized boolean isReady() {
+        return stepCount >= 2;
+    }
+
+    public synchronized long getStepCount() {
+        return stepCount;
+    }
+
+    public synchronized double getLevel() {
+        return level;
+    }
+
+    /** the change in level per step */
+    public synchronized double getTrend() {
+        return trend;
+    }
+
+    /**
+     * The forecast value of the metric the given time after the last completed step; or NaN if not {@link #isReady()}.
+     */
+    public synchronized double forecast(long horizon) {
+        if (!isReady()) return Double.NaN;
+        double steps = Math.max(0, (double) horizon / period);
+        double result = level + steps * trend;
+        if (seasonLength > 0) {
+            long futureStep = stepCount - 1 + Math.max(1, Math.round(steps));
+            result += seasonal[(int) (futureStep % seasonLength)];
+        }
+        return result;
+    }
+
+    private void completeStep() {
+        double value = (periodSampleCount > 0) ? periodSum / periodSampleCount : lastValue;
+        periodSum = 0;
+        periodSampleCount = 0;
+        if (Double.isNaN(value)) return;
+
+        int seasonIndex = (seasonLength > 0) ? (int) (stepCount % seasonLength) : -1;
+        double season = (seasonIndex >= 0) ? seasonal[seasonIndex] : 0;
+        if (stepCount == 0) {
+            level = value;
+            trend = 0;
+        } else if (stepCount == 1) {
+            // initial trend from the first two steps, rather than growing from zero
+            trend = value - level;
+            level = value;
+        } else {
+            double previousLevel = level;
+            level = alpha * (value - season) + (1 - alpha) * (level + trend);
+            trend = beta * (level - previousLevel) + (1 - beta) * trend;
+        }
+        if (seasonIndex >= 0) {
+            seasonal[seasonIndex] = gamma * (value - level) + (1 - gamma) * season;
+        }
+        stepCount++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HoltWintersForecaster[steps="+stepCount+", level="+level+", trend="+trend+"]";
+    }
+}
@@ -4,10 +4,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,6 +44,27 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
     private final Map<ItemType, Map<? extends ItemType, Double>> itemUsage = new ConcurrentHashMap<ItemType, Map<? extends ItemType,Double>>();
     private final Set<ItemType> immovableItems = Collections.newSetFromMap(new ConcurrentHashMap<ItemType, Boolean>());
 
+    /*
+     * The demand on each item from each location (i.e. the direct sends to it, summed by the location of the sender),
+     * kept up-to-date as usage and locations change rather than recomputed from itemUsage for every rebalance.
+     * Items and locations are given stable ids, indexing the rows and columns of a primitive array;
+     * the ids of removed items are reused. Guarded by synchronizing on this model.
+     */
+    private static final int INITIAL_ITEM_CAPACITY = 64;
+    private static final int INITIAL_LOCATION_CAPACITY = 8;
+    
+    private final Map<ItemType, Integer> itemIds = new HashMap<ItemType, Integer>();
+    private final List<ItemType> itemsById = new ArrayList<ItemType>();
+    private final Deque<Integer> freeItemIds = new ArrayDeque<Integer>();
+    private final Map<Location, Integer> locationIds = new HashMap<Location, Integer>();
+    private final List<Location> locationsById = new ArrayList<Location>();
+    /** for each source item, the items whose usage includes sends from it */
+    private final Map<ItemType, Set<ItemType>> targetsBySource = new HashMap<ItemType, Set<ItemType>>();
+    private int[] itemLocationIds = new int[INITIAL_ITEM_CAPACITY];
+    private int locationCapacity = INITIAL_LOCATION_CAPACITY;
+    /** demand[itemId*locationCapacity + locationId] */
+    private double[] demand = new double[INITIAL_ITEM_CAPACITY * INITIAL_LOCATION_CAPACITY];
+
     public DefaultFollowTheSunModel(String name) {
         this.name = name;
     }
@@ -89,8 +116,11 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
         return false; // TODO?
     }
     
+    /**
+     * Computes the demand by location afresh from the item usage; see {@link #getDemandMatrix()} for the
+     * incrementally maintained equivalent used by the strategy.
+     */
     @Override
-    // FIXME Too expensive to compute; store in a different data structure?
     public Map<ItemType, Map<Location, Double>> getDirectSendsToItemByLocation() {
         Map<ItemType, Map<Location, Double>> result = new LinkedHashMap<ItemType, Map<Location,Double>>(getNumItems());
         
@@ -118,6 +148,22 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
         return result;
     }
     
+    @Override
+    public synchronized DemandMatrix<ItemType> getDemandMatrix() {
+        int numItems = itemsById.size();
+        int numLocations = locationsById.size();
+        double[] result = new double[numItems * numLocations];
+        if (numLocations == locationCapacity) {
+            System.arraycopy(demand, 0, result, 0, result.length);
+        } else {
+            for (int i = 0; i < numItems; i++) {
+                System.arraycopy(demand, i * locationCapacity, result, i * numLocations, numLocations);
+            }
+        }
+        return new DemandMatrix<ItemType>(Collections.unmodifiableList(new ArrayList<ItemType>(itemsById)), locationsById,
+                Arrays.copyOf(itemLocationIds, numItems), result);
+    }
+    
     @Override
     public Set<ContainerType> getAvailableContainersFor(ItemType item, Location location) {
         checkNotNull(location);
@@ -128,32 +174,33 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
     // Mutators.
     
     @Override
-    public void onItemMoved(ItemType item, ContainerType newContainer) {
+    public synchronized void onItemMoved(ItemType item, ContainerType newContainer) {
         // idempotent, as may be called multiple times
         Location newLocation = (newContainer != null) ? containerToLocation.get(newContainer) : null;
         ContainerType newContainerNonNull = toNonNullContainer(newContainer);
         Location newLocationNonNull = toNonNullLocation(newLocation);
-        ContainerType oldContainer = itemToContainer.put(item, newContainerNonNull);
-        Location oldLocation = itemToLocation.put(item, newLocationNonNull);
+        itemToContainer.put(item, newContainerNonNull);
+        toItemId(item);
+        setItemLocation(item, newLocationNonNull);
     }
     
     @Override
-    public void onContainerAdded(ContainerType container, Location location) {
+    public synchronized void onContainerAdded(ContainerType container, Location location) {
         Location locationNonNull = toNonNullLocation(location);
         containers.add(container);
         containerToLocation.put(container, locationNonNull);
         for (ItemType item : getItemsOnContainer(container)) {
-            itemToLocation.put(item, locationNonNull);
+            setItemLocation(item, locationNonNull);
         }
     }
     
     @Override
-    public void onContainerRemoved(ContainerType container) {
+    public synchronized void onContainerRemoved(ContainerType container) {
         containers.remove(container);
         containerToLocation.remove(container);
     }
     
-    public void onContainerLocationUpdated(ContainerType container, Location location) {
+    public synchronized void onContainerLocationUpdated(ContainerType container, Location location) {
         if (!containers.contains(container)) {
             // unknown container; probably just stopped? 
             // If this overtook onContainerAdded, then assume we'll lookup the location and get it right in onContainerAdded
@@ -163,12 +210,12 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
         Location locationNonNull = toNonNullLocation(location);
         containerToLocation.put(container, locationNonNull);
         for (ItemType item : getItemsOnContainer(container)) {
-            itemToLocation.put(item, locationNonNull);
+            setItemLocation(item, locationNonNull);
         }
     }
 
     @Override
-    public void onItemAdded(ItemType item, ContainerType container, boolean immovable) {
+    public synchronized void onItemAdded(ItemType item, ContainerType container, boolean immovable) {
         // idempotent, as may be called multiple times
         
         if (immovable) {
@@ -177,22 +224,31 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
         Location location = (container != null) ? containerToLocation.get(container) : null;
         ContainerType containerNonNull = toNonNullContainer(container);
         Location locationNonNull = toNonNullLocation(location);
-        ContainerType oldContainer = itemToContainer.put(item, containerNonNull);
-        Location oldLocation = itemToLocation.put(item, locationNonNull);
+        itemToContainer.put(item, containerNonNull);
+        toItemId(item);
+        setItemLocation(item, locationNonNull);
     }
     
     @Override
-    public void onItemRemoved(ItemType item) {
+    public synchronized void onItemRemoved(ItemType item) {
+        // its sends no longer count towards the demand on other items (until it is added again), and its row is freed
+        setItemLocation(item, null);
+        updateDemand(item, itemUsage.remove(item), null);
+        Integer id = itemIds.remove(item);
+        if (id != null) {
+            itemsById.set(id, null);
+            freeItemIds.push(id);
+        }
         itemToContainer.remove(item);
-        itemToLocation.remove(item);
-        itemUsage.remove(item);
         immovableItems.remove(item);
     }
     
     @Override
-    public void onItemUsageUpdated(ItemType item, Map<? extends ItemType, Double> newValue) {
+    public synchronized void onItemUsageUpdated(ItemType item, Map<? extends ItemType, Double> newValue) {
         if (hasItem(item)) {
-            itemUsage.put(item, newValue);
+            // copied, as the demand must later be reduced by exactly the values added now
+            Map<ItemType, Double> newValueCopy = new LinkedHashMap<ItemType, Double>(newValue);
+            updateDemand(item, itemUsage.put(item, newValueCopy), newValueCopy);
         } else {
             // Can happen when item removed - get notification of removal and workrate from group and item
             // respectively, so can overtake each other
@@ -245,6 +301,117 @@ public class DefaultFollowTheSunModel<ContainerType, ItemType> implements Follow
         return itemToContainer.containsKey(item);
     }
     
+    /** sets the item's location, moving the demand from its sends to the column of its new location */
+    private void setItemLocation(ItemType item, Location locationNonNull) {
+        Location oldLocation = (locationNonNull != null) ? itemToLocation.put(item, locationNonNull) : itemToLocation.remove(item);
+        Integer oldLocationId = (oldLocation != null) ? locationIds.get(oldLocation) : null;
+        int from = (oldLocationId != null) ? oldLocationId : -1;
+        int to = toLocationId(locationNonNull);
+        Integer id = itemIds.get(item);
+        if (id != null) itemLocationIds[id] = to;
+        if (from == to) return;
+        
+        Set<ItemType> targets = targetsBySource.get(item);
+        if (targets == null) return;
+        for (ItemType target : targets) {
+            Integer targetId = itemIds.get(target);
+            if (targetId == null) continue;
+            double val = usageVal(itemUsage.get(target).get(item));
+            if (from >= 0) demand[targetId * locationCapacity + from] -= val;
+            if (to >= 0) demand[targetId * locationCapacity + to] += val;
+        }
+    }
+    
+    /** replaces the contribution of the old usage of the target item with that of the new (either may be null) */
+    private void updateDemand(ItemType target, Map<? extends ItemType, Double> oldUsage, Map<? extends ItemType, Double> newUsage) {
+        Integer targetId = itemIds.get(target);
+        if (oldUsage != null) {
+            for (Map.Entry<? extends ItemType, Double> entry : oldUsage.entrySet()) {
+                ItemType source = entry.getKey();
+                if (source.equals(target)) continue; // ignore msgs to self
+                Set<ItemType> targets = targetsBySource.get(source);
+                if (targets != null) {
+                    targets.remove(target);
+                    if (targets.isEmpty()) targetsBySource.remove(source);
+                }
+                int locationId = toSourceLocationId(source);
+                if (targetId != null && locationId >= 0) demand[targetId * locationCapacity + locationId] -= usageVal(entry.getValue());
+            }
+        }
+        if (newUsage != null) {
+            for (Map.Entry<? extends ItemType, Double> entry : newUsage.entrySet()) {
+                ItemType source = entry.getKey();
+                if (source.equals(target)) continue; // ignore msgs to self
+                Set<ItemType> targets = targetsBySource.get(source);
+                if (targets == null) {
+                    targets = new LinkedHashSet<ItemType>();
+                    targetsBySource.put(source, targets);
+                }
+                targets.add(target);
+                int locationId = toSourceLocationId(source);
+                if (targetId != null && locationId >= 0) demand[targetId * locationCapacity + locationId] += usageVal(entry.getValue());
+            }
+        }
+        if (targetId != null && (newUsage == null || newUsage.isEmpty())) {
+            // start again from zero, rather than accumulating rounding errors
+            Arrays.fill(demand, targetId * locationCapacity, (targetId + 1) * locationCapacity, 0d);
+        }
+    }
+    
+    private static double usageVal(Double val) {
+        return (val != null) ? val : 0d;
+    }
+    
+    /** the id of the location of the given source item, or -1 if not known (e.g. item may have just terminated) */
+    private int toSourceLocationId(ItemType source) {
+        Location location = itemToLocation.get(source);
+        Integer result = (location != null) ? locationIds.get(location) : null;
+        return (result != null) ? result : -1;
+    }
+    
+    private int toItemId(ItemType item) {
+        Integer result = itemIds.get(item);
+        if (result != null) return result;
+        
+        if (freeItemIds.isEmpty()) {
+            result = itemsById.size();
+            itemsById.add(item);
+            if (result >= itemLocationIds.length) {
+                int newCapacity = itemLocationIds.length * 2;
+                itemLocationIds = Arrays.copyOf(itemLocationIds, newCapacity);
+                demand = Arrays.copyOf(demand, newCapacity * locationCapacity);
+            }
+        } else {
+            result = freeItemIds.pop();
+            itemsById.set(result, item);
+            Arrays.fill(demand, result * locationCapacity, (result + 1) * locationCapacity, 0d);
+        }
+        itemIds.put(item, result);
+        itemLocationIds[result] = -1;
+        return result;
+    }
+    
+    /** the id of the given location, allocating one (and a column) if new; or -1 if the location is not known */
+    private int toLocationId(Location location) {
+        if (location == null || isNull(location)) return -1;
+        Integer result = locationIds.get(location);
+        if (result != null) return result;
+        
+        result = locationsById.size();
+        locationsById.add(location);
+        locationIds.put(location, result);
+        if (result >= locationCapacity) {
+            int newLocationCapacity = locationCapacity * 2;
+            double[] newDemand = new double[itemLocationIds.length * newLocationCapacity];
+            for (int i = 0; i < itemsById.size(); i++) {
+                System.arraycopy(demand, i * locationCapacity, newDemand, i * newLocationCapacity, locationCapacity);
+            }
+            demand = newDemand;
+            locationCapacity = newLocationCapacity;
+        }
+        return result;
+    }
+    
     private Set<Location> getLocations() {
         return ImmutableSet.copyOf(containerToLocation.values());
     }
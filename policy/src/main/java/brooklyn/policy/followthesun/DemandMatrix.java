@@ -0,0 +1,81 @@
+package brooklyn.policy.followthesun;
+
+import java.util.List;
+
+import brooklyn.location.Location;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A snapshot of the demand on each item from each location, i.e. the direct sends to the item summed by the
+ * location of the sender, for consumption by a {@link FollowTheSunStrategy}.
+ * <p>
+ * Rows are items and columns are locations, in a single primitive array, so that evaluating every item against every
+ * location is a scan of the array; each row also records the column of the item's own location (or -1 if not known).
+ * Rows of items which have been removed from the model are empty, with a null item.
+ */
+public class DemandMatrix<ItemType> {
+
+    private final List<ItemType> items;
+    private final List<Location> locations;
+    private final int[] itemLocations;
+    private final double[] demand;
+
+    /**
+     * @param items         the item of each row (or null)
+     * @param locations     the location of each column
+     * @param itemLocations the column of each item's location, or -1
+     * @param demand        the demand on each item from each location, row after row
+     */
+    public DemandMatrix(List<ItemType> items, List<Location> locations, int[] itemLocations, double[] demand) {
+        if (itemLocations.length != items.size() || demand.length != items.size() * locations.size()) {
+            throw new IllegalArgumentException("Inconsistent demand matrix: "+items.size()+" items, "+locations.size()+" locations, "+
+                    itemLocations.length+" item locations and "+demand.length+" demand values");
+        }
+        this.items = items;
+        this.locations = ImmutableList.copyOf(locations);
+        this.itemLocations = itemLocations;
+        this.demand = demand;
+    }
+
+    public int getNumItems() {
+        return items.size();
+    }
+
+    public int getNumLocations() {
+        return locations.size();
+    }
+
+    /** the item of the given row, or null if there is none */
+    public ItemType getItem(int row) {
+        return items.get(row);
+    }
+
+    public Location getLocation(int column) {
+        return locations.get(column);
+    }
+
+    /** the column of the location of the item in the given row, or -1 if not known */
+    public int getItemLocation(int row) {
+        return itemLocations[row];
+    }
+
+    public double getDemand(int row, int column) {
+        return demand[row * locations.size() + column];
+    }
+
+    /** the demand on the item in the given row from all (known) locations */
+    public double getTotalDemand(int row) {
+        int numLocations = locations.size();
+        double result = 0;
+        for (int i = row * numLocations, end = i + numLocations; i < end; i++) {
+            result += demand[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DemandMatrix["+items.size()+" items x "+locations.size()+" locations]";
+    }
+}
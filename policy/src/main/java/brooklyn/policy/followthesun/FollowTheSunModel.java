@@ -18,6 +18,7 @@ public interface FollowTheSunModel<ContainerType, ItemType> {
     public String getName(ItemType item);
     public Set<ItemType> getItems();
     public Map<ItemType, Map<Location, Double>> getDirectSendsToItemByLocation();
+    public DemandMatrix<ItemType> getDemandMatrix();
     public Location getItemLocation(ItemType item);
     public ContainerType getItemContainer(ItemType item);
     public Location getContainerLocation(ContainerType container);
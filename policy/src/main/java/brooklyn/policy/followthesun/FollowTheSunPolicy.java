@@ -6,10 +6,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +20,7 @@ import brooklyn.event.SensorEventListener;
 import brooklyn.location.Location;
 import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.policy.basic.AbstractPolicy;
+import brooklyn.policy.basic.PolicyEvaluationScheduler;
 import brooklyn.policy.followthesun.FollowTheSunPool.ContainerItemPair;
 import brooklyn.policy.loadbalancing.Movable;
 import brooklyn.util.MutableMap;
@@ -51,9 +48,9 @@ public class FollowTheSunPolicy extends AbstractPolicy {
     
     private FollowTheSunPool poolEntity;
     
-    private volatile ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean executorQueued = new AtomicBoolean(false);
-    private volatile long executorTime = 0;
+    private final PolicyEvaluationScheduler evaluationScheduler = new PolicyEvaluationScheduler(this, new Runnable() {
+            public void run() { runLatencyReductionJig(); }
+        });
     private boolean loggedConstraintsIgnored = false;
     
     private final Function<Entity, Location> defaultLocationFinder = new Function<Entity, Location>() {
@@ -107,7 +104,21 @@ public class FollowTheSunPolicy extends AbstractPolicy {
         this.itemUsageMetric = itemUsageMetric;
         this.model = model;
         this.parameters = parameters;
-        this.strategy = new FollowTheSunStrategy<Entity, Movable>(model, parameters); // TODO: extract interface, inject impl
+        this.strategy = new FollowTheSunStrategy<Entity, Movable>(model, parameters) { // TODO: extract interface, inject impl
+            @Override protected void moveItem(final Movable item, final Entity oldContainer, final Entity newContainer) {
+                evaluationScheduler.submitBlocking("moving "+item+" to "+newContainer, new Runnable() {
+                    public void run() {
+                        try {
+                            item.move(newContainer);
+                        } catch (RuntimeException e) {
+                            // the model was updated when the move was handed over
+                            if (oldContainer != null) FollowTheSunPolicy.this.model.onItemMoved(item, oldContainer);
+                            throw e;
+                        }
+                    }
+                });
+            }
+        };
         this.locationFinder = elvis(locationFinder, defaultLocationFinder);
     }
     
@@ -139,42 +150,35 @@ public class FollowTheSunPolicy extends AbstractPolicy {
     public void suspend() {
         // TODO unsubscribe from everything? And resubscribe on resume?
         super.suspend();
-        if (executor != null) executor.shutdownNow();
-        executorQueued.set(false);
+        evaluationScheduler.cancel();
     }
     
     @Override
     public void resume() {
         super.resume();
-        executor = Executors.newSingleThreadScheduledExecutor();
-        executorTime = 0;
-        executorQueued.set(false);
+        evaluationScheduler.reset();
+    }
+    
+    /** the scheduler of this policy's migrations, with its evaluation latency and queue time */
+    public PolicyEvaluationScheduler getEvaluationScheduler() {
+        return evaluationScheduler;
     }
     
     private void scheduleLatencyReductionJig() {
-        if (isRunning() && executorQueued.compareAndSet(false, true)) {
-            long now = System.currentTimeMillis();
-            long delay = Math.max(0, (executorTime + minPeriodBetweenExecs) - now);
+        evaluationScheduler.schedule(minPeriodBetweenExecs);
+    }
+    
+    private void runLatencyReductionJig() {
+        try {
+            if (LOG.isTraceEnabled()) LOG.trace("{} executing follow-the-sun migration-strategy", this);
+            strategy.rebalance(getManagementContext().getExecutionManager());
             
-            executor.schedule(new Runnable() {
-                public void run() {
-                    try {
-                        executorTime = System.currentTimeMillis();
-                        executorQueued.set(false);
-                        
-                        if (LOG.isTraceEnabled()) LOG.trace("{} executing follow-the-sun migration-strategy", this);
-                        strategy.rebalance();
-                        
-                    } catch (RuntimeException e) {
-                        if (isRunning()) {
-                            LOG.error("Error during latency-reduction-jig", e);
-                        } else {
-                            LOG.debug("Error during latency-reduction-jig, but no longer running", e);
-                        }
-                    }
-                }},
-                delay,
-                TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            if (isRunning()) {
+                LOG.error("Error during latency-reduction-jig", e);
+            } else {
+                LOG.debug("Error during latency-reduction-jig, but no longer running", e);
+            }
         }
     }
     
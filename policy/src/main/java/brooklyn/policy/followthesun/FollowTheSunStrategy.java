@@ -4,15 +4,17 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
 import brooklyn.location.Location;
+import brooklyn.management.ExecutionManager;
 import brooklyn.policy.loadbalancing.Movable;
+import brooklyn.util.MutableMap;
 
 import com.google.common.collect.Iterables;
 
@@ -25,6 +27,9 @@ public class FollowTheSunStrategy<ContainerType extends Entity, ItemType extends
     
     private static final Logger LOG = LoggerFactory.getLogger(FollowTheSunStrategy.class);
     
+    /** number of items whose demand one thread evaluates at a time, when evaluating in parallel */
+    private static final int ITEMS_PER_CHUNK = 256;
+    
     private final FollowTheSunParameters parameters;
     private final FollowTheSunModel<ContainerType,ItemType> model;
     private final String name;
@@ -36,98 +41,184 @@ public class FollowTheSunStrategy<ContainerType extends Entity, ItemType extends
     }
     
     public void rebalance() {
+        rebalance(null);
+    }
+    
+    /**
+     * As {@link #rebalance()}, but where there are many items, evaluating where they should be in parallel: the
+     * items are split into chunks, which tasks submitted to the given execution manager (if not null) and the calling
+     * thread take in turn. The resulting migrations are then done one at a time, by the calling thread.
+     */
+    public void rebalance(ExecutionManager executionManager) {
         try {
-            Set<ItemType> items = model.getItems();
-            Map<ItemType, Map<Location, Double>> directSendsToItemByLocation = model.getDirectSendsToItemByLocation();
-            
-            for (ItemType item : items) {
-                String itemName = model.getName(item);
-                Location activeLocation = model.getItemLocation(item);
-                ContainerType activeContainer = model.getItemContainer(item);
-                Map<Location, Double> sendsByLocation = directSendsToItemByLocation.get(item);
-                if (sendsByLocation == null) sendsByLocation = Collections.emptyMap();
-                
-                if (parameters.excludedLocations.contains(activeLocation)) {
-                    if (LOG.isTraceEnabled()) LOG.trace("Ignoring segment {} as it is in {}", itemName, activeLocation);
-                    continue;
-                }
-                if (!model.isItemMoveable(item)) {
-                    if (LOG.isDebugEnabled()) LOG.debug("POLICY {} skipping any migration of {}, it is not moveable", name, itemName);
-                    continue;
-                }
-                if (model.hasActiveMigration(item)) {
-                    LOG.info("POLICY {} skipping any migration of {}, it is involved in an active migration already", name, itemName);
-                    continue;
-                }
-                
-                double total = DefaultFollowTheSunModel.sum(sendsByLocation.values());
-
-                if (LOG.isTraceEnabled()) LOG.trace("POLICY {} detected {} msgs/sec in {}, split up as: {}", new Object[] {name, total, itemName, sendsByLocation});
-                
-                Double current = sendsByLocation.get(activeLocation);
-                if (current == null) current=0d;
-                List<WeightedObject<Location>> locationsWtd = new ArrayList<WeightedObject<Location>>();
-                if (total > 0) {
-                    for (Map.Entry<Location, Double> entry : sendsByLocation.entrySet()) {
-                        Location l = entry.getKey();
-                        Double d = entry.getValue();
-                        if (d > current) locationsWtd.add(new WeightedObject<Location>(l, d));
-                    }
-                }
-                Collections.sort(locationsWtd);
-                Collections.reverse(locationsWtd);
-                
-                double highestMsgRate = -1;
-                Location highestLocation = null;
-                ContainerType optimalContainerInHighest = null;
-                while (!locationsWtd.isEmpty()) {
-                    WeightedObject<Location> weightedObject = locationsWtd.remove(0);
-                    highestMsgRate = weightedObject.getWeight();
-                    highestLocation = weightedObject.getObject();
-                    optimalContainerInHighest = findOptimal(model.getAvailableContainersFor(item, highestLocation));
-                    if (optimalContainerInHighest != null) {
-                        break;
+            DemandMatrix<ItemType> demand = model.getDemandMatrix();
+            List<Migration> migrations = evaluate(demand, executionManager);
+            for (Migration migration : migrations) {
+                if (migration != null) migrate(migration);
+            }
+        } catch (Exception e) {
+            LOG.warn("Error in policy "+name+" (ignoring): "+e, e);
+        }
+    }
+    
+    private List<Migration> evaluate(final DemandMatrix<ItemType> demand, ExecutionManager executionManager) throws InterruptedException {
+        final int numItems = demand.getNumItems();
+        final int numChunks = (numItems + ITEMS_PER_CHUNK - 1) / ITEMS_PER_CHUNK;
+        final List<Migration> result = new ArrayList<Migration>(Collections.<Migration>nCopies(numItems, null));
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch chunksDone = new CountDownLatch(numChunks);
+        
+        Runnable evaluator = new Runnable() {
+            public void run() {
+                for (int chunk = nextChunk.getAndIncrement(); chunk < numChunks; chunk = nextChunk.getAndIncrement()) {
+                    try {
+                        for (int row = chunk * ITEMS_PER_CHUNK, end = Math.min(numItems, row + ITEMS_PER_CHUNK); row < end; row++) {
+                            result.set(row, evaluate(demand, row));
+                        }
+                    } finally {
+                        chunksDone.countDown();
                     }
                 }
-                if (optimalContainerInHighest == null) {
-                    if (LOG.isDebugEnabled()) LOG.debug("POLICY {} detected {} is already in optimal permitted location ({} of {} msgs/sec)", new Object[] {name, itemName, highestMsgRate, total});
-                    continue;                   
-                }
-                
-                double nextHighestMsgRate = -1;
-                ContainerType optimalContainerInNextHighest = null;
-                while (!locationsWtd.isEmpty()) {
-                    WeightedObject<Location> weightedObject = locationsWtd.remove(0);
-                    nextHighestMsgRate = weightedObject.getWeight();
-                    Location nextHighestLocation = weightedObject.getObject();
-                    optimalContainerInNextHighest = findOptimal(model.getAvailableContainersFor(item, nextHighestLocation));
-                    if (optimalContainerInNextHighest != null) {
-                        break;
+            }};
+        
+        // the calling thread also takes chunks, and waits only for those taken by others, so this does not
+        // depend on the helpers being run promptly (or at all)
+        int numHelpers = (executionManager != null) ? Math.min(numChunks, Runtime.getRuntime().availableProcessors()) - 1 : 0;
+        for (int i = 0; i < numHelpers; i++) {
+            executionManager.submit(MutableMap.of("displayName", "follow-the-sun evaluation for "+name), evaluator);
+        }
+        evaluator.run();
+        chunksDone.await();
+        return result;
+    }
+    
+    /** the migration the item in the given row of the demand matrix should make, or null */
+    private Migration evaluate(DemandMatrix<ItemType> demand, int row) {
+        ItemType item = demand.getItem(row);
+        if (item == null) return null;
+        String itemName = model.getName(item);
+        try {
+            int activeColumn = demand.getItemLocation(row);
+            Location activeLocation = (activeColumn >= 0) ? demand.getLocation(activeColumn) : null;
+            
+            if (parameters.excludedLocations.contains(activeLocation)) {
+                if (LOG.isTraceEnabled()) LOG.trace("Ignoring segment {} as it is in {}", itemName, activeLocation);
+                return null;
+            }
+            if (!model.isItemMoveable(item)) {
+                if (LOG.isDebugEnabled()) LOG.debug("POLICY {} skipping any migration of {}, it is not moveable", name, itemName);
+                return null;
+            }
+            if (model.hasActiveMigration(item)) {
+                LOG.info("POLICY {} skipping any migration of {}, it is involved in an active migration already", name, itemName);
+                return null;
+            }
+            
+            double total = demand.getTotalDemand(row);
+            
+            if (LOG.isTraceEnabled()) LOG.trace("POLICY {} detected {} msgs/sec in {}", new Object[] {name, total, itemName});
+            
+            double current = (activeColumn >= 0) ? demand.getDemand(row, activeColumn) : 0d;
+            
+            // the locations with more demand than the current one, most demand first
+            int numLocations = demand.getNumLocations();
+            int[] candidates = new int[numLocations];
+            int numCandidates = 0;
+            if (total > 0) {
+                for (int column = 0; column < numLocations; column++) {
+                    double d = demand.getDemand(row, column);
+                    if (d <= current) continue;
+                    int i = numCandidates++;
+                    for (; i > 0 && demand.getDemand(row, candidates[i-1]) < d; i--) {
+                        candidates[i] = candidates[i-1];
                     }
+                    candidates[i] = column;
                 }
-                if (optimalContainerInNextHighest == null) {
-                    nextHighestMsgRate = current;
+            }
+            
+            double highestMsgRate = -1;
+            Location highestLocation = null;
+            ContainerType optimalContainerInHighest = null;
+            int next = 0;
+            while (next < numCandidates) {
+                int column = candidates[next++];
+                highestMsgRate = demand.getDemand(row, column);
+                highestLocation = demand.getLocation(column);
+                optimalContainerInHighest = findOptimal(model.getAvailableContainersFor(item, highestLocation));
+                if (optimalContainerInHighest != null) {
+                    break;
                 }
-                
-                if (parameters.isTriggered(highestMsgRate, total, nextHighestMsgRate, current)) {
-                    LOG.info("POLICY "+name+" detected "+itemName+" should be in location "+highestLocation+" on "+optimalContainerInHighest+" ("+highestMsgRate+" of "+total+" msgs/sec), migrating");
-                    try {
-                        if (activeContainer.equals(optimalContainerInHighest)) {
-                            //shouldn't happen
-                            LOG.warn("POLICY "+name+" detected "+itemName+" should move to "+optimalContainerInHighest+" ("+highestMsgRate+" of "+total+" msgs/sec) but it is already there with "+current+" msgs/sec");
-                        } else {
-                            item.move(optimalContainerInHighest);
-                            model.onItemMoved(item, optimalContainerInHighest);
-                        }
-                    } catch (Exception e) {
-                        LOG.warn("POLICY "+name+" detected "+itemName+" should be on "+optimalContainerInHighest+", but can't move it: "+e, e);
-                    }
-                } else {
-                    if (LOG.isTraceEnabled()) LOG.trace("POLICY "+name+" detected "+itemName+" need not move to "+optimalContainerInHighest+" ("+highestMsgRate+" of "+total+" msgs/sec not much better than "+current+" at "+activeContainer+")");
+            }
+            if (optimalContainerInHighest == null) {
+                if (LOG.isDebugEnabled()) LOG.debug("POLICY {} detected {} is already in optimal permitted location ({} of {} msgs/sec)", new Object[] {name, itemName, highestMsgRate, total});
+                return null;
+            }
+            
+            double nextHighestMsgRate = -1;
+            ContainerType optimalContainerInNextHighest = null;
+            while (next < numCandidates) {
+                int column = candidates[next++];
+                nextHighestMsgRate = demand.getDemand(row, column);
+                optimalContainerInNextHighest = findOptimal(model.getAvailableContainersFor(item, demand.getLocation(column)));
+                if (optimalContainerInNextHighest != null) {
+                    break;
                 }
             }
+            if (optimalContainerInNextHighest == null) {
+                nextHighestMsgRate = current;
+            }
+            
+            if (parameters.isTriggered(highestMsgRate, total, nextHighestMsgRate, current)) {
+                return new Migration(item, itemName, highestLocation, optimalContainerInHighest, highestMsgRate, total, current);
+            } else {
+                if (LOG.isTraceEnabled()) LOG.trace("POLICY "+name+" detected "+itemName+" need not move to "+optimalContainerInHighest+" ("+highestMsgRate+" of "+total+" msgs/sec not much better than "+current+" at "+model.getItemContainer(item)+")");
+                return null;
+            }
         } catch (Exception e) {
-            LOG.warn("Error in policy "+name+" (ignoring): "+e, e);
+            LOG.warn("Error in policy "+name+" evaluating "+itemName+" (ignoring): "+e, e);
+            return null;
+        }
+    }
+    
+    /** moves the item from its current container to the new one; the model is updated by the caller */
+    protected void moveItem(ItemType item, ContainerType oldContainer, ContainerType newContainer) {
+        item.move(newContainer);
+    }
+    
+    private void migrate(Migration migration) {
+        String itemName = migration.itemName;
+        ContainerType activeContainer = model.getItemContainer(migration.item);
+        LOG.info("POLICY "+name+" detected "+itemName+" should be in location "+migration.location+" on "+migration.container+" ("+migration.msgRate+" of "+migration.total+" msgs/sec), migrating");
+        try {
+            if (migration.container.equals(activeContainer)) {
+                //shouldn't happen
+                LOG.warn("POLICY "+name+" detected "+itemName+" should move to "+migration.container+" ("+migration.msgRate+" of "+migration.total+" msgs/sec) but it is already there with "+migration.currentMsgRate+" msgs/sec");
+            } else {
+                moveItem(migration.item, activeContainer, migration.container);
+                model.onItemMoved(migration.item, migration.container);
+            }
+        } catch (Exception e) {
+            LOG.warn("POLICY "+name+" detected "+itemName+" should be on "+migration.container+", but can't move it: "+e, e);
+        }
+    }
+    
+    private class Migration {
+        final ItemType item;
+        final String itemName;
+        final Location location;
+        final ContainerType container;
+        final double msgRate;
+        final double total;
+        final double currentMsgRate;
+        
+        Migration(ItemType item, String itemName, Location location, ContainerType container, double msgRate, double total, double currentMsgRate) {
+            this.item = item;
+            this.itemName = itemName;
+            this.location = location;
+            this.container = container;
+            this.msgRate = msgRate;
+            this.total = total;
+            this.currentMsgRate = currentMsgRate;
         }
     }
 
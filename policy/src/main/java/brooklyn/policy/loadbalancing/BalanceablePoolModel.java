@@ -32,6 +32,10 @@ public interface BalanceablePoolModel<ContainerType, ItemType> {
     /** contains -1 instead of actual item workrate, for items which cannot be moved */
     // @Nullable("null if the node is prevented from reporting and/or being adjusted, or has no data yet")
     public Map<ItemType, Double> getItemWorkrates(ContainerType container);
+    /** the containers of the pool (with known thresholds), indexed by their overshoot, i.e. total workrate minus high threshold */
+    public WorkrateIndex<ContainerType> getContainerOvershootIndex();
+    /** the items (with known workrates) of the container, indexed by their workrate; empty if the container is unknown */
+    public WorkrateIndex<ItemType> getItemWorkrateIndex(ContainerType container);
     public boolean isItemMoveable(ItemType item);
     public boolean isItemAllowedIn(ItemType item, Location location);
     
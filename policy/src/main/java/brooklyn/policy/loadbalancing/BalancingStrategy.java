@@ -250,7 +250,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                     (nodeWorkrate - coldNodeWorkrate)*0.9);
             double maxSizeToMoveIfNoSmallButLarger = nodeWorkrate*3/4;
             
-            Map<ItemType, Double> questionedNodeItems = getDataProvider().getItemWorkrates(node);
+            WorkrateIndex<ItemType> questionedNodeItems = getDataProvider().getItemWorkrateIndex(node);
             if (questionedNodeItems == null) {
                 if (LOG.isDebugEnabled())
                     LOG.debug(MessageFormat.format(
@@ -260,7 +260,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                             nodeWorkrate));
                 break;
             }
-            ItemType itemToMove = findBestItemToMove(questionedNodeItems, idealSizeToMove, maxSizeToMoveIdeally,
+            WorkrateIndex.Entry<ItemType> itemToMove = findBestItemToMove(questionedNodeItems, idealSizeToMove, maxSizeToMoveIdeally,
                     maxSizeToMoveIfNoSmallButLarger, itemsMoved, coldNodeLocation);
             
             if (itemToMove == null) {
@@ -275,8 +275,8 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                 break;
             }
             
-            itemsMoved.add(itemToMove);
-            double itemWorkrate = questionedNodeItems.get(itemToMove);
+            itemsMoved.add(itemToMove.getKey());
+            double itemWorkrate = itemToMove.getWorkrate();
             
 //            if (LOG.isLoggable(Level.FINE))
 //                LOG.fine( MessageFormat.format(
@@ -288,7 +288,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
             nodeWorkrate -= itemWorkrate;
             coldNodeWorkrate += itemWorkrate;
             
-            moveItem(itemToMove, node, coldNode);
+            moveItem(itemToMove.getKey(), node, coldNode);
             ++migrationCount;
         }
         
@@ -444,7 +444,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                     (hotNodeWorkrate - questionedNodeTotalWorkrate)*0.6);
             double maxSizeToMoveIfNoSmallButLarger = questionedNodeTotalWorkrate*3/4;
             
-            Map<ItemType, Double> hotNodeItems = getDataProvider().getItemWorkrates(hotNode);
+            WorkrateIndex<ItemType> hotNodeItems = getDataProvider().getItemWorkrateIndex(hotNode);
             if (hotNodeItems == null) {
                 if (LOG.isDebugEnabled())
                     LOG.debug(MessageFormat.format(
@@ -456,7 +456,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                 continue;
             }
             
-            ItemType itemToMove = findBestItemToMove(hotNodeItems, idealSizeToMove, maxSizeToMoveIdeally,
+            WorkrateIndex.Entry<ItemType> itemToMove = findBestItemToMove(hotNodeItems, idealSizeToMove, maxSizeToMoveIdeally,
                     maxSizeToMoveIfNoSmallButLarger, itemsMoved, questionedLocation);
             if (itemToMove == null) {
                 if (LOG.isDebugEnabled())
@@ -472,8 +472,8 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
                 continue;
             }
             
-            itemsMoved.add(itemToMove);
-            double segmentRate = hotNodeItems.get(itemToMove);
+            itemsMoved.add(itemToMove.getKey());
+            double segmentRate = itemToMove.getWorkrate();
             
 //            if (LOG.isLoggable(Level.FINE))
 //                LOG.fine( MessageFormat.format(
@@ -485,7 +485,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
             questionedNodeTotalWorkrate += segmentRate;
             hotNodeWorkrate -= segmentRate;
             
-            moveItem(itemToMove, hotNode, questionedNode);
+            moveItem(itemToMove.getKey(), hotNode, questionedNode);
             
             if (++numMigrations >= getMaxMigrationsPerBalancingNode()) {
                 break;
@@ -599,4 +599,65 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
         return null;
     }
     
+    /**
+     * As {@link #findBestItemToMove(Map, double, double, double, Set, Location)}, but navigating the container's
+     * {@link WorkrateIndex} from either side of the targetCost rather than considering every item, so the cost
+     * does not grow with the number of items in the container (other than those which must be skipped).
+     */
+    protected WorkrateIndex.Entry<ItemType> findBestItemToMove(WorkrateIndex<ItemType> costsPerItem, double targetCost, double maxCost,
+            double maxCostIfNothingSmallerButLarger, Set<ItemType> excludedItems, Location locationIfKnown) {
+        
+        // items with negative cost are subject to recent adjustment, and with zero cost are not worth moving
+        WorkrateIndex.Entry<ItemType> largest = null;
+        for (WorkrateIndex.Entry<ItemType> entry : costsPerItem.descending()) {
+            if (entry.getWorkrate() <= 0) break;
+            if (isCandidateToMove(entry, excludedItems, null)) {
+                largest = entry;
+                break;
+            }
+        }
+        if (largest == null)
+            return null;
+        
+        WorkrateIndex.Entry<ItemType> below = null;
+        for (WorkrateIndex.Entry<ItemType> entry : costsPerItem.descendingFrom(Math.min(targetCost, maxCost))) {
+            if (entry.getWorkrate() <= 0) break;
+            if (isCandidateToMove(entry, excludedItems, locationIfKnown)) {
+                below = entry;
+                break;
+            }
+        }
+        WorkrateIndex.Entry<ItemType> above = null;
+        for (WorkrateIndex.Entry<ItemType> entry : costsPerItem.ascendingFrom(targetCost)) {
+            if (entry.getWorkrate() > maxCost) break;
+            if (entry.getWorkrate() > 0 && isCandidateToMove(entry, excludedItems, locationIfKnown)) {
+                above = entry;
+                break;
+            }
+        }
+        if (below != null && (above == null || targetCost - below.getWorkrate() <= above.getWorkrate() - targetCost))
+            return below;
+        if (above != null)
+            return above;
+        
+        for (ItemType item : excludedItems) {
+            Double cost = costsPerItem.get(item);
+            if (cost != null && cost >= 0 && model.isItemMoveable(item))
+                return null;
+        }
+        for (WorkrateIndex.Entry<ItemType> entry : costsPerItem.ascending()) {
+            if (entry.getWorkrate() <= 0) continue;
+            if (entry.getWorkrate() >= maxCostIfNothingSmallerButLarger || entry.getWorkrate() >= largest.getWorkrate()) break;
+            if (isCandidateToMove(entry, excludedItems, locationIfKnown))
+                return entry;
+        }
+        return null;
+    }
+    
+    private boolean isCandidateToMove(WorkrateIndex.Entry<ItemType> entry, Set<ItemType> excludedItems, Location locationIfKnown) {
+        ItemType item = entry.getKey();
+        return !excludedItems.contains(item) && model.isItemMoveable(item) &&
+                (locationIfKnown == null || model.isItemAllowedIn(item, locationIfKnown));
+    }
+    
 }
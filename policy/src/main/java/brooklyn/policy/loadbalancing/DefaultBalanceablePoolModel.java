@@ -36,6 +36,11 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
      *  - Unfortunately changing threading model (so have a "rebalancer" thread, and a thread that 
      *    processes events to update the model), get ConcurrentModificationException if don't take
      *    copy of containerToItems.get(node)...
+     *  - With 10k items, the balancing strategy spent most of its time scanning every container to find the
+     *    hottest/coldest, and every item of a container (summing workrates, and then choosing one to move).
+     *    Hence container totals are kept as running sums, and containers (by overshoot) and each container's
+     *    items (by workrate) are kept in WorkrateIndexes, updated as events arrive; see LoadBalancingModelPerformanceTest.
+     *    The mutators are synchronized so each index agrees with the totals.
      */
     
     // Concurrent maps cannot have null value; use this to represent when no container is supplied for an item 
@@ -49,6 +54,9 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     private final SetMultimap<ContainerType, ItemType> containerToItems =  Multimaps.synchronizedSetMultimap(HashMultimap.<ContainerType, ItemType>create());
     private final Map<ItemType, Double> itemToWorkrate = new ConcurrentHashMap<ItemType, Double>();
     private final Set<ItemType> immovableItems = Collections.newSetFromMap(new ConcurrentHashMap<ItemType, Boolean>());
+    private final Map<ContainerType, Double> containerToWorkrate = new ConcurrentHashMap<ContainerType, Double>();
+    private final Map<ContainerType, WorkrateIndex<ItemType>> containerToItemWorkrates = new ConcurrentHashMap<ContainerType, WorkrateIndex<ItemType>>();
+    private final WorkrateIndex<ContainerType> containerOvershoots = new WorkrateIndex<ContainerType>();
     
     private volatile double poolLowThreshold = 0;
     private volatile double poolHighThreshold = 0;
@@ -100,13 +108,8 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     }
     
     @Override public double getTotalWorkrate(ContainerType container) {
-        double totalWorkrate = 0;
-        for (ItemType item : getItemsForContainer(container)) {
-            Double workrate = itemToWorkrate.get(item);
-            if (workrate != null)
-                totalWorkrate += Math.abs(workrate);
-        }
-        return totalWorkrate;
+        Double result = containerToWorkrate.get(container);
+        return (result != null) ? result : 0;
     }
     
     @Override public Map<ContainerType, Double> getContainerWorkrates() {
@@ -123,6 +126,15 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return result;
     }
     
+    @Override public WorkrateIndex<ContainerType> getContainerOvershootIndex() {
+        return containerOvershoots;
+    }
+    
+    @Override public WorkrateIndex<ItemType> getItemWorkrateIndex(ContainerType container) {
+        WorkrateIndex<ItemType> result = containerToItemWorkrates.get(container);
+        return (result != null) ? result : new WorkrateIndex<ItemType>();
+    }
+    
     @Override public boolean isItemMoveable(ItemType item) {
         // If don't know about item, then assume not movable; otherwise has this item been explicitly flagged as immovable?
         return itemToContainer.containsKey(item) && !immovableItems.contains(item);
@@ -136,7 +148,7 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     // Mutators.
     
     @Override
-    public void onItemMoved(ItemType item, ContainerType newNode) {
+    public synchronized void onItemMoved(ItemType item, ContainerType newNode) {
         if (!itemToContainer.containsKey(item)) {
             // Item may have been deleted; order of events received from different sources 
             // (i.e. item itself and for itemGroup membership) is non-deterministic.
@@ -148,10 +160,12 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         ContainerType oldNode = itemToContainer.put(item, newNodeNonNull);
         if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
         if (newNode != null) containerToItems.put(newNode, item);
+        unindexItem(item, oldNode);
+        indexItem(item, newNode);
     }
     
     @Override
-    public void onContainerAdded(ContainerType newContainer, double lowThreshold, double highThreshold) {
+    public synchronized void onContainerAdded(ContainerType newContainer, double lowThreshold, double highThreshold) {
         boolean added = containers.add(newContainer);
         if (!added) {
             // See LoadBalancingPolicy.onContainerAdded for possible explanation of why can get duplicate calls
@@ -162,11 +176,13 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         containerToHighThreshold.put(newContainer, highThreshold);
         poolLowThreshold += lowThreshold;
         poolHighThreshold += highThreshold;
+        indexContainer(newContainer);
     }
     
     @Override
-    public void onContainerRemoved(ContainerType oldContainer) {
+    public synchronized void onContainerRemoved(ContainerType oldContainer) {
         containers.remove(oldContainer);
+        containerOvershoots.remove(oldContainer);
         Double containerLowThreshold = containerToLowThreshold.remove(oldContainer);
         Double containerHighThresold = containerToHighThreshold.remove(oldContainer);
         poolLowThreshold -= (containerLowThreshold != null ? containerLowThreshold : 0);
@@ -181,7 +197,7 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     }
     
     @Override
-    public void onItemAdded(ItemType item, ContainerType parentContainer, boolean immovable) {
+    public synchronized void onItemAdded(ItemType item, ContainerType parentContainer, boolean immovable) {
         // Duplicate calls to onItemAdded do no harm, as long as most recent is most accurate!
         // Important that it stays that way for now - See LoadBalancingPolicy.onContainerAdded for explanation.
 
@@ -192,12 +208,15 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         ContainerType oldNode = itemToContainer.put(item, parentContainerNonNull);
         if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
         if (parentContainer != null) containerToItems.put(parentContainer, item);
+        unindexItem(item, oldNode);
+        indexItem(item, parentContainer);
     }
     
     @Override
-    public void onItemRemoved(ItemType item) {
+    public synchronized void onItemRemoved(ItemType item) {
         ContainerType oldNode = itemToContainer.remove(item);
         if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
+        unindexItem(item, oldNode);
         Double workrate = itemToWorkrate.remove(item);
         if (workrate != null)
             currentPoolWorkrate -= workrate;
@@ -205,11 +224,12 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     }
     
     @Override
-    public void onItemWorkrateUpdated(ItemType item, double newValue) {
+    public synchronized void onItemWorkrateUpdated(ItemType item, double newValue) {
         if (hasItem(item)) {
             Double oldValue = itemToWorkrate.put(item, newValue);
             double delta = ( newValue - (oldValue != null ? oldValue : 0) );
             currentPoolWorkrate += delta;
+            indexItem(item, itemToContainer.get(item));
         } else {
             // Can happen when item removed - get notification of removal and workrate from group and item
             // respectively, so can overtake each other
@@ -221,6 +241,51 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return itemToContainer.containsKey(item);
     }
     
+    /** adds (or updates) the item's workrate in the container's index and total, if the item has a workrate */
+    private void indexItem(ItemType item, ContainerType container) {
+        if (container == null || container == NULL_CONTAINER) return;
+        Double workrate = itemToWorkrate.get(item);
+        if (workrate == null) return;
+        WorkrateIndex<ItemType> index = containerToItemWorkrates.get(container);
+        if (index == null) {
+            index = new WorkrateIndex<ItemType>();
+            containerToItemWorkrates.put(container, index);
+        }
+        Double oldWorkrate = index.get(item);
+        index.put(item, workrate);
+        addToTotalWorkrate(container, Math.abs(workrate) - (oldWorkrate != null ? Math.abs(oldWorkrate) : 0));
+    }
+    
+    private void unindexItem(ItemType item, ContainerType container) {
+        if (container == null || container == NULL_CONTAINER) return;
+        WorkrateIndex<ItemType> index = containerToItemWorkrates.get(container);
+        Double oldWorkrate = (index != null) ? index.get(item) : null;
+        if (oldWorkrate == null) return;
+        index.remove(item);
+        if (index.isEmpty()) {
+            // start again from zero, rather than accumulating rounding errors
+            containerToItemWorkrates.remove(container);
+            containerToWorkrate.remove(container);
+            indexContainer(container);
+        } else {
+            addToTotalWorkrate(container, -Math.abs(oldWorkrate));
+        }
+    }
+    
+    private void addToTotalWorkrate(ContainerType container, double delta) {
+        containerToWorkrate.put(container, getTotalWorkrate(container) + delta);
+        indexContainer(container);
+    }
+    
+    private void indexContainer(ContainerType container) {
+        Double highThreshold = containerToHighThreshold.get(container);
+        if (highThreshold != null && containers.contains(container)) {
+            containerOvershoots.put(container, getTotalWorkrate(container) - highThreshold);
+        } else {
+            containerOvershoots.remove(container);
+        }
+    }
+    
     
     // Additional methods for tests.
 
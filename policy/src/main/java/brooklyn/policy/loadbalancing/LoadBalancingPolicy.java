@@ -5,10 +5,6 @@ import static brooklyn.util.GroovyJavaMethods.truth;
 
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +19,7 @@ import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.policy.autoscaling.AutoScalerPolicy;
 import brooklyn.policy.basic.AbstractPolicy;
+import brooklyn.policy.basic.PolicyEvaluationScheduler;
 import brooklyn.policy.loadbalancing.BalanceableWorkerPool.ContainerItemPair;
 import brooklyn.util.MutableMap;
 import brooklyn.util.flags.SetFromFlag;
@@ -60,9 +57,9 @@ public class LoadBalancingPolicy<NodeType extends Entity, ItemType extends Movab
     private final BalancingStrategy<NodeType, ItemType> strategy;
     private BalanceableWorkerPool poolEntity;
     
-    private volatile ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private final AtomicBoolean executorQueued = new AtomicBoolean(false);
-    private volatile long executorTime = 0;
+    private final PolicyEvaluationScheduler evaluationScheduler = new PolicyEvaluationScheduler(this, new Runnable() {
+            public void run() { rebalance(); }
+        });
 
     private int lastEmittedDesiredPoolSize = 0;
     private String lastEmittedPoolTemperature = null; // "cold" or "hot"
@@ -105,7 +102,22 @@ public class LoadBalancingPolicy<NodeType extends Entity, ItemType extends Movab
         this.lowThresholdConfigKeyName = metric.getName()+".threshold.low";
         this.highThresholdConfigKeyName = metric.getName()+".threshold.high";
         this.model = model;
-        this.strategy = new BalancingStrategy(getName(), model); // TODO: extract interface, inject impl
+        this.strategy = new BalancingStrategy<NodeType, ItemType>(getName(), model) { // TODO: extract interface, inject impl
+            @Override protected void moveItem(final ItemType item, final NodeType oldNode, final NodeType newNode) {
+                evaluationScheduler.submitBlocking("moving "+item+" to "+newNode, new Runnable() {
+                    public void run() {
+                        try {
+                            item.move(newNode);
+                        } catch (RuntimeException e) {
+                            // the model was updated when the move was handed over
+                            LoadBalancingPolicy.this.model.onItemMoved(item, oldNode);
+                            throw e;
+                        }
+                    }
+                });
+                LoadBalancingPolicy.this.model.onItemMoved(item, newNode);
+            }
+        };
     }
     
     @Override
@@ -136,81 +148,75 @@ public class LoadBalancingPolicy<NodeType extends Entity, ItemType extends Movab
     public void suspend() {
         // TODO unsubscribe from everything? And resubscribe on resume?
         super.suspend();
-        if (executor != null) executor.shutdownNow();;
-        executorQueued.set(false);
+        evaluationScheduler.cancel();
     }
     
     @Override
     public void resume() {
         super.resume();
-        executor = Executors.newSingleThreadScheduledExecutor();
-        executorTime = 0;
-        executorQueued.set(false);
+        evaluationScheduler.reset();
+    }
+    
+    /** the scheduler of this policy's rebalancing, with its evaluation latency and queue time */
+    public PolicyEvaluationScheduler getEvaluationScheduler() {
+        return evaluationScheduler;
     }
     
     private void scheduleRebalance() {
-        if (isRunning() && executorQueued.compareAndSet(false, true)) {
-            long now = System.currentTimeMillis();
-            long delay = Math.max(0, (executorTime + minPeriodBetweenExecs) - now);
+        evaluationScheduler.schedule(minPeriodBetweenExecs);
+    }
+    
+    private void rebalance() {
+        try {
+            strategy.rebalance();
             
-            executor.schedule(new Runnable() {
-                public void run() {
-                    try {
-                        executorTime = System.currentTimeMillis();
-                        executorQueued.set(false);
-                        strategy.rebalance();
-                        
-                        if (LOG.isDebugEnabled()) LOG.debug("{} post-rebalance: poolSize={}; workrate={}; lowThreshold={}; " + 
-                                "highThreshold={}", new Object[] {this, model.getPoolSize(), model.getCurrentPoolWorkrate(), 
-                                model.getPoolLowThreshold(), model.getPoolHighThreshold()});
-                        
-                        if (model.isCold()) {
-                            Map eventVal = ImmutableMap.of(
-                                    AutoScalerPolicy.POOL_CURRENT_SIZE_KEY, model.getPoolSize(),
-                                    AutoScalerPolicy.POOL_CURRENT_WORKRATE_KEY, model.getCurrentPoolWorkrate(),
-                                    AutoScalerPolicy.POOL_LOW_THRESHOLD_KEY, model.getPoolLowThreshold(),
-                                    AutoScalerPolicy.POOL_HIGH_THRESHOLD_KEY, model.getPoolHighThreshold());
+            if (LOG.isDebugEnabled()) LOG.debug("{} post-rebalance: poolSize={}; workrate={}; lowThreshold={}; " + 
+                    "highThreshold={}", new Object[] {this, model.getPoolSize(), model.getCurrentPoolWorkrate(), 
+                    model.getPoolLowThreshold(), model.getPoolHighThreshold()});
             
-                            poolEntity.emit(AutoScalerPolicy.POOL_COLD, eventVal);
-                            
-                            if (LOG.isInfoEnabled()) {
-                                int desiredPoolSize = (int) Math.ceil(model.getCurrentPoolWorkrate() / (model.getPoolLowThreshold()/model.getPoolSize()));
-                                if (desiredPoolSize != lastEmittedDesiredPoolSize || lastEmittedPoolTemperature != "cold") {
-                                    LOG.info("{} emitted COLD (suggesting {}): {}", new Object[] {this, desiredPoolSize, eventVal});
-                                    lastEmittedDesiredPoolSize = desiredPoolSize;
-                                    lastEmittedPoolTemperature = "cold";
-                                }
-                            }
-                        
-                        } else if (model.isHot()) {
-                            Map eventVal = ImmutableMap.of(
-                                    AutoScalerPolicy.POOL_CURRENT_SIZE_KEY, model.getPoolSize(),
-                                    AutoScalerPolicy.POOL_CURRENT_WORKRATE_KEY, model.getCurrentPoolWorkrate(),
-                                    AutoScalerPolicy.POOL_LOW_THRESHOLD_KEY, model.getPoolLowThreshold(),
-                                    AutoScalerPolicy.POOL_HIGH_THRESHOLD_KEY, model.getPoolHighThreshold());
-                            
-                            poolEntity.emit(AutoScalerPolicy.POOL_HOT, eventVal);
-                            
-                            if (LOG.isInfoEnabled()) {
-                                int desiredPoolSize = (int) Math.ceil(model.getCurrentPoolWorkrate() / (model.getPoolHighThreshold()/model.getPoolSize()));
-                                if (desiredPoolSize != lastEmittedDesiredPoolSize || lastEmittedPoolTemperature != "hot") {
-                                    LOG.info("{} emitted HOT (suggesting {}): {}", new Object[] {this, desiredPoolSize, eventVal});
-                                    lastEmittedDesiredPoolSize = desiredPoolSize;
-                                    lastEmittedPoolTemperature = "hot";
-                                }
-                            }
-                        }
+            if (model.isCold()) {
+                Map eventVal = ImmutableMap.of(
+                        AutoScalerPolicy.POOL_CURRENT_SIZE_KEY, model.getPoolSize(),
+                        AutoScalerPolicy.POOL_CURRENT_WORKRATE_KEY, model.getCurrentPoolWorkrate(),
+                        AutoScalerPolicy.POOL_LOW_THRESHOLD_KEY, model.getPoolLowThreshold(),
+                        AutoScalerPolicy.POOL_HIGH_THRESHOLD_KEY, model.getPoolHighThreshold());
 
-                    } catch (Exception e) {
-                        if (isRunning()) {
-                            LOG.error("Error rebalancing", e);
-                        } else {
-                            LOG.debug("Error rebalancing, but no longer running", e);
-                        }
+                poolEntity.emit(AutoScalerPolicy.POOL_COLD, eventVal);
+                
+                if (LOG.isInfoEnabled()) {
+                    int desiredPoolSize = (int) Math.ceil(model.getCurrentPoolWorkrate() / (model.getPoolLowThreshold()/model.getPoolSize()));
+                    if (desiredPoolSize != lastEmittedDesiredPoolSize || lastEmittedPoolTemperature != "cold") {
+                        LOG.info("{} emitted COLD (suggesting {}): {}", new Object[] {this, desiredPoolSize, eventVal});
+                        lastEmittedDesiredPoolSize = desiredPoolSize;
+                        lastEmittedPoolTemperature = "cold";
+                    }
+                }
+            
+            } else if (model.isHot()) {
+                Map eventVal = ImmutableMap.of(
+                        AutoScalerPolicy.POOL_CURRENT_SIZE_KEY, model.getPoolSize(),
+                        AutoScalerPolicy.POOL_CURRENT_WORKRATE_KEY, model.getCurrentPoolWorkrate(),
+                        AutoScalerPolicy.POOL_LOW_THRESHOLD_KEY, model.getPoolLowThreshold(),
+                        AutoScalerPolicy.POOL_HIGH_THRESHOLD_KEY, model.getPoolHighThreshold());
+                
+                poolEntity.emit(AutoScalerPolicy.POOL_HOT, eventVal);
+                
+                if (LOG.isInfoEnabled()) {
+                    int desiredPoolSize = (int) Math.ceil(model.getCurrentPoolWorkrate() / (model.getPoolHighThreshold()/model.getPoolSize()));
+                    if (desiredPoolSize != lastEmittedDesiredPoolSize || lastEmittedPoolTemperature != "hot") {
+                        LOG.info("{} emitted HOT (suggesting {}): {}", new Object[] {this, desiredPoolSize, eventVal});
+                        lastEmittedDesiredPoolSize = desiredPoolSize;
+                        lastEmittedPoolTemperature = "hot";
                     }
-                }},
-                delay,
-                TimeUnit.MILLISECONDS);
+                }
+            }
+
+        } catch (Exception e) {
+            if (isRunning()) {
+                LOG.error("Error rebalancing", e);
+            } else {
+                LOG.debug("Error rebalancing, but no longer running", e);
+            }
         }
     }
     
@@ -24,28 +24,18 @@ public class PolicyUtilForPool<ContainerType, ItemType> {
      * returns null if none of the model's nodes has spare capacity.
      */
     public ContainerType findColdestContainer(Set<ContainerType> excludedContainers, LocationConstraint locationConstraint) {
-        double maxSpareCapacity = 0;
-        ContainerType coldest = null;
-        
-        for (ContainerType c : model.getPoolContents()) {
+        // i.e. the least overshoot; containers are indexed by overshoot, so stop at the first permitted
+        for (WorkrateIndex.Entry<ContainerType> entry : model.getContainerOvershootIndex().ascending()) {
+            if (entry.getWorkrate() >= 0)
+                break;
+            ContainerType c = entry.getKey();
             if (excludedContainers.contains(c))
                 continue;
             if (locationConstraint != null && !locationConstraint.isPermitted(model.getLocation(c)))
                 continue;
-            
-            double highThreshold = model.getHighThreshold(c);
-            double totalWorkrate = model.getTotalWorkrate(c);
-            double spareCapacity = highThreshold - totalWorkrate;
-            
-            if (highThreshold == -1 || totalWorkrate == -1) {
-                continue; // container presumably has been removed
-            }
-            if (spareCapacity > maxSpareCapacity) {
-                maxSpareCapacity = spareCapacity;
-                coldest = c;
-            }
+            return c;
         }
-        return coldest;
+        return null;
     }
     
     /**
@@ -53,26 +43,15 @@ public class PolicyUtilForPool<ContainerType, ItemType> {
      * returns null if none of the model's  nodes has an overshoot.
      */
     public ContainerType findHottestContainer(Set<ContainerType> excludedContainers) {
-        double maxOvershoot = 0;
-        ContainerType hottest = null;
-        
-        for (ContainerType c : model.getPoolContents()) {
+        for (WorkrateIndex.Entry<ContainerType> entry : model.getContainerOvershootIndex().descending()) {
+            if (entry.getWorkrate() <= 0)
+                break;
+            ContainerType c = entry.getKey();
             if (excludedContainers.contains(c))
                 continue;
-            
-            double totalWorkrate = model.getTotalWorkrate(c);
-            double highThreshold = model.getHighThreshold(c);
-            double overshoot = totalWorkrate - highThreshold;
-            
-            if (highThreshold == -1 || totalWorkrate == -1) {
-                continue; // container presumably has been removed
-            }
-            if (overshoot > maxOvershoot) {
-                maxOvershoot = overshoot;
-                hottest = c;
-            }
+            return c;
         }
-        return hottest;
+        return null;
     }
     
-}
\ No newline at end of file
+}
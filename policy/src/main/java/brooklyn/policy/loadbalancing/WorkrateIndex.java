@@ -0,0 +1,115 @@
+package brooklyn.policy.loadbalancing;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A sorted index of things (e.g. the items in a container, or the containers in a pool) by workrate, maintained
+ * incrementally as workrates change, so that the hottest and coldest, or the one nearest a given workrate, can be
+ * found in O(log n) rather than by scanning them all.
+ * <p>
+ * Updates are synchronized; reads are lock-free and weakly consistent (in the same way as the concurrent maps
+ * of {@link DefaultBalanceablePoolModel}), so a strategy may navigate the index while events update it.
+ */
+public class WorkrateIndex<T> {
+
+    public static class Entry<T> {
+        private final T key;
+        private final double workrate;
+        /** tie-breaker, so that entries with equal workrates are distinct */
+        private final long seq;
+
+        private Entry(T key, double workrate, long seq) {
+            this.key = key;
+            this.workrate = workrate;
+            this.seq = seq;
+        }
+
+        public T getKey() {
+            return key;
+        }
+
+        public double getWorkrate() {
+            return workrate;
+        }
+
+        @Override
+        public String toString() {
+            return key+"="+workrate;
+        }
+    }
+
+    private static final Comparator<Entry<?>> COMPARATOR = new Comparator<Entry<?>>() {
+        public int compare(Entry<?> e1, Entry<?> e2) {
+            int result = Double.compare(e1.workrate, e2.workrate);
+            if (result != 0) return result;
+            return (e1.seq < e2.seq) ? -1 : ((e1.seq == e2.seq) ? 0 : 1);
+        }
+    };
+
+    private final NavigableSet<Entry<T>> entries = new ConcurrentSkipListSet<Entry<T>>(COMPARATOR);
+    private final ConcurrentMap<T, Entry<T>> entriesByKey = new ConcurrentHashMap<T, Entry<T>>();
+    private long nextSeq = 0;
+
+    public synchronized void put(T key, double workrate) {
+        Entry<T> old = entriesByKey.get(key);
+        if (old != null) {
+            if (old.workrate == workrate) return;
+            entries.remove(old);
+        }
+        Entry<T> entry = new Entry<T>(key, workrate, nextSeq++);
+        entries.add(entry);
+        entriesByKey.put(key, entry);
+    }
+
+    public synchronized void remove(T key) {
+        Entry<T> old = entriesByKey.remove(key);
+        if (old != null) entries.remove(old);
+    }
+
+    /** the workrate of the given key, or null if it is not indexed */
+    public Double get(T key) {
+        Entry<T> entry = entriesByKey.get(key);
+        return (entry != null) ? entry.workrate : null;
+    }
+
+    public boolean contains(T key) {
+        return entriesByKey.containsKey(key);
+    }
+
+    public int size() {
+        return entriesByKey.size();
+    }
+
+    public boolean isEmpty() {
+        return entriesByKey.isEmpty();
+    }
+
+    /** entries in increasing order of workrate */
+    public Iterable<Entry<T>> ascending() {
+        return entries;
+    }
+
+    /** entries in decreasing order of workrate */
+    public Iterable<Entry<T>> descending() {
+        return entries.descendingSet();
+    }
+
+    /** entries with workrate at least the given value, in increasing order */
+    public Iterable<Entry<T>> ascendingFrom(double workrate) {
+        return entries.tailSet(new Entry<T>(null, workrate, Long.MIN_VALUE), true);
+    }
+
+    /** entries with workrate at most the given value, in decreasing order */
+    public Iterable<Entry<T>> descendingFrom(double workrate) {
+        return entries.headSet(new Entry<T>(null, workrate, Long.MAX_VALUE), true).descendingSet();
+    }
+
+    @Override
+    public String toString() {
+        return entries.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package brooklyn.enricher
+
+import static org.testng.Assert.*
+
+import org.testng.annotations.BeforeMethod
+import org.testng.annotations.Test
+
+import brooklyn.entity.basic.AbstractApplication
+import brooklyn.entity.basic.AbstractEntity
+import brooklyn.entity.basic.EntityLocal
+import brooklyn.event.AttributeSensor
+import brooklyn.event.basic.BasicAttributeSensor
+import brooklyn.management.internal.LocalManagementContext
+import brooklyn.util.QuantileHistogram
+
+class PercentilesEnricherTest {
+
+    AbstractApplication app
+    EntityLocal producer, producer2
+
+    AttributeSensor<Integer> latencySensor
+    AttributeSensor<QuantileHistogram> histogramSensor
+    Map<Double, AttributeSensor<Double>> percentileSensors
+
+    private final long timePeriod = 1000
+
+    @BeforeMethod
+    public void before() {
+        app = new AbstractApplication() {}
+        producer = new AbstractEntity(app) {}
+        producer2 = new AbstractEntity(app) {}
+        new LocalManagementContext().manage(app);
+
+        latencySensor = new BasicAttributeSensor<Integer>(Integer.class, "latency")
+        histogramSensor = new BasicAttributeSensor<QuantileHistogram>(QuantileHistogram.class, "latency.histogram")
+        percentileSensors = RollingTimeWindowPercentilesEnricher.newPercentileSensors("latency")
+    }
+
+    @Test
+    public void testPercentileSensorNames() {
+        assertEquals(percentileSensors.keySet() as List, [0.5d, 0.95d, 0.99d])
+        assertEquals(percentileSensors.values()*.name, ["latency.p50", "latency.p95", "latency.p99"])
+    }
+
+    @Test
+    public void testPublishesPercentilesOfWindow() {
+        RollingTimeWindowPercentilesEnricher<Integer> enricher = new RollingTimeWindowPercentilesEnricher<Integer>(
+                producer, latencySensor, histogramSensor, percentileSensors, timePeriod)
+        producer.addEnricher(enricher)
+
+        (1..100).each { enricher.onEvent(latencySensor.newEvent(producer, it), 1000L+it) }
+
+        assertEquals(producer.getAttribute(histogramSensor).getCount(), 100L)
+        assertEquals(producer.getAttribute(percentileSensors.get(0.5d)), 51d, 51*0.01)
+        assertEquals(producer.getAttribute(percentileSensors.get(0.95d)), 95d, 95*0.01)
+        assertEquals(producer.getAttribute(percentileSensors.get(0.99d)), 99d, 99*0.01)
+
+        // once the window has passed, only the latest value is included
+        enricher.onEvent(latencySensor.newEvent(producer, 7), 3000L)
+        assertEquals(producer.getAttribute(histogramSensor).getCount(), 1L)
+        assertEquals(producer.getAttribute(percentileSensors.get(0.99d)), 7d, 7*0.01)
+    }
+
+    @Test
+    public void testAggregatesHistogramsOfProducers() {
+        PercentilesAggregatingEnricher aggregator = new PercentilesAggregatingEnricher(
+                [producers:[producer, producer2]], histogramSensor, histogramSensor, percentileSensors)
+        app.addEnricher(aggregator)
+
+        QuantileHistogram low = new QuantileHistogram()
+        QuantileHistogram high = new QuantileHistogram()
+        (1..90).each { low.add(it) }
+        (1001..1010).each { high.add(it) }
+        aggregator.onEvent(histogramSensor.newEvent(producer, low))
+        aggregator.onEvent(histogramSensor.newEvent(producer2, high))
+
+        assertEquals(aggregator.getAggregate().getCount(), 100L)
+        assertEquals(app.getAttribute(percentileSensors.get(0.5d)), 51d, 51*0.01)
+        assertEquals(app.getAttribute(percentileSensors.get(0.95d)), 1005d, 1005*0.01)
+    }
+}
@@ -40,6 +40,9 @@ class BrooklynMetricsTest {
             assertTrue(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_PUBLISHED) > 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EVENTS_DELIVERED), 0)
             assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_SUBSCRIPTIONS), 0)
+            assertNotNull(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_EXECUTOR_THREADS))
+            assertNotNull(brooklynMetrics.getAttribute(BrooklynMetrics.NUM_EXECUTOR_QUEUED_TASKS))
+            assertEquals(brooklynMetrics.getAttribute(BrooklynMetrics.TOTAL_EXECUTOR_STEALS), 0)
         }
     }
     
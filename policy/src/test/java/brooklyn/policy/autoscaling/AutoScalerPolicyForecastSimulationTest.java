@@ -0,0 +1,97 @@
+package brooklyn.policy.autoscaling;
+
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.BasicConfigurableEntityFactory;
+import brooklyn.entity.group.DynamicCluster;
+import brooklyn.entity.trait.Resizable;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.MutableMap;
+import brooklyn.util.Time;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Replays a recorded ramp in load against clusters in a {@link SimulatedLocation}, whose members take a while to
+ * provision, comparing an {@link AutoScalerPolicy} which reacts to the current metric with one which forecasts it.
+ */
+public class AutoScalerPolicyForecastSimulationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoScalerPolicyForecastSimulationTest.class);
+
+    private static final BasicAttributeSensor<Double> LOAD_PER_MEMBER = new BasicAttributeSensor<Double>(Double.class, "autoscaler.test.loadPerMember");
+
+    /** each 30 second sample of the trace is replayed in 50ms */
+    private static final double TIME_SCALE = 50d / 30000;
+    /** i.e. 5 minutes, at the time scale of the trace */
+    private static final long PROVISIONING_DELAY = 500;
+    private static final double METRIC_LOWER_BOUND = 50;
+    private static final double METRIC_UPPER_BOUND = 100;
+
+    private TestApplication app;
+    private DynamicCluster reactiveCluster;
+    private DynamicCluster forecastingCluster;
+    private MetricTraceReplayer.Trace trace;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        app = new TestApplication();
+        reactiveCluster = newCluster();
+        forecastingCluster = newCluster();
+        app.start(ImmutableList.of(new SimulatedLocation()));
+        trace = MetricTraceReplayer.Trace.load("brooklyn/policy/autoscaling/ramp-load-trace.csv");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (app != null) app.stop();
+    }
+
+    @Test(groups="Integration")
+    public void testForecastingBreachesUpperBoundLessOftenThanReacting() {
+        reactiveCluster.addPolicy(newPolicyBuilder().build());
+        MetricTraceReplayer.Result reactive = new MetricTraceReplayer(reactiveCluster, LOAD_PER_MEMBER, METRIC_UPPER_BOUND, TIME_SCALE)
+                .replay(trace);
+
+        forecastingCluster.addPolicy(newPolicyBuilder()
+                .forecastHorizon(PROVISIONING_DELAY)
+                .forecastPeriod(100)
+                .build());
+        MetricTraceReplayer.Result forecasting = new MetricTraceReplayer(forecastingCluster, LOAD_PER_MEMBER, METRIC_UPPER_BOUND, TIME_SCALE)
+                .replay(trace);
+
+        LOG.info("Replayed {} samples: reacting {}; forecasting {}", new Object[] {trace.size(), reactive, forecasting});
+        assertTrue(forecasting.getBreaches() < reactive.getBreaches(), "reacting "+reactive+"; forecasting "+forecasting);
+        assertNotNull(forecastingCluster.getAttribute(AutoScalerPolicy.FORECAST_METRIC));
+        assertNotNull(forecastingCluster.getAttribute(AutoScalerPolicy.FORECAST_POOL_SIZE));
+    }
+
+    private DynamicCluster newCluster() {
+        return new DynamicCluster(MutableMap.of("factory", new BasicConfigurableEntityFactory<TestEntity>(TestEntity.class), "initialSize", 1), app);
+    }
+
+    private AutoScalerPolicy.Builder newPolicyBuilder() {
+        return AutoScalerPolicy.builder()
+                .metric(LOAD_PER_MEMBER)
+                .metricRange(METRIC_LOWER_BOUND, METRIC_UPPER_BOUND)
+                .minPoolSize(1)
+                .resizeOperator(new ResizeOperator() {
+                    public Integer resize(Entity entity, Integer desiredSize) {
+                        // as if provisioning new VMs
+                        if (desiredSize > ((Resizable) entity).getCurrentSize()) Time.sleep(PROVISIONING_DELAY);
+                        return ((Resizable) entity).resize(desiredSize);
+                    }
+                });
+    }
+}
@@ -0,0 +1,66 @@
+package brooklyn.policy.autoscaling;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class HoltWintersForecasterTest {
+
+    private static final long PERIOD = 1000;
+
+    @Test
+    public void testNotReadyUntilTrendEstimated() {
+        HoltWintersForecaster forecaster = new HoltWintersForecaster(PERIOD, 0, 0.5, 0.3, 0.1);
+        forecaster.add(10, 0);
+        forecaster.add(20, PERIOD);
+        assertFalse(forecaster.isReady());
+        assertTrue(Double.isNaN(forecaster.forecast(PERIOD)));
+
+        forecaster.add(30, 2*PERIOD);
+        assertTrue(forecaster.isReady());
+        assertEquals(forecaster.forecast(PERIOD), 30d, 0.0001);
+    }
+
+    @Test
+    public void testForecastsLinearRamp() {
+        HoltWintersForecaster forecaster = new HoltWintersForecaster(PERIOD, 0, 0.5, 0.3, 0.1);
+        for (int i = 0; i < 30; i++) {
+            forecaster.add(100 + 10*i, i*PERIOD);
+        }
+        // last completed step is 28 (value 380); 5 steps on is 430
+        assertEquals(forecaster.getTrend(), 10d, 0.0001);
+        assertEquals(forecaster.forecast(5*PERIOD), 430d, 0.0001);
+    }
+
+    @Test
+    public void testAveragesSamplesWithinPeriodAndCarriesValueOverEmptyPeriods() {
+        HoltWintersForecaster forecaster = new HoltWintersForecaster(PERIOD, 0, 1, 1, 0);
+        forecaster.add(10, 0);
+        forecaster.add(30, PERIOD/2);
+        forecaster.add(50, 3*PERIOD);
+
+        // steps of 20 (the mean), then 30 and 30 (the last value, as no samples)
+        assertEquals(forecaster.getStepCount(), 3);
+        assertEquals(forecaster.getLevel(), 30d, 0.0001);
+        assertEquals(forecaster.getTrend(), 0d, 0.0001);
+    }
+
+    @Test
+    public void testForecastsSeasonalPattern() {
+        int seasonLength = 10;
+        HoltWintersForecaster forecaster = new HoltWintersForecaster(PERIOD, seasonLength, 0.3, 0.1, 0.5);
+        for (int i = 0; i < 20*seasonLength; i++) {
+            forecaster.add(seasonalValue(i, seasonLength), i*PERIOD);
+        }
+        int lastStep = 20*seasonLength - 2;
+        for (int h = 1; h <= seasonLength; h++) {
+            assertEquals(forecaster.forecast(h*PERIOD), seasonalValue(lastStep + h, seasonLength), 1, "h="+h);
+        }
+    }
+
+    private double seasonalValue(int step, int seasonLength) {
+        return 100 + 50*Math.sin(2*Math.PI*step/seasonLength);
+    }
+}
@@ -0,0 +1,116 @@
+package brooklyn.policy.autoscaling;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.trait.Resizable;
+import brooklyn.event.AttributeSensor;
+import brooklyn.util.Time;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+
+/**
+ * Replays a recorded trace of the total load on a resizable pool (e.g. requests per second across a cluster),
+ * publishing the load per member at the pool's current size as its metric, as the members would; for simulating an
+ * {@link AutoScalerPolicy} against it. The trace is replayed faster than recorded, by the given time scale.
+ * <p>
+ * Records each sample at which the metric was above the given upper bound, i.e. when the pool was too small.
+ */
+public class MetricTraceReplayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricTraceReplayer.class);
+
+    /** A trace of the load at given times, read from CSV lines of seconds since the start and load; see {@link #load(String)} */
+    public static class Trace {
+        final List<Long> times = Lists.newArrayList();
+        final List<Double> loads = Lists.newArrayList();
+
+        /** loads a trace from the classpath; lines starting with '#', and a header line, are ignored */
+        public static Trace load(String resourceName) throws IOException {
+            Trace result = new Trace();
+            for (String line : Resources.readLines(Resources.getResource(resourceName), Charsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || !Character.isDigit(line.charAt(0))) continue;
+                List<String> fields = Lists.newArrayList(Splitter.on(',').trimResults().split(line));
+                result.times.add((long) (Double.parseDouble(fields.get(0)) * 1000));
+                result.loads.add(Double.parseDouble(fields.get(1)));
+            }
+            return result;
+        }
+
+        public int size() {
+            return loads.size();
+        }
+    }
+
+    public static class Result {
+        int breaches;
+        double maxMetric;
+        final List<Integer> sizes = Lists.newArrayList();
+
+        /** the number of samples at which the metric was above the upper bound */
+        public int getBreaches() {
+            return breaches;
+        }
+
+        public double getMaxMetric() {
+            return maxMetric;
+        }
+
+        /** the pool size at each sample */
+        public List<Integer> getSizes() {
+            return Collections.unmodifiableList(sizes);
+        }
+
+        @Override
+        public String toString() {
+            return "breaches="+breaches+"; maxMetric="+maxMetric+"; sizes="+sizes;
+        }
+    }
+
+    private final EntityLocal pool;
+    private final AttributeSensor<Double> metric;
+    private final double metricUpperBound;
+    private final double timeScale;
+
+    /**
+     * @param pool      the pool, which must be {@link Resizable}
+     * @param timeScale the time taken to replay the trace, relative to the time recorded (e.g. 0.001 for 1000 times faster)
+     */
+    public MetricTraceReplayer(EntityLocal pool, AttributeSensor<Double> metric, double metricUpperBound, double timeScale) {
+        this.pool = pool;
+        this.metric = metric;
+        this.metricUpperBound = metricUpperBound;
+        this.timeScale = timeScale;
+    }
+
+    public Result replay(Trace trace) {
+        Result result = new Result();
+        long startTime = System.currentTimeMillis();
+        long traceStartTime = trace.times.isEmpty() ? 0 : trace.times.get(0);
+        for (int i = 0; i < trace.size(); i++) {
+            long dueTime = startTime + (long) ((trace.times.get(i) - traceStartTime) * timeScale);
+            long wait = dueTime - System.currentTimeMillis();
+            if (wait > 0) Time.sleep(wait);
+
+            int size = ((Resizable) pool).getCurrentSize();
+            double load = trace.loads.get(i);
+            double val = (size > 0) ? load / size : load;
+            pool.setAttribute(metric, val);
+
+            result.sizes.add(size);
+            result.maxMetric = Math.max(result.maxMetric, val);
+            if (val > metricUpperBound) result.breaches++;
+            if (LOG.isTraceEnabled()) LOG.trace("Replayed load {} on {} at size {}: {}", new Object[] {load, pool, size, val});
+        }
+        return result;
+    }
+}
@@ -4,6 +4,8 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Map;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -166,4 +168,44 @@ public class FollowTheSunModelTest {
         
         assertFalse(model.getDirectSendsToItemByLocation().containsKey(item1));
     }
+    
+    @Test
+    public void testDemandMatrixFollowsUsageAndMoves() throws Exception {
+        model.onContainerAdded(container1, loc1);
+        model.onContainerAdded(container2, loc2);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container2, false);
+        model.onItemAdded(item3, container2, false);
+        model.onItemUsageUpdated(item1, ImmutableMap.of(item2, 12d, item3, 13d, item1, 99d));
+        
+        assertDemand(model.getDemandMatrix(), item1, loc1, ImmutableMap.of(loc2, 12d+13d));
+        
+        model.onItemMoved(item3, container1);
+        assertDemand(model.getDemandMatrix(), item1, loc1, ImmutableMap.of(loc1, 13d, loc2, 12d));
+        
+        model.onItemRemoved(item2);
+        assertDemand(model.getDemandMatrix(), item1, loc1, ImmutableMap.of(loc1, 13d));
+        
+        model.onContainerLocationUpdated(container1, loc2);
+        assertDemand(model.getDemandMatrix(), item1, loc2, ImmutableMap.of(loc2, 13d));
+        
+        model.onItemUsageUpdated(item1, ImmutableMap.<MockItemEntity,Double>of());
+        assertDemand(model.getDemandMatrix(), item1, loc2, ImmutableMap.<Location,Double>of());
+    }
+    
+    private void assertDemand(DemandMatrix<MockItemEntity> demand, MockItemEntity item, Location itemLocation, Map<Location, Double> expected) {
+        int row = -1;
+        for (int i = 0; i < demand.getNumItems(); i++) {
+            if (item.equals(demand.getItem(i))) row = i;
+        }
+        assertTrue(row >= 0, "item "+item+" not in "+demand);
+        assertEquals(demand.getLocation(demand.getItemLocation(row)), itemLocation);
+        double total = 0;
+        for (int column = 0; column < demand.getNumLocations(); column++) {
+            Double val = expected.get(demand.getLocation(column));
+            assertEquals(demand.getDemand(row, column), (val != null) ? val : 0d, 0.0001);
+            total += (val != null) ? val : 0d;
+        }
+        assertEquals(demand.getTotalDemand(row), total, 0.0001);
+    }
 }
@@ -1,14 +1,18 @@
 package brooklyn.policy.loadbalancing;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.Collections;
+import java.util.List;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 public class LoadBalancingModelTest {
 
@@ -86,4 +90,66 @@ public class LoadBalancingModelTest {
         assertEquals(model.getContainerWorkrates(), ImmutableMap.of(container1, 0d, container2, 123d));
         assertEquals(model.getCurrentPoolWorkrate(), 123d);
     }
+    
+    @Test
+    public void testItemWorkrateIndexFollowsItemEvents() throws Exception {
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 11d, 21d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container1, false);
+        model.onItemAdded(item3, container1, false);
+        model.onItemWorkrateUpdated(item1, 5d);
+        model.onItemWorkrateUpdated(item2, 1d);
+        model.onItemWorkrateUpdated(item3, 3d);
+        
+        assertEquals(keys(model.getItemWorkrateIndex(container1).ascending()), ImmutableList.of(item2, item3, item1));
+        assertEquals(keys(model.getItemWorkrateIndex(container1).descendingFrom(4d)), ImmutableList.of(item3, item2));
+        assertEquals(keys(model.getItemWorkrateIndex(container1).ascendingFrom(3d)), ImmutableList.of(item3, item1));
+        assertEquals(model.getTotalWorkrate(container1), 9d, PRECISION);
+        
+        model.onItemWorkrateUpdated(item2, 7d);
+        model.onItemMoved(item3, container2);
+        model.onItemRemoved(item1);
+        
+        assertEquals(keys(model.getItemWorkrateIndex(container1).ascending()), ImmutableList.of(item2));
+        assertEquals(keys(model.getItemWorkrateIndex(container2).ascending()), ImmutableList.of(item3));
+        assertEquals(model.getTotalWorkrate(container1), 7d, PRECISION);
+        assertEquals(model.getTotalWorkrate(container2), 3d, PRECISION);
+        assertTrue(model.getItemWorkrateIndex(new MockContainerEntity()).isEmpty());
+    }
+    
+    @Test
+    public void testContainerOvershootIndexFollowsWorkrates() throws Exception {
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 11d, 21d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container2, false);
+        model.onItemWorkrateUpdated(item1, 25d);
+        model.onItemWorkrateUpdated(item2, 1d);
+        
+        WorkrateIndex<MockContainerEntity> overshoots = model.getContainerOvershootIndex();
+        assertEquals(keys(overshoots.descending()), ImmutableList.of(container1, container2));
+        assertEquals(overshoots.get(container1), 5d, PRECISION);
+        assertEquals(overshoots.get(container2), -20d, PRECISION);
+        
+        PolicyUtilForPool<MockContainerEntity, MockItemEntity> util = new PolicyUtilForPool<MockContainerEntity, MockItemEntity>(model);
+        assertEquals(util.findHottestContainer(Collections.<MockContainerEntity>emptySet()), container1);
+        assertEquals(util.findColdestContainer(Collections.<MockContainerEntity>emptySet()), container2);
+        assertEquals(util.findColdestContainer(ImmutableSet.of(container2)), null);
+        
+        model.onItemMoved(item1, container2);
+        assertEquals(util.findHottestContainer(Collections.<MockContainerEntity>emptySet()), container2);
+        assertEquals(util.findColdestContainer(Collections.<MockContainerEntity>emptySet()), container1);
+        
+        model.onContainerRemoved(container2);
+        assertEquals(keys(overshoots.ascending()), ImmutableList.of(container1));
+    }
+    
+    private static <T> List<T> keys(Iterable<WorkrateIndex.Entry<T>> entries) {
+        List<T> result = Lists.newArrayList();
+        for (WorkrateIndex.Entry<T> entry : entries) {
+            result.add(entry.getKey());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,102 @@
+package brooklyn.qa.performance;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.location.Location;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.ExecutionManager;
+import brooklyn.policy.followthesun.DefaultFollowTheSunModel;
+import brooklyn.policy.followthesun.FollowTheSunParameters;
+import brooklyn.policy.followthesun.FollowTheSunStrategy;
+import brooklyn.policy.loadbalancing.MockContainerEntity;
+import brooklyn.policy.loadbalancing.MockItemEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Measures how the follow-the-sun strategy's evaluation scales with the number of items, across 20 locations,
+ * evaluating on the calling thread and in parallel. Each item's usage is mostly from its own location,
+ * so the items are evaluated but not migrated.
+ */
+public class FollowTheSunStrategyPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_LOCATIONS = 20;
+    private static final List<Integer> NUM_ITEMS = ImmutableList.of(1000, 5000, 20000);
+    private static final int NUM_LOCAL_SOURCES = 4;
+    private static final int NUM_REMOTE_SOURCES = 2;
+
+    private ExecutionManager executionManager;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        super.setUp();
+        app.start(ImmutableList.of(loc));
+        executionManager = app.getManagementContext().getExecutionManager();
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testRebalanceSerially() {
+        for (int numItems : NUM_ITEMS) {
+            final FollowTheSunStrategy<MockContainerEntity, MockItemEntity> strategy = newStrategy(numItems);
+            double minRatePerSec = (20000d / numItems) * PERFORMANCE_EXPECTATION;
+            measureAndAssert("followTheSun.rebalanceSerially."+numItems, 20, minRatePerSec, new Runnable() {
+                public void run() {
+                    strategy.rebalance();
+                }});
+        }
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testRebalanceInParallel() {
+        for (int numItems : NUM_ITEMS) {
+            final FollowTheSunStrategy<MockContainerEntity, MockItemEntity> strategy = newStrategy(numItems);
+            double minRatePerSec = (20000d / numItems) * PERFORMANCE_EXPECTATION;
+            measureAndAssert("followTheSun.rebalanceInParallel."+numItems, 20, minRatePerSec, new Runnable() {
+                public void run() {
+                    strategy.rebalance(executionManager);
+                }});
+        }
+    }
+
+    private FollowTheSunStrategy<MockContainerEntity, MockItemEntity> newStrategy(int numItems) {
+        Random random = new Random(1234);
+        DefaultFollowTheSunModel<MockContainerEntity, MockItemEntity> model =
+                new DefaultFollowTheSunModel<MockContainerEntity, MockItemEntity>("perf");
+
+        List<List<MockItemEntity>> itemsByLocation = Lists.newArrayList();
+        List<MockContainerEntity> containers = Lists.newArrayList();
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            Location location = new SimulatedLocation(DefaultFollowTheSunModel.newHashMap("name", "loc"+i));
+            MockContainerEntity container = new MockContainerEntity();
+            model.onContainerAdded(container, location);
+            containers.add(container);
+            itemsByLocation.add(Lists.<MockItemEntity>newArrayList());
+        }
+        List<MockItemEntity> items = Lists.newArrayList();
+        for (int i = 0; i < numItems; i++) {
+            MockItemEntity item = new MockItemEntity();
+            model.onItemAdded(item, containers.get(i % NUM_LOCATIONS), false);
+            itemsByLocation.get(i % NUM_LOCATIONS).add(item);
+            items.add(item);
+        }
+        for (int i = 0; i < numItems; i++) {
+            List<MockItemEntity> local = itemsByLocation.get(i % NUM_LOCATIONS);
+            Map<MockItemEntity, Double> usage = Maps.newLinkedHashMap();
+            for (int j = 0; j < NUM_LOCAL_SOURCES; j++) {
+                usage.put(local.get(random.nextInt(local.size())), 10d);
+            }
+            for (int j = 0; j < NUM_REMOTE_SOURCES; j++) {
+                usage.put(items.get(random.nextInt(numItems)), 2d);
+            }
+            model.onItemUsageUpdated(items.get(i), usage);
+        }
+        return new FollowTheSunStrategy<MockContainerEntity, MockItemEntity>(model, FollowTheSunParameters.newDefault());
+    }
+}
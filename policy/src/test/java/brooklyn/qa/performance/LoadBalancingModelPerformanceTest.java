@@ -0,0 +1,92 @@
+package brooklyn.qa.performance;
+
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.policy.loadbalancing.BalancingStrategy;
+import brooklyn.policy.loadbalancing.DefaultBalanceablePoolModel;
+import brooklyn.policy.loadbalancing.MockContainerEntity;
+import brooklyn.policy.loadbalancing.MockItemEntity;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures the load-balancing model and strategy with a synthetic pool of 10k items: the rate at which
+ * item workrate updates are applied to the model (and its indexes), and the rate of rebalancing as those
+ * updates make containers hot or cold.
+ */
+public class LoadBalancingModelPerformanceTest extends AbstractPerformanceTest {
+
+    private static final int NUM_CONTAINERS = 100;
+    private static final int NUM_ITEMS = 10000;
+    private static final int NUM_ITERATIONS = 10000;
+
+    private Random random;
+    private DefaultBalanceablePoolModel<MockContainerEntity, MockItemEntity> model;
+    private BalancingStrategy<MockContainerEntity, MockItemEntity> strategy;
+    private List<MockItemEntity> items;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        super.setUp();
+        random = new Random(1234);
+        model = new DefaultBalanceablePoolModel<MockContainerEntity, MockItemEntity>("perf");
+        final DefaultBalanceablePoolModel<MockContainerEntity, MockItemEntity> finalModel = model;
+        strategy = new BalancingStrategy<MockContainerEntity, MockItemEntity>("perf", model) {
+            @Override
+            protected void moveItem(MockItemEntity item, MockContainerEntity oldNode, MockContainerEntity newNode) {
+                // only the decisions are measured, not the (mock) migrations
+                finalModel.onItemMoved(item, newNode);
+            }
+        };
+
+        List<MockContainerEntity> containers = Lists.newArrayList();
+        for (int i = 0; i < NUM_CONTAINERS; i++) {
+            MockContainerEntity container = new MockContainerEntity();
+            containers.add(container);
+            model.onContainerAdded(container, 50d, 150d);
+        }
+        items = Lists.newArrayList();
+        for (int i = 0; i < NUM_ITEMS; i++) {
+            MockItemEntity item = new MockItemEntity();
+            items.add(item);
+            model.onItemAdded(item, containers.get(i % NUM_CONTAINERS));
+            model.onItemWorkrateUpdated(item, randomWorkrate());
+        }
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testItemWorkrateUpdates() {
+        double minRatePerSec = 50000 * PERFORMANCE_EXPECTATION;
+        measureAndAssert("loadBalancingModel.workrateUpdate", NUM_ITERATIONS * 10, minRatePerSec, new Runnable() {
+            public void run() {
+                model.onItemWorkrateUpdated(randomItem(), randomWorkrate());
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testRebalanceAfterItemWorkrateUpdates() {
+        double minRatePerSec = 500 * PERFORMANCE_EXPECTATION;
+        measureAndAssert("loadBalancingModel.rebalance", NUM_ITERATIONS, minRatePerSec, new Runnable() {
+            public void run() {
+                // occasionally an item is much hotter than the rest, making its container hot
+                for (int i = 0; i < 10; i++) {
+                    double workrate = (random.nextInt(100) == 0) ? 10 + randomWorkrate() * 10 : randomWorkrate();
+                    model.onItemWorkrateUpdated(randomItem(), workrate);
+                }
+                strategy.rebalance();
+            }});
+    }
+
+    private MockItemEntity randomItem() {
+        return items.get(random.nextInt(NUM_ITEMS));
+    }
+
+    /** between 0 and 2, so each container's items total about 100 */
+    private double randomWorkrate() {
+        return random.nextDouble() * 2;
+    }
+}
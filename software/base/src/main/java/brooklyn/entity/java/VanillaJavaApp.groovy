@@ -81,7 +81,7 @@ public class VanillaJavaApp extends SoftwareProcessEntity implements UsesJava, U
         
         if ( ((VanillaJavaAppDriver)getDriver()).isJmxEnabled() ) {
             TimeDuration jmxPollPeriod = (jmxPollPeriod > 0 ? jmxPollPeriod : 500)*TimeUnit.MILLISECONDS;
-            jmxAdapter = sensorRegistry.register(new JmxSensorAdapter(period:jmxPollPeriod));
+            jmxAdapter = sensorRegistry.register(new JmxSensorAdapter(period:jmxPollPeriod, notificationFirst:true));
             JavaAppUtils.connectMXBeanSensors(this, jmxAdapter);
         }
         
@@ -3,6 +3,16 @@ package brooklyn.event.adapter;
 import groovy.time.TimeDuration
 import groovy.transform.InheritConstructors
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
+
+import javax.management.AttributeChangeNotification
+import javax.management.AttributeChangeNotificationFilter
+import javax.management.MBeanInfo
+import javax.management.MBeanNotificationInfo
+import javax.management.Notification
+import javax.management.NotificationFilter
+import javax.management.NotificationListener
 import javax.management.ObjectName
 
 import org.slf4j.Logger
@@ -31,11 +41,215 @@ public class JmxAttributeAdapter extends AbstractSensorAdapter {
 		this.adapter = adapter;
         adapter.addActivationLifecycleListeners({activateAdapter()},{deactivateAdapter()});
 		poller = new AttributePollHelper(adapter, objectName, attributeName);
+		adapter.attributeBatchPoller.addSubPoller(poller);
 		this.objectName = objectName;
 		this.attributeName = attributeName;
 	}
 	
-	static class AttributePollHelper extends AbstractPollHelper {
+	/**
+	 * Polls all the attributes of a {@link JmxSensorAdapter} together: one {@code getAttributes} call per MBean
+	 * per poll (rather than one {@code getAttribute} call per attribute), with the results then passed to
+	 * the {@link AttributePollHelper} of each attribute.
+	 * <p>
+	 * If the adapter is {@link JmxSensorAdapter#isNotificationFirst() notification-first}, then after first reading an MBean
+	 * it subscribes to that MBean's {@link AttributeChangeNotification}s (if it emits them); once notified of a change to an
+	 * attribute, that attribute is then set as notifications arrive, and only re-read every {@link JmxSensorAdapter#getMaxPollBackoff()}
+	 * polls in case one was missed. Other attributes are polled half as often each time they are found unchanged, down to that
+	 * same limit. The subscriptions are redone whenever the {@link JmxHelper} reconnects, as listeners do not survive that.
+	 */
+	static class AttributeBatchPollHelper extends AbstractChainablePollHelper {
+		JmxSensorAdapter adapter;
+		/** notification-first state, per MBean */
+		final Map<ObjectName, MBeanPollState> pollStates = new ConcurrentHashMap<ObjectName, MBeanPollState>()
+		/** the {@link JmxHelper#getConnectionCount() connection} over which the notification listeners in pollStates were added */
+		private volatile long pollStatesConnection = -1
+		private long pollCount = 0
+		
+		AttributeBatchPollHelper(JmxSensorAdapter adapter) {
+			super(adapter);
+			this.adapter = adapter;
+		}
+		@Override
+		protected AbstractSensorEvaluationContext executePollOnSuccess() {
+			Map<ObjectName, Set<String>> attributesByObjectName = [:]
+			for (AbstractChainablePollHelper sub : subPollers) {
+				AttributePollHelper attributePoller = (AttributePollHelper) sub
+				if (attributePoller.isEmpty()) continue
+				Set<String> names = attributesByObjectName.get(attributePoller.objectName)
+				if (names == null) attributesByObjectName.put(attributePoller.objectName, names = new LinkedHashSet<String>())
+				names.add(attributePoller.attributeName)
+			}
+			
+			boolean notificationFirst = adapter.isNotificationFirst()
+			boolean reconcile = (pollCount++ % adapter.getMaxPollBackoff() == 0)
+			
+			long callsBefore = adapter.helper.remoteCallCountOfCurrentThread
+			BatchResponseContext result = new BatchResponseContext()
+			Exception firstError = null
+			for (Map.Entry<ObjectName, Set<String>> entry : attributesByObjectName.entrySet()) {
+				MBeanPollState state = null
+				Set<String> names = entry.value
+				if (notificationFirst) {
+					checkConnection()
+					state = getPollState(entry.key)
+					if (!reconcile) {
+						if (state.pollsUntilNext > 0) {
+							state.pollsUntilNext--
+							continue
+						}
+						names = new LinkedHashSet<String>(names)
+						names.removeAll(state.pushedAttributes)
+						if (names.isEmpty()) continue
+					}
+				}
+				try {
+					result.requested.put(entry.key, names)
+					Map<String, Object> values = adapter.helper.getAttributes(entry.key, names)
+					result.values.put(entry.key, values)
+					if (state != null && values == null) {
+						// MBean not found; subscribe again if it reappears
+						forget(entry.key)
+					} else if (state != null) {
+						// the read may have reconnected, losing the listener
+						if (checkConnection()) state = getPollState(entry.key)
+						state.onPolled(values, adapter.getMaxPollBackoff())
+						if (!state.subscribed) subscribe(entry.key, state, entry.value)
+					}
+				} catch (Exception e) {
+					// just this MBean's attributes are not updated; the others still are
+					if (log.isDebugEnabled()) log.debug("error reading jmx attributes {} of {} for {}: {}", names, entry.key, adapter.entity, e)
+					result.errors.put(entry.key, e)
+					if (firstError == null) firstError = e
+					// the MBean may have gone (or the connection been lost), along with any listener; subscribe again when next read 
+					if (state != null) forget(entry.key)
+				}
+			}
+			adapter.recordPollRemoteCalls((int) (adapter.helper.remoteCallCountOfCurrentThread - callsBefore))
+			// if nothing could be read (e.g. not connected) then the whole poll has failed
+			if (firstError != null && result.values.isEmpty()) throw firstError
+			return result
+		}
+		
+		/**
+		 * Drops the state of all MBeans if the {@link JmxHelper} has reconnected since their listeners were added
+		 * (so they are gone), so that they are read and subscribed to again.
+		 * @return whether the state was dropped
+		 */
+		boolean checkConnection() {
+			long connection = adapter.helper.connectionCount
+			if (connection == pollStatesConnection) return false
+			if (pollStates && log.isDebugEnabled()) log.debug("jmx reconnected for {}; subscribing to attribute change notifications again", adapter.entity)
+			pollStates.clear()
+			pollStatesConnection = connection
+			return true
+		}
+		
+		MBeanPollState getPollState(ObjectName objectName) {
+			MBeanPollState state = pollStates.get(objectName)
+			if (state == null) pollStates.put(objectName, state = new MBeanPollState())
+			return state
+		}
+		
+		void subscribe(ObjectName objectName, MBeanPollState state, Set<String> attributeNames) {
+			state.subscribed = true
+			try {
+				ObjectName literalName = adapter.helper.toLiteralObjectName(objectName)
+				MBeanInfo info = (literalName != null) ? adapter.helper.getMBeanInfo(literalName) : null
+				boolean emitsAttributeChanges = info?.notifications?.any { MBeanNotificationInfo it -> 
+					AttributeChangeNotification.ATTRIBUTE_CHANGE in it.notifTypes }
+				if (!emitsAttributeChanges) {
+					if (log.isDebugEnabled()) log.debug("jmx MBean {} for {} does not emit attribute change notifications; polling {}", objectName, adapter.entity, attributeNames)
+					return
+				}
+				AttributeChangeNotificationFilter filter = new AttributeChangeNotificationFilter()
+				attributeNames.each { filter.enableAttribute(it) }
+				NotificationListener listener = { Notification notif, Object handback ->
+						if (notif instanceof AttributeChangeNotification) onAttributeChange(objectName, state, (AttributeChangeNotification) notif)
+					} as NotificationListener
+				adapter.helper.addNotificationListener(literalName, listener, filter)
+				state.literalName = literalName
+				state.listener = listener
+				state.filter = filter
+				if (log.isDebugEnabled()) log.debug("subscribed to jmx attribute change notifications of {} for {}: {}", literalName, adapter.entity, attributeNames)
+			} catch (Exception e) {
+				if (log.isDebugEnabled()) log.debug("unable to subscribe to jmx attribute change notifications of {} for {} (continuing to poll): {}", objectName, adapter.entity, e)
+			}
+		}
+		
+		void onAttributeChange(ObjectName objectName, MBeanPollState state, AttributeChangeNotification notif) {
+			if (log.isTraceEnabled()) log.trace("jmx attribute {}.{} for {} changed to {}", objectName, notif.attributeName, adapter.entity, notif.newValue)
+			if (!adapter.isActivated()) return
+			// an MBean can advertise attribute change notifications without sending them for every attribute;
+			// so only stop polling an attribute once it is seen to be pushed
+			state.pushedAttributes.add(notif.attributeName)
+			for (AbstractChainablePollHelper sub : subPollers) {
+				AttributePollHelper attributePoller = (AttributePollHelper) sub
+				if (attributePoller.objectName == objectName && attributePoller.attributeName == notif.attributeName) {
+					attributePoller.onValue(notif.newValue)
+				}
+			}
+		}
+		
+		/** drops the state of an MBean, removing any notification listener */
+		void forget(ObjectName objectName) {
+			MBeanPollState state = pollStates.remove(objectName)
+			if (state?.listener == null) return
+			try {
+				adapter.helper.removeNotificationListener(state.literalName, state.listener, state.filter)
+			} catch (Exception e) {
+				if (log.isDebugEnabled()) log.debug("unable to remove jmx notification listener of {} for {}: {}", state.literalName, adapter.entity, e)
+			}
+		}
+		
+		@Override
+		protected deactivatePoll() {
+			super.deactivatePoll()
+			for (ObjectName objectName : new ArrayList<ObjectName>(pollStates.keySet())) {
+				forget(objectName)
+			}
+			pollCount = 0
+		}
+	}
+	
+	/** in notification-first mode, how a single MBean is being read */
+	static class MBeanPollState {
+		volatile boolean subscribed
+		ObjectName literalName
+		NotificationListener listener
+		NotificationFilter filter
+		/** attributes for which change notifications have been received, so only polled when reconciling */
+		final Set<String> pushedAttributes = new CopyOnWriteArraySet<String>()
+		final Map<String, Object> lastValues = new HashMap<String, Object>()
+		int backoff = 1
+		int pollsUntilNext = 0
+		
+		/** polls half as often each time none of the attributes have changed; as often as possible once any has */
+		void onPolled(Map<String, Object> values, int maxBackoff) {
+			boolean changed = values.any { k, v -> !lastValues.containsKey(k) || lastValues.get(k) != v }
+			lastValues.putAll(values)
+			backoff = changed ? 1 : Math.min(backoff*2, maxBackoff)
+			pollsUntilNext = backoff - 1
+		}
+	}
+	
+	static class BatchResponseContext extends AbstractSensorEvaluationContext {
+		/** attribute values by name, per MBean; null for an MBean that was not found */
+		final Map<ObjectName, Map<String, Object>> values = [:]
+		final Map<ObjectName, Exception> errors = [:]
+		/** the attributes read, per MBean; in notification-first mode this can be a subset, or omit the MBean altogether */
+		final Map<ObjectName, Set<String>> requested = [:]
+		
+		@Override
+		protected Object getDefaultValue() { values }
+		
+		@Override
+		public String toString() {
+			return "values=$values"+(errors ? "; errors=$errors" : "")
+		}
+	}
+	
+	/** evaluates the sensors of one attribute, from the response of the {@link AttributeBatchPollHelper} */
+	static class AttributePollHelper extends AbstractChainablePollHelper {
 		JmxSensorAdapter adapter;
 		ObjectName objectName;
 		String attributeName;
@@ -46,8 +260,31 @@ public class JmxAttributeAdapter extends AbstractSensorAdapter {
 			this.attributeName = attributeName;
 		}
 		@Override
+		void evaluateSensorsOnResponse(AbstractSensorEvaluationContext response) {
+			BatchResponseContext batch = (BatchResponseContext) response
+			if (batch.errors.containsKey(objectName)) return
+			if (!batch.values.containsKey(objectName)) return
+			if (!batch.requested.get(objectName)?.contains(attributeName)) return
+			Map<String, Object> values = batch.values.get(objectName)
+			if (values == null) {
+				// MBean not found
+				super.evaluateSensorsOnResponse(new SingleValueResponseContext(value: null))
+			} else if (values.containsKey(attributeName)) {
+				super.evaluateSensorsOnResponse(new SingleValueResponseContext(value: values.get(attributeName)))
+			} else {
+				if (log.isDebugEnabled()) log.debug("jmx attribute {} of {} not returned for {}", attributeName, objectName, adapter.entity)
+			}
+		}
+		// polled by the batch poller of the JmxSensorAdapter, rather than itself
+		@Override protected activatePoll() {}
+		@Override protected deactivatePoll() {}
+		/** sets the sensors from a value pushed by a notification */
+		void onValue(Object value) {
+			super.evaluateSensorsOnResponse(new SingleValueResponseContext(value: value))
+		}
+		@Override
 		protected AbstractSensorEvaluationContext executePollOnSuccess() {
-			return new SingleValueResponseContext(value: adapter.helper.getAttribute(objectName, attributeName))
+			throw new IllegalStateException("poll execution not relevant for jmx attribute; it is polled by "+adapter.attributeBatchPoller);
 		}
 	}
 	/** optional postProcessing will take the result of the attribute invocation
@@ -59,7 +296,7 @@ public class JmxAttributeAdapter extends AbstractSensorAdapter {
 	/** optional postProcessing will take the result of the attribute invocation
 	 * (its native type; casting to sensor's type is done on the return value of the closure) */
 	public void subscribe(Sensor s, Closure postProcessing={it}) {
-		//TODO make a "notifications" stream and use it instead
+		// pushed by attribute change notifications if the adapter is notification-first and the MBean emits them 
 		poll(s, postProcessing)
 	}
     
@@ -9,6 +9,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -16,14 +17,17 @@ import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.InvalidAttributeValueException;
 import javax.management.JMX;
 import javax.management.ListenerNotFoundException;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServerConnection;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
@@ -137,6 +141,18 @@ public class JmxHelper {
     // Tracks the MBeans we have failed to find for this JmsHelper's connection URL (so can log just once for each)
     private final Set<ObjectName> notFoundMBeans;
 
+    // Number of remote calls made over the connection (including retries), for monitoring how chatty polling is
+    private final AtomicLong remoteCallCount = new AtomicLong();
+    
+    // As above, but made by each thread; so a poll can count its own calls, while others share this helper
+    private final ThreadLocal<long[]> threadRemoteCallCount = new ThreadLocal<long[]>() {
+            @Override protected long[] initialValue() {
+                return new long[1];
+            }};
+    
+    // Number of connections made, so callers can tell when (e.g. on a retry) we have reconnected
+    private final AtomicLong connectionCount = new AtomicLong();
+
     public JmxHelper(EntityLocal entity) {
         this(toConnectorUrl(entity), entity, entity.getAttribute(Attributes.JMX_USER), entity.getAttribute(Attributes.JMX_PASSWORD));
     }
@@ -255,6 +271,7 @@ public class JmxHelper {
             }
         }
         connection = connector.getMBeanServerConnection();
+        connectionCount.incrementAndGet();
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -398,13 +415,42 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * The total number of remote (i.e. RMI or JMXMP) calls made through this helper, including retries.
+     */
+    public long getRemoteCallCount() {
+        return remoteCallCount.get();
+    }
+
+    /**
+     * The number of remote calls made through this helper by the current thread, including retries.
+     */
+    public long getRemoteCallCountOfCurrentThread() {
+        return threadRemoteCallCount.get()[0];
+    }
+
+    /**
+     * The number of times this helper has connected. This changes whenever it reconnects (including when a call is
+     * retried after a failure), after which any notification listeners added over the previous connection are gone.
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    private void countRemoteCall() {
+        remoteCallCount.incrementAndGet();
+        threadRemoteCallCount.get()[0]++;
+    }
+
     private <T> T invokeWithReconnect(Callable<T> task) {
         try {
+            countRemoteCall();
             return task.call();
         } catch (Exception e) {
             if (shouldRetryOn(e)) {
                 try {
                     reconnectWithRetryDampened();
+                    countRemoteCall();
                     return task.call();
                 } catch (Exception e2) {
                     throw Throwables.propagate(e2);
@@ -537,6 +583,51 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns the given attributes of a JMX {@link ObjectName}, in a single remote call.
+     * 
+     * @return the values keyed by attribute name, omitting any attribute that could not be read
+     *         (see {@link MBeanServerConnection#getAttributes(ObjectName, String[])});
+     *         or null if the MBean was not found
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] names = attributes.toArray(new String[attributes.size()]);
+        
+        if (realObjectName != null) {
+            AttributeList list = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, names);
+                    }});
+            
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Object attribute : list) {
+                result.put(((javax.management.Attribute) attribute).getName(), ((javax.management.Attribute) attribute).getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the {@link MBeanInfo} of a JMX {@link ObjectName} (e.g. to discover which notifications it emits),
+     * or null if the MBean was not found.
+     */
+    public MBeanInfo getMBeanInfo(ObjectName objectName) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        
+        if (realObjectName != null) {
+            return invokeWithReconnect(new Callable<MBeanInfo>() {
+                    public MBeanInfo call() throws Exception {
+                        return getConnectionOrFail().getMBeanInfo(realObjectName);
+                    }});
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
@@ -11,6 +11,8 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
 import brooklyn.entity.basic.EntityLocal
+import brooklyn.event.basic.BasicAttributeSensor
+import brooklyn.util.flags.SetFromFlag
 
 
 /**
@@ -25,14 +27,42 @@ import brooklyn.entity.basic.EntityLocal
  *       notification("myJmxNotification").subscribe(MY_BROOKLYN_ATTRIBUTE_3)
  *   }
  * </code>
+ * <p>
+ * With the {@code notificationFirst} flag, attributes of MBeans which emit {@link javax.management.AttributeChangeNotification}s
+ * are updated when notified of a change, and only re-read on an occasional reconciliation poll; the attributes of other MBeans
+ * are polled less often while their values are not changing (up to {@code maxPollBackoff} times the period).
  */
 public class JmxSensorAdapter extends AbstractSensorAdapter {
 
     public static final Logger log = LoggerFactory.getLogger(JmxSensorAdapter.class);
 	public static final long JMX_CONNECTION_TIMEOUT_MS = 120*1000;
+	public static final int DEFAULT_MAX_POLL_BACKOFF = 8;
+	
+	public boolean isNotificationFirst() {
+		return notificationFirst == Boolean.TRUE
+	}
+	
+	public int getMaxPollBackoff() {
+		return (maxPollBackoff != null && maxPollBackoff > 0) ? maxPollBackoff : DEFAULT_MAX_POLL_BACKOFF
+	}
+	
+	/** the number of remote calls made by the most recent poll of an entity's jmx attributes; updated only when it changes */
+	public static final BasicAttributeSensor<Integer> JMX_CALLS_PER_POLL = [ Integer, "jmx.callsPerPoll", "Number of JMX remote calls made by the most recent poll of JMX attributes" ]
 	
 	JmxHelper helper
 	private volatile long jmxConnectionTimeout = JMX_CONNECTION_TIMEOUT_MS
+	
+	/** polls the attributes of all {@link JmxAttributeAdapter}s of this adapter together */
+	JmxAttributeAdapter.AttributeBatchPollHelper attributeBatchPoller
+	private volatile int lastPollRemoteCalls = -1
+	
+	/** whether to subscribe to attribute-change notifications where available, and back off polling of unchanging attributes */
+	@SetFromFlag
+	Boolean notificationFirst
+	
+	/** in notification-first mode, the most number of periods between polls of an attribute (default {@value #DEFAULT_MAX_POLL_BACKOFF}) */
+	@SetFromFlag
+	Integer maxPollBackoff
  
 	static {  // JMX ClientCommunicatorAdmin spits out scary warnings, but we just retry so don't worry
 		// TODO better would be to capture and send to our logger as debug
@@ -61,6 +91,20 @@ public class JmxSensorAdapter extends AbstractSensorAdapter {
  
 		if (!helper) helper = new JmxHelper(entity)
 		addActivationLifecycleListeners({ helper.connect(jmxConnectionTimeout) }, { helper.disconnect() })
+		// created after the connection listener, so on activation we connect before the first poll
+		attributeBatchPoller = new JmxAttributeAdapter.AttributeBatchPollHelper(this)
+	}
+	
+	/** the number of remote calls made by the most recent poll of the jmx attributes (or -1 if not yet polled) */
+	public int getLastPollRemoteCalls() {
+		return lastPollRemoteCalls
+	}
+	
+	void recordPollRemoteCalls(int val) {
+		if (val != lastPollRemoteCalls) {
+			lastPollRemoteCalls = val
+			entity.setAttribute(JMX_CALLS_PER_POLL, val)
+		}
 	}
 
 	public boolean isConnected() { super.isConnected() && helper.isConnected() }
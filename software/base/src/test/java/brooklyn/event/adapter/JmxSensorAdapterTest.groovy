@@ -5,10 +5,18 @@ import static org.testng.Assert.*
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
+import javax.management.AttributeChangeNotification
+import javax.management.AttributeList
 import javax.management.DynamicMBean
+import javax.management.ListenerNotFoundException
+import javax.management.MBeanInfo
 import javax.management.MBeanOperationInfo
+import javax.management.MBeanNotificationInfo
 import javax.management.MBeanParameterInfo
 import javax.management.Notification
+import javax.management.NotificationBroadcasterSupport
+import javax.management.NotificationEmitter
+import javax.management.NotificationFilter
 import javax.management.NotificationListener
 import javax.management.ObjectName
 import javax.management.StandardEmitterMBean
@@ -119,6 +127,156 @@ public class JmxSensorAdapterTest {
         }
     }
 
+    @Test
+    public void jmxAttributesPolledWithOneCallPerMBean() {
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(objectName, (attributeName): 42, "myattrib2": "abc")
+        GeneralisedDynamicMBean mbean2 = jmxService.registerMBean(wrongObjectName, (attributeName): true)
+
+        jmxAdapter.objectName(objectName).with {
+            attribute(attributeName).subscribe(intAttribute)
+            attribute("myattrib2").subscribe(stringAttribute)
+        }
+        jmxAdapter.objectName(wrongObjectName).with {
+            attribute(attributeName).subscribe(boolAttribute)
+        }
+        registry.activateAdapters()
+        
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 42
+            assertEquals entity.getAttribute(stringAttribute), "abc"
+            assertEquals entity.getAttribute(boolAttribute), true
+        }
+        assertEquals jmxAdapter.lastPollRemoteCalls, 2
+        assertEquals entity.getAttribute(JmxSensorAdapter.JMX_CALLS_PER_POLL), 2
+        
+        mbean.updateAttributeValue("myattrib2", "def")
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(stringAttribute), "def"
+        }
+    }
+
+    @Test
+    public void jmxAttributeChangeNotificationsUpdateSensorsWithoutPolling() {
+        AttributeChangeEmittingMBean mbean = jmxService.registerMBeanInstance(
+                new AttributeChangeEmittingMBean(jmxObjectName, true, (attributeName): 42), objectName)
+        jmxAdapter = registry.register(new JmxSensorAdapter(period: 50*TimeUnit.MILLISECONDS, notificationFirst: true, maxPollBackoff: 1000))
+
+        jmxAdapter.objectName(objectName).with {
+            attribute(attributeName).subscribe(intAttribute)
+        }
+        registry.activateAdapters()
+        
+        // Read once, then subscribed to notifications
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 42
+            assertEquals mbean.listenerCount.get(), 1
+        }
+        
+        mbean.changeAttributeValue(attributeName, 64)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 64
+        }
+        int pollsAfterNotified = mbean.getAttributesCount.get()
+        
+        // no polls are needed once the attribute is seen to be pushed (until the reconciliation poll, 1000 periods later)
+        Thread.sleep(SHORT_WAIT)
+        assertEquals mbean.getAttributesCount.get(), pollsAfterNotified
+        
+        registry.deactivateAdapters()
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals mbean.listenerCount.get(), 0
+        }
+    }
+
+    @Test
+    public void jmxAttributeStillPolledIfMBeanDoesNotNotifyOfItsChanges() {
+        AttributeChangeEmittingMBean mbean = jmxService.registerMBeanInstance(
+                new AttributeChangeEmittingMBean(jmxObjectName, true, (attributeName): 42), objectName)
+        jmxAdapter = registry.register(new JmxSensorAdapter(period: 50*TimeUnit.MILLISECONDS, notificationFirst: true, maxPollBackoff: 1000))
+
+        jmxAdapter.objectName(objectName).with {
+            attribute(attributeName).subscribe(intAttribute)
+        }
+        registry.activateAdapters()
+        
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 42
+            assertEquals mbean.listenerCount.get(), 1
+        }
+        
+        // the MBean advertises attribute change notifications, but does not send one for this change
+        mbean.updateAttributeValue(attributeName, 64)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 64
+        }
+    }
+
+    @Test
+    public void jmxAttributeChangeNotificationsResumeAfterJmxServiceRestarted() {
+        AttributeChangeEmittingMBean mbean = jmxService.registerMBeanInstance(
+                new AttributeChangeEmittingMBean(jmxObjectName, true, (attributeName): 42), objectName)
+        jmxAdapter = registry.register(new JmxSensorAdapter(period: 50*TimeUnit.MILLISECONDS, notificationFirst: true, maxPollBackoff: 4))
+
+        jmxAdapter.objectName(objectName).with {
+            attribute(attributeName).subscribe(intAttribute)
+        }
+        registry.activateAdapters()
+        
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals mbean.listenerCount.get(), 1
+        }
+        mbean.changeAttributeValue(attributeName, 64)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 64
+        }
+        
+        // the reconciliation poll finds the connection gone, and reconnects to the new service
+        jmxService.shutdown()
+        jmxService = new JmxService(entity)
+        AttributeChangeEmittingMBean mbean2 = jmxService.registerMBeanInstance(
+                new AttributeChangeEmittingMBean(jmxObjectName, true, (attributeName): 100), objectName)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 100
+            assertEquals mbean2.listenerCount.get(), 1
+        }
+        
+        // and the attribute is pushed by notifications again
+        mbean2.changeAttributeValue(attributeName, 101)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 101
+            assertTrue jmxAdapter.attributeBatchPoller.pollStates.get(jmxObjectName)?.pushedAttributes?.contains(attributeName)
+        }
+    }
+
+    @Test
+    public void jmxAttributePollingBacksOffWhileUnchanged() {
+        AttributeChangeEmittingMBean mbean = jmxService.registerMBeanInstance(
+                new AttributeChangeEmittingMBean(jmxObjectName, false, (attributeName): 42), objectName)
+        jmxAdapter = registry.register(new JmxSensorAdapter(period: 20*TimeUnit.MILLISECONDS, notificationFirst: true, maxPollBackoff: 8))
+
+        jmxAdapter.objectName(objectName).with {
+            attribute(attributeName).subscribe(intAttribute)
+        }
+        registry.activateAdapters()
+        
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 42
+        }
+        
+        // over 50 periods, unchanged: backs off to polling every 8th period
+        int callsBefore = mbean.getAttributesCount.get()
+        Thread.sleep(1000)
+        int calls = mbean.getAttributesCount.get() - callsBefore
+        assertTrue(calls > 0 && calls < 20, "calls="+calls)
+        assertEquals mbean.listenerCount.get(), 0
+        
+        // but a change is still seen
+        mbean.updateAttributeValue(attributeName, 64)
+        TestUtils.executeUntilSucceeds(timeout:TIMEOUT) {
+            assertEquals entity.getAttribute(intAttribute), 64
+        }
+    }
+
     @Test
     public void jmxPollerWillPollEvenIfOnlyConnectsAfterActivatingAdapters() {
         jmxService.shutdown();
@@ -527,6 +685,63 @@ public class JmxSensorAdapterTest {
         return notif
     }
     
+    /**
+     * An MBean that counts how often its attributes are read, and (optionally) emits {@link AttributeChangeNotification}s.
+     */
+    static class AttributeChangeEmittingMBean extends GeneralisedDynamicMBean implements NotificationEmitter {
+        final ObjectName objectName
+        final boolean emitsAttributeChanges
+        final NotificationBroadcasterSupport broadcaster
+        final AtomicInteger getAttributesCount = new AtomicInteger()
+        final AtomicInteger listenerCount = new AtomicInteger()
+        private int sequence = 0
+        
+        AttributeChangeEmittingMBean(ObjectName objectName, boolean emitsAttributeChanges, Map initialAttributes) {
+            super(initialAttributes, [:])
+            this.objectName = objectName
+            this.emitsAttributeChanges = emitsAttributeChanges
+            this.broadcaster = new NotificationBroadcasterSupport(getNotificationInfo())
+        }
+        
+        void changeAttributeValue(String name, Object value) {
+            Object oldValue = getAttribute(name)
+            updateAttributeValue(name, value)
+            broadcaster.sendNotification(new AttributeChangeNotification(objectName, sequence++, System.currentTimeMillis(), 
+                    "changed", name, value.getClass().name, oldValue, value))
+        }
+        
+        AttributeList getAttributes(String[] names) {
+            getAttributesCount.incrementAndGet()
+            return super.getAttributes(names)
+        }
+        
+        MBeanInfo getMBeanInfo() {
+            MBeanInfo info = super.getMBeanInfo()
+            return new MBeanInfo(info.className, info.description, info.attributes, info.constructors, info.operations, getNotificationInfo())
+        }
+        
+        MBeanNotificationInfo[] getNotificationInfo() {
+            if (!emitsAttributeChanges) return new MBeanNotificationInfo[0]
+            return [ new MBeanNotificationInfo([ AttributeChangeNotification.ATTRIBUTE_CHANGE ] as String[], 
+                    AttributeChangeNotification.class.name, "attribute change") ] as MBeanNotificationInfo[]
+        }
+        
+        void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+            broadcaster.addNotificationListener(listener, filter, handback)
+            listenerCount.incrementAndGet()
+        }
+        
+        void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+            broadcaster.removeNotificationListener(listener)
+            listenerCount.decrementAndGet()
+        }
+        
+        void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+            broadcaster.removeNotificationListener(listener, filter, handback)
+            listenerCount.decrementAndGet()
+        }
+    }
+    
     private void assertNotificationsEqual(Notification n1, Notification n2) {
         assertEquals(n1.type, n2.type)
         assertEquals(n1.sequenceNumber, n2.sequenceNumber)
@@ -107,6 +107,12 @@ class JmxService {
         return mbean
     }
     
+    /** registers an already constructed MBean with this MBean server */
+    public <T> T registerMBeanInstance(T mbean, String name) {
+        server.registerMBean(mbean, new ObjectName(name))
+        return mbean
+    }
+    
     public StandardEmitterMBean registerMBean(List notifications, String name) {
         String[] types = notifications.toArray(new String[0])
         MBeanNotificationInfo info = new MBeanNotificationInfo(types, Notification.class.getName(), "Notification");
@@ -2,11 +2,15 @@ package brooklyn.entity.proxy.nginx;
 
 import static java.lang.String.format
 
+import java.util.concurrent.Callable
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
+import brooklyn.enricher.TimeWeightedDeltaEnricher
 import brooklyn.entity.Entity
 import brooklyn.entity.Group
 import brooklyn.entity.basic.Description;
@@ -19,15 +23,20 @@ import brooklyn.entity.proxy.ProxySslConfig
 import brooklyn.event.SensorEventListener
 import brooklyn.event.adapter.ConfigSensorAdapter
 import brooklyn.event.adapter.HttpSensorAdapter
+import brooklyn.event.basic.BasicAttributeSensor
 import brooklyn.event.basic.BasicConfigKey
 import brooklyn.util.ResourceUtils
 import brooklyn.util.flags.SetFromFlag
 import brooklyn.util.internal.TimeExtras
+import brooklyn.util.task.BasicTask
+import brooklyn.util.task.ScheduledTask
 import brooklyn.util.text.Strings
 
+import com.google.common.base.Charsets
 import com.google.common.collect.Iterables
 import com.google.common.collect.LinkedHashMultimap
 import com.google.common.collect.Multimap
+import com.google.common.hash.Hashing
 
 /**
  * An entity that represents an Nginx proxy (e.g. for routing requests to servers in a cluster).
@@ -46,6 +55,10 @@ import com.google.common.collect.Multimap
  * per-Url is useful if different certificates are used for different server names,
  * or different ports if that is supported.
  * see more info on Ssl in {@link ProxySslConfig}.
+ * <p>
+ * The configuration is only copied to the server, and nginx reloaded, when it has changed. Changes to the targets
+ * can be coalesced into one reconfiguration, see {@link #UPDATE_COALESCE_PERIOD}; the numbers of copies and reloads
+ * are published, e.g. as {@link #CONFIG_PUSHES_PER_MINUTE} and {@link #RELOADS_PER_MINUTE}.
  */
 public class NginxController extends AbstractController {
 
@@ -67,6 +80,33 @@ public class NginxController extends AbstractController {
     public static final BasicConfigKey<Long> HTTP_POLL_PERIOD =
         new BasicConfigKey<Long>(Long.class, "nginx.sensorpoll.http", "poll period (in milliseconds)", 1000);
 
+    @SetFromFlag("updateCoalescePeriod")
+    public static final BasicConfigKey<Long> UPDATE_COALESCE_PERIOD =
+        new BasicConfigKey<Long>(Long.class, "nginx.update.coalescePeriod", 
+            "time (in milliseconds) over which changes to the targets are coalesced into one reconfiguration; 0 to reconfigure on each change", 0L);
+
+    public static final BasicAttributeSensor<Integer> CONFIG_PUSH_COUNT =
+        new BasicAttributeSensor<Integer>(Integer.class, "nginx.config.pushes", "Number of times a changed configuration has been copied to the server");
+
+    public static final BasicAttributeSensor<Double> CONFIG_PUSHES_PER_MINUTE =
+        new BasicAttributeSensor<Double>(Double.class, "nginx.config.pushes.perMinute", "Configurations copied to the server per minute");
+
+    public static final BasicAttributeSensor<Integer> RELOAD_COUNT =
+        new BasicAttributeSensor<Integer>(Integer.class, "nginx.reloads", "Number of times nginx has been reloaded");
+
+    public static final BasicAttributeSensor<Double> RELOADS_PER_MINUTE =
+        new BasicAttributeSensor<Double>(Double.class, "nginx.reloads.perMinute", "Reloads of nginx per minute");
+
+    private final AtomicBoolean updateScheduled = new AtomicBoolean(false);
+    private final AtomicInteger configPushCount = new AtomicInteger();
+    private final AtomicInteger reloadCount = new AtomicInteger();
+    
+    /** hash of the configuration last copied to the server, or null if it must be copied regardless (e.g. when starting) */
+    private volatile String pushedConfigHash;
+    
+    /** whether a configuration has been copied to the server since nginx was last launched or reloaded */
+    private volatile boolean reloadRequired = true;
+
     public NginxController(Entity owner) {
         this(new LinkedHashMap(), owner);
     }
@@ -110,6 +150,56 @@ public class NginxController extends AbstractController {
         }
         
         driver.reload();
+        setAttribute(RELOAD_COUNT, reloadCount.incrementAndGet());
+    }
+    
+    /**
+     * Reconfigures nginx for changes to its targets, reloading it if the configuration has changed.
+     * If {@link #UPDATE_COALESCE_PERIOD} is set, changes within that period of the first are coalesced into one update.
+     */
+    @Override
+    public void update() {
+        Long period = getConfig(UPDATE_COALESCE_PERIOD);
+        if (period == null || period <= 0 || !isActive()) {
+            updateNow();
+        } else if (updateScheduled.compareAndSet(false, true)) {
+            try {
+                getExecutionContext().submit(new ScheduledTask([delay: period], {
+                        new BasicTask([displayName: "updating "+this, tag: this, blocking: true], { updateNow() })
+                    } as Callable));
+            } catch (RuntimeException e) {
+                updateScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+    
+    /** whether a coalesced update is waiting to run */
+    public boolean isUpdateScheduled() {
+        return updateScheduled.get();
+    }
+    
+    protected synchronized void updateNow() {
+        updateScheduled.set(false);
+        if (!isActive()) updateNeeded = true;
+        else {
+            updateNeeded = false;
+            LOG.debug("Updating {} in response to changes", this);
+            reconfigureService();
+            if (reloadRequired) {
+                reloadRequired = false;
+                LOG.debug("Reloading {} in response to changes", this);
+                try {
+                    invokeFromJava(RELOAD);
+                } catch (Exception e) {
+                    reloadRequired = true;
+                    throw e;
+                }
+            } else {
+                LOG.debug("Not reloading {}, as its configuration is unchanged", this);
+            }
+        }
+        setAttribute(SERVER_POOL_TARGETS, serverPoolAddresses);
     }
  
     public boolean isSticky() {
@@ -135,6 +225,11 @@ public class NginxController extends AbstractController {
                 return actual != null && actual.size() == 1 && actual.get(0).startsWith("nginx/"); 
             })
         }
+        
+        addEnricher(new TimeWeightedDeltaEnricher<Integer>(this, CONFIG_PUSH_COUNT, CONFIG_PUSHES_PER_MINUTE, 60*1000));
+        addEnricher(new TimeWeightedDeltaEnricher<Integer>(this, RELOAD_COUNT, RELOADS_PER_MINUTE, 60*1000));
+        setAttribute(CONFIG_PUSH_COUNT, configPushCount.get());
+        setAttribute(RELOAD_COUNT, reloadCount.get());
     }
 
     @Override
@@ -151,9 +246,17 @@ public class NginxController extends AbstractController {
     }
 
     public void doExtraConfigurationDuringStart() {
+        // the run dir may be new, so copy the configuration and keys even if unchanged
+        pushedConfigHash = null;
+        installedSslConfigs.clear();
         reconfigureService();
     }
 
+    /** called by the driver once nginx has been launched, so has loaded the configuration already copied to the server */
+    public void doExtraConfigurationAfterLaunch() {
+        reloadRequired = false;
+    }
+
     @Description("Gets the current server configuration (by brooklyn recalculating what the config should be); does not affect the server")
     public String getCurrentConfiguration() {
         return getConfigFile();
@@ -174,25 +277,38 @@ public class NginxController extends AbstractController {
             return;
         }
         
-        driver.machine.copyTo(new ByteArrayInputStream(cfg.getBytes()), driver.getRunDir()+"/conf/server.conf");
+        String hash = Hashing.md5().hashString(cfg, Charsets.UTF_8).toString();
+        if (hash.equals(pushedConfigHash)) {
+            if (LOG.isDebugEnabled()) LOG.debug("Not copying configuration to {}, as unchanged", this);
+        } else {
+            driver.machine.copyTo(new ByteArrayInputStream(cfg.getBytes()), driver.getRunDir()+"/conf/server.conf");
+            pushedConfigHash = hash;
+            reloadRequired = true;
+            setAttribute(CONFIG_PUSH_COUNT, configPushCount.incrementAndGet());
+        }
         
         installSslKeys("global", getConfig(SSL_CONFIG));
         
+        Set<String> domainsSeen = [];
         for (UrlMapping mapping: findUrlMappings()) {
-            //cache ensures only the first is installed, which is what is assumed below
-            installSslKeys(mapping.getDomain(), mapping.getConfig(UrlMapping.SSL_CONFIG));
+            //only the first config for a domain is used, as is assumed below
+            ProxySslConfig ssl = mapping.getConfig(UrlMapping.SSL_CONFIG);
+            if (ssl != null && domainsSeen.add(mapping.getDomain())) {
+                installSslKeys(mapping.getDomain(), ssl);
+            }
         }
     }
     
-    Set<String> installedKeysCache = [];
+    /** the SSL config whose keys were last installed, by id; cleared when the run dir may be new */
+    private final Map<String, ProxySslConfig> installedSslConfigs = Collections.synchronizedMap([:]);
 
     /** installs SSL keys named as  ID.{crt,key}  where nginx can find them;
-     * currently skips re-installs (does not support changing)
+     * skips the copy if the keys for that config are already installed
      */
     protected void installSslKeys(String id, ProxySslConfig ssl) {
         if (ssl == null) return;
 
-        if (installedKeysCache.contains(id)) return;
+        if (ssl.equals(installedSslConfigs.get(id))) return;
 
         NginxSshDriver driver = (NginxSshDriver) getDriver();
 
@@ -210,7 +326,8 @@ public class NginxController extends AbstractController {
                     keyDestination);
         }
 
-        installedKeysCache.add(id);
+        installedSslConfigs.put(id, ssl);
+        reloadRequired = true;
     }
 
     public String getConfigFile() {
@@ -248,16 +365,12 @@ public class NginxController extends AbstractController {
             config.append("  }\n");
         }
         
+        Set<String> upstreams = [];
+        
         // For basic round-robin across the server-pool
         if (serverPoolAddresses) {
-            config.append(format("  upstream "+getId()+" {\n"))
-            if (sticky){
-                config.append("    sticky;\n");
-            }
-            for (String address: serverPoolAddresses){
-                config.append("    server "+address+";\n")
-            }
-            config.append("  }\n")
+            config.append(getUpstreamBlock(getId(), serverPoolAddresses));
+            upstreams.add(getId());
             config.append("  server {\n");
             config.append("    listen "+getPort()+";\n")
             if (getDomain()!=null)
@@ -281,17 +394,13 @@ public class NginxController extends AbstractController {
         for (UrlMapping um : mappings) {
             Collection<String> addrs = um.getAttribute(UrlMapping.TARGET_ADDRESSES);
             if (addrs) {
-                String location = um.getPath() != null ? um.getPath() : "/";
-                config.append(format("  upstream "+um.uniqueLabel+" {\n"))
-                if (sticky){
-                    config.append("    sticky;\n");
-                }
-                for (String address: addrs) {
-                    config.append("    server "+address+";\n")
-                }
-                config.append("  }\n")
+                config.append(getUpstreamBlock(um.uniqueLabel, addrs));
+                upstreams.add(um.uniqueLabel);
             }
         }
+        synchronized (upstreamBlocks) {
+            upstreamBlocks.keySet().retainAll(upstreams);
+        }
         
         for (String domain : mappingsByDomain.keySet()) {
             config.append("  server {\n");
@@ -369,6 +478,51 @@ public class NginxController extends AbstractController {
         return config.toString();
     }
 
+    /**
+     * The upstream blocks last rendered, by name, each with the key of the targets and stickiness it was rendered for
+     * (see {@link #upstreamKey(Collection)}). Changes to a large pool's members then only re-render that pool's upstream.
+     */
+    private final Map<String, List> upstreamBlocks = [:];
+
+    protected String getUpstreamBlock(String name, Collection<String> addresses) {
+        String key = upstreamKey(addresses);
+        synchronized (upstreamBlocks) {
+            List cached = upstreamBlocks.get(name);
+            if (cached != null && cached[0] == key) return cached[1];
+        }
+        
+        StringBuilder block = new StringBuilder();
+        block.append("  upstream "+name+" {\n");
+        if (isSticky()) {
+            block.append("    sticky;\n");
+        }
+        // sorted, so that the same targets in another order give the same block (and so the same configuration)
+        List<String> sortedAddresses = new ArrayList<String>(addresses);
+        Collections.sort(sortedAddresses);
+        for (String address: sortedAddresses) {
+            block.append("    server "+address+";\n");
+        }
+        block.append("  }\n");
+        
+        String result = block.toString();
+        synchronized (upstreamBlocks) {
+            upstreamBlocks.put(name, [key, result]);
+        }
+        return result;
+    }
+
+    /**
+     * A key for the given targets (independent of their order) and the stickiness, so that the cache need not
+     * keep and compare a copy of each pool's targets.
+     */
+    protected String upstreamKey(Collection<String> addresses) {
+        long sum = 0;
+        for (String address: addresses) {
+            sum += Hashing.murmur3_128().hashString(address, Charsets.UTF_8).asLong();
+        }
+        return ""+addresses.size()+":"+Long.toHexString(sum)+":"+isSticky();
+    }
+
     void verifyConfig(ProxySslConfig proxySslConfig) {
           if(Strings.isEmpty(proxySslConfig.certificateDestination) && Strings.isEmpty(proxySslConfig.certificateSourceUrl)){
             throw new IllegalStateException("ProxySslConfig can't have a null certificateDestination and null certificateSourceUrl. One or both need to be set")
@@ -160,6 +160,8 @@ public class NginxSshDriver extends AbstractSoftwareProcessSshDriver implements
                 format("cd %s", getRunDir()),
                 sudoIfPrivilegedPort(getHttpPort(), format("nohup ./sbin/nginx -p %s/ -c conf/server.conf > ./console 2>&1 &", getRunDir()))
         ).execute();
+        
+        ((NginxController) entity).doExtraConfigurationAfterLaunch();
     }
 
     public static String sudoIfPrivilegedPort(int port, String command) {
@@ -66,6 +66,7 @@ public class JBoss6Server extends JavaWebAppSoftwareProcess implements JavaWebAp
 
         Map<String, Object> flags = new HashMap<String, Object>();
         flags.put("period", new TimeDuration(0, 0, 0, 500));
+        flags.put("notificationFirst", true);
         JmxSensorAdapter jmx = sensorRegistry.register(new JmxSensorAdapter(flags));
         JmxObjectNameAdapter objectNameAdapter = jmx.objectName("jboss.web:type=GlobalRequestProcessor,name=http-*");
         objectNameAdapter.attribute("errorCount").subscribe(ERROR_COUNT);
@@ -73,6 +73,7 @@ public class TomcatServer extends JavaWebAppSoftwareProcess implements JavaWebAp
 
         Map<String, Object> flags = new LinkedHashMap<String, Object>();
         flags.put("period", new TimeDuration(0, 0, 0, 0, 500));
+        flags.put("notificationFirst", true);
         
         if (getDriver().isJmxEnabled()) {
             jmx = sensorRegistry.register(new JmxSensorAdapter(flags));
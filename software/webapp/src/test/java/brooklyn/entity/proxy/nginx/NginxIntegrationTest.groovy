@@ -14,6 +14,7 @@ import org.testng.annotations.Test
 import brooklyn.entity.Entity
 import brooklyn.entity.basic.SoftwareProcessEntity
 import brooklyn.entity.group.DynamicCluster
+import brooklyn.entity.proxy.StubAppServer
 import brooklyn.entity.webapp.JavaWebAppService
 import brooklyn.entity.webapp.WebAppService
 import brooklyn.entity.webapp.jboss.JBoss7Server
@@ -187,6 +188,56 @@ public class NginxIntegrationTest {
         assertUrlStatusCodeEventually(url2, 404);
     }
     
+    /**
+     * Test that the configuration is only copied and nginx reloaded when it changes, and that changes to the
+     * server pool within the update period are applied together.
+     */
+    @Test(groups = "Integration")
+    public void testCoalescesUpdatesAndSkipsUnchangedConfiguration() {
+        def serverFactory = { Map properties -> new StubAppServer(properties) }
+        serverPool = new DynamicCluster(owner:app, factory:serverFactory, initialSize:1)
+        
+        nginx = new NginxController([
+                "owner" : app,
+                "serverPool" : serverPool,
+                "domain" : "localhost",
+                "updateCoalescePeriod" : 2000
+            ])
+        
+        app.start([ new LocalhostMachineProvisioningLocation() ])
+        
+        assertAttributeEventually(nginx, SoftwareProcessEntity.SERVICE_UP, true);
+        assertEventually {
+            assertEquals(nginx.getAttribute(NginxController.SERVER_POOL_TARGETS)?.size(), 1);
+        }
+        
+        // Let the update scheduled on activation run (updateNow waits for one in progress)
+        assertEventually {
+            assertFalse(nginx.isUpdateScheduled());
+        }
+        nginx.updateNow()
+        
+        // Unchanged configuration is neither copied nor reloaded
+        int pushes = nginx.getAttribute(NginxController.CONFIG_PUSH_COUNT)
+        int reloads = nginx.getAttribute(NginxController.RELOAD_COUNT)
+        nginx.updateNow()
+        assertEquals(nginx.getAttribute(NginxController.CONFIG_PUSH_COUNT), pushes)
+        assertEquals(nginx.getAttribute(NginxController.RELOAD_COUNT), reloads)
+        
+        // New members are added in (at most) a couple of reconfigurations, rather than one each
+        serverPool.resize(5)
+        assertEventually {
+            assertEquals(nginx.getAttribute(NginxController.SERVER_POOL_TARGETS)?.size(), 5);
+        }
+        int newPushes = nginx.getAttribute(NginxController.CONFIG_PUSH_COUNT) - pushes
+        int newReloads = nginx.getAttribute(NginxController.RELOAD_COUNT) - reloads
+        assertTrue(newPushes >= 1 && newPushes <= 2, "pushes="+newPushes)
+        assertTrue(newReloads >= 1 && newReloads <= 2, "reloads="+newReloads)
+        assertEventually {
+            assertNotNull(nginx.getAttribute(NginxController.CONFIG_PUSHES_PER_MINUTE));
+        }
+    }
+    
     /** Test that site access does not fail even while nginx is reloaded */
     // FIXME test disabled -- reload isn't a problem, but #365 is
     @Test(enabled = false, groups = "Integration")